@@ -0,0 +1,112 @@
+package com.swipelab.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file against a stored baseline.
+ *
+ * Benchmarks are matched by name and parameters. A benchmark regresses when its score is worse
+ * than the baseline by more than the threshold (higher for time-per-operation modes, lower for
+ * throughput). Exits with status 1 on any regression. When no baseline exists yet, the current
+ * result is stored as the baseline; to refresh it, copy target/jmh-result.json over it.
+ *
+ * Usage: BaselineComparison &lt;baseline.json&gt; &lt;result.json&gt; [threshold percent]
+ */
+public class BaselineComparison {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <result.json> [threshold percent]");
+            System.exit(2);
+        }
+        Path baselinePath = Path.of(args[0]);
+        Path resultPath = Path.of(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        if (!Files.exists(resultPath)) {
+            System.err.println("No benchmark result at " + resultPath);
+            System.exit(2);
+        }
+        if (!Files.exists(baselinePath)) {
+            Files.createDirectories(baselinePath.toAbsolutePath().getParent());
+            Files.copy(resultPath, baselinePath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("No baseline found, stored " + resultPath + " as " + baselinePath);
+            return;
+        }
+
+        Map<String, Score> baseline = read(baselinePath);
+        Map<String, Score> current = read(resultPath);
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  (new)%n", entry.getKey(), "-", now.value, "");
+                continue;
+            }
+
+            double change = (now.value - before.value) / before.value * 100.0;
+            // Positive means slower, whatever the mode
+            double slowdown = now.lowerIsBetter ? change : -change;
+            boolean regressed = slowdown > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s%n",
+                    entry.getKey(), before.value, now.value, change, regressed ? "  REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%%%n", regressions, threshold);
+            System.exit(1);
+        }
+        System.out.printf("No regressions beyond %.1f%%%n", threshold);
+    }
+
+    private static Map<String, Score> read(Path path) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : MAPPER.readTree(path.toFile())) {
+            String mode = run.path("mode").asText();
+            JsonNode metric = run.path("primaryMetric");
+            scores.put(key(run), new Score(metric.path("score").asDouble(), !"thrpt".equals(mode)));
+        }
+        return scores;
+    }
+
+    private static String key(JsonNode run) {
+        String benchmark = run.path("benchmark").asText();
+        String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+
+        Map<String, String> params = new TreeMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = run.path("params").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            params.put(field.getKey(), field.getValue().asText());
+        }
+        return params.isEmpty() ? name : name + " " + params;
+    }
+
+    private static class Score {
+        private final double value;
+        private final boolean lowerIsBetter;
+
+        Score(double value, boolean lowerIsBetter) {
+            this.value = value;
+            this.lowerIsBetter = lowerIsBetter;
+        }
+    }
+}
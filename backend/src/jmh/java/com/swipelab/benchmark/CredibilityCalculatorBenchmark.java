@@ -0,0 +1,85 @@
+package com.swipelab.benchmark;
+
+import com.swipelab.model.entity.Label;
+import com.swipelab.util.CredibilityCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring math of {@link CredibilityCalculator}, on both the entity-list API and the
+ * primitive-array API, over the same synthetic data.
+ *
+ * Each benchmark runs a single call over all generated classifications, so the sizes
+ * stress the counting loops rather than per-call overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CredibilityCalculatorBenchmark {
+
+    private static final long SEED = 20240301L;
+
+    @Param({"1000", "100000", "1000000"})
+    private int classifications;
+
+    @Param({"2", "20", "500"})
+    private int labels;
+
+    private final CredibilityCalculator calculator = new CredibilityCalculator();
+    private SyntheticClassifications data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = SyntheticClassifications.generate(classifications, labels, SEED);
+    }
+
+    @Benchmark
+    public double cohenKappaEntities() {
+        return calculator.calculateCohenKappa(data.getUserClassifications(), data.getExpertClassifications());
+    }
+
+    @Benchmark
+    public double cohenKappaDense() {
+        CredibilityCalculator.DenseAgreementCounts counts = calculator.countAgreement(
+                data.getUserImageIds(), data.getUserLabels(),
+                data.getExpertImageIds(), data.getExpertLabels(),
+                data.getLabelIndex().size());
+        return calculator.calculateCohenKappa(counts.getAgreementCount(), counts.getTotalComparisons(),
+                counts.getLabelCounts1(), counts.getLabelCounts2());
+    }
+
+    @Benchmark
+    public Label majorityVoteEntities() {
+        return calculator.calculateMajorityVote(data.getUserClassifications());
+    }
+
+    @Benchmark
+    public int majorityVoteDense() {
+        return calculator.majorityLabel(data.getUserLabels(), data.getLabelIndex().size());
+    }
+
+    @Benchmark
+    public double consensusStrengthEntities() {
+        return calculator.calculateConsensusStrength(data.getUserClassifications());
+    }
+
+    @Benchmark
+    public double consensusStrengthDense() {
+        return calculator.calculateConsensusStrength(data.getUserLabels(), data.getLabelIndex().size());
+    }
+}
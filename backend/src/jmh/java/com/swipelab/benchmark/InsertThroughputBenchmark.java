@@ -0,0 +1,179 @@
+package com.swipelab.benchmark;
+
+import com.swipelab.model.entity.AnnotatorConfusion;
+import com.swipelab.model.entity.Badge;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.GoldImage;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.ImageLabelPosterior;
+import com.swipelab.model.entity.ImageLease;
+import com.swipelab.model.entity.JobCheckpoint;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Leaderboard;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.entity.UserAgreementStats;
+import com.swipelab.model.entity.UserBadge;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert cost per row of the two bulk write paths: a task's image import and the swipe
+ * ingestion of ClassificationService.submitClassifications. Each invocation persists
+ * {@link #ROWS} entities in one transaction, like one import chunk or a burst of swipe batches.
+ *
+ * jdbcBatchSize=1 sends one INSERT per row, which is what every size did while the ids came
+ * from IDENTITY columns; 50 matches hibernate.jdbc.batch_size and the sequences' allocationSize.
+ *
+ * Runs on in-memory H2 by default, which has no network round trip, so the two sizes measure
+ * the same there (importImages 110.1 vs 109.6 us/op, ingestSwipes 135.0 vs 126.4 us/op);
+ * the statement counts are checked by ClassificationRepositoryTest instead. The gain only
+ * shows against a real server. To measure against PostgreSQL, point it at a scratch
+ * database (the schema is created and dropped by Hibernate):
+ * -Djmh.args="InsertThroughput -jvmArgsAppend -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/bench?reWriteBatchedInserts=true"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class InsertThroughputBenchmark {
+
+    private static final long SEED = 20240301L;
+    private static final int ROWS = 500;
+    private static final int SEEDED_IMAGES = 5000;
+    private static final int LABELS = 20;
+
+    @Param({"1", "50"})
+    private int jdbcBatchSize;
+
+    private SessionFactory sessionFactory;
+    private final Random random = new Random(SEED);
+
+    private Long taskId;
+    private long[] imageIds;
+    private long[] labelIds;
+    private long lastSeededImageId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(AnnotatorConfusion.class)
+                .addAnnotatedClass(Badge.class)
+                .addAnnotatedClass(Classification.class)
+                .addAnnotatedClass(GoldImage.class)
+                .addAnnotatedClass(Image.class)
+                .addAnnotatedClass(ImageLabelPosterior.class)
+                .addAnnotatedClass(ImageLease.class)
+                .addAnnotatedClass(JobCheckpoint.class)
+                .addAnnotatedClass(Label.class)
+                .addAnnotatedClass(Leaderboard.class)
+                .addAnnotatedClass(Task.class)
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(UserAgreementStats.class)
+                .addAnnotatedClass(UserBadge.class)
+                .setProperty(AvailableSettings.JAKARTA_JDBC_URL,
+                        System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:insert-benchmark;DB_CLOSE_DELAY=-1"))
+                .setProperty(AvailableSettings.JAKARTA_JDBC_USER, System.getProperty("benchmark.jdbc.user", "sa"))
+                .setProperty(AvailableSettings.JAKARTA_JDBC_PASSWORD, System.getProperty("benchmark.jdbc.password", ""))
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(jdbcBatchSize))
+                .setProperty(AvailableSettings.ORDER_INSERTS, "true")
+                .buildSessionFactory();
+
+        User user = User.builder().username("bench").email("bench@swipelab.test").build();
+        Task task = Task.builder().name("Insert benchmark").createdBy(user).build();
+        Label[] labels = new Label[LABELS];
+        Image[] images = new Image[SEEDED_IMAGES];
+        sessionFactory.inTransaction(session -> {
+            session.persist(user);
+            session.persist(task);
+            for (int i = 0; i < LABELS; i++) {
+                labels[i] = Label.builder().name("label-" + i).build();
+                session.persist(labels[i]);
+            }
+            for (int i = 0; i < SEEDED_IMAGES; i++) {
+                images[i] = Image.builder().imageUrl("https://images.swipelab.test/seed/" + i).task(task).build();
+                session.persist(images[i]);
+            }
+        });
+
+        taskId = task.getId();
+        labelIds = new long[LABELS];
+        for (int i = 0; i < LABELS; i++) {
+            labelIds[i] = labels[i].getId();
+        }
+        imageIds = new long[SEEDED_IMAGES];
+        for (int i = 0; i < SEEDED_IMAGES; i++) {
+            imageIds[i] = images[i].getId();
+            lastSeededImageId = Math.max(lastSeededImageId, imageIds[i]);
+        }
+    }
+
+    /**
+     * Keeps the tables at their seeded size, so later iterations don't insert into bigger indexes
+     */
+    @TearDown(Level.Iteration)
+    public void removeInsertedRows() {
+        sessionFactory.inTransaction(session -> {
+            session.createMutationQuery("delete from Classification").executeUpdate();
+            session.createMutationQuery("delete from Image i where i.id > :lastSeededImageId")
+                    .setParameter("lastSeededImageId", lastSeededImageId)
+                    .executeUpdate();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void importImages() {
+        sessionFactory.inTransaction(session -> {
+            Task task = session.getReference(Task.class, taskId);
+            for (int i = 0; i < ROWS; i++) {
+                session.persist(Image.builder()
+                        .imageUrl("https://images.swipelab.test/import/" + i)
+                        .task(task)
+                        .build());
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void ingestSwipes() {
+        sessionFactory.inTransaction(session -> {
+            User user = session.getReference(User.class, "bench");
+            for (int i = 0; i < ROWS; i++) {
+                session.persist(Classification.builder()
+                        .user(user)
+                        .image(session.getReference(Image.class, imageIds[random.nextInt(SEEDED_IMAGES)]))
+                        .label(session.getReference(Label.class, labelIds[random.nextInt(LABELS)]))
+                        .voteWeight(1.0)
+                        .build());
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package com.swipelab.benchmark;
+
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.util.LabelIndex;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of classification data shaped like production traffic.
+ *
+ * - True labels follow a Zipf distribution, since a handful of species dominate most tasks
+ * - About five votes per image, a regular user picks the true label 75% of the time
+ * - Experts label 60% of the images and are right 95% of the time
+ *
+ * The same data is exposed as entity lists (for the List-based calculator API) and as
+ * parallel primitive arrays in dense label space (for the array-based API), so both paths
+ * can be measured on identical input.
+ */
+@Getter
+public class SyntheticClassifications {
+
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final int VOTES_PER_IMAGE = 5;
+    private static final double USER_ACCURACY = 0.75;
+    private static final double EXPERT_COVERAGE = 0.6;
+    private static final double EXPERT_ACCURACY = 0.95;
+
+    private final List<Classification> userClassifications;
+    private final List<Classification> expertClassifications;
+
+    private final LabelIndex labelIndex;
+    private final long[] userImageIds;
+    private final int[] userLabels;
+    private final long[] expertImageIds;
+    private final int[] expertLabels;
+
+    private SyntheticClassifications(int classifications, int labels, long seed) {
+        Random random = new Random(seed);
+        int imageCount = Math.max(1, classifications / VOTES_PER_IMAGE);
+
+        Label[] labelEntities = new Label[labels];
+        labelIndex = new LabelIndex(labels);
+        for (int i = 0; i < labels; i++) {
+            labelEntities[i] = Label.builder().id(1000L + i).name("label-" + i).build();
+            labelIndex.indexOf(labelEntities[i].getId());
+        }
+
+        double[] cumulative = zipfCumulative(labels);
+        Image[] images = new Image[imageCount];
+        int[] truth = new int[imageCount];
+        for (int i = 0; i < imageCount; i++) {
+            images[i] = Image.builder().id(i + 1L).build();
+            truth[i] = sample(cumulative, random);
+        }
+
+        userClassifications = new ArrayList<>(classifications);
+        userImageIds = new long[classifications];
+        userLabels = new int[classifications];
+        for (int i = 0; i < classifications; i++) {
+            int image = random.nextInt(imageCount);
+            int label = random.nextDouble() < USER_ACCURACY ? truth[image] : random.nextInt(labels);
+            userClassifications.add(classification(i + 1L, images[image], labelEntities[label]));
+            userImageIds[i] = images[image].getId();
+            userLabels[i] = label;
+        }
+
+        List<Integer> expertImages = new ArrayList<>();
+        for (int image = 0; image < imageCount; image++) {
+            if (random.nextDouble() < EXPERT_COVERAGE) {
+                expertImages.add(image);
+            }
+        }
+        expertClassifications = new ArrayList<>(expertImages.size());
+        expertImageIds = new long[expertImages.size()];
+        expertLabels = new int[expertImages.size()];
+        for (int i = 0; i < expertImages.size(); i++) {
+            int image = expertImages.get(i);
+            int label = random.nextDouble() < EXPERT_ACCURACY ? truth[image] : random.nextInt(labels);
+            expertClassifications.add(classification(classifications + i + 1L, images[image], labelEntities[label]));
+            expertImageIds[i] = images[image].getId();
+            expertLabels[i] = label;
+        }
+    }
+
+    /**
+     * @param classifications Number of regular user classifications
+     * @param labels          Number of distinct labels
+     * @param seed            Random seed, fixed so runs are comparable
+     */
+    public static SyntheticClassifications generate(int classifications, int labels, long seed) {
+        return new SyntheticClassifications(classifications, labels, seed);
+    }
+
+    private static Classification classification(Long id, Image image, Label label) {
+        return Classification.builder()
+                .id(id)
+                .image(image)
+                .label(label)
+                .build();
+    }
+
+    private static double[] zipfCumulative(int labels) {
+        double[] cumulative = new double[labels];
+        double total = 0;
+        for (int rank = 0; rank < labels; rank++) {
+            total += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < labels; rank++) {
+            cumulative[rank] /= total;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, Random random) {
+        double u = random.nextDouble();
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            if (u < cumulative[rank]) {
+                return rank;
+            }
+        }
+        return cumulative.length - 1;
+    }
+}
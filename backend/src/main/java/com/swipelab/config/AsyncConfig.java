@@ -1,5 +1,86 @@
 package com.swipelab.config;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+@RequiredArgsConstructor
 public class AsyncConfig {
-    
+
+    public static final String CREDIBILITY_EXECUTOR = "credibilityExecutor";
+    public static final String RECALCULATION_EXECUTOR = "credibilityRecalculationExecutor";
+    public static final String PREFETCH_EXECUTOR = "prefetchExecutor";
+
+    private final CredibilityConfig credibilityConfig;
+    private final DistributionConfig distributionConfig;
+
+    /**
+     * Declaring our own executors switches off Spring Boot's default one, so it is
+     * re-created here for @Async methods and anything else injecting a plain executor.
+     */
+    @Bean(name = {"taskExecutor", "applicationTaskExecutor"})
+    @Primary
+    public ThreadPoolTaskExecutor taskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * Dedicated, bounded pool for credibility recomputes so they never compete with
+     * request threads. A full queue rejects the task instead of blocking or running it
+     * on the caller; the update queue keeps rejected work pending for the next drain.
+     */
+    @Bean(name = CREDIBILITY_EXECUTOR)
+    public ThreadPoolTaskExecutor credibilityExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(credibilityConfig.getExecutorCorePoolSize());
+        executor.setMaxPoolSize(credibilityConfig.getExecutorMaxPoolSize());
+        executor.setQueueCapacity(credibilityConfig.getExecutorQueueCapacity());
+        executor.setThreadNamePrefix("credibility-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Worker pool for chunked credibility recalculation. Sized to the configured parallelism;
+     * once its queue is full the submitting thread runs the chunk itself, which throttles
+     * the fan-out instead of piling up work.
+     */
+    @Bean(name = RECALCULATION_EXECUTOR)
+    public ThreadPoolTaskExecutor credibilityRecalculationExecutor() {
+        int parallelism = credibilityConfig.getRecalculationParallelism();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(parallelism * 2);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("credibility-recalc-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Small pool that refills per-user prefetch queues off the request path. A full queue
+     * rejects the refill; the user's next batch asks again.
+     */
+    @Bean(name = PREFETCH_EXECUTOR)
+    public ThreadPoolTaskExecutor prefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(distributionConfig.getPrefetchRefillThreads());
+        executor.setMaxPoolSize(distributionConfig.getPrefetchRefillThreads());
+        executor.setQueueCapacity(distributionConfig.getPrefetchRefillQueueCapacity());
+        executor.setThreadNamePrefix("prefetch-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
 }
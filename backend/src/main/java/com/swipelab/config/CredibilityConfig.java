@@ -0,0 +1,142 @@
+package com.swipelab.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tuning for the asynchronous credibility update pipeline.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "credibility")
+@Getter
+@Setter
+public class CredibilityConfig {
+
+    /**
+     * How long updates for the same user are coalesced before one recompute is scheduled
+     */
+    private long coalesceWindowMs = 2000;
+
+    /**
+     * How often the pending map is checked for updates whose window has elapsed
+     */
+    private long drainIntervalMs = 500;
+
+    private int executorCorePoolSize = 2;
+    private int executorMaxPoolSize = 4;
+
+    /**
+     * Bound on recomputes waiting for an executor thread; anything beyond stays coalesced
+     * in the pending map until the next drain
+     */
+    private int executorQueueCapacity = 500;
+
+    /**
+     * Users recomputed per transaction when an image's voters are recalculated
+     */
+    private int recalculationChunkSize = 100;
+
+    /**
+     * Chunks recomputed concurrently
+     */
+    private int recalculationParallelism = 4;
+
+    /**
+     * Attempts per chunk on transient database failures (deadlocks, lock timeouts)
+     */
+    private int recalculationMaxAttempts = 3;
+    private long recalculationRetryBackoffMs = 200;
+
+    /**
+     * Schedule of the full credibility recompute
+     */
+    private String recomputeCron = "0 30 3 * * *";
+
+    /**
+     * Workers writing recomputed users during the full recompute
+     */
+    private int recomputeParallelism = 4;
+
+    /**
+     * Users written per transaction (and per checkpoint) during the full recompute
+     */
+    private int recomputeChunkSize = 1000;
+
+    /**
+     * Rows fetched per round trip while streaming classifications
+     */
+    private int recomputeFetchSize = 10000;
+
+    /**
+     * Schedule of the per-task Dawid-Skene label aggregation over open tasks
+     */
+    private String aggregationCron = "0 0 4 * * *";
+
+    /**
+     * EM iteration cap and convergence threshold (largest posterior change) of the label aggregation
+     */
+    private int aggregationMaxIterations = 50;
+    private double aggregationTolerance = 1e-4;
+
+    /**
+     * Pseudo-comparisons that shrink a user's credibility score towards 0 while they have
+     * few comparisons with experts or image majorities; at this many real comparisons the
+     * score is half of their agreement
+     */
+    private int credibilityPriorComparisons = 10;
+
+    /**
+     * Lowest vote weight of a regular user in the weighted consensus, so users without a
+     * credibility score yet still count (weights are capped at 1.0)
+     */
+    private double consensusMinVoteWeight = 0.1;
+
+    /**
+     * How often dirty in-memory consensus counters are written to the tally tables
+     */
+    private long consensusFlushIntervalMs = 1000;
+
+    /**
+     * Classifications an image needs at least in ADAPTIVE stopping mode
+     */
+    private int stoppingMinVotes = 2;
+
+    /**
+     * Probability that a vote of weight 1.0 is right, which sets how much evidence a vote
+     * carries in the ADAPTIVE stopping posterior
+     */
+    private double stoppingFullWeightAccuracy = 0.95;
+
+    /**
+     * How often changed retired-image bitmaps are written to task_retired_images
+     */
+    private long retiredImagesFlushIntervalMs = 5000;
+
+    /**
+     * Users whose already-classified images are kept in memory for image selection
+     */
+    private int seenCacheMaxUsers = 10000;
+
+    /**
+     * How often the gold answer key is reloaded to pick up added or corrected gold images
+     */
+    private long goldKeyRefreshIntervalMs = 300000;
+
+    /**
+     * How often the credibility tiers used for routing are recomputed from users
+     */
+    private long tierRefreshIntervalMs = 300000;
+
+    /**
+     * Credibility percentile from which a user is in the reliable tier, between 0 and 1
+     */
+    private double reliableTierPercentile = 0.75;
+
+    /**
+     * Classifications compared with an expert label or an image majority that a user needs
+     * before their credibility is ranked for the tiers
+     */
+    private int tierMinComparisons = 20;
+}
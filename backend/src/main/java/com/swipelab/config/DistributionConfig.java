@@ -0,0 +1,154 @@
+package com.swipelab.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tuning for handing out image batches to users.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "distribution")
+@Getter
+@Setter
+public class DistributionConfig {
+
+    /**
+     * How long a served image stays reserved for its user before others can get it
+     */
+    private long leaseDurationSeconds = 120;
+
+    /**
+     * Resolution of the lease expiry timer; a lease ends at most this much after its deadline
+     */
+    private long leaseReaperTickMs = 1000;
+
+    private int defaultBatchSize = 10;
+    private int maxBatchSize = 50;
+
+    /**
+     * Lease rows locked per claim round, as a multiple of the batch size, so images the user
+     * has already classified can be skipped without another round
+     */
+    private int claimOverfetchFactor = 3;
+
+    /**
+     * Claim rounds per batch before a short batch is returned
+     */
+    private int maxClaimRounds = 4;
+
+    /**
+     * How often lease rows are created for newly imported images
+     */
+    private long leaseSyncIntervalMs = 60000;
+
+    /**
+     * Images kept leased and ready per active user and task
+     */
+    private int prefetchQueueSize = 20;
+
+    /**
+     * A background refill starts once a queue holds fewer images than this
+     */
+    private int prefetchLowWaterMark = 8;
+
+    /**
+     * Prefetched images whose lease has less time left than this are not served any more
+     */
+    private long prefetchMinRemainingLeaseSeconds = 30;
+
+    private int prefetchRefillThreads = 2;
+    private int prefetchRefillQueueCapacity = 500;
+
+    /**
+     * PERMUTED tasks: permutation positions examined per batch at most, so a user who has
+     * classified a long stretch of their order gets a short batch instead of a slow one
+     */
+    private int permutationScanLimit = 2000;
+
+    /**
+     * PERMUTED tasks: how long a task's image index is used before it is reloaded to pick up new images
+     */
+    private long permutationIndexRefreshMs = 60000;
+
+    /**
+     * How often advanced cursors are written to user_task_cursors
+     */
+    private long cursorFlushIntervalMs = 5000;
+
+    /**
+     * Flushed cursors unused for this long are dropped from memory and reloaded on next use
+     */
+    private long cursorIdleEvictMs = 600000;
+
+    /**
+     * How often the task scheduler picks up changed tasks, remaining image counts and group memberships
+     */
+    private long schedulerRefreshIntervalMs = 30000;
+
+    /**
+     * A task's share starts growing this long before its deadline
+     */
+    private long deadlineHorizonHours = 48;
+
+    /**
+     * Share multiplier of a task at (or past) its deadline; it grows linearly from 1 across the horizon
+     */
+    private double deadlineMaxBoost = 4.0;
+
+    /**
+     * Tasks tried per batch request without a task before an empty batch is returned
+     */
+    private int schedulerMaxTaskAttempts = 3;
+
+    /**
+     * Share of a batch that is gold for a user who answers every gold image correctly
+     */
+    private double goldMinRate = 0.02;
+
+    /**
+     * Share of a batch that is gold for a user who gets every gold image wrong, and for new users
+     */
+    private double goldMaxRate = 0.2;
+
+    /**
+     * Gold answers a user needs before their accuracy lowers the gold rate
+     */
+    private int goldWarmupAnswers = 10;
+
+    /**
+     * Users whose gold accuracy and gold position are kept in memory
+     */
+    private int goldStateMaxUsers = 10000;
+
+    /**
+     * Whether contested images are routed to users in the reliable credibility tier first
+     */
+    private boolean contestedRoutingEnabled = true;
+
+    /**
+     * Share of a reliable user's claim reserved for contested images
+     */
+    private double contestedRoutingShare = 0.5;
+
+    /**
+     * Classifications an unfinalized image needs before it can count as contested
+     */
+    private int contestedMinVotes = 2;
+
+    /**
+     * Normalized vote entropy from which an image counts as contested; 1 is an even split
+     */
+    private double contestedMinEntropy = 0.6;
+
+    /**
+     * Contested images ranked per task; the least contested ones fall out beyond this
+     */
+    private int contestedMaxPerTask = 1000;
+
+    /**
+     * Contested images looked at per claim while skipping ones the user already classified
+     */
+    private int contestedScanLimit = 200;
+}
@@ -1,5 +1,111 @@
 package com.swipelab.controller;
 
+import com.swipelab.service.classification.ContestedImageQueue;
+import com.swipelab.service.classification.FairShareScheduler;
+import com.swipelab.service.classification.GoldAnswerKey;
+import com.swipelab.service.classification.LabelAggregationService;
+import com.swipelab.service.classification.TaskDistributionService;
+import com.swipelab.service.user.CredibilityService;
+import com.swipelab.service.user.CredibilityTierCache;
+import com.swipelab.service.user.CredibilityUpdateQueue;
+import com.swipelab.service.user.RecipientGroupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/admin")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
-    
+
+    private final CredibilityUpdateQueue credibilityUpdateQueue;
+    private final CredibilityService credibilityService;
+    private final LabelAggregationService labelAggregationService;
+    private final TaskDistributionService taskDistributionService;
+    private final FairShareScheduler fairShareScheduler;
+    private final GoldAnswerKey goldAnswerKey;
+    private final ContestedImageQueue contestedImageQueue;
+    private final CredibilityTierCache credibilityTierCache;
+    private final RecipientGroupService recipientGroupService;
+
+    @GetMapping("/credibility/queue")
+    public ResponseEntity<CredibilityUpdateQueue.QueueMetrics> getCredibilityQueueMetrics() {
+        return ResponseEntity.ok(credibilityUpdateQueue.getMetrics());
+    }
+
+    @GetMapping("/distribution/prefetch")
+    public ResponseEntity<TaskDistributionService.PrefetchMetrics> getPrefetchMetrics() {
+        return ResponseEntity.ok(taskDistributionService.getPrefetchMetrics());
+    }
+
+    @GetMapping("/distribution/schedule")
+    public ResponseEntity<List<FairShareScheduler.TaskShare>> getTaskShares() {
+        return ResponseEntity.ok(fairShareScheduler.getShares());
+    }
+
+    @GetMapping("/distribution/contested")
+    public ResponseEntity<ContestedImageQueue.ContestedMetrics> getContestedMetrics() {
+        return ResponseEntity.ok(contestedImageQueue.getMetrics());
+    }
+
+    @GetMapping("/credibility/tiers")
+    public ResponseEntity<CredibilityTierCache.TierSummary> getCredibilityTiers() {
+        return ResponseEntity.ok(credibilityTierCache.getSummary());
+    }
+
+    @GetMapping("/credibility/users")
+    public ResponseEntity<Page<CredibilityService.CredibilityStats>> getCredibilityStats(
+            @PageableDefault(size = 50, sort = "username", direction = Sort.Direction.ASC) Pageable pageable) {
+        return ResponseEntity.ok(credibilityService.getCredibilityStats(pageable));
+    }
+
+    @GetMapping("/credibility/users/{username}")
+    public ResponseEntity<CredibilityService.CredibilityStats> getCredibilityStats(@PathVariable String username) {
+        return ResponseEntity.ok(credibilityService.getCredibilityStats(username));
+    }
+
+    @GetMapping("/users/{username}/recipient-groups")
+    public ResponseEntity<List<Long>> getRecipientGroups(@PathVariable String username) {
+        return ResponseEntity.ok(recipientGroupService.getRecipientGroups(username));
+    }
+
+    /**
+     * Adds the user to a recipient group; the scheduler serves the group's tasks to them after its next refresh
+     */
+    @PutMapping("/users/{username}/recipient-groups/{groupId}")
+    public ResponseEntity<List<Long>> addToRecipientGroup(@PathVariable String username, @PathVariable Long groupId) {
+        return ResponseEntity.ok(recipientGroupService.addToGroup(username, groupId));
+    }
+
+    @DeleteMapping("/users/{username}/recipient-groups/{groupId}")
+    public ResponseEntity<List<Long>> removeFromRecipientGroup(@PathVariable String username, @PathVariable Long groupId) {
+        return ResponseEntity.ok(recipientGroupService.removeFromGroup(username, groupId));
+    }
+
+    /**
+     * Reloads the gold answer key right away after gold images were added or corrected
+     */
+    @PostMapping("/gold/reload")
+    public ResponseEntity<Integer> reloadGoldAnswerKey() {
+        return ResponseEntity.ok(goldAnswerKey.reload());
+    }
+
+    @PostMapping("/tasks/{taskId}/aggregate")
+    public ResponseEntity<LabelAggregationService.AggregationSummary> aggregateTaskLabels(@PathVariable Long taskId) {
+        return ResponseEntity.ok(labelAggregationService.aggregateTask(taskId));
+    }
 }
@@ -1,5 +1,62 @@
 package com.swipelab.controller;
 
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.dto.response.ClassificationResponse;
+import com.swipelab.exception.UnauthorizedException;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.service.classification.ClassificationService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/classifications")
+@RequiredArgsConstructor
 public class ClassificationController {
-    
+
+    private final ClassificationService classificationService;
+
+    @PostMapping
+    public ResponseEntity<ClassificationResponse> submit(@Valid @RequestBody ClassificationRequest request,
+                                                         Principal principal) {
+        Classification classification = classificationService.submitClassification(username(principal),
+                request.getImageId(), request.getLabelId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(classification));
+    }
+
+    /**
+     * Swipes collected on the device and sent together; validated as a whole, so either all
+     * of them are recorded or none
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<ClassificationResponse>> submitBatch(@RequestBody List<ClassificationRequest> requests,
+                                                                    Principal principal) {
+        List<Classification> classifications = classificationService.submitClassifications(username(principal), requests);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(classifications.stream().map(this::toResponse).toList());
+    }
+
+    private String username(Principal principal) {
+        if (principal == null) {
+            throw new UnauthorizedException("Unauthorized");
+        }
+        return principal.getName();
+    }
+
+    private ClassificationResponse toResponse(Classification classification) {
+        return ClassificationResponse.builder()
+                .id(classification.getId())
+                .imageId(classification.getImage().getId())
+                .labelId(classification.getLabel().getId())
+                .createdAt(classification.getCreatedAt())
+                .build();
+    }
 }
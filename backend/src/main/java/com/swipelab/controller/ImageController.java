@@ -1,10 +1,31 @@
 package com.swipelab.controller;
 
+import com.swipelab.dto.response.ImageBatchResponse;
+import com.swipelab.exception.UnauthorizedException;
+import com.swipelab.service.ImageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.security.Principal;
+
 @RestController
 @RequestMapping("/api/images")
+@RequiredArgsConstructor
 public class ImageController {
-    // TODO: Add endpoints (getBatch, etc.)
+
+    private final ImageService imageService;
+
+    @GetMapping("/batch")
+    public ResponseEntity<ImageBatchResponse> getBatch(@RequestParam(required = false) Long taskId,
+                                                       @RequestParam(required = false) Integer size,
+                                                       Principal principal) {
+        if (principal == null) {
+            throw new UnauthorizedException("Unauthorized");
+        }
+        return ResponseEntity.ok(imageService.getBatch(principal.getName(), taskId, size));
+    }
 }
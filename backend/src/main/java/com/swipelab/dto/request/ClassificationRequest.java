@@ -1,5 +1,23 @@
 package com.swipelab.dto.request;
 
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One swipe: the label a user gave an image
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
 public class ClassificationRequest {
-    
+
+    @NotNull(message = "Image is required")
+    private Long imageId;
+
+    @NotNull(message = "Label is required")
+    private Long labelId;
 }
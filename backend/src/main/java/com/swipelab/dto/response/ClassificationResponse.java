@@ -0,0 +1,18 @@
+package com.swipelab.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class ClassificationResponse {
+
+    private Long id;
+    private Long imageId;
+    private Long labelId;
+    private LocalDateTime createdAt;
+}
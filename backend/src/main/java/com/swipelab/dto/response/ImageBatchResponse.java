@@ -1,5 +1,34 @@
 package com.swipelab.dto.response;
 
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
 public class ImageBatchResponse {
-    
+
+    private Long taskId;
+
+    /**
+     * The images are reserved for the user until then; afterwards they may be served to others.
+     * Null for PERMUTED tasks, which do not reserve images.
+     */
+    private LocalDateTime leaseExpiresAt;
+
+    private List<BatchImage> images;
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    public static class BatchImage {
+        private Long id;
+        private String imageUrl;
+        private String thumbnailUrl;
+        private String caption;
+    }
 }
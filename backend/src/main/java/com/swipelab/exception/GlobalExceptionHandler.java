@@ -54,7 +54,7 @@ public class GlobalExceptionHandler {
     }
 
     @ExceptionHandler({ EmailVerificationException.class, PasswordResetException.class,
-            IllegalArgumentException.class })
+            ValidationException.class, IllegalArgumentException.class })
     public ResponseEntity<ErrorResponse> handleBadRequestExceptions(
             RuntimeException ex, HttpServletRequest request) {
 
@@ -0,0 +1,52 @@
+package com.swipelab.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * One cell of an annotator's estimated confusion matrix within a task:
+ * the probability that the annotator answers answeredLabelId when the true label is trueLabelId.
+ */
+@Entity
+@Table(name = "annotator_confusions")
+@IdClass(AnnotatorConfusion.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnnotatorConfusion {
+
+    @Id
+    @Column(name = "task_id", nullable = false)
+    private Long taskId;
+
+    @Id
+    @Column(nullable = false)
+    private String username;
+
+    @Id
+    @Column(name = "true_label_id", nullable = false)
+    private Long trueLabelId;
+
+    @Id
+    @Column(name = "answered_label_id", nullable = false)
+    private Long answeredLabelId;
+
+    @Column(nullable = false)
+    private Double probability;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long taskId;
+        private String username;
+        private Long trueLabelId;
+        private Long answeredLabelId;
+    }
+}
@@ -10,15 +10,23 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "classifications")
+@Table(name = "classifications", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_classification_user_image", columnNames = { "user_id", "image_id" })
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Classification {
 
+    /**
+     * Taken from a pooled sequence in blocks of 50 rather than from an IDENTITY column, so the
+     * inserts of a swipe batch can be sent as one JDBC batch. Ids still grow in persist order
+     * within the single backend instance, which the IdLessThan lookups rely on.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "classifications_seq")
+    @SequenceGenerator(name = "classifications_seq", sequenceName = "classifications_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -33,6 +41,12 @@ public class Classification {
     @JoinColumn(name = "label_id", nullable = false)
     private Label label;
 
+    /**
+     * The voter's credibility weight when the classification was made, used by the weighted consensus
+     */
+    @Column(name = "vote_weight")
+    private Double voteWeight;
+
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,42 @@
+package com.swipelab.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Most likely true label of an image according to the last label aggregation run of its task.
+ */
+@Entity
+@Table(name = "image_label_posteriors")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageLabelPosterior {
+
+    @Id
+    @Column(name = "image_id", nullable = false, updatable = false)
+    private Long imageId;
+
+    @Column(name = "task_id", nullable = false)
+    private Long taskId;
+
+    @Column(name = "label_id", nullable = false)
+    private Long labelId;
+
+    /**
+     * Posterior probability of the label, between 0 and 1
+     */
+    @Column(nullable = false)
+    private Double probability;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,47 @@
+package com.swipelab.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Serving slot of an image that still needs classifications.
+ * The image is leased to one user at a time while leasedTo is set and leaseExpiresAt is in the future;
+ * rows are claimed with FOR UPDATE SKIP LOCKED and removed once the image is finalized.
+ */
+@Entity
+@Table(name = "image_leases")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageLease {
+
+    @Id
+    @Column(name = "image_id", nullable = false, updatable = false)
+    private Long imageId;
+
+    @Column(name = "task_id", nullable = false, updatable = false)
+    private Long taskId;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer priority = 0;
+
+    /**
+     * Classifications so far, kept in step with image_vote_summaries for claim ordering
+     */
+    @Column(name = "vote_count", nullable = false)
+    @Builder.Default
+    private Integer voteCount = 0;
+
+    @Column(name = "leased_to")
+    private String leasedTo;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+}
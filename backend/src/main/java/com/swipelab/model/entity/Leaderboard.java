@@ -20,7 +20,8 @@ import java.time.LocalDateTime;
 public class Leaderboard {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "leaderboards_seq")
+    @SequenceGenerator(name = "leaderboards_seq", sequenceName = "leaderboards_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
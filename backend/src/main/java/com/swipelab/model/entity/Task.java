@@ -1,5 +1,7 @@
 package com.swipelab.model.entity;
 
+import com.swipelab.model.enums.DistributionMode;
+import com.swipelab.model.enums.StoppingMode;
 import com.swipelab.model.enums.TaskStatus;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -38,6 +40,30 @@ public class Task {
     @Builder.Default
     private Double consensusThreshold = 80.0;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "stopping_mode", nullable = false)
+    @Builder.Default
+    private StoppingMode stoppingMode = StoppingMode.FIXED;
+
+    /**
+     * ADAPTIVE mode: posterior probability the leading label must reach
+     */
+    @Column(name = "stopping_confidence")
+    @Builder.Default
+    private Double stoppingConfidence = 0.95;
+
+    /**
+     * ADAPTIVE mode: ambiguous images stop here even without a confident label
+     */
+    @Column(name = "max_classifications_per_image")
+    @Builder.Default
+    private Integer maxClassificationsPerImage = 10;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "distribution_mode", nullable = false)
+    @Builder.Default
+    private DistributionMode distributionMode = DistributionMode.LEASED;
+
     @ElementCollection
     @CollectionTable(name = "task_experiments", joinColumns = @JoinColumn(name = "task_id"))
     @Column(name = "experiment_id")
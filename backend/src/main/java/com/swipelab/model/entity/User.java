@@ -91,7 +91,9 @@ public class User {
         // ========== CREDIBILITY TRACKING ==========
 
         /**
-         * Overall credibility score (can be used for weighted averaging later)
+         * Overall credibility from expert and majority agreement, written by the credibility
+         * pipeline. Weighs the user's votes in the consensus and ranks them for the tiers.
+         * Range: 0 to 1
          */
         @Column(name = "credibility_score", nullable = false)
         @Builder.Default
@@ -121,18 +123,17 @@ public class User {
         private Integer totalClassifications = 0;
 
         /**
-         * Number of correct classifications on gold standard images
-         * (to be implemented when gold image feature is added)
+         * Number of correct classifications on gold standard images.
+         * Only incremented in SQL by the submission, so saving a stale User never resets it.
          */
-        @Column(name = "correct_gold_classifications")
+        @Column(name = "correct_gold_classifications", updatable = false)
         @Builder.Default
         private Integer correctGoldClassifications = 0;
 
         /**
-         * Total number of gold standard images classified
-         * (to be implemented when gold image feature is added)
+         * Total number of gold standard images classified; incremented like correctGoldClassifications
          */
-        @Column(name = "total_gold_classifications")
+        @Column(name = "total_gold_classifications", updatable = false)
         @Builder.Default
         private Integer totalGoldClassifications = 0;
 
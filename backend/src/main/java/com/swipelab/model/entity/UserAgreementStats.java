@@ -0,0 +1,82 @@
+package com.swipelab.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running agreement accumulators for a single user.
+ * Cohen's Kappa and the majority agreement score are derived from these counters
+ * instead of re-reading the user's whole classification history on every submission.
+ */
+@Entity
+@Table(name = "user_agreement_stats")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAgreementStats {
+
+    @Id
+    @Column(nullable = false, updatable = false)
+    private String username;
+
+    /**
+     * Number of images classified by both this user and an expert
+     */
+    @Column(name = "expert_compared_count", nullable = false)
+    @Builder.Default
+    private Integer expertComparedCount = 0;
+
+    /**
+     * Number of those images where the user picked the expert's label
+     */
+    @Column(name = "expert_agreed_count", nullable = false)
+    @Builder.Default
+    private Integer expertAgreedCount = 0;
+
+    /**
+     * Label id -> how often the user chose it on images shared with experts
+     */
+    @ElementCollection
+    @CollectionTable(name = "user_agreement_user_labels", joinColumns = @JoinColumn(name = "username"))
+    @MapKeyColumn(name = "label_id")
+    @Column(name = "label_count", nullable = false)
+    @Builder.Default
+    private Map<Long, Integer> userLabelCounts = new HashMap<>();
+
+    /**
+     * Label id -> how often the expert chose it on those same images
+     */
+    @ElementCollection
+    @CollectionTable(name = "user_agreement_expert_labels", joinColumns = @JoinColumn(name = "username"))
+    @MapKeyColumn(name = "label_id")
+    @Column(name = "label_count", nullable = false)
+    @Builder.Default
+    private Map<Long, Integer> expertLabelCounts = new HashMap<>();
+
+    /**
+     * Number of classifications on images that currently have a majority label
+     */
+    @Column(name = "majority_compared_count", nullable = false)
+    @Builder.Default
+    private Integer majorityComparedCount = 0;
+
+    /**
+     * Number of those classifications that match the current majority label
+     */
+    @Column(name = "majority_agreed_count", nullable = false)
+    @Builder.Default
+    private Integer majorityAgreedCount = 0;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.swipelab.model.enums;
+
+/**
+ * How a task hands out its images
+ */
+public enum DistributionMode {
+    /**
+     * Images are claimed from image_leases and reserved for one user at a time
+     */
+    LEASED,
+
+    /**
+     * Every user walks the task's images in their own keyed pseudo-random order; only a cursor
+     * per user is stored and images are not reserved
+     */
+    PERMUTED
+}
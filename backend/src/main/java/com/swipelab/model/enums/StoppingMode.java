@@ -0,0 +1,17 @@
+package com.swipelab.model.enums;
+
+/**
+ * When an image has enough classifications
+ */
+public enum StoppingMode {
+    /**
+     * Fixed minimum number of classifications plus a weighted share threshold
+     */
+    FIXED,
+
+    /**
+     * As soon as the posterior of the leading label reaches the task's confidence,
+     * capped at a maximum number of classifications for ambiguous images
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,13 @@
+package com.swipelab.repository;
+
+import com.swipelab.model.entity.AnnotatorConfusion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AnnotatorConfusionRepository extends JpaRepository<AnnotatorConfusion, AnnotatorConfusion.Key> {
+
+    List<AnnotatorConfusion> findByTaskIdAndUsername(Long taskId, String username);
+}
@@ -1,16 +1,35 @@
 package com.swipelab.repository;
 
 import com.swipelab.model.entity.Classification;
+import com.swipelab.repository.projection.ClassificationTuple;
+import com.swipelab.repository.projection.UsernameCount;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ClassificationRepository extends JpaRepository<Classification, Long> {
 
+    /**
+     * Select clause for the read-only {@link ClassificationTuple} projections.
+     * c.image.id, c.label.id and c.user.username are foreign key columns, so no joins are needed for them
+     */
+    String TUPLE_SELECT = "SELECT new com.swipelab.repository.projection.ClassificationTuple(" +
+            "c.id, c.image.id, c.label.id, c.user.username, c.createdAt) FROM Classification c ";
+
+    /**
+     * Rows fetched per round trip when streaming projections
+     */
+    String STREAM_FETCH_SIZE = "1000";
+
     /**
      * Find all classifications by a specific user
      */
@@ -47,12 +66,45 @@ public interface ClassificationRepository extends JpaRepository<Classification,
     @Query("SELECT c FROM Classification c WHERE c.image.id = :imageId AND c.user.role != 'RESEARCHER'")
     List<Classification> findNonExpertClassificationsByImageId(@Param("imageId") Long imageId);
 
+    /**
+     * Find the distinct regular users who classified a specific image
+     * Used to fan out credibility recalculation after an expert labels the image
+     */
+    @Query("SELECT DISTINCT c.user.username FROM Classification c WHERE c.image.id = :imageId AND c.user.role != 'RESEARCHER'")
+    List<String> findNonExpertUsernamesByImageId(@Param("imageId") Long imageId);
+
     /**
      * Count total classifications by a user
      */
     @Query("SELECT COUNT(c) FROM Classification c WHERE c.user.username = :username")
     Long countByUsername(@Param("username") String username);
 
+    /**
+     * Count a user's classifications on images also classified by experts
+     * The overlap is a semi-join evaluated in the database, so nothing is loaded into memory
+     */
+    @Query("SELECT COUNT(c) FROM Classification c WHERE c.user.username = :username " +
+            "AND EXISTS (SELECT ec.id FROM Classification ec WHERE ec.image.id = c.image.id AND ec.user.role = 'RESEARCHER')")
+    long countUserClassificationsWithExpertOverlap(@Param("username") String username);
+
+    /**
+     * Count classifications for each of the given users
+     * Users without classifications are missing from the result
+     */
+    @Query("SELECT c.user.username AS username, COUNT(c) AS count FROM Classification c " +
+            "WHERE c.user.username IN :usernames GROUP BY c.user.username")
+    List<UsernameCount> countByUsernames(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Bulk form of {@link #countUserClassificationsWithExpertOverlap(String)} for a page of users
+     * Users without overlap are missing from the result
+     */
+    @Query("SELECT c.user.username AS username, COUNT(c) AS count FROM Classification c " +
+            "WHERE c.user.username IN :usernames " +
+            "AND EXISTS (SELECT ec.id FROM Classification ec WHERE ec.image.id = c.image.id AND ec.user.role = 'RESEARCHER') " +
+            "GROUP BY c.user.username")
+    List<UsernameCount> countExpertOverlapByUsernames(@Param("usernames") Collection<String> usernames);
+
     /**
      * Find all classifications by a user for images also classified by experts
      * Useful for getting the overlap between user and expert classifications
@@ -60,4 +112,43 @@ public interface ClassificationRepository extends JpaRepository<Classification,
     @Query("SELECT c FROM Classification c WHERE c.user.username = :username " +
             "AND EXISTS (SELECT ec FROM Classification ec WHERE ec.image.id = c.image.id AND ec.user.role = 'RESEARCHER')")
     List<Classification> findUserClassificationsWithExpertOverlap(@Param("username") String username);
-}
\ No newline at end of file
+
+    // ========== READ-ONLY PROJECTIONS ==========
+    // Analytics and credibility paths use these instead of the entity queries above,
+    // so recomputes don't fill the persistence context with managed entities and proxies.
+
+    /**
+     * All classifications by a user, oldest first
+     */
+    @Query(TUPLE_SELECT + "WHERE c.user.username = :username ORDER BY c.id")
+    List<ClassificationTuple> findTuplesByUsername(@Param("username") String username);
+
+    /**
+     * Expert classifications of the given images, oldest first
+     */
+    @Query(TUPLE_SELECT + "WHERE c.image.id IN :imageIds AND c.user.role = 'RESEARCHER' ORDER BY c.id")
+    List<ClassificationTuple> findExpertTuplesByImageIds(@Param("imageIds") Collection<Long> imageIds);
+
+    /**
+     * Regular (non-expert) classifications of the given images, oldest first
+     */
+    @Query(TUPLE_SELECT + "WHERE c.image.id IN :imageIds AND c.user.role != 'RESEARCHER' ORDER BY c.id")
+    List<ClassificationTuple> findNonExpertTuplesByImageIds(@Param("imageIds") Collection<Long> imageIds);
+
+    /**
+     * A user's classifications of the given images, oldest first
+     */
+    @Query(TUPLE_SELECT + "WHERE c.user.username = :username AND c.image.id IN :imageIds ORDER BY c.id")
+    List<ClassificationTuple> findUserTuplesByImageIds(@Param("username") String username,
+                                                       @Param("imageIds") Collection<Long> imageIds);
+
+    /**
+     * Streams expert classifications of the images a user classified, oldest first
+     * Must be consumed inside a transaction and closed afterwards
+     */
+    @Query(TUPLE_SELECT + "WHERE c.user.role = 'RESEARCHER' " +
+            "AND c.image.id IN (SELECT uc.image.id FROM Classification uc WHERE uc.user.username = :username) " +
+            "ORDER BY c.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    Stream<ClassificationTuple> streamExpertTuplesOnUserImages(@Param("username") String username);
+}
@@ -0,0 +1,13 @@
+package com.swipelab.repository;
+
+import com.swipelab.model.entity.ImageLabelPosterior;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ImageLabelPosteriorRepository extends JpaRepository<ImageLabelPosterior, Long> {
+
+    List<ImageLabelPosterior> findByTaskId(Long taskId);
+}
@@ -0,0 +1,86 @@
+package com.swipelab.repository;
+
+import com.swipelab.model.entity.ImageLease;
+import com.swipelab.repository.projection.LeaseCandidate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImageLeaseRepository extends JpaRepository<ImageLease, Long> {
+
+    /**
+     * Lock up to {@code limit} unleased images of a task in claim order, after the given
+     * position, skipping rows another transaction is claiming right now.
+     * Claim order is priority descending, then vote count descending, then image id.
+     */
+    @Query(value = "SELECT image_id AS \"imageId\", priority AS \"priority\", vote_count AS \"voteCount\" " +
+            "FROM image_leases " +
+            "WHERE task_id = :taskId AND (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+            "AND (priority < :afterPriority OR (priority = :afterPriority AND (vote_count < :afterVoteCount " +
+            "OR (vote_count = :afterVoteCount AND image_id > :afterImageId)))) " +
+            "ORDER BY priority DESC, vote_count DESC, image_id " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<LeaseCandidate> lockClaimable(@Param("taskId") Long taskId,
+                                       @Param("now") LocalDateTime now,
+                                       @Param("afterPriority") int afterPriority,
+                                       @Param("afterVoteCount") int afterVoteCount,
+                                       @Param("afterImageId") long afterImageId,
+                                       @Param("limit") int limit);
+
+    /**
+     * Lock the given images of a task that are still unleased, skipping rows being claimed right now
+     */
+    @Query(value = "SELECT image_id AS \"imageId\", priority AS \"priority\", vote_count AS \"voteCount\" " +
+            "FROM image_leases " +
+            "WHERE task_id = :taskId AND image_id IN (:imageIds) " +
+            "AND (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+            "FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<LeaseCandidate> lockUnleased(@Param("taskId") Long taskId,
+                                      @Param("imageIds") Collection<Long> imageIds,
+                                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE image_leases SET leased_to = :username, lease_expires_at = :expiresAt " +
+            "WHERE image_id IN (:imageIds)",
+            nativeQuery = true)
+    int lease(@Param("imageIds") Collection<Long> imageIds,
+              @Param("username") String username,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Count one classification on each of the (distinct) images and end the leases the
+     * classifying user held on them
+     */
+    @Modifying
+    @Query(value = "UPDATE image_leases SET vote_count = vote_count + 1, " +
+            "lease_expires_at = CASE WHEN leased_to = :username THEN NULL ELSE lease_expires_at END, " +
+            "leased_to = CASE WHEN leased_to = :username THEN NULL ELSE leased_to END " +
+            "WHERE image_id IN (:imageIds)",
+            nativeQuery = true)
+    int recordClassifications(@Param("imageIds") Collection<Long> imageIds, @Param("username") String username);
+
+    @Modifying
+    @Query(value = "DELETE FROM image_leases WHERE image_id IN (:imageIds)", nativeQuery = true)
+    int deleteByImageIds(@Param("imageIds") Collection<Long> imageIds);
+
+    /**
+     * Add a lease row for every image that has none and is not finalized; gold images are interleaved separately
+     */
+    @Modifying
+    @Query(value = "INSERT INTO image_leases (image_id, task_id, priority, vote_count) " +
+            "SELECT i.id, i.task_id, COALESCE(i.priority, 0), COALESCE(s.total_votes, 0) FROM images i " +
+            "LEFT JOIN image_vote_summaries s ON s.image_id = i.id " +
+            "WHERE s.finalized_label_id IS NULL AND i.is_gold_standard = FALSE " +
+            "AND NOT EXISTS (SELECT 1 FROM image_leases l WHERE l.image_id = i.id)",
+            nativeQuery = true)
+    int insertMissing();
+}
@@ -3,6 +3,8 @@ package com.swipelab.repository;
 import com.swipelab.model.entity.Task;
 import com.swipelab.model.enums.TaskStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +14,7 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
     List<Task> findByStatus(TaskStatus status);
 
     List<Task> findByCreatedBy_Username(String username);
+
+    @Query("SELECT t.id FROM Task t WHERE t.status = :status ORDER BY t.id")
+    List<Long> findIdsByStatus(@Param("status") TaskStatus status);
 }
@@ -0,0 +1,9 @@
+package com.swipelab.repository;
+
+import com.swipelab.model.entity.UserAgreementStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserAgreementStatsRepository extends JpaRepository<UserAgreementStats, String> {
+}
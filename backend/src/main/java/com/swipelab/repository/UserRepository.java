@@ -1,8 +1,14 @@
 package com.swipelab.repository;
 
 import com.swipelab.model.entity.User;
+import com.swipelab.model.enums.UserRole;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -19,4 +25,16 @@ public interface UserRepository extends JpaRepository<User, String> {
     Optional<User> findByEmailVerificationToken(String token);
 
     Optional<User> findByResetPasswordToken(String token);
+
+    Page<User> findByRoleNot(UserRole role, Pageable pageable);
+
+    /**
+     * Count graded gold classifications without loading or overwriting the rest of the user
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.totalGoldClassifications = u.totalGoldClassifications + :total, " +
+            "u.correctGoldClassifications = u.correctGoldClassifications + :correct " +
+            "WHERE u.username = :username")
+    int incrementGoldClassifications(@Param("username") String username, @Param("total") int total,
+                                     @Param("correct") int correct);
 }
\ No newline at end of file
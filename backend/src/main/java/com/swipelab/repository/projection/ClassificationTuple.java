@@ -0,0 +1,22 @@
+package com.swipelab.repository.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only view of a classification row: just the ids and timestamp.
+ * Built by JPQL constructor expressions, so loading these never creates managed
+ * Classification entities or User/Image/Label proxies in the persistence context.
+ * The user is identified by username, which is the users table's primary key.
+ */
+@Getter
+@AllArgsConstructor
+public class ClassificationTuple {
+    private final Long id;
+    private final Long imageId;
+    private final Long labelId;
+    private final String username;
+    private final LocalDateTime createdAt;
+}
@@ -0,0 +1,13 @@
+package com.swipelab.repository.projection;
+
+/**
+ * Claim-order key of an image lease row.
+ * Spring Data interface projection: query aliases must be "imageId", "priority" and "voteCount".
+ */
+public interface LeaseCandidate {
+    Long getImageId();
+
+    Integer getPriority();
+
+    Integer getVoteCount();
+}
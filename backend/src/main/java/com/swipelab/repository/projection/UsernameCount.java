@@ -0,0 +1,11 @@
+package com.swipelab.repository.projection;
+
+/**
+ * Per-user count from a grouped query.
+ * Spring Data interface projection: query aliases must be "username" and "count".
+ */
+public interface UsernameCount {
+    String getUsername();
+
+    Long getCount();
+}
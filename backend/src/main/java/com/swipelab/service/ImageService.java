@@ -1,10 +1,112 @@
 package com.swipelab.service;
 
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.dto.response.ImageBatchResponse;
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.enums.DistributionMode;
 import com.swipelab.repository.ImageRepository;
+import com.swipelab.service.classification.FairShareScheduler;
+import com.swipelab.service.classification.TaskDistributionService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
+@RequiredArgsConstructor
 public class ImageService {
-    // TODO: Inject ImageRepository
-    // TODO: Implement business logic (fetchBatch, etc.)
+
+    private final ImageRepository imageRepository;
+    private final TaskDistributionService taskDistributionService;
+    private final FairShareScheduler fairShareScheduler;
+    private final DistributionConfig distributionConfig;
+
+    /**
+     * Leases a batch of images of a task to the user, or for PERMUTED tasks takes the next
+     * images of the user's own order without reserving them.
+     * Without a task, the fair-share scheduler picks one; a picked task that has nothing left
+     * for the user is passed over for the next pick. A task asked for by id is served only
+     * while the scheduler has it PENDING and open to the user's recipient groups, the same
+     * rules a pick follows. Either way the task's distribution mode comes from the scheduler's
+     * memory, so no task is looked up.
+     *
+     * @param username The user requesting images
+     * @param taskId   The task to serve images from, or null to let the scheduler choose
+     * @param size     Requested batch size, or null for the default; capped at the configured maximum
+     * @return The leased images in serving order; empty when no task has anything left for the user
+     * @throws ResourceNotFoundException when the requested task is not served to the user
+     */
+    public ImageBatchResponse getBatch(String username, Long taskId, Integer size) {
+        int batchSize = size != null ? size : distributionConfig.getDefaultBatchSize();
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        batchSize = Math.min(batchSize, distributionConfig.getMaxBatchSize());
+
+        if (taskId != null) {
+            // Closed, restricted and unknown tasks look the same to the user
+            DistributionMode mode = fairShareScheduler.distributionMode(taskId, username);
+            if (mode == null) {
+                throw new ResourceNotFoundException("Task not found: " + taskId);
+            }
+            return toResponse(taskId, serve(taskId, mode, username, batchSize));
+        }
+
+        Set<Long> tried = new HashSet<>();
+        for (int attempt = 0; attempt < distributionConfig.getSchedulerMaxTaskAttempts(); attempt++) {
+            Long pickedTaskId = fairShareScheduler.pickTask(username, tried);
+            if (pickedTaskId == null) {
+                break;
+            }
+            tried.add(pickedTaskId);
+            DistributionMode mode = fairShareScheduler.distributionMode(pickedTaskId, username);
+            if (mode == null) {
+                // Dropped by a refresh since the pick
+                continue;
+            }
+            TaskDistributionService.LeasedBatch batch = serve(pickedTaskId, mode, username, batchSize);
+            if (!batch.getImageIds().isEmpty()) {
+                return toResponse(pickedTaskId, batch);
+            }
+        }
+        return ImageBatchResponse.builder().images(List.of()).build();
+    }
+
+    private TaskDistributionService.LeasedBatch serve(Long taskId, DistributionMode mode, String username, int batchSize) {
+        TaskDistributionService.LeasedBatch batch = mode == DistributionMode.PERMUTED
+                ? taskDistributionService.nextPermutedBatch(taskId, username, batchSize)
+                : taskDistributionService.nextBatch(taskId, username, batchSize);
+        fairShareScheduler.charge(taskId, batch.getImageIds().size());
+        return batch;
+    }
+
+    private ImageBatchResponse toResponse(Long taskId, TaskDistributionService.LeasedBatch batch) {
+        Map<Long, Image> imagesById = imageRepository.findAllById(batch.getImageIds()).stream()
+                .collect(Collectors.toMap(Image::getId, Function.identity()));
+        List<ImageBatchResponse.BatchImage> images = new ArrayList<>(batch.getImageIds().size());
+        for (Long imageId : batch.getImageIds()) {
+            Image image = imagesById.get(imageId);
+            if (image != null) {
+                images.add(ImageBatchResponse.BatchImage.builder()
+                        .id(image.getId())
+                        .imageUrl(image.getImageUrl())
+                        .thumbnailUrl(image.getThumbnailUrl())
+                        .caption(image.getCaption())
+                        .build());
+            }
+        }
+
+        return ImageBatchResponse.builder()
+                .taskId(taskId)
+                .leaseExpiresAt(batch.getExpiresAt())
+                .images(images)
+                .build();
+    }
 }
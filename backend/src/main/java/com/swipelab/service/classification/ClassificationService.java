@@ -1,5 +1,135 @@
 package com.swipelab.service.classification;
 
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.enums.UserRole;
+import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.ImageRepository;
+import com.swipelab.repository.LabelRepository;
+import com.swipelab.repository.UserRepository;
+import com.swipelab.service.user.CredibilityService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
 public class ClassificationService {
-    
+
+    private final ClassificationRepository classificationRepository;
+    private final UserRepository userRepository;
+    private final ImageRepository imageRepository;
+    private final LabelRepository labelRepository;
+    private final CredibilityService credibilityService;
+    private final ConsensusService consensusService;
+    private final GoldAnswerKey goldAnswerKey;
+    private final ValidationService validationService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Records a single swipe, as an array of one: it is validated and written exactly like a
+     * swipe of {@link #submitClassifications}, so an image the user already classified or a
+     * label outside the task's target species is rejected here too.
+     *
+     * @param username The user submitting the classification
+     * @param imageId The image being classified
+     * @param labelId The chosen label
+     * @return The saved classification
+     */
+    @Transactional
+    public Classification submitClassification(String username, Long imageId, Long labelId) {
+        return submitClassifications(username, List.of(new ClassificationRequest(imageId, labelId))).get(0);
+    }
+
+    /**
+     * Records an array of swipes by one user in a single transaction, with a fixed number of
+     * statements whatever the array's size.
+     * The whole array is validated first and nothing is written if any swipe is invalid. Images
+     * and labels are loaded with one query each, and the classification rows are flushed as one
+     * JDBC batch (their ids come from a pooled sequence, so Hibernate can batch them). The gold
+     * counters get one update, and the agreement accumulators one batch for the whole array.
+     * The votes are counted by one commit callback and a single event covers every swipe, so
+     * the lease bookkeeping after commit is one more statement and transaction.
+     *
+     * @param username The user submitting the swipes
+     * @param swipes   Swipes in the order they were made
+     * @return The saved classifications, in submission order
+     */
+    @Transactional
+    public List<Classification> submitClassifications(String username, List<ClassificationRequest> swipes) {
+        validationService.validateSwipeCount(swipes);
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found: " + username));
+
+        Set<Long> imageIds = new HashSet<>();
+        Set<Long> labelIds = new HashSet<>();
+        for (ClassificationRequest swipe : swipes) {
+            if (swipe != null && swipe.getImageId() != null) {
+                imageIds.add(swipe.getImageId());
+            }
+            if (swipe != null && swipe.getLabelId() != null) {
+                labelIds.add(swipe.getLabelId());
+            }
+        }
+        Map<Long, Image> images = imageRepository.findAllById(imageIds).stream()
+                .collect(Collectors.toMap(Image::getId, Function.identity()));
+        Map<Long, Label> labels = labelRepository.findAllById(labelIds).stream()
+                .collect(Collectors.toMap(Label::getId, Function.identity()));
+        validationService.validateSwipes(username, swipes, images, labels);
+
+        double voteWeight = consensusService.voteWeight(user);
+        List<Classification> classifications = new ArrayList<>(swipes.size());
+        for (ClassificationRequest swipe : swipes) {
+            classifications.add(Classification.builder()
+                    .user(user)
+                    .image(images.get(swipe.getImageId()))
+                    .label(labels.get(swipe.getLabelId()))
+                    .voteWeight(voteWeight)
+                    .build());
+        }
+        classifications = classificationRepository.saveAllAndFlush(classifications);
+
+        int gold = 0;
+        int correctGold = 0;
+        for (Classification classification : classifications) {
+            GoldAnswerKey.GoldAnswer goldAnswer = goldAnswerKey.lookup(classification.getImage().getId());
+            if (goldAnswer != null) {
+                gold++;
+                correctGold += goldAnswer.isCorrect(classification.getLabel().getId()) ? 1 : 0;
+            }
+        }
+        if (gold > 0) {
+            userRepository.incrementGoldClassifications(username, gold, correctGold);
+        }
+
+        Set<Long> imageWideUpdates = credibilityService.onClassificationsRecorded(classifications);
+        consensusService.recordVotes(classifications);
+
+        List<ClassificationSubmittedEvent.Swipe> submitted = new ArrayList<>(classifications.size());
+        for (Classification classification : classifications) {
+            Long imageId = classification.getImage().getId();
+            submitted.add(new ClassificationSubmittedEvent.Swipe(classification.getId(), imageId,
+                    classification.getLabel().getId(), imageWideUpdates.contains(imageId)));
+        }
+        eventPublisher.publishEvent(new ClassificationSubmittedEvent(username, user.getRole() == UserRole.RESEARCHER,
+                submitted));
+
+        log.debug("User {} submitted {} swipes ({} gold)", username, classifications.size(), gold);
+        return classifications;
+    }
 }
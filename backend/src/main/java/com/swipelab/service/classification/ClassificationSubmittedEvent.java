@@ -0,0 +1,38 @@
+package com.swipelab.service.classification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Published inside the submission transaction once its classification rows have been saved;
+ * one event per submission, however many swipes it holds.
+ * Listeners that only care about committed data should use an AFTER_COMMIT transactional listener.
+ */
+@Getter
+@AllArgsConstructor
+public class ClassificationSubmittedEvent {
+    private final String username;
+    private final boolean expert;
+
+    /**
+     * The submitted swipes in the order they were made, on distinct images
+     */
+    private final List<Swipe> swipes;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Swipe {
+        private final Long classificationId;
+        private final Long imageId;
+        private final Long labelId;
+
+        /**
+         * True when the swipe changed other users' accumulators (first expert label on the
+         * image), so every voter on the image needs a recompute. Majority changes are counted
+         * later, see {@link MajorityAgreementFlushedEvent}
+         */
+        private final boolean imageWideUpdate;
+    }
+}
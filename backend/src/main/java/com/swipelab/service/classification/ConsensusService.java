@@ -1,5 +1,186 @@
 package com.swipelab.service.classification;
 
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.enums.StoppingMode;
+import com.swipelab.model.enums.UserRole;
+import com.swipelab.util.ConsensusCalculator;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Credibility-weighted consensus per image.
+ * Votes are counted in {@link VoteCounterStore} once the submission has committed, so neither
+ * recording a vote nor reading an image's consensus touches the database, and a rolled-back
+ * submission never reaches the counters.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
 public class ConsensusService {
-    
+
+    private static final double DEFAULT_CONSENSUS_THRESHOLD = 80.0;
+    private static final int DEFAULT_MIN_CLASSIFICATIONS = 3;
+    private static final double DEFAULT_STOPPING_CONFIDENCE = 0.95;
+    private static final int DEFAULT_MAX_CLASSIFICATIONS = 10;
+
+    private final VoteCounterStore voteCounterStore;
+    private final ConsensusCalculator consensusCalculator;
+    private final CredibilityConfig credibilityConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ContestedImageQueue contestedImageQueue;
+
+    /**
+     * Weight a vote by this user gets right now; stored with the classification.
+     */
+    public double voteWeight(User voter) {
+        return consensusCalculator.voteWeight(voter.getCredibilityScore(),
+                voter.getRole() == UserRole.RESEARCHER, credibilityConfig.getConsensusMinVoteWeight());
+    }
+
+    /**
+     * Adds the weighted votes of a submission's classifications to their images after the
+     * surrounding transaction commits (immediately when there is none), in order, from one
+     * commit callback. An image is finalized the moment the task's stopping rule is met, and an
+     * {@link ImageFinalizedEvent} is published. The image's rank among its task's contested
+     * images is updated either way.
+     *
+     * @param classifications The classifications that were just saved
+     */
+    public void recordVotes(List<Classification> classifications) {
+        List<Runnable> votes = new ArrayList<>(classifications.size());
+        for (Classification classification : classifications) {
+            votes.add(pendingVote(classification));
+        }
+
+        Runnable apply = () -> votes.forEach(Runnable::run);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    /**
+     * Reads everything the vote needs now, while the lazy associations can still be loaded
+     */
+    private Runnable pendingVote(Classification classification) {
+        Long imageId = classification.getImage().getId();
+        Long labelId = classification.getLabel().getId();
+        double weight = classification.getVoteWeight() != null
+                ? classification.getVoteWeight() : voteWeight(classification.getUser());
+
+        // Experts' votes count towards the majority but are not scored against it
+        User voter = classification.getUser();
+        String regularVoter = voter.getRole() == UserRole.RESEARCHER ? null : voter.getUsername();
+
+        Task task = classification.getImage().getTask();
+        Long taskId = task != null ? task.getId() : null;
+        ConsensusCalculator.StoppingRule rule = stoppingRule(task);
+
+        return () -> applyVote(imageId, taskId, labelId, weight, rule, regularVoter);
+    }
+
+    /**
+     * Current weighted consensus of an image, served from memory
+     */
+    public ConsensusState getConsensus(Long imageId) {
+        return voteCounterStore.get(imageId);
+    }
+
+    /**
+     * FIXED: the task's minimum classifications and weighted share threshold.
+     * ADAPTIVE: the task's confidence and maximum classifications, with a global minimum.
+     */
+    ConsensusCalculator.StoppingRule stoppingRule(Task task) {
+        StoppingMode mode = task != null && task.getStoppingMode() != null ? task.getStoppingMode() : StoppingMode.FIXED;
+        double threshold = task != null && task.getConsensusThreshold() != null
+                ? task.getConsensusThreshold() : DEFAULT_CONSENSUS_THRESHOLD;
+        int minVotes = mode == StoppingMode.ADAPTIVE
+                ? credibilityConfig.getStoppingMinVotes()
+                : task != null && task.getMinClassificationsPerImage() != null
+                        ? task.getMinClassificationsPerImage() : DEFAULT_MIN_CLASSIFICATIONS;
+        double confidence = task != null && task.getStoppingConfidence() != null
+                ? task.getStoppingConfidence() : DEFAULT_STOPPING_CONFIDENCE;
+        int maxVotes = task != null && task.getMaxClassificationsPerImage() != null
+                ? task.getMaxClassificationsPerImage() : DEFAULT_MAX_CLASSIFICATIONS;
+        return new ConsensusCalculator.StoppingRule(mode, threshold, minVotes, confidence, maxVotes);
+    }
+
+    private void applyVote(Long imageId, Long taskId, Long labelId, double weight,
+                           ConsensusCalculator.StoppingRule rule, String regularVoter) {
+        ConsensusState state;
+        try {
+            state = voteCounterStore.record(imageId, labelId, weight, rule, regularVoter);
+        } catch (RuntimeException e) {
+            // The submission is already committed; the counters are corrected on the next rebuild
+            log.error("Failed to count vote on image {} for consensus", imageId, e);
+            return;
+        }
+        contestedImageQueue.update(taskId, imageId, state);
+
+        if (state.isNewlyFinalized()) {
+            log.info("Image {} finalized as label {} ({}% of weight, confidence {}, {} votes)",
+                    imageId, state.getFinalizedLabelId(), Math.round(state.getLeadingShare() * 1000) / 10.0,
+                    Math.round(state.getConfidence() * 1000) / 1000.0, state.getTotalVotes());
+            eventPublisher.publishEvent(new ImageFinalizedEvent(imageId, taskId, state.getFinalizedLabelId(),
+                    state.getLeadingShare(), state.getConfidence(), state.getTotalVotes()));
+        }
+    }
+
+    /**
+     * An image's weighted consensus after a vote
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ConsensusState {
+        private final Long leadingLabelId;
+
+        /**
+         * Share of the total weight held by the leading label, between 0 and 1
+         */
+        private final double leadingShare;
+
+        /**
+         * Posterior probability that the leading label is right, between 0 and 1
+         */
+        private final double confidence;
+
+        /**
+         * How evenly the weight is split between the labels, between 0 (one label) and 1 (even split)
+         */
+        private final double voteEntropy;
+
+        private final int totalVotes;
+
+        /**
+         * Label the image was finalized with, or null while it still needs votes
+         */
+        private final Long finalizedLabelId;
+
+        /**
+         * True only for the vote that finalized the image
+         */
+        private final boolean newlyFinalized;
+
+        public boolean isFinalized() {
+            return finalizedLabelId != null;
+        }
+    }
 }
@@ -0,0 +1,256 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.util.ConsensusCalculator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unfinalized images whose votes disagree, ranked per task by vote entropy, so they can be
+ * routed to users whose votes are likely to settle them.
+ *
+ * An image is contested once it has distribution.contested-min-votes classifications and its
+ * weighted votes are split with at least distribution.contested-min-entropy; the most evenly
+ * split images rank first, then the ones with the most votes. Rankings are updated from every
+ * counted vote and an image leaves its task's ranking when it is finalized or its votes come
+ * to agree. Only the distribution.contested-max-per-task most contested images of a task are
+ * kept. Gold images are never ranked; they are served separately.
+ *
+ * Rebuilt from the stored vote tallies on startup. Assumes a single backend instance, like
+ * {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class ContestedImageQueue implements SmartInitializingSingleton {
+
+    private static final String REBUILD_SQL =
+            "SELECT t.image_id, i.task_id, t.weighted_votes, s.total_votes FROM image_vote_tallies t " +
+                    "JOIN image_vote_summaries s ON s.image_id = t.image_id " +
+                    "JOIN images i ON i.id = t.image_id " +
+                    "WHERE s.finalized_label_id IS NULL AND s.total_votes >= ? AND i.task_id IS NOT NULL " +
+                    "AND i.is_gold_standard = FALSE " +
+                    "ORDER BY t.image_id";
+
+    private static final Comparator<Contested> MOST_CONTESTED = Comparator
+            .comparingDouble((Contested image) -> -image.entropy)
+            .thenComparingInt(image -> -image.votes)
+            .thenComparingLong(image -> image.imageId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConsensusCalculator consensusCalculator;
+    private final SeenImageIndex seenImageIndex;
+    private final GoldAnswerKey goldAnswerKey;
+    private final DistributionConfig distributionConfig;
+
+    private final Map<Long, TaskRanking> rankings = new ConcurrentHashMap<>();
+
+    public ContestedImageQueue(JdbcTemplate jdbcTemplate,
+                               ConsensusCalculator consensusCalculator,
+                               SeenImageIndex seenImageIndex,
+                               GoldAnswerKey goldAnswerKey,
+                               DistributionConfig distributionConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.consensusCalculator = consensusCalculator;
+        this.seenImageIndex = seenImageIndex;
+        this.goldAnswerKey = goldAnswerKey;
+        this.distributionConfig = distributionConfig;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Ranks, re-ranks or drops an image after a vote was counted on it
+     *
+     * @param taskId  Task of the image; images without a task are not ranked
+     * @param imageId Image that was voted on
+     * @param state   The image's consensus after the vote
+     */
+    public void update(Long taskId, Long imageId, ConsensusService.ConsensusState state) {
+        if (taskId == null) {
+            return;
+        }
+        boolean contested = isContested(state.isFinalized(), state.getTotalVotes(), state.getVoteEntropy())
+                && !goldAnswerKey.isGold(imageId);
+        TaskRanking ranking = contested ? rankings.computeIfAbsent(taskId, id -> new TaskRanking()) : rankings.get(taskId);
+        if (ranking == null) {
+            return;
+        }
+        synchronized (ranking) {
+            ranking.remove(imageId);
+            if (contested) {
+                ranking.add(new Contested(imageId, state.getVoteEntropy(), state.getTotalVotes()),
+                        distributionConfig.getContestedMaxPerTask());
+            }
+        }
+    }
+
+    /**
+     * The task's most contested images the user has not classified yet.
+     *
+     * @param taskId   Task to pick from
+     * @param username User the images would go to
+     * @param limit    Most images returned
+     * @return Image ids, most contested first; only the first distribution.contested-scan-limit
+     * ranked images are considered
+     */
+    public List<Long> pick(Long taskId, String username, int limit) {
+        TaskRanking ranking = rankings.get(taskId);
+        if (ranking == null || limit <= 0) {
+            return List.of();
+        }
+
+        long[] candidates;
+        synchronized (ranking) {
+            candidates = new long[Math.min(ranking.ranked.size(), distributionConfig.getContestedScanLimit())];
+            Iterator<Contested> it = ranking.ranked.iterator();
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = it.next().imageId;
+            }
+        }
+        // Outside the ranking's monitor: loading the user's bitmap can hit the database
+        long[] unseen = seenImageIndex.filterUnseen(username, candidates);
+
+        List<Long> picked = new ArrayList<>(Math.min(limit, unseen.length));
+        for (int i = 0; i < unseen.length && picked.size() < limit; i++) {
+            picked.add(unseen[i]);
+        }
+        return picked;
+    }
+
+    public ContestedMetrics getMetrics() {
+        int tasks = 0;
+        int images = 0;
+        double maxEntropy = 0.0;
+        for (TaskRanking ranking : rankings.values()) {
+            synchronized (ranking) {
+                if (ranking.ranked.isEmpty()) {
+                    continue;
+                }
+                tasks++;
+                images += ranking.ranked.size();
+                maxEntropy = Math.max(maxEntropy, ranking.ranked.first().entropy);
+            }
+        }
+        return ContestedMetrics.builder()
+                .tasks(tasks)
+                .contestedImages(images)
+                .maxEntropy(maxEntropy)
+                .build();
+    }
+
+    void rebuild() {
+        long started = System.currentTimeMillis();
+        rankings.clear();
+
+        // Rows arrive grouped by image; an image is ranked once all its tallies have been read
+        long[] imageId = {-1};
+        long[] taskId = {-1};
+        int[] votes = {0};
+        double[][] weights = {new double[4]};
+        int[] labelCount = {0};
+        int maxPerTask = distributionConfig.getContestedMaxPerTask();
+        jdbcTemplate.query(REBUILD_SQL, rs -> {
+            long rowImageId = rs.getLong(1);
+            if (rowImageId != imageId[0]) {
+                rankLoaded(imageId[0], taskId[0], votes[0], weights[0], labelCount[0], maxPerTask);
+                imageId[0] = rowImageId;
+                taskId[0] = rs.getLong(2);
+                votes[0] = rs.getInt(4);
+                labelCount[0] = 0;
+            }
+            if (labelCount[0] == weights[0].length) {
+                weights[0] = Arrays.copyOf(weights[0], labelCount[0] * 2);
+            }
+            weights[0][labelCount[0]++] = rs.getDouble(3);
+        }, distributionConfig.getContestedMinVotes());
+        rankLoaded(imageId[0], taskId[0], votes[0], weights[0], labelCount[0], maxPerTask);
+
+        log.info("Ranked {} contested images in {} ms", getMetrics().getContestedImages(),
+                System.currentTimeMillis() - started);
+    }
+
+    private void rankLoaded(long imageId, long taskId, int votes, double[] weights, int labelCount, int maxPerTask) {
+        if (imageId < 0) {
+            return;
+        }
+        double totalWeight = 0.0;
+        for (int label = 0; label < labelCount; label++) {
+            totalWeight += weights[label];
+        }
+        double entropy = consensusCalculator.voteEntropy(weights, labelCount, totalWeight);
+        if (!isContested(false, votes, entropy)) {
+            return;
+        }
+        TaskRanking ranking = rankings.computeIfAbsent(taskId, id -> new TaskRanking());
+        synchronized (ranking) {
+            ranking.add(new Contested(imageId, entropy, votes), maxPerTask);
+        }
+    }
+
+    private boolean isContested(boolean finalized, int votes, double entropy) {
+        return !finalized && votes >= distributionConfig.getContestedMinVotes()
+                && entropy >= distributionConfig.getContestedMinEntropy();
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class ContestedMetrics {
+        private int tasks;
+        private int contestedImages;
+
+        /**
+         * Vote entropy of the most contested image over all tasks
+         */
+        private double maxEntropy;
+    }
+
+    /**
+     * Guarded by its own monitor
+     */
+    private static final class TaskRanking {
+        private final TreeSet<Contested> ranked = new TreeSet<>(MOST_CONTESTED);
+        private final Map<Long, Contested> byImage = new HashMap<>();
+
+        void add(Contested image, int maxSize) {
+            ranked.add(image);
+            byImage.put(image.imageId, image);
+            if (ranked.size() > maxSize) {
+                byImage.remove(ranked.pollLast().imageId);
+            }
+        }
+
+        void remove(Long imageId) {
+            Contested previous = byImage.remove(imageId);
+            if (previous != null) {
+                ranked.remove(previous);
+            }
+        }
+    }
+
+    private static final class Contested {
+        private final long imageId;
+        private final double entropy;
+        private final int votes;
+
+        Contested(long imageId, double entropy, int votes) {
+            this.imageId = imageId;
+            this.entropy = entropy;
+            this.votes = votes;
+        }
+    }
+}
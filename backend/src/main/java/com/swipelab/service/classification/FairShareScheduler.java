@@ -0,0 +1,329 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.model.enums.DistributionMode;
+import com.swipelab.model.enums.TaskStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which task a user's next batch comes from when they did not ask for one.
+ *
+ * Start-time fair queuing over the PENDING tasks: every task carries a virtual start tag that
+ * advances by images served divided by the task's weight, and the eligible task with the
+ * lowest tag goes next, so supply is split between tasks in proportion to their weights.
+ * A task's weight is 1 until its deadline comes within distribution.deadline-horizon-hours
+ * and then grows linearly up to distribution.deadline-max-boost; ties go to the earlier
+ * deadline. A task with recipient groups is only eligible for members of one of them, and a
+ * task with no unfinished images is not eligible at all. Tags never lag the scheduler's
+ * virtual time, so a task that nobody could be served from builds up no credit.
+ *
+ * Picks use in-memory state only. It is refreshed on a schedule: tasks changed since the last
+ * refresh, one aggregate count of unfinished images per task, and the tasks' recipient groups
+ * with the group memberships. Recipient group edits don't touch the task row, so the groups
+ * are reloaded whole, like the memberships.
+ * The tasks' distribution modes are kept too, so serving a picked task needs no task lookup.
+ * Finalized images are counted down in between. Assumes a single backend instance, like
+ * {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class FairShareScheduler implements SmartInitializingSingleton {
+
+    private static final String TASK_COLUMNS_SQL =
+            "SELECT id, status, deadline, updated_at, distribution_mode FROM tasks";
+
+    private static final String LOAD_TASKS_SQL = TASK_COLUMNS_SQL;
+
+    private static final String LOAD_CHANGED_TASKS_SQL = TASK_COLUMNS_SQL + " WHERE updated_at >= ?";
+
+    private static final String LOAD_TASK_GROUPS_SQL =
+            "SELECT task_id, recipient_group_id FROM task_recipient_groups WHERE recipient_group_id IS NOT NULL";
+
+    private static final String COUNT_REMAINING_SQL = "SELECT task_id, COUNT(*) FROM image_leases GROUP BY task_id";
+
+    private static final String LOAD_MEMBERSHIPS_SQL = "SELECT username, recipient_group_id FROM user_recipient_groups";
+
+    private static final Comparator<TaskState> EARLIEST_DEADLINE = Comparator
+            .comparing((TaskState task) -> task.deadline, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(task -> task.taskId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DistributionConfig distributionConfig;
+
+    /**
+     * PENDING tasks only. Guarded by this scheduler's monitor.
+     */
+    private final Map<Long, TaskState> tasks = new HashMap<>();
+    private double virtualTime;
+    private Timestamp lastTaskUpdate;
+
+    private volatile Map<String, Set<Long>> userGroups = Map.of();
+
+    public FairShareScheduler(JdbcTemplate jdbcTemplate, DistributionConfig distributionConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.distributionConfig = distributionConfig;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+    }
+
+    /**
+     * The task the user should get images from next.
+     *
+     * @param username User asking for images
+     * @param excluded Tasks already tried for this request
+     * @return Task id, or null when no task is eligible for the user
+     */
+    public synchronized Long pickTask(String username, Set<Long> excluded) {
+        Set<Long> groups = userGroups.getOrDefault(username, Set.of());
+
+        TaskState next = null;
+        double nextStart = 0;
+        for (TaskState task : tasks.values()) {
+            if (task.remaining <= 0 || excluded.contains(task.taskId) || !task.isOpenTo(groups)) {
+                continue;
+            }
+            double start = Math.max(task.startTag, virtualTime);
+            if (next == null || start < nextStart || (start == nextStart && EARLIEST_DEADLINE.compare(task, next) < 0)) {
+                next = task;
+                nextStart = start;
+            }
+        }
+        return next != null ? next.taskId : null;
+    }
+
+    /**
+     * How a scheduled task serves its images to the user, as of the last refresh. Also the
+     * access check for a task the user asked for by id: a task is only served while it is
+     * scheduled and open to one of the user's recipient groups.
+     *
+     * @return The mode, or null for a task that is not PENDING (or not seen by a refresh yet)
+     *         or that is restricted to recipient groups the user is not in
+     */
+    public synchronized DistributionMode distributionMode(Long taskId, String username) {
+        TaskState task = tasks.get(taskId);
+        if (task == null || !task.isOpenTo(userGroups.getOrDefault(username, Set.of()))) {
+            return null;
+        }
+        return task.distributionMode;
+    }
+
+    /**
+     * Accounts images served from a task against its share
+     */
+    public synchronized void charge(Long taskId, int images) {
+        TaskState task = tasks.get(taskId);
+        if (task == null || images <= 0) {
+            return;
+        }
+        double start = Math.max(task.startTag, virtualTime);
+        virtualTime = start;
+        task.startTag = start + images / weight(task, LocalDateTime.now());
+    }
+
+    /**
+     * Published after the vote's transaction has committed, so no transactional listener is needed
+     */
+    @EventListener
+    public synchronized void onImageFinalized(ImageFinalizedEvent event) {
+        TaskState task = event.getTaskId() != null ? tasks.get(event.getTaskId()) : null;
+        if (task != null && task.remaining > 0) {
+            task.remaining--;
+        }
+    }
+
+    /**
+     * Picks up task changes since the last refresh, recounts unfinished images and reloads
+     * recipient groups and group memberships
+     */
+    @Scheduled(fixedDelayString = "${distribution.scheduler-refresh-interval-ms:30000}")
+    public void refresh() {
+        long started = System.currentTimeMillis();
+        Timestamp since;
+        synchronized (this) {
+            since = lastTaskUpdate;
+        }
+
+        Map<Long, TaskRow> changed = new LinkedHashMap<>();
+        if (since == null) {
+            jdbcTemplate.query(LOAD_TASKS_SQL, rs -> {
+                collectTaskRow(changed, rs.getLong(1), rs.getString(2), rs.getTimestamp(3),
+                        rs.getTimestamp(4), rs.getString(5));
+            });
+        } else {
+            jdbcTemplate.query(LOAD_CHANGED_TASKS_SQL, rs -> {
+                collectTaskRow(changed, rs.getLong(1), rs.getString(2), rs.getTimestamp(3),
+                        rs.getTimestamp(4), rs.getString(5));
+            }, since);
+        }
+
+        Map<Long, Long> remaining = new HashMap<>();
+        jdbcTemplate.query(COUNT_REMAINING_SQL, rs -> {
+            remaining.put(rs.getLong(1), rs.getLong(2));
+        });
+
+        Map<Long, Set<Long>> taskGroups = new HashMap<>();
+        jdbcTemplate.query(LOAD_TASK_GROUPS_SQL, rs -> {
+            taskGroups.computeIfAbsent(rs.getLong(1), taskId -> new HashSet<>()).add(rs.getLong(2));
+        });
+
+        Map<String, Set<Long>> memberships = new HashMap<>();
+        jdbcTemplate.query(LOAD_MEMBERSHIPS_SQL, rs -> {
+            memberships.computeIfAbsent(rs.getString(1), username -> new HashSet<>()).add(rs.getLong(2));
+        });
+        userGroups = memberships;
+
+        synchronized (this) {
+            for (TaskRow row : changed.values()) {
+                if (row.updatedAt != null && (lastTaskUpdate == null || row.updatedAt.after(lastTaskUpdate))) {
+                    lastTaskUpdate = row.updatedAt;
+                }
+                if (!TaskStatus.PENDING.name().equals(row.status)) {
+                    tasks.remove(row.taskId);
+                    continue;
+                }
+                TaskState task = tasks.computeIfAbsent(row.taskId, id -> new TaskState(id, virtualTime));
+                task.deadline = row.deadline;
+                task.distributionMode = row.distributionMode;
+            }
+            if (lastTaskUpdate == null) {
+                // Nothing carries a timestamp yet; the next refresh starts from now
+                lastTaskUpdate = new Timestamp(started);
+            }
+            for (TaskState task : tasks.values()) {
+                task.remaining = remaining.getOrDefault(task.taskId, 0L);
+                task.recipientGroups = taskGroups.getOrDefault(task.taskId, Set.of());
+            }
+        }
+
+        log.debug("Refreshed task scheduler: {} changed tasks, {} pending, {} users in recipient groups, in {} ms",
+                changed.size(), scheduledTasks(), memberships.size(), System.currentTimeMillis() - started);
+    }
+
+    public synchronized int scheduledTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * Current shares of the pending tasks, most urgent first
+     */
+    public synchronized List<TaskShare> getShares() {
+        LocalDateTime now = LocalDateTime.now();
+        List<TaskState> ordered = new ArrayList<>(tasks.values());
+        ordered.sort(Comparator.comparingDouble((TaskState task) -> Math.max(task.startTag, virtualTime))
+                .thenComparing(EARLIEST_DEADLINE));
+
+        List<TaskShare> shares = new ArrayList<>(ordered.size());
+        for (TaskState task : ordered) {
+            shares.add(TaskShare.builder()
+                    .taskId(task.taskId)
+                    .weight(weight(task, now))
+                    .lag(Math.max(task.startTag, virtualTime) - virtualTime)
+                    .remainingImages(task.remaining)
+                    .deadline(task.deadline)
+                    .recipientGroups(task.recipientGroups)
+                    .build());
+        }
+        return shares;
+    }
+
+    /**
+     * 1 outside the deadline horizon, rising linearly to the maximum boost at the deadline
+     */
+    private double weight(TaskState task, LocalDateTime now) {
+        if (task.deadline == null) {
+            return 1.0;
+        }
+        double horizonSeconds = Duration.ofHours(distributionConfig.getDeadlineHorizonHours()).getSeconds();
+        double secondsLeft = Duration.between(now, task.deadline).getSeconds();
+        double pressure = Math.min(1.0, Math.max(0.0, 1.0 - secondsLeft / horizonSeconds));
+        return 1.0 + (distributionConfig.getDeadlineMaxBoost() - 1.0) * pressure;
+    }
+
+    private static void collectTaskRow(Map<Long, TaskRow> rows, long taskId, String status, Timestamp deadline,
+                                       Timestamp updatedAt, String distributionMode) {
+        rows.put(taskId, new TaskRow(taskId, status, deadline != null ? deadline.toLocalDateTime() : null, updatedAt,
+                distributionMode != null ? DistributionMode.valueOf(distributionMode) : DistributionMode.LEASED));
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class TaskShare {
+        private Long taskId;
+        private double weight;
+
+        /**
+         * How far the task is ahead of the scheduler in virtual time; 0 means it is due
+         */
+        private double lag;
+
+        private long remainingImages;
+        private LocalDateTime deadline;
+        private Set<Long> recipientGroups;
+    }
+
+    /**
+     * Guarded by the scheduler's monitor
+     */
+    private static final class TaskState {
+        private final Long taskId;
+        private double startTag;
+        private long remaining;
+        private LocalDateTime deadline;
+        private DistributionMode distributionMode = DistributionMode.LEASED;
+        private Set<Long> recipientGroups = Set.of();
+
+        TaskState(Long taskId, double startTag) {
+            this.taskId = taskId;
+            this.startTag = startTag;
+        }
+
+        boolean isOpenTo(Set<Long> userGroups) {
+            if (recipientGroups.isEmpty()) {
+                return true;
+            }
+            for (Long group : recipientGroups) {
+                if (userGroups.contains(group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class TaskRow {
+        private final Long taskId;
+        private final String status;
+        private final LocalDateTime deadline;
+        private final Timestamp updatedAt;
+        private final DistributionMode distributionMode;
+
+        TaskRow(Long taskId, String status, LocalDateTime deadline, Timestamp updatedAt,
+                DistributionMode distributionMode) {
+            this.taskId = taskId;
+            this.status = status;
+            this.deadline = deadline;
+            this.updatedAt = updatedAt;
+            this.distributionMode = distributionMode;
+        }
+    }
+}
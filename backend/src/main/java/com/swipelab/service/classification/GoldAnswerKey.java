@@ -0,0 +1,145 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.util.LongIntHashMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Correct labels of the gold standard images, kept in memory so every submission can be
+ * graded with one hash lookup, plus each task's gold images for interleaving into batches.
+ *
+ * The key is loaded at startup and reloaded on a schedule (or on demand after gold images
+ * were edited). A reload builds a new key and swaps it in whole, so lookups never see a
+ * half-loaded key and never block.
+ */
+@Component
+@Slf4j
+public class GoldAnswerKey implements SmartInitializingSingleton {
+
+    private static final String LOAD_GOLD_SQL =
+            "SELECT i.id, i.correct_label_id, g.difficulty_level, i.task_id FROM images i " +
+                    "LEFT JOIN gold_images g ON g.image_id = i.id " +
+                    "WHERE i.is_gold_standard = TRUE AND i.correct_label_id IS NOT NULL ORDER BY i.id";
+
+    private static final String DEFAULT_DIFFICULTY = "MEDIUM";
+    private static final long[] NO_IMAGES = new long[0];
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Key key = new Key(new LongIntHashMap(0, -1), new long[0], new String[0], Map.of());
+
+    public GoldAnswerKey(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    /**
+     * @return The gold answer for the image, or null if it is not a gold image
+     */
+    public GoldAnswer lookup(Long imageId) {
+        Key current = key;
+        int slot = current.slots.get(imageId);
+        if (slot < 0) {
+            return null;
+        }
+        return new GoldAnswer(current.labelIds[slot], current.difficulties[slot]);
+    }
+
+    public boolean isGold(Long imageId) {
+        return key.slots.containsKey(imageId);
+    }
+
+    public int size() {
+        return key.labelIds.length;
+    }
+
+    /**
+     * Gold image ids of a task in ascending order; shared, so callers must not modify it
+     */
+    public long[] goldImages(Long taskId) {
+        return key.imagesByTask.getOrDefault(taskId, NO_IMAGES);
+    }
+
+    /**
+     * Loads the gold images again and replaces the key
+     *
+     * @return number of gold images loaded
+     */
+    @Scheduled(fixedDelayString = "${credibility.gold-key-refresh-interval-ms:300000}",
+            initialDelayString = "${credibility.gold-key-refresh-interval-ms:300000}")
+    public int reload() {
+        long started = System.currentTimeMillis();
+        List<Long> imageIds = new ArrayList<>();
+        List<Long> labelIds = new ArrayList<>();
+        List<String> difficulties = new ArrayList<>();
+        Map<Long, List<Long>> taskImages = new HashMap<>();
+        jdbcTemplate.query(LOAD_GOLD_SQL, rs -> {
+            long imageId = rs.getLong(1);
+            imageIds.add(imageId);
+            labelIds.add(rs.getLong(2));
+            String difficulty = rs.getString(3);
+            difficulties.add(difficulty != null ? difficulty : DEFAULT_DIFFICULTY);
+            taskImages.computeIfAbsent(rs.getLong(4), taskId -> new ArrayList<>()).add(imageId);
+        });
+
+        Map<Long, long[]> imagesByTask = new HashMap<>();
+        taskImages.forEach((taskId, ids) -> imagesByTask.put(taskId, ids.stream().mapToLong(Long::longValue).toArray()));
+
+        LongIntHashMap slots = new LongIntHashMap(imageIds.size(), -1);
+        long[] labels = new long[imageIds.size()];
+        for (int slot = 0; slot < imageIds.size(); slot++) {
+            slots.put(imageIds.get(slot), slot);
+            labels[slot] = labelIds.get(slot);
+        }
+        key = new Key(slots, labels, difficulties.toArray(new String[0]), imagesByTask);
+
+        log.info("Loaded {} gold answers in {} ms", labels.length, System.currentTimeMillis() - started);
+        return labels.length;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class GoldAnswer {
+        private final long labelId;
+
+        /**
+         * EASY, MEDIUM or HARD, from gold_images; MEDIUM when the image has no metadata row
+         */
+        private final String difficulty;
+
+        public boolean isCorrect(Long answeredLabelId) {
+            return answeredLabelId != null && answeredLabelId == labelId;
+        }
+    }
+
+    /**
+     * Immutable once published; slots index the parallel arrays
+     */
+    private static final class Key {
+        private final LongIntHashMap slots;
+        private final long[] labelIds;
+        private final String[] difficulties;
+        private final Map<Long, long[]> imagesByTask;
+
+        Key(LongIntHashMap slots, long[] labelIds, String[] difficulties, Map<Long, long[]> imagesByTask) {
+            this.slots = slots;
+            this.labelIds = labelIds;
+            this.difficulties = difficulties;
+            this.imagesByTask = imagesByTask;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.util.FeistelPermutation;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how many gold images go into a user's batch and which ones.
+ *
+ * The gold share of a batch falls linearly from distribution.gold-max-rate for a user who gets
+ * every gold image wrong to distribution.gold-min-rate for one who gets all of them right; new
+ * users get the maximum until they have answered distribution.gold-warmup-answers gold images.
+ * Fractional shares carry over between batches, so the long-run rate is exact. Gold images
+ * are taken from the task's in-memory gold pool in a per-user permuted order, so a user gets
+ * every gold image at most once; ones they already classified are skipped.
+ *
+ * Per-user state (gold accuracy, carried-over share and position in each task's gold order)
+ * is kept for at most distribution.gold-state-max-users users; an evicted user's accuracy is
+ * loaded again from their gold counters. After the gold pool of a task changes, or the user was
+ * evicted, the order starts over and only classified gold images are skipped. Accuracy is kept
+ * up to date from committed submissions and is approximate while it is being loaded.
+ *
+ * Assumes a single backend instance, like {@link VoteCounterStore}.
+ */
+@Component
+public class GoldInterleaver {
+
+    private static final String LOAD_GOLD_COUNTS_SQL =
+            "SELECT correct_gold_classifications, total_gold_classifications FROM users WHERE username = ?";
+
+    // Keeps a user's gold order unrelated to their PERMUTED image order of the same task
+    private static final long GOLD_ORDER_SALT = 0x476F6C644F726465L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final GoldAnswerKey goldAnswerKey;
+    private final SeenImageIndex seenImageIndex;
+    private final DistributionConfig distributionConfig;
+    private final Map<String, UserGold> cache;
+
+    public GoldInterleaver(JdbcTemplate jdbcTemplate,
+                           GoldAnswerKey goldAnswerKey,
+                           SeenImageIndex seenImageIndex,
+                           DistributionConfig distributionConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.goldAnswerKey = goldAnswerKey;
+        this.seenImageIndex = seenImageIndex;
+        this.distributionConfig = distributionConfig;
+        int maxUsers = distributionConfig.getGoldStateMaxUsers();
+        // Access order makes the eldest entry the least recently used one
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserGold> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Gold images for the user's next batch of the task.
+     *
+     * @param taskId    Task the batch is from
+     * @param username  User the batch is for
+     * @param batchSize Number of images in the whole batch
+     * @return Gold image ids, at most batchSize; empty when the task has no gold images left for the user
+     */
+    public List<Long> pickGold(Long taskId, String username, int batchSize) {
+        long[] pool = goldAnswerKey.goldImages(taskId);
+        if (pool.length == 0) {
+            return List.of();
+        }
+
+        UserGold state = loaded(username);
+        List<Long> gold = new ArrayList<>();
+        synchronized (state) {
+            state.credit += rate(state) * batchSize;
+            int wanted = Math.min(batchSize, (int) state.credit);
+            // Unfilled share is dropped rather than owed, so an exhausted pool does not pile up gold
+            state.credit -= wanted;
+            if (wanted == 0) {
+                return gold;
+            }
+
+            GoldCursor cursor = state.cursors.get(taskId);
+            if (cursor == null || cursor.poolSize != pool.length) {
+                cursor = new GoldCursor(pool.length);
+                state.cursors.put(taskId, cursor);
+            }
+            FeistelPermutation order = new FeistelPermutation(pool.length,
+                    PermutedImageOrder.permutationKey(taskId, username) ^ GOLD_ORDER_SALT);
+            while (gold.size() < wanted && cursor.position < pool.length) {
+                long imageId = pool[(int) order.permute(cursor.position++)];
+                if (!seenImageIndex.hasSeen(username, imageId)) {
+                    gold.add(imageId);
+                }
+            }
+        }
+        return gold;
+    }
+
+    /**
+     * Gold images placed at random positions among the regular ones, whose order is kept
+     */
+    public static List<Long> interleave(List<Long> regular, List<Long> gold) {
+        if (gold.isEmpty()) {
+            return regular;
+        }
+        List<Long> mixed = new ArrayList<>(regular.size() + gold.size());
+        mixed.addAll(regular);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Long imageId : gold) {
+            mixed.add(random.nextInt(mixed.size() + 1), imageId);
+        }
+        return mixed;
+    }
+
+    /**
+     * Only a user whose state is cached is updated; any other user's counters are loaded after
+     * this commit and already include the answer.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClassificationSubmitted(ClassificationSubmittedEvent event) {
+        int total = 0;
+        int correct = 0;
+        for (ClassificationSubmittedEvent.Swipe swipe : event.getSwipes()) {
+            GoldAnswerKey.GoldAnswer answer = goldAnswerKey.lookup(swipe.getImageId());
+            if (answer != null) {
+                total++;
+                correct += answer.isCorrect(swipe.getLabelId()) ? 1 : 0;
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+        UserGold state;
+        synchronized (cache) {
+            state = cache.get(event.getUsername());
+        }
+        if (state != null) {
+            synchronized (state) {
+                state.total += total;
+                state.correct += correct;
+            }
+        }
+    }
+
+    public int cachedUsers() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Caller holds the state's monitor
+     */
+    private double rate(UserGold state) {
+        double maxRate = distributionConfig.getGoldMaxRate();
+        if (state.total < distributionConfig.getGoldWarmupAnswers()) {
+            return maxRate;
+        }
+        double accuracy = (double) state.correct / state.total;
+        return distributionConfig.getGoldMinRate() + (maxRate - distributionConfig.getGoldMinRate()) * (1.0 - accuracy);
+    }
+
+    private UserGold loaded(String username) {
+        UserGold state;
+        synchronized (cache) {
+            state = cache.computeIfAbsent(username, key -> new UserGold());
+        }
+        synchronized (state) {
+            if (!state.loaded) {
+                jdbcTemplate.query(LOAD_GOLD_COUNTS_SQL, rs -> {
+                    state.correct = rs.getInt(1);
+                    state.total = rs.getInt(2);
+                }, username);
+                state.loaded = true;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Guarded by its own monitor
+     */
+    private static final class UserGold {
+        private int correct;
+        private int total;
+        private double credit;
+        private boolean loaded;
+        private final Map<Long, GoldCursor> cursors = new HashMap<>();
+    }
+
+    private static final class GoldCursor {
+        private final int poolSize;
+        private long position;
+
+        GoldCursor(int poolSize) {
+            this.poolSize = poolSize;
+        }
+    }
+}
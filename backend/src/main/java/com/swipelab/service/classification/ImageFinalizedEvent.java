@@ -0,0 +1,29 @@
+package com.swipelab.service.classification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published once the submission that brought an image to weighted consensus has committed.
+ * The image should leave circulation. Published outside any transaction, so listeners
+ * should be plain event listeners.
+ */
+@Getter
+@AllArgsConstructor
+public class ImageFinalizedEvent {
+    private final Long imageId;
+    private final Long taskId;
+    private final Long labelId;
+
+    /**
+     * Share of the image's total credibility weight held by the label, between 0 and 1
+     */
+    private final double weightedShare;
+
+    /**
+     * Posterior probability that the label is right; low when an ambiguous image hit the
+     * classification cap of an ADAPTIVE task
+     */
+    private final double confidence;
+    private final int totalVotes;
+}
@@ -0,0 +1,254 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.model.enums.TaskStatus;
+import com.swipelab.repository.TaskRepository;
+import com.swipelab.util.DawidSkeneEstimator;
+import com.swipelab.util.LabelIndex;
+import com.swipelab.util.LongIntHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the labels of a task with Dawid-Skene EM.
+ *
+ * The task's classifications are loaded once into dense primitive arrays (first answer per
+ * annotator and image), the estimator learns a confusion matrix per annotator and a posterior
+ * per image, and both are written back with JDBC batches in a single transaction.
+ * The confusion matrices of the previous run seed the next one, which typically converges in
+ * a few iterations because only the newest classifications have moved the estimates.
+ */
+@Service
+@Slf4j
+public class LabelAggregationService {
+
+    private static final String TASK_CLASSIFICATIONS_SQL =
+            "SELECT c.user_id, c.image_id, c.label_id FROM classifications c " +
+                    "JOIN images i ON i.id = c.image_id WHERE i.task_id = ? ORDER BY c.id";
+
+    private static final String TASK_CONFUSIONS_SQL =
+            "SELECT username, true_label_id, answered_label_id, probability FROM annotator_confusions WHERE task_id = ?";
+
+    private static final String DELETE_POSTERIORS_SQL = "DELETE FROM image_label_posteriors WHERE task_id = ?";
+    private static final String INSERT_POSTERIOR_SQL =
+            "INSERT INTO image_label_posteriors (image_id, task_id, label_id, probability, updated_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_CONFUSIONS_SQL = "DELETE FROM annotator_confusions WHERE task_id = ?";
+    private static final String INSERT_CONFUSION_SQL =
+            "INSERT INTO annotator_confusions (task_id, username, true_label_id, answered_label_id, probability) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+
+    private static final int ABSENT = -1;
+
+    private final TaskRepository taskRepository;
+    private final CredibilityConfig credibilityConfig;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    public LabelAggregationService(TaskRepository taskRepository,
+                                   CredibilityConfig credibilityConfig,
+                                   JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager) {
+        this.taskRepository = taskRepository;
+        this.credibilityConfig = credibilityConfig;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${credibility.aggregation-cron:0 0 4 * * *}")
+    public void aggregateOpenTasks() {
+        for (Long taskId : taskRepository.findIdsByStatus(TaskStatus.PENDING)) {
+            try {
+                aggregateTask(taskId);
+            } catch (RuntimeException e) {
+                log.error("Label aggregation failed for task {}", taskId, e);
+            }
+        }
+    }
+
+    /**
+     * Runs Dawid-Skene over every classification of the task and stores the results.
+     *
+     * @param taskId The task to aggregate
+     * @return summary of the run
+     */
+    public AggregationSummary aggregateTask(Long taskId) {
+        if (!taskRepository.existsById(taskId)) {
+            throw new ResourceNotFoundException("Task not found with id: " + taskId);
+        }
+
+        long started = System.currentTimeMillis();
+        TaskMatrix matrix = readTransaction.execute(status -> loadMatrix(taskId));
+        DawidSkeneEstimator.Observations observations = matrix.toObservations();
+
+        DawidSkeneEstimator estimator = new DawidSkeneEstimator(
+                credibilityConfig.getAggregationMaxIterations(), credibilityConfig.getAggregationTolerance());
+        DawidSkeneEstimator.Result result = estimator.estimate(observations, matrix.warmStart);
+
+        writeTransaction.executeWithoutResult(status -> store(taskId, matrix, result));
+
+        log.info("Aggregated task {}: {} images, {} annotators, {} labels in {} iterations (converged: {}, warm start: {}) in {} ms",
+                taskId, matrix.imageCount(), matrix.annotatorCount(), matrix.labelIndex.size(),
+                result.getIterations(), result.isConverged(), matrix.warmStart != null,
+                System.currentTimeMillis() - started);
+
+        return AggregationSummary.builder()
+                .taskId(taskId)
+                .images(matrix.imageCount())
+                .annotators(matrix.annotatorCount())
+                .labels(matrix.labelIndex.size())
+                .observations(matrix.size)
+                .iterations(result.getIterations())
+                .converged(result.isConverged())
+                .warmStarted(matrix.warmStart != null)
+                .build();
+    }
+
+    private TaskMatrix loadMatrix(Long taskId) {
+        TaskMatrix matrix = new TaskMatrix();
+        jdbcTemplate.query(TASK_CLASSIFICATIONS_SQL, rs -> {
+            matrix.add(rs.getString(1), rs.getLong(2), rs.getLong(3));
+        }, taskId);
+
+        int labels = matrix.labelIndex.size();
+        double[] warmStart = new double[matrix.annotatorCount() * labels * labels];
+        boolean[] found = new boolean[1];
+        jdbcTemplate.query(TASK_CONFUSIONS_SQL, rs -> {
+            Integer annotator = matrix.annotatorIndex.get(rs.getString(1));
+            int trueLabel = matrix.labelIndex.find(rs.getLong(2));
+            int answered = matrix.labelIndex.find(rs.getLong(3));
+            if (annotator != null && trueLabel != ABSENT && answered != ABSENT) {
+                warmStart[annotator * labels * labels + trueLabel * labels + answered] = rs.getDouble(4);
+                found[0] = true;
+            }
+        }, taskId);
+        matrix.warmStart = found[0] ? warmStart : null;
+        return matrix;
+    }
+
+    private void store(Long taskId, TaskMatrix matrix, DawidSkeneEstimator.Result result) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> posteriorRows = new ArrayList<>(matrix.imageCount());
+        for (int item = 0; item < matrix.imageCount(); item++) {
+            int label = result.mostLikelyLabel(item);
+            posteriorRows.add(new Object[]{
+                    matrix.imageIds[item], taskId, matrix.labelIndex.labelIdAt(label), result.posterior(item, label), now
+            });
+        }
+
+        int labels = matrix.labelIndex.size();
+        double[] confusions = result.getConfusions();
+        List<Object[]> confusionRows = new ArrayList<>(matrix.annotatorCount() * labels * labels);
+        for (int annotator = 0; annotator < matrix.annotatorCount(); annotator++) {
+            String username = matrix.usernames.get(annotator);
+            for (int k = 0; k < labels; k++) {
+                for (int l = 0; l < labels; l++) {
+                    confusionRows.add(new Object[]{
+                            taskId, username, matrix.labelIndex.labelIdAt(k), matrix.labelIndex.labelIdAt(l),
+                            confusions[(annotator * labels + k) * labels + l]
+                    });
+                }
+            }
+        }
+
+        jdbcTemplate.update(DELETE_POSTERIORS_SQL, taskId);
+        jdbcTemplate.batchUpdate(INSERT_POSTERIOR_SQL, posteriorRows);
+        jdbcTemplate.update(DELETE_CONFUSIONS_SQL, taskId);
+        jdbcTemplate.batchUpdate(INSERT_CONFUSION_SQL, confusionRows);
+    }
+
+    /**
+     * Sparse annotator x image matrix of a task in dense index space.
+     * Only the first answer of an annotator on an image is kept.
+     */
+    private static class TaskMatrix {
+        private final LabelIndex labelIndex = new LabelIndex();
+        private final LongIntHashMap imageIndex = new LongIntHashMap(1024, ABSENT);
+        private final Map<String, Integer> annotatorIndex = new HashMap<>();
+        private final List<String> usernames = new ArrayList<>();
+        private final LongIntHashMap answered = new LongIntHashMap(4096, ABSENT);
+
+        private long[] imageIds = new long[1024];
+        private int[] items = new int[4096];
+        private int[] annotators = new int[4096];
+        private int[] answers = new int[4096];
+        private int size;
+
+        private double[] warmStart;
+
+        void add(String username, long imageId, long labelId) {
+            int annotator = annotatorIndex.computeIfAbsent(username, name -> {
+                usernames.add(name);
+                return usernames.size() - 1;
+            });
+
+            int item = imageIndex.get(imageId);
+            if (item == ABSENT) {
+                item = imageIndex.size();
+                imageIndex.put(imageId, item);
+                if (item == imageIds.length) {
+                    imageIds = Arrays.copyOf(imageIds, item << 1);
+                }
+                imageIds[item] = imageId;
+            }
+
+            long pair = ((long) annotator << 32) | item;
+            if (answered.putIfAbsent(pair, size) != size) {
+                return;
+            }
+
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size << 1);
+                annotators = Arrays.copyOf(annotators, size << 1);
+                answers = Arrays.copyOf(answers, size << 1);
+            }
+            items[size] = item;
+            annotators[size] = annotator;
+            answers[size] = labelIndex.indexOf(labelId);
+            size++;
+        }
+
+        int imageCount() {
+            return imageIndex.size();
+        }
+
+        int annotatorCount() {
+            return usernames.size();
+        }
+
+        DawidSkeneEstimator.Observations toObservations() {
+            return DawidSkeneEstimator.Observations.of(imageCount(), annotatorCount(), labelIndex.size(),
+                    Arrays.copyOf(items, size), Arrays.copyOf(annotators, size), Arrays.copyOf(answers, size));
+        }
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class AggregationSummary {
+        private Long taskId;
+        private int images;
+        private int annotators;
+        private int labels;
+        private int observations;
+        private int iterations;
+        private boolean converged;
+        private boolean warmStarted;
+    }
+}
@@ -0,0 +1,167 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.util.TimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Ends image leases at their deadline and puts the images at the front of their task's pool.
+ *
+ * Every lease handed out is put on a {@link TimerWheel}, so expiry never scans image_leases.
+ * When a lease fires, the row is released only if it is still that user's expired lease; a lease
+ * that ended with a classification is left alone. Released images are queued per task and
+ * offered to the next batch before any other image. On startup the wheel is refilled from
+ * the leases stored in image_leases.
+ *
+ * Assumes a single backend instance, like {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class LeaseExpiryReaper implements SmartInitializingSingleton {
+
+    private static final String LOAD_LEASES_SQL =
+            "SELECT task_id, image_id, leased_to, lease_expires_at FROM image_leases WHERE leased_to IS NOT NULL";
+
+    static final String EXPIRE_LEASE_SQL =
+            "UPDATE image_leases SET leased_to = NULL, lease_expires_at = NULL " +
+                    "WHERE image_id = ? AND leased_to = ? AND lease_expires_at <= ?";
+
+    private static final int[] EXPIRE_LEASE_TYPES = {Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimerWheel<Lease> wheel;
+    private final Map<Long, Deque<Long>> returnedImages = new ConcurrentHashMap<>();
+
+    public LeaseExpiryReaper(JdbcTemplate jdbcTemplate, DistributionConfig distributionConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        long tickMs = distributionConfig.getLeaseReaperTickMs();
+        // One revolution covers a whole lease, so each lease is looked at only when it is due
+        int wheelSize = (int) Math.min(1 << 16, distributionConfig.getLeaseDurationSeconds() * 1000 / tickMs + 1);
+        this.wheel = new TimerWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Starts the expiry clock of freshly leased images
+     */
+    public void track(Long taskId, Collection<Long> imageIds, String username, LocalDateTime expiresAt) {
+        long deadlineMs = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (Long imageId : imageIds) {
+            wheel.schedule(new Lease(taskId, imageId, username), deadlineMs);
+        }
+    }
+
+    /**
+     * Takes up to {@code max} released images of a task, oldest release first
+     */
+    public List<Long> pollReturned(Long taskId, int max) {
+        Deque<Long> queue = returnedImages.get(taskId);
+        List<Long> imageIds = new ArrayList<>();
+        if (queue == null) {
+            return imageIds;
+        }
+        Long imageId;
+        while (imageIds.size() < max && (imageId = queue.pollFirst()) != null) {
+            imageIds.add(imageId);
+        }
+        return imageIds;
+    }
+
+    /**
+     * Puts polled images that were not served back at the front, in their original order
+     */
+    public void requeue(Long taskId, List<Long> imageIds) {
+        Deque<Long> queue = returnedImages.computeIfAbsent(taskId, id -> new ConcurrentLinkedDeque<>());
+        for (int i = imageIds.size() - 1; i >= 0; i--) {
+            queue.offerFirst(imageIds.get(i));
+        }
+    }
+
+    public int trackedLeases() {
+        return wheel.size();
+    }
+
+    /**
+     * Releases every lease whose deadline has passed. On failure the leases fire again on the next tick.
+     *
+     * @return number of images released
+     */
+    @Scheduled(fixedDelayString = "${distribution.lease-reaper-tick-ms:1000}")
+    public int reap() {
+        List<Lease> expired = new ArrayList<>();
+        wheel.advance(System.currentTimeMillis(), expired::add);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(expired.size());
+        for (Lease lease : expired) {
+            rows.add(new Object[]{lease.imageId, lease.username, now});
+        }
+
+        int[] updated;
+        try {
+            updated = jdbcTemplate.batchUpdate(EXPIRE_LEASE_SQL, rows, EXPIRE_LEASE_TYPES);
+        } catch (RuntimeException e) {
+            for (Lease lease : expired) {
+                wheel.schedule(lease, 0);
+            }
+            log.warn("Releasing {} expired image leases failed, will retry: {}", expired.size(), e.getMessage());
+            return 0;
+        }
+
+        int released = 0;
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 0) {
+                Lease lease = expired.get(i);
+                returnedImages.computeIfAbsent(lease.taskId, id -> new ConcurrentLinkedDeque<>()).offerLast(lease.imageId);
+                released++;
+            }
+        }
+        log.debug("Released {} of {} due image leases", released, expired.size());
+        return released;
+    }
+
+    void rebuild() {
+        returnedImages.clear();
+        jdbcTemplate.query(LOAD_LEASES_SQL, rs -> {
+            Timestamp expiresAt = rs.getTimestamp(4);
+            wheel.schedule(new Lease(rs.getLong(1), rs.getLong(2), rs.getString(3)),
+                    expiresAt != null ? expiresAt.getTime() : 0);
+        });
+        log.info("Tracking {} outstanding image leases", wheel.size());
+    }
+
+    private static final class Lease {
+        private final Long taskId;
+        private final Long imageId;
+        private final String username;
+
+        Lease(Long taskId, Long imageId, String username) {
+            this.taskId = taskId;
+            this.imageId = imageId;
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.swipelab.service.classification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Published by {@link VoteCounterStore} after a flush changed users' majority agreement counters.
+ * Published outside any transaction, so listeners should be plain event listeners.
+ */
+@Getter
+@AllArgsConstructor
+public class MajorityAgreementFlushedEvent {
+
+    /**
+     * Users whose majority counters changed
+     */
+    private final Set<String> usernames;
+
+    /**
+     * Images whose majority label changed, so every voter on them needs a recompute
+     */
+    private final Set<Long> flippedImageIds;
+}
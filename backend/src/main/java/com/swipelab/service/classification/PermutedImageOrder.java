@@ -0,0 +1,313 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.util.FeistelPermutation;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the images of PERMUTED tasks in an order derived per user instead of stored.
+ *
+ * A task's images other than gold images, sorted by id, form an index space; each user walks
+ * it through a {@link FeistelPermutation} keyed by the task and username, so users see a
+ * shuffled order, never the same image twice, and different users start in different places.
+ * The only state per user is a cursor into the permutation. Candidates are mapped to image
+ * ids a chunk at a time and filtered through the retired and seen bitmaps; positions skipped
+ * that way stay ineligible for good, so the cursor only moves forward. Images are not leased.
+ *
+ * When the task gains images the index space grows and the walk starts over on the new
+ * permutation; the seen bitmap skips what the user already classified.
+ *
+ * Cursors are loaded lazily and written to user_task_cursors on a schedule. Assumes a single
+ * backend instance, like {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class PermutedImageOrder {
+
+    private static final String LOAD_TASK_IMAGES_SQL = "SELECT id FROM images WHERE task_id = ? AND is_gold_standard = FALSE ORDER BY id";
+
+    private static final String LOAD_CURSOR_SQL =
+            "SELECT position, domain_size FROM user_task_cursors WHERE task_id = ? AND username = ?";
+
+    static final String UPDATE_CURSOR_SQL =
+            "UPDATE user_task_cursors SET position = ?, domain_size = ?, updated_at = ? WHERE task_id = ? AND username = ?";
+
+    static final String INSERT_CURSOR_SQL =
+            "INSERT INTO user_task_cursors (position, domain_size, updated_at, task_id, username) VALUES (?, ?, ?, ?, ?)";
+
+    private static final int[] CURSOR_TYPES = {Types.BIGINT, Types.BIGINT, Types.TIMESTAMP, Types.BIGINT, Types.VARCHAR};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RetiredImageIndex retiredImageIndex;
+    private final SeenImageIndex seenImageIndex;
+    private final DistributionConfig distributionConfig;
+
+    private final Map<Long, TaskImages> taskImages = new ConcurrentHashMap<>();
+    private final Map<CursorKey, Cursor> cursors = new ConcurrentHashMap<>();
+    private final Set<CursorKey> dirtyCursors = ConcurrentHashMap.newKeySet();
+
+    public PermutedImageOrder(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              RetiredImageIndex retiredImageIndex,
+                              SeenImageIndex seenImageIndex,
+                              DistributionConfig distributionConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retiredImageIndex = retiredImageIndex;
+        this.seenImageIndex = seenImageIndex;
+        this.distributionConfig = distributionConfig;
+    }
+
+    /**
+     * Next images of the user's permuted order that are neither retired nor classified by them.
+     *
+     * @param taskId   Task to serve images from
+     * @param username User the order belongs to
+     * @param size     Number of images wanted
+     * @return Image ids in the user's order; fewer than requested when the scan limit was
+     * reached or the user has been through the whole task
+     */
+    public List<Long> nextBatch(Long taskId, String username, int size) {
+        long[] imageIds = taskImages(taskId);
+        List<Long> batch = new ArrayList<>(size);
+        if (imageIds.length == 0) {
+            return batch;
+        }
+
+        CursorKey key = new CursorKey(taskId, username);
+        Cursor cursor = cursor(key);
+        long position;
+        synchronized (cursor) {
+            cursor.lastUsedAt = System.currentTimeMillis();
+            if (cursor.domainSize != imageIds.length) {
+                cursor.position = 0;
+                cursor.domainSize = imageIds.length;
+            }
+            FeistelPermutation permutation = new FeistelPermutation(imageIds.length, permutationKey(taskId, username));
+            long scanEnd = Math.min(imageIds.length, cursor.position + distributionConfig.getPermutationScanLimit());
+            int chunkSize = size * distributionConfig.getClaimOverfetchFactor();
+
+            while (batch.size() < size && cursor.position < scanEnd) {
+                int chunk = (int) Math.min(chunkSize, scanEnd - cursor.position);
+                long[] candidates = new long[chunk];
+                for (int i = 0; i < chunk; i++) {
+                    candidates[i] = imageIds[(int) permutation.permute(cursor.position + i)];
+                }
+                long[] eligible = seenImageIndex.filterUnseen(username, retiredImageIndex.filterActive(taskId, candidates));
+
+                // Advance only past the last image taken, so eligible ones after it are served next time
+                int consumed = chunk;
+                int next = 0;
+                for (int i = 0; i < chunk && next < eligible.length; i++) {
+                    if (candidates[i] == eligible[next]) {
+                        batch.add(candidates[i]);
+                        next++;
+                        if (batch.size() == size) {
+                            consumed = i + 1;
+                            break;
+                        }
+                    }
+                }
+                cursor.position += consumed;
+            }
+            position = cursor.position;
+        }
+        dirtyCursors.add(key);
+
+        log.debug("Served {} of {} requested images of task {} to {}, now at permutation position {} of {}",
+                batch.size(), size, taskId, username, position, imageIds.length);
+        return batch;
+    }
+
+    /**
+     * Writes every cursor advanced since the last flush and forgets clean ones that have not
+     * been used for a while. On failure the cursors stay dirty.
+     *
+     * @return number of cursors written
+     */
+    @Scheduled(fixedDelayString = "${distribution.cursor-flush-interval-ms:5000}")
+    public int flush() {
+        evictIdle();
+        if (dirtyCursors.isEmpty()) {
+            return 0;
+        }
+
+        List<CursorKey> keys = new ArrayList<>();
+        for (Iterator<CursorKey> it = dirtyCursors.iterator(); it.hasNext(); ) {
+            keys.add(it.next());
+            it.remove();
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (CursorKey key : keys) {
+            Cursor cursor = cursors.get(key);
+            synchronized (cursor) {
+                rows.add(new Object[]{cursor.position, cursor.domainSize, now, key.taskId, key.username});
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                int[] updated = jdbcTemplate.batchUpdate(UPDATE_CURSOR_SQL, rows, CURSOR_TYPES);
+                List<Object[]> missing = new ArrayList<>();
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] == 0) {
+                        missing.add(rows.get(i));
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_CURSOR_SQL, missing, CURSOR_TYPES);
+                }
+            });
+        } catch (RuntimeException e) {
+            dirtyCursors.addAll(keys);
+            log.warn("Flushing {} permutation cursors failed, will retry: {}", keys.size(), e.getMessage());
+            return 0;
+        }
+
+        log.debug("Flushed {} permutation cursors", keys.size());
+        return keys.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public int cachedCursors() {
+        return cursors.size();
+    }
+
+    /**
+     * Stable across restarts, unlike identity hashes, so a user's order never changes under them
+     */
+    static long permutationKey(Long taskId, String username) {
+        // 64-bit FNV-1a over the username, then the task id folded in
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash ^ (taskId * 0x9E3779B97F4A7C15L);
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - distributionConfig.getCursorIdleEvictMs();
+        cursors.entrySet().removeIf(entry -> {
+            Cursor cursor = entry.getValue();
+            synchronized (cursor) {
+                return cursor.lastUsedAt < cutoff && !dirtyCursors.contains(entry.getKey());
+            }
+        });
+    }
+
+    /**
+     * The task's image ids in ascending order, reloaded once they are older than the refresh interval
+     */
+    private long[] taskImages(Long taskId) {
+        long now = System.currentTimeMillis();
+        TaskImages cached = taskImages.get(taskId);
+        if (cached != null && now - cached.loadedAt < distributionConfig.getPermutationIndexRefreshMs()) {
+            return cached.imageIds;
+        }
+
+        long[][] imageIds = {new long[1024]};
+        int[] count = {0};
+        jdbcTemplate.query(LOAD_TASK_IMAGES_SQL, rs -> {
+            if (count[0] == imageIds[0].length) {
+                imageIds[0] = Arrays.copyOf(imageIds[0], count[0] * 2);
+            }
+            imageIds[0][count[0]++] = rs.getLong(1);
+        }, taskId);
+
+        TaskImages loaded = new TaskImages(Arrays.copyOf(imageIds[0], count[0]), now);
+        taskImages.put(taskId, loaded);
+        log.debug("Loaded image index of task {} with {} images in {} ms", taskId, count[0],
+                System.currentTimeMillis() - now);
+        return loaded.imageIds;
+    }
+
+    /**
+     * The cursor is cached before it is loaded and the load holds its monitor, so a concurrent
+     * request of the same user waits for it instead of starting from zero
+     */
+    private Cursor cursor(CursorKey key) {
+        Cursor cursor = cursors.computeIfAbsent(key, k -> new Cursor());
+        synchronized (cursor) {
+            if (!cursor.loaded) {
+                jdbcTemplate.query(LOAD_CURSOR_SQL, rs -> {
+                    cursor.position = rs.getLong(1);
+                    cursor.domainSize = rs.getLong(2);
+                }, key.taskId, key.username);
+                cursor.loaded = true;
+            }
+        }
+        return cursor;
+    }
+
+    private static final class TaskImages {
+        private final long[] imageIds;
+        private final long loadedAt;
+
+        TaskImages(long[] imageIds, long loadedAt) {
+            this.imageIds = imageIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class CursorKey {
+        private final Long taskId;
+        private final String username;
+
+        CursorKey(Long taskId, String username) {
+            this.taskId = taskId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof CursorKey)) {
+                return false;
+            }
+            CursorKey that = (CursorKey) other;
+            return taskId.equals(that.taskId) && username.equals(that.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * taskId.hashCode() + username.hashCode();
+        }
+    }
+
+    /**
+     * Guarded by its own monitor
+     */
+    private static final class Cursor {
+        private long position;
+        private long domainSize;
+        private boolean loaded;
+        private long lastUsedAt = System.currentTimeMillis();
+    }
+}
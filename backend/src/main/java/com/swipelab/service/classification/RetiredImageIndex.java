@@ -0,0 +1,211 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.util.ImageIdBitmap;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-task bitmaps of retired (finalized) images, kept in memory so image selection can drop
+ * completed images from a candidate batch without a query.
+ *
+ * Consensus finalization retires an image through {@link ImageFinalizedEvent}. Changed bitmaps
+ * are written whole to task_retired_images on a schedule; bits are only ever set, so a failed
+ * write is simply retried. On startup the stored bitmaps are loaded and any finalized image
+ * they miss (finalized shortly before a crash) is added from image_vote_summaries.
+ *
+ * Assumes a single backend instance, like {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class RetiredImageIndex implements SmartInitializingSingleton {
+
+    private static final String LOAD_BITMAPS_SQL = "SELECT task_id, bitmap FROM task_retired_images";
+
+    private static final String LOAD_FINALIZED_SQL =
+            "SELECT i.task_id, s.image_id FROM image_vote_summaries s JOIN images i ON i.id = s.image_id " +
+                    "WHERE s.finalized_label_id IS NOT NULL AND i.task_id IS NOT NULL";
+
+    static final String UPDATE_BITMAP_SQL =
+            "UPDATE task_retired_images SET bitmap = ?, image_count = ?, updated_at = ? WHERE task_id = ?";
+
+    static final String INSERT_BITMAP_SQL =
+            "INSERT INTO task_retired_images (bitmap, image_count, updated_at, task_id) VALUES (?, ?, ?, ?)";
+
+    private static final int[] BITMAP_TYPES = {Types.BINARY, Types.BIGINT, Types.TIMESTAMP, Types.BIGINT};
+    private static final long[] NO_IMAGES = new long[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Long, ImageIdBitmap> bitmaps = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyTasks = ConcurrentHashMap.newKeySet();
+
+    public RetiredImageIndex(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Published after the vote's transaction has committed, so no transactional listener is needed
+     */
+    @EventListener
+    public void onImageFinalized(ImageFinalizedEvent event) {
+        if (event.getTaskId() != null) {
+            retire(event.getTaskId(), event.getImageId());
+        }
+    }
+
+    /**
+     * Takes an image out of circulation for its task.
+     *
+     * @return true if the image was not retired yet
+     */
+    public boolean retire(Long taskId, Long imageId) {
+        ImageIdBitmap bitmap = bitmaps.computeIfAbsent(taskId, id -> new ImageIdBitmap());
+        boolean added;
+        synchronized (bitmap) {
+            added = bitmap.add(imageId);
+        }
+        if (added) {
+            dirtyTasks.add(taskId);
+        }
+        return added;
+    }
+
+    public boolean isRetired(Long taskId, Long imageId) {
+        ImageIdBitmap bitmap = bitmaps.get(taskId);
+        if (bitmap == null) {
+            return false;
+        }
+        synchronized (bitmap) {
+            return bitmap.contains(imageId);
+        }
+    }
+
+    /**
+     * Candidate images of a task that are still in circulation, in their original order.
+     * The whole batch is checked under one lock acquisition.
+     */
+    public long[] filterActive(Long taskId, long[] candidateImageIds) {
+        if (candidateImageIds.length == 0) {
+            return NO_IMAGES;
+        }
+        ImageIdBitmap bitmap = bitmaps.get(taskId);
+        if (bitmap == null) {
+            return candidateImageIds;
+        }
+        synchronized (bitmap) {
+            return bitmap.filterAbsent(candidateImageIds);
+        }
+    }
+
+    public long retiredCount(Long taskId) {
+        ImageIdBitmap bitmap = bitmaps.get(taskId);
+        if (bitmap == null) {
+            return 0;
+        }
+        synchronized (bitmap) {
+            return bitmap.cardinality();
+        }
+    }
+
+    /**
+     * Writes every bitmap changed since the last flush. On failure the tasks stay dirty.
+     *
+     * @return number of tasks written
+     */
+    @Scheduled(fixedDelayString = "${credibility.retired-images-flush-interval-ms:5000}")
+    public int flush() {
+        if (dirtyTasks.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> taskIds = new ArrayList<>();
+        for (Iterator<Long> it = dirtyTasks.iterator(); it.hasNext(); ) {
+            taskIds.add(it.next());
+            it.remove();
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(taskIds.size());
+        for (Long taskId : taskIds) {
+            ImageIdBitmap bitmap = bitmaps.get(taskId);
+            synchronized (bitmap) {
+                rows.add(new Object[]{bitmap.serialize(), bitmap.cardinality(), now, taskId});
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                int[] updated = jdbcTemplate.batchUpdate(UPDATE_BITMAP_SQL, rows, BITMAP_TYPES);
+                List<Object[]> missing = new ArrayList<>();
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] == 0) {
+                        missing.add(rows.get(i));
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_BITMAP_SQL, missing, BITMAP_TYPES);
+                }
+            });
+        } catch (RuntimeException e) {
+            dirtyTasks.addAll(taskIds);
+            log.warn("Flushing retired images of {} tasks failed, will retry: {}", taskIds.size(), e.getMessage());
+            return 0;
+        }
+
+        log.debug("Flushed retired images of {} tasks", taskIds.size());
+        return taskIds.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    void rebuild() {
+        long started = System.currentTimeMillis();
+        bitmaps.clear();
+        dirtyTasks.clear();
+
+        jdbcTemplate.query(LOAD_BITMAPS_SQL, rs -> {
+            long taskId = rs.getLong(1);
+            try {
+                bitmaps.put(taskId, ImageIdBitmap.deserialize(rs.getBytes(2)));
+            } catch (IllegalArgumentException e) {
+                // Rebuilt from the finalized summaries below and rewritten on the next flush
+                log.warn("Discarding unreadable retired images bitmap of task {}: {}", taskId, e.getMessage());
+                dirtyTasks.add(taskId);
+            }
+        });
+
+        jdbcTemplate.query(LOAD_FINALIZED_SQL, rs -> {
+            retire(rs.getLong(1), rs.getLong(2));
+        });
+
+        log.info("Loaded retired images of {} tasks in {} ms, {} of them behind the finalized summaries",
+                bitmaps.size(), System.currentTimeMillis() - started, dirtyTasks.size());
+    }
+}
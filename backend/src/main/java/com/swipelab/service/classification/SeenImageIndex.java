@@ -0,0 +1,143 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.util.ImageIdBitmap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmaps of the images each user has already classified, so image selection can exclude a
+ * whole candidate batch at once instead of asking the database about every image.
+ *
+ * A user's bitmap is loaded from classifications the first time it is needed and then kept
+ * up to date from committed submissions. At most credibility.seen-cache-max-users bitmaps are
+ * kept; the least recently used one is evicted and simply loaded again on its next use.
+ *
+ * Assumes a single backend instance, like {@link VoteCounterStore}.
+ */
+@Component
+@Slf4j
+public class SeenImageIndex {
+
+    private static final String LOAD_SEEN_SQL = "SELECT image_id FROM classifications WHERE user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, SeenImages> cache;
+
+    public SeenImageIndex(JdbcTemplate jdbcTemplate, CredibilityConfig credibilityConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        int maxUsers = credibilityConfig.getSeenCacheMaxUsers();
+        // Access order makes the eldest entry the least recently used one
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SeenImages> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Candidate images the user has not classified yet, in their original order
+     */
+    public long[] filterUnseen(String username, long[] candidateImageIds) {
+        if (candidateImageIds.length == 0) {
+            return candidateImageIds;
+        }
+        SeenImages seen = loaded(username);
+        synchronized (seen) {
+            return seen.bitmap.filterAbsent(candidateImageIds);
+        }
+    }
+
+    public boolean hasSeen(String username, Long imageId) {
+        SeenImages seen = loaded(username);
+        synchronized (seen) {
+            return seen.bitmap.contains(imageId);
+        }
+    }
+
+    /**
+     * Only a user whose bitmap is cached is updated; any other user's bitmap is loaded after
+     * this commit and already contains the image.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClassificationSubmitted(ClassificationSubmittedEvent event) {
+        List<Long> imageIds = new ArrayList<>(event.getSwipes().size());
+        for (ClassificationSubmittedEvent.Swipe swipe : event.getSwipes()) {
+            imageIds.add(swipe.getImageId());
+        }
+        markSeen(event.getUsername(), imageIds);
+    }
+
+    public void markSeen(String username, Long imageId) {
+        markSeen(username, List.of(imageId));
+    }
+
+    /**
+     * Adds the images under one lock acquisition
+     */
+    public void markSeen(String username, List<Long> imageIds) {
+        SeenImages seen;
+        synchronized (cache) {
+            seen = cache.get(username);
+        }
+        if (seen != null) {
+            synchronized (seen) {
+                for (Long imageId : imageIds) {
+                    seen.bitmap.add(imageId);
+                }
+            }
+        }
+    }
+
+    public void evict(String username) {
+        synchronized (cache) {
+            cache.remove(username);
+        }
+    }
+
+    public int cachedUsers() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * The user's cache entry, loading it on first use. The entry is cached before it is loaded
+     * and the load holds its monitor, so a submission arriving meanwhile waits and is then added.
+     */
+    private SeenImages loaded(String username) {
+        SeenImages seen;
+        synchronized (cache) {
+            seen = cache.computeIfAbsent(username, key -> new SeenImages());
+        }
+        synchronized (seen) {
+            if (!seen.loaded) {
+                long started = System.currentTimeMillis();
+                jdbcTemplate.query(LOAD_SEEN_SQL, rs -> {
+                    seen.bitmap.add(rs.getLong(1));
+                }, username);
+                seen.loaded = true;
+                log.debug("Loaded {} seen images of user {} in {} ms", seen.bitmap.cardinality(), username,
+                        System.currentTimeMillis() - started);
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Guarded by its own monitor
+     */
+    private static final class SeenImages {
+        private final ImageIdBitmap bitmap = new ImageIdBitmap();
+        private boolean loaded;
+    }
+}
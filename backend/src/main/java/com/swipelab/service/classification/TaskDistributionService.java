@@ -1,5 +1,489 @@
 package com.swipelab.service.classification;
 
+import com.swipelab.config.AsyncConfig;
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.repository.ImageLeaseRepository;
+import com.swipelab.repository.projection.LeaseCandidate;
+import com.swipelab.service.user.CredibilityTierCache;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out images to users: leases claimed from image_leases, served from small per-user
+ * prefetch queues that are refilled in the background, or the next images of the user's
+ * permuted order for PERMUTED tasks. Gold images are mixed into either kind of batch, and
+ * users in the reliable credibility tier get contested images first.
+ */
+@Service
+@Slf4j
 public class TaskDistributionService {
-    
+
+    private final ImageLeaseRepository imageLeaseRepository;
+    private final RetiredImageIndex retiredImageIndex;
+    private final SeenImageIndex seenImageIndex;
+    private final LeaseExpiryReaper leaseExpiryReaper;
+    private final PermutedImageOrder permutedImageOrder;
+    private final GoldInterleaver goldInterleaver;
+    private final ContestedImageQueue contestedImageQueue;
+    private final CredibilityTierCache credibilityTierCache;
+    private final DistributionConfig distributionConfig;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor prefetchExecutor;
+
+    private final Map<String, PrefetchQueue> prefetchQueues = new ConcurrentHashMap<>();
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchNanos = new AtomicLong();
+    private final AtomicLong servedFromQueueCount = new AtomicLong();
+    private final AtomicLong servedByClaimCount = new AtomicLong();
+    private final AtomicLong invalidatedCount = new AtomicLong();
+    private final AtomicLong refillCount = new AtomicLong();
+    private final AtomicLong refillNanos = new AtomicLong();
+    private final AtomicLong refilledImageCount = new AtomicLong();
+    private final AtomicLong refillFailedCount = new AtomicLong();
+    private final AtomicLong refillRejectedCount = new AtomicLong();
+
+    public TaskDistributionService(ImageLeaseRepository imageLeaseRepository,
+                                   RetiredImageIndex retiredImageIndex,
+                                   SeenImageIndex seenImageIndex,
+                                   LeaseExpiryReaper leaseExpiryReaper,
+                                   PermutedImageOrder permutedImageOrder,
+                                   GoldInterleaver goldInterleaver,
+                                   ContestedImageQueue contestedImageQueue,
+                                   CredibilityTierCache credibilityTierCache,
+                                   DistributionConfig distributionConfig,
+                                   PlatformTransactionManager transactionManager,
+                                   @Qualifier(AsyncConfig.PREFETCH_EXECUTOR) ThreadPoolTaskExecutor prefetchExecutor) {
+        this.imageLeaseRepository = imageLeaseRepository;
+        this.retiredImageIndex = retiredImageIndex;
+        this.seenImageIndex = seenImageIndex;
+        this.leaseExpiryReaper = leaseExpiryReaper;
+        this.permutedImageOrder = permutedImageOrder;
+        this.goldInterleaver = goldInterleaver;
+        this.contestedImageQueue = contestedImageQueue;
+        this.credibilityTierCache = credibilityTierCache;
+        this.distributionConfig = distributionConfig;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Next images of a LEASED task for the user, with the user's share of gold images mixed in.
+     * Gold images are picked in memory and are not leased.
+     *
+     * @param taskId   Task to serve images from
+     * @param username User the images are for
+     * @param size     Number of images wanted, gold included
+     * @return Image ids in serving order; the expiry is that of the earliest lease in the batch,
+     * or null when the batch is all gold
+     */
+    public LeasedBatch nextBatch(Long taskId, String username, int size) {
+        List<Long> gold = goldInterleaver.pickGold(taskId, username, size);
+        if (gold.size() == size) {
+            return new LeasedBatch(GoldInterleaver.interleave(List.of(), gold), null);
+        }
+        LeasedBatch regular = nextLeasedBatch(taskId, username, size - gold.size());
+        return new LeasedBatch(GoldInterleaver.interleave(regular.getImageIds(), gold), regular.getExpiresAt());
+    }
+
+    /**
+     * Next images of a PERMUTED task for the user, with the user's share of gold images mixed in.
+     * Nothing is leased, so the expiry is null.
+     */
+    public LeasedBatch nextPermutedBatch(Long taskId, String username, int size) {
+        List<Long> gold = goldInterleaver.pickGold(taskId, username, size);
+        List<Long> regular = gold.size() < size
+                ? permutedImageOrder.nextBatch(taskId, username, size - gold.size())
+                : List.of();
+        return new LeasedBatch(GoldInterleaver.interleave(regular, gold), null);
+    }
+
+    /**
+     * Next leased images for the user, taken from their prefetch queue.
+     *
+     * The queued images are already leased to the user, so a warm batch is a memory read.
+     * Images retired since they were queued, or whose lease is about to run out, are skipped;
+     * the reaper releases those leases. Whatever the queue cannot cover (first request, or a
+     * user swiping faster than refills) is claimed on the spot. A refill is started in the
+     * background once the queue drops below the low-water mark.
+     *
+     * @param taskId   Task to serve images from
+     * @param username User the images are for
+     * @param size     Number of images wanted
+     * @return Leased image ids; the expiry is that of the earliest lease in the batch
+     */
+    private LeasedBatch nextLeasedBatch(Long taskId, String username, int size) {
+        long started = System.nanoTime();
+        PrefetchQueue queue = prefetchQueues.computeIfAbsent(taskId + ":" + username,
+                key -> new PrefetchQueue(taskId, username));
+        LocalDateTime servableUntil = LocalDateTime.now().plusSeconds(distributionConfig.getPrefetchMinRemainingLeaseSeconds());
+
+        List<Long> imageIds = new ArrayList<>(size);
+        LocalDateTime expiresAt = null;
+        int queued;
+        synchronized (queue) {
+            queue.lastUsedAt = System.currentTimeMillis();
+            PrefetchedImage next;
+            while (imageIds.size() < size && (next = queue.images.pollFirst()) != null) {
+                if (next.expiresAt.isBefore(servableUntil) || retiredImageIndex.isRetired(taskId, next.imageId)) {
+                    invalidatedCount.incrementAndGet();
+                    continue;
+                }
+                imageIds.add(next.imageId);
+                expiresAt = earliest(expiresAt, next.expiresAt);
+            }
+            queued = queue.images.size();
+        }
+        servedFromQueueCount.addAndGet(imageIds.size());
+
+        if (imageIds.size() < size) {
+            LeasedBatch claimed = claimBatch(taskId, username, size - imageIds.size());
+            servedByClaimCount.addAndGet(claimed.getImageIds().size());
+            imageIds.addAll(claimed.getImageIds());
+            expiresAt = earliest(expiresAt, claimed.getExpiresAt());
+        }
+
+        if (queued < distributionConfig.getPrefetchLowWaterMark()) {
+            requestRefill(queue);
+        }
+
+        batchCount.incrementAndGet();
+        batchNanos.addAndGet(System.nanoTime() - started);
+        return new LeasedBatch(imageIds, expiresAt != null ? expiresAt : LocalDateTime.now());
+    }
+
+    /**
+     * Leases up to {@code size} images of a task to the user.
+     *
+     * Images whose lease just expired are offered first. A user in the reliable credibility
+     * tier then gets up to distribution.contested-routing-share of the batch from the task's
+     * most contested images that are unleased. After that, unleased lease rows are
+     * locked in claim order with SKIP LOCKED, so concurrent requests never wait for each other
+     * and never claim the same image. Retired and already-seen images are dropped in memory;
+     * retired ones lose their lease row on the way. When too many candidates are dropped, the
+     * next round continues after the last row examined.
+     *
+     * @param taskId   Task to serve images from
+     * @param username User the images are leased to
+     * @param size     Number of images wanted
+     * @return Leased image ids in claim order; fewer than requested when the task runs dry
+     */
+    public LeasedBatch claimBatch(Long taskId, String username, int size) {
+        return transactionTemplate.execute(status -> claim(taskId, username, size));
+    }
+
+    private LeasedBatch claim(Long taskId, String username, int size) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusSeconds(distributionConfig.getLeaseDurationSeconds());
+        int limit = size * distributionConfig.getClaimOverfetchFactor();
+
+        Set<Long> claimed = new LinkedHashSet<>();
+        List<Long> retired = new ArrayList<>();
+
+        List<Long> returned = leaseExpiryReaper.pollReturned(taskId, limit);
+        if (!returned.isEmpty()) {
+            Set<Long> unleased = imageLeaseRepository.lockUnleased(taskId, returned, now).stream()
+                    .map(LeaseCandidate::getImageId)
+                    .collect(Collectors.toSet());
+            // Rows that are gone, leased again or locked by another request need no requeue
+            long[] imageIds = returned.stream().filter(unleased::contains).mapToLong(Long::longValue).toArray();
+            List<Long> unclaimed = claimFrom(taskId, username, imageIds, size, claimed, retired);
+            if (!unclaimed.isEmpty()) {
+                leaseExpiryReaper.requeue(taskId, unclaimed);
+            }
+        }
+
+        if (distributionConfig.isContestedRoutingEnabled() && claimed.size() < size
+                && credibilityTierCache.isReliable(username)) {
+            List<Long> contested = contestedImageQueue.pick(taskId, username, limit);
+            if (!contested.isEmpty()) {
+                Set<Long> unleased = imageLeaseRepository.lockUnleased(taskId, contested, now).stream()
+                        .map(LeaseCandidate::getImageId)
+                        .collect(Collectors.toSet());
+                long[] imageIds = contested.stream().filter(unleased::contains).mapToLong(Long::longValue).toArray();
+                int reserved = (int) Math.ceil(size * distributionConfig.getContestedRoutingShare());
+                // Contested images left over stay ranked and go to the next reliable user
+                claimFrom(taskId, username, imageIds, Math.min(size, claimed.size() + reserved), claimed, retired);
+            }
+        }
+
+        int afterPriority = Integer.MAX_VALUE;
+        int afterVoteCount = Integer.MAX_VALUE;
+        long afterImageId = -1;
+        for (int round = 0; round < distributionConfig.getMaxClaimRounds() && claimed.size() < size; round++) {
+            List<LeaseCandidate> candidates = imageLeaseRepository.lockClaimable(taskId, now,
+                    afterPriority, afterVoteCount, afterImageId, limit);
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            long[] imageIds = candidates.stream().mapToLong(LeaseCandidate::getImageId).toArray();
+            claimFrom(taskId, username, imageIds, size, claimed, retired);
+
+            if (candidates.size() < limit) {
+                break;
+            }
+            LeaseCandidate last = candidates.get(candidates.size() - 1);
+            afterPriority = last.getPriority();
+            afterVoteCount = last.getVoteCount();
+            afterImageId = last.getImageId();
+        }
+
+        if (!retired.isEmpty()) {
+            imageLeaseRepository.deleteByImageIds(retired);
+        }
+        List<Long> imageIds = new ArrayList<>(claimed);
+        if (!imageIds.isEmpty()) {
+            imageLeaseRepository.lease(imageIds, username, expiresAt);
+            leaseExpiryReaper.track(taskId, imageIds, username, expiresAt);
+        }
+        log.debug("Leased {} of {} requested images of task {} to {}", imageIds.size(), size, taskId, username);
+        return new LeasedBatch(imageIds, expiresAt);
+    }
+
+    /**
+     * Counts the submission's classifications for claim ordering and hands back the images
+     * whose lease was the user's, in one statement and one transaction for the whole submission
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onClassificationSubmitted(ClassificationSubmittedEvent event) {
+        List<Long> imageIds = new ArrayList<>(event.getSwipes().size());
+        for (ClassificationSubmittedEvent.Swipe swipe : event.getSwipes()) {
+            imageIds.add(swipe.getImageId());
+        }
+        if (!imageIds.isEmpty()) {
+            imageLeaseRepository.recordClassifications(imageIds, event.getUsername());
+        }
+    }
+
+    /**
+     * A finalized image leaves circulation for good
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onImageFinalized(ImageFinalizedEvent event) {
+        imageLeaseRepository.deleteByImageIds(List.of(event.getImageId()));
+    }
+
+    /**
+     * Gives newly imported images a lease row, so they start being served
+     */
+    @Scheduled(fixedDelayString = "${distribution.lease-sync-interval-ms:60000}")
+    @Transactional
+    public void syncLeases() {
+        int added = imageLeaseRepository.insertMissing();
+        if (added > 0) {
+            log.info("Added {} images to distribution", added);
+        }
+    }
+
+    /**
+     * Drops prefetch queues of users who stopped swiping; their leases run out on their own
+     */
+    @Scheduled(fixedDelayString = "${distribution.lease-sync-interval-ms:60000}")
+    public void evictIdleQueues() {
+        long cutoff = System.currentTimeMillis() - distributionConfig.getLeaseDurationSeconds() * 1000;
+        prefetchQueues.entrySet().removeIf(entry -> {
+            PrefetchQueue queue = entry.getValue();
+            synchronized (queue) {
+                return queue.lastUsedAt < cutoff && !queue.refilling;
+            }
+        });
+    }
+
+    /**
+     * Snapshot of the prefetch queues and their latency counters.
+     * Batch latency covers the whole request path; refill latency is the background claim alone.
+     */
+    public PrefetchMetrics getPrefetchMetrics() {
+        int queuedImages = 0;
+        for (PrefetchQueue queue : prefetchQueues.values()) {
+            synchronized (queue) {
+                queuedImages += queue.images.size();
+            }
+        }
+        long batches = batchCount.get();
+        long refills = refillCount.get();
+
+        return PrefetchMetrics.builder()
+                .activeQueues(prefetchQueues.size())
+                .queuedImages(queuedImages)
+                .batchCount(batches)
+                .avgBatchMicros(batches > 0 ? batchNanos.get() / batches / 1000 : 0)
+                .servedFromQueueCount(servedFromQueueCount.get())
+                .servedByClaimCount(servedByClaimCount.get())
+                .invalidatedCount(invalidatedCount.get())
+                .refillCount(refills)
+                .avgRefillMillis(refills > 0 ? refillNanos.get() / refills / 1_000_000.0 : 0.0)
+                .refilledImageCount(refilledImageCount.get())
+                .refillFailedCount(refillFailedCount.get())
+                .refillRejectedCount(refillRejectedCount.get())
+                .build();
+    }
+
+    private void requestRefill(PrefetchQueue queue) {
+        synchronized (queue) {
+            if (queue.refilling) {
+                return;
+            }
+            queue.refilling = true;
+        }
+        try {
+            prefetchExecutor.execute(() -> refill(queue));
+        } catch (TaskRejectedException e) {
+            synchronized (queue) {
+                queue.refilling = false;
+            }
+            refillRejectedCount.incrementAndGet();
+            log.debug("Prefetch executor saturated, skipping refill for {}", queue.username);
+        }
+    }
+
+    private void refill(PrefetchQueue queue) {
+        long started = System.nanoTime();
+        try {
+            int missing;
+            synchronized (queue) {
+                missing = distributionConfig.getPrefetchQueueSize() - queue.images.size();
+            }
+            if (missing <= 0) {
+                return;
+            }
+            LeasedBatch batch = claimBatch(queue.taskId, queue.username, missing);
+            synchronized (queue) {
+                for (Long imageId : batch.getImageIds()) {
+                    queue.images.addLast(new PrefetchedImage(imageId, batch.getExpiresAt()));
+                }
+            }
+            refillCount.incrementAndGet();
+            refillNanos.addAndGet(System.nanoTime() - started);
+            refilledImageCount.addAndGet(batch.getImageIds().size());
+        } catch (Exception e) {
+            refillFailedCount.incrementAndGet();
+            log.warn("Refilling the prefetch queue of {} for task {} failed: {}", queue.username, queue.taskId, e.getMessage());
+        } finally {
+            synchronized (queue) {
+                queue.refilling = false;
+            }
+        }
+    }
+
+    private static LocalDateTime earliest(LocalDateTime current, LocalDateTime candidate) {
+        return current == null || candidate.isBefore(current) ? candidate : current;
+    }
+
+    /**
+     * Claims locked candidates in order until the batch is full, collecting retired ones.
+     *
+     * @return Candidates that could be served to someone else: not retired and not claimed
+     */
+    private List<Long> claimFrom(Long taskId, String username, long[] imageIds, int size,
+                                 Set<Long> claimed, List<Long> retired) {
+        long[] active = retiredImageIndex.filterActive(taskId, imageIds);
+        collectMissing(imageIds, active, retired);
+        long[] unseen = seenImageIndex.filterUnseen(username, active);
+
+        List<Long> unclaimed = new ArrayList<>();
+        int next = 0;
+        for (long imageId : active) {
+            boolean isUnseen = next < unseen.length && unseen[next] == imageId;
+            if (isUnseen) {
+                next++;
+            }
+            if (!isUnseen || claimed.size() == size || !claimed.add(imageId)) {
+                unclaimed.add(imageId);
+            }
+        }
+        return unclaimed;
+    }
+
+    /**
+     * Adds the ids missing from {@code kept}, a filtered copy of {@code all} in the same order
+     */
+    private static void collectMissing(long[] all, long[] kept, List<Long> missing) {
+        int next = 0;
+        for (long imageId : all) {
+            if (next < kept.length && kept[next] == imageId) {
+                next++;
+            } else {
+                missing.add(imageId);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LeasedBatch {
+        private final List<Long> imageIds;
+        private final LocalDateTime expiresAt;
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class PrefetchMetrics {
+        private int activeQueues;
+        private int queuedImages;
+        private long batchCount;
+        private long avgBatchMicros;
+        private long servedFromQueueCount;
+        private long servedByClaimCount;
+        private long invalidatedCount;
+        private long refillCount;
+        private double avgRefillMillis;
+        private long refilledImageCount;
+        private long refillFailedCount;
+        private long refillRejectedCount;
+    }
+
+    /**
+     * Leased images waiting to be served to one user, oldest lease first. Guarded by its own monitor.
+     */
+    private static final class PrefetchQueue {
+        private final Long taskId;
+        private final String username;
+        private final Deque<PrefetchedImage> images = new ArrayDeque<>();
+        private boolean refilling;
+        private long lastUsedAt = System.currentTimeMillis();
+
+        PrefetchQueue(Long taskId, String username) {
+            this.taskId = taskId;
+            this.username = username;
+        }
+    }
+
+    private static final class PrefetchedImage {
+        private final Long imageId;
+        private final LocalDateTime expiresAt;
+
+        PrefetchedImage(Long imageId, LocalDateTime expiresAt) {
+            this.imageId = imageId;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
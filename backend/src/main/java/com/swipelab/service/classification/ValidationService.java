@@ -1,5 +1,123 @@
 package com.swipelab.service.classification;
 
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.exception.ValidationException;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks submitted swipes before anything is written.
+ * Every problem in an array of swipes is reported at once, with the index of the swipe, so the
+ * app can drop or fix the bad ones and resend the rest in a single request.
+ */
+@Service
+@RequiredArgsConstructor
 public class ValidationService {
-    
+
+    private final DistributionConfig distributionConfig;
+    private final SeenImageIndex seenImageIndex;
+
+    /**
+     * An array of swipes must not be empty and may hold at most one full image batch
+     * (distribution.max-batch-size); checked before any id is looked up
+     */
+    public void validateSwipeCount(List<ClassificationRequest> swipes) {
+        if (swipes == null || swipes.isEmpty()) {
+            throw new ValidationException("No swipes submitted");
+        }
+        if (swipes.size() > distributionConfig.getMaxBatchSize()) {
+            throw new ValidationException("At most " + distributionConfig.getMaxBatchSize()
+                    + " swipes can be submitted at once, got " + swipes.size());
+        }
+    }
+
+    /**
+     * Validates every swipe in one pass against the images and labels found for their ids.
+     * An image the user already classified is rejected, checked against the user's cached
+     * bitmap in {@link SeenImageIndex} for the whole array at once. A label must be one of
+     * the image task's target species, when the task restricts them.
+     *
+     * @param username User submitting the swipes
+     * @param swipes   Swipes in submission order
+     * @param images   Images found for the swipes' image ids, by id
+     * @param labels   Labels found for the swipes' label ids, by id
+     * @throws ValidationException listing every invalid swipe
+     */
+    public void validateSwipes(String username, List<ClassificationRequest> swipes, Map<Long, Image> images,
+                               Map<Long, Label> labels) {
+        Set<Long> seenImages = seenImages(username, images.keySet());
+        Map<Long, Set<Long>> targetSpeciesByTask = new HashMap<>();
+
+        List<String> errors = new ArrayList<>();
+        Set<Long> swipedImages = new HashSet<>();
+        for (int i = 0; i < swipes.size(); i++) {
+            ClassificationRequest swipe = swipes.get(i);
+            String prefix = "swipes[" + i + "]: ";
+            if (swipe == null) {
+                errors.add(prefix + "swipe is missing");
+                continue;
+            }
+            if (swipe.getImageId() == null) {
+                errors.add(prefix + "image is required");
+            } else if (!images.containsKey(swipe.getImageId())) {
+                errors.add(prefix + "image " + swipe.getImageId() + " not found");
+            } else if (!swipedImages.add(swipe.getImageId())) {
+                errors.add(prefix + "image " + swipe.getImageId() + " is swiped more than once");
+            } else if (seenImages.contains(swipe.getImageId())) {
+                errors.add(prefix + "image " + swipe.getImageId() + " was already classified");
+            }
+            if (swipe.getLabelId() == null) {
+                errors.add(prefix + "label is required");
+            } else if (!labels.containsKey(swipe.getLabelId())) {
+                errors.add(prefix + "label " + swipe.getLabelId() + " not found");
+            } else if (images.containsKey(swipe.getImageId())
+                    && !isTargetSpecies(images.get(swipe.getImageId()).getTask(), swipe.getLabelId(), targetSpeciesByTask)) {
+                errors.add(prefix + "label " + swipe.getLabelId() + " is not a target species of the image's task");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(String.join("; ", errors));
+        }
+    }
+
+    private Set<Long> seenImages(String username, Set<Long> imageIds) {
+        long[] candidates = new long[imageIds.size()];
+        int n = 0;
+        for (Long imageId : imageIds) {
+            candidates[n++] = imageId;
+        }
+        Set<Long> seen = new HashSet<>(imageIds);
+        for (long unseen : seenImageIndex.filterUnseen(username, candidates)) {
+            seen.remove(unseen);
+        }
+        return seen;
+    }
+
+    /**
+     * A task without target species accepts any label. Each task's species are read once per call.
+     */
+    private boolean isTargetSpecies(Task task, Long labelId, Map<Long, Set<Long>> targetSpeciesByTask) {
+        if (task == null) {
+            return true;
+        }
+        Set<Long> species = targetSpeciesByTask.computeIfAbsent(task.getId(), id -> {
+            Set<Long> labelIds = new HashSet<>();
+            for (Label label : task.getTargetSpecies()) {
+                labelIds.add(label.getId());
+            }
+            return labelIds;
+        });
+        return species.isEmpty() || species.contains(labelId);
+    }
 }
@@ -0,0 +1,456 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.service.user.AgreementStatsWriter;
+import com.swipelab.util.ConsensusCalculator;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory vote counters for every image, plain and credibility-weighted, so neither the
+ * consensus nor the majority label of a hot image needs a database round trip or row lock.
+ *
+ * Each image has its own small counter object guarded by its own monitor, so swipes on
+ * different images never contend and a read is a single synchronized snapshot.
+ * Images touched since the last flush are written to image_vote_tallies and
+ * image_vote_summaries in JDBC batches; the stored values are absolute, so a failed flush
+ * is simply retried. On startup the counters are rebuilt from classifications (using the
+ * weight stored with each vote) and the finalized labels already persisted.
+ *
+ * The users' majority agreement counters are kept relative to the majority label stored by
+ * the last flush, and are updated by the same flush: regular users' votes since then are
+ * scored against the current majority, and when an image's majority changed every stored
+ * vote on it is moved from the old majority to the new one. A vote that commits while its
+ * image is being rescored, or is lost from memory in a crash before a flush, stays
+ * misscored until the nightly CredibilityRecomputeJob.
+ *
+ * Assumes a single backend instance, like the credibility update queue.
+ */
+@Component
+@Slf4j
+public class VoteCounterStore implements SmartInitializingSingleton {
+
+    private static final String REBUILD_TALLIES_SQL =
+            "SELECT image_id, label_id, COUNT(*), SUM(COALESCE(vote_weight, 0)) FROM classifications " +
+                    "GROUP BY image_id, label_id";
+
+    private static final String REBUILD_FINALIZED_SQL =
+            "SELECT image_id, finalized_label_id, finalized_at FROM image_vote_summaries " +
+                    "WHERE finalized_label_id IS NOT NULL";
+
+    private static final String REBUILD_MAJORITY_SQL =
+            "SELECT image_id, majority_label_id FROM image_vote_summaries WHERE majority_label_id IS NOT NULL";
+
+    private static final String REGULAR_VOTES_SQL =
+            "SELECT c.user_id, c.label_id FROM classifications c JOIN users u ON u.username = c.user_id " +
+                    "WHERE c.image_id = ? AND u.role <> 'RESEARCHER'";
+
+    // The update and insert statements take their parameters in the same order, so rows the
+    // update found missing are inserted as they are
+    static final String FLUSH_TALLY_SQL =
+            "UPDATE image_vote_tallies SET vote_count = ?, weighted_votes = ? WHERE image_id = ? AND label_id = ?";
+
+    static final String INSERT_TALLY_SQL =
+            "INSERT INTO image_vote_tallies (vote_count, weighted_votes, image_id, label_id) VALUES (?, ?, ?, ?)";
+
+    static final String FLUSH_SUMMARY_SQL =
+            "UPDATE image_vote_summaries SET total_votes = ?, majority_label_id = ?, total_weight = ?, " +
+                    "leading_label_id = ?, leading_weight = ?, finalized_label_id = ?, finalized_at = ?, updated_at = ? " +
+                    "WHERE image_id = ?";
+
+    static final String INSERT_SUMMARY_SQL =
+            "INSERT INTO image_vote_summaries (total_votes, majority_label_id, total_weight, leading_label_id, " +
+                    "leading_weight, finalized_label_id, finalized_at, updated_at, image_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int[] FLUSH_TALLY_TYPES = {Types.INTEGER, Types.DOUBLE, Types.BIGINT, Types.BIGINT};
+    private static final int[] FLUSH_SUMMARY_TYPES = {Types.INTEGER, Types.BIGINT, Types.DOUBLE, Types.BIGINT,
+            Types.DOUBLE, Types.BIGINT, Types.TIMESTAMP, Types.TIMESTAMP, Types.BIGINT};
+
+    private final ConsensusCalculator consensusCalculator;
+    private final CredibilityConfig credibilityConfig;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AgreementStatsWriter agreementStatsWriter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<Long, ImageCounters> counters = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyImages = ConcurrentHashMap.newKeySet();
+
+    public VoteCounterStore(ConsensusCalculator consensusCalculator,
+                            CredibilityConfig credibilityConfig,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            AgreementStatsWriter agreementStatsWriter,
+                            ApplicationEventPublisher eventPublisher) {
+        this.consensusCalculator = consensusCalculator;
+        this.credibilityConfig = credibilityConfig;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.agreementStatsWriter = agreementStatsWriter;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Runs before the web server starts, so no vote can be applied twice
+     * (once from the database snapshot and once live).
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Adds a vote and finalizes the image the moment the task's stopping rule is met.
+     * Finalization is sticky: later votes are still counted but never change the finalized label.
+     *
+     * @param voter Username of a regular user, whose majority agreement is scored at the next
+     *              flush; null for experts, who have no agreement counters
+     * @return The image's consensus after this vote
+     */
+    public ConsensusService.ConsensusState record(Long imageId, Long labelId, double weight,
+                                                  ConsensusCalculator.StoppingRule rule, String voter) {
+        ImageCounters image = counters.computeIfAbsent(imageId, id -> new ImageCounters());
+        ConsensusService.ConsensusState state;
+        synchronized (image) {
+            image.add(labelId, 1, weight);
+            if (voter != null) {
+                image.pendingVotes.add(new PendingVote(voter, labelId));
+            }
+            double posterior = posterior(image);
+            boolean newlyFinalized = false;
+            if (image.finalizedLabelId == null && image.leader != ImageCounters.NO_LEADER
+                    && consensusCalculator.shouldStop(rule, image.weights[image.leader], image.totalWeight,
+                    image.totalVotes, posterior)) {
+                image.finalizedLabelId = image.labelIds[image.leader];
+                image.finalizedAt = LocalDateTime.now();
+                newlyFinalized = true;
+            }
+            state = image.snapshot(consensusCalculator, posterior, newlyFinalized);
+        }
+        dirtyImages.add(imageId);
+        return state;
+    }
+
+    /**
+     * Current consensus of an image; an image without votes has no leader and is not finalized.
+     */
+    public ConsensusService.ConsensusState get(Long imageId) {
+        ImageCounters image = counters.get(imageId);
+        if (image == null) {
+            return new ConsensusService.ConsensusState(null, 0.0, 0.0, 0.0, 0, null, false);
+        }
+        synchronized (image) {
+            return image.snapshot(consensusCalculator, posterior(image), false);
+        }
+    }
+
+    private double posterior(ImageCounters image) {
+        if (image.leader == ImageCounters.NO_LEADER) {
+            return 0.0;
+        }
+        return consensusCalculator.leaderPosterior(image.weights, image.labelCount, image.leader,
+                credibilityConfig.getStoppingFullWeightAccuracy());
+    }
+
+    /**
+     * Writes every image changed since the last flush. On failure the images stay dirty.
+     *
+     * @return number of images written
+     */
+    @Scheduled(fixedDelayString = "${credibility.consensus-flush-interval-ms:1000}")
+    public int flush() {
+        if (dirtyImages.isEmpty()) {
+            return 0;
+        }
+
+        // Taking an image out before reading it means a vote arriving meanwhile re-marks it
+        List<Long> imageIds = new ArrayList<>();
+        for (Iterator<Long> it = dirtyImages.iterator(); it.hasNext(); ) {
+            imageIds.add(it.next());
+            it.remove();
+        }
+
+        List<Object[]> tallyRows = new ArrayList<>();
+        List<Object[]> summaryRows = new ArrayList<>(imageIds.size());
+        List<FlushedImage> flushed = new ArrayList<>(imageIds.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Long imageId : imageIds) {
+            ImageCounters image = counters.get(imageId);
+            synchronized (image) {
+                image.addRows(imageId, now, tallyRows, summaryRows);
+                flushed.add(new FlushedImage(imageId, image.flushedMajority, image.majorityLabelId(), image.pendingVotes));
+                image.pendingVotes = new ArrayList<>();
+                image.flushedMajority = image.majorityLabelId();
+            }
+        }
+
+        AgreementStatsWriter.Deltas deltas = new AgreementStatsWriter.Deltas();
+        Set<Long> flippedImages = new HashSet<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                upsert(FLUSH_SUMMARY_SQL, INSERT_SUMMARY_SQL, summaryRows, FLUSH_SUMMARY_TYPES);
+                upsert(FLUSH_TALLY_SQL, INSERT_TALLY_SQL, tallyRows, FLUSH_TALLY_TYPES);
+                for (FlushedImage image : flushed) {
+                    if (scoreMajority(image, deltas)) {
+                        flippedImages.add(image.imageId);
+                    }
+                }
+                agreementStatsWriter.apply(deltas);
+            });
+        } catch (RuntimeException e) {
+            for (FlushedImage image : flushed) {
+                image.restore(counters.get(image.imageId));
+            }
+            dirtyImages.addAll(imageIds);
+            log.warn("Flushing vote counters of {} images failed, will retry: {}", imageIds.size(), e.getMessage());
+            return 0;
+        }
+
+        if (!deltas.isEmpty()) {
+            eventPublisher.publishEvent(new MajorityAgreementFlushedEvent(Set.copyOf(deltas.getUsernames()),
+                    Set.copyOf(flippedImages)));
+        }
+        log.debug("Flushed vote counters of {} images ({} majority changes)", imageIds.size(), flippedImages.size());
+        return imageIds.size();
+    }
+
+    /**
+     * Batched update; rows it did not find are inserted with a second batch. The flush is the
+     * only writer of these tables, so no other insert can slip in between.
+     */
+    private void upsert(String updateSql, String insertSql, List<Object[]> rows, int[] types) {
+        int[] updated = jdbcTemplate.batchUpdate(updateSql, rows, types);
+        List<Object[]> missing = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (updated == null || i >= updated.length || updated[i] == 0) {
+                missing.add(rows.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql, missing, types);
+        }
+    }
+
+    /**
+     * Scores the image's new regular votes against its current majority. When the majority
+     * changed since the last flush, every stored regular vote is moved from the old majority to
+     * the new one first; the new votes are stored too but were never counted against the old
+     * majority, so that part is added back for them.
+     *
+     * @return true if the image's majority label changed
+     */
+    private boolean scoreMajority(FlushedImage image, AgreementStatsWriter.Deltas deltas) {
+        boolean flipped = !Objects.equals(image.previousMajority, image.majority);
+        if (flipped) {
+            jdbcTemplate.query(REGULAR_VOTES_SQL, rs -> {
+                String username = rs.getString(1);
+                long labelId = rs.getLong(2);
+                addMajorityContribution(deltas, username, labelId, image.previousMajority, -1);
+                addMajorityContribution(deltas, username, labelId, image.majority, 1);
+            }, image.imageId);
+        }
+        for (PendingVote vote : image.votes) {
+            addMajorityContribution(deltas, vote.username, vote.labelId,
+                    flipped ? image.previousMajority : image.majority, 1);
+        }
+        return flipped;
+    }
+
+    private void addMajorityContribution(AgreementStatsWriter.Deltas deltas, String username, long labelId,
+                                         Long majorityLabelId, int sign) {
+        if (majorityLabelId != null) {
+            deltas.addMajority(username, sign, majorityLabelId == labelId ? sign : 0);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    void rebuild() {
+        long started = System.currentTimeMillis();
+        counters.clear();
+        dirtyImages.clear();
+
+        jdbcTemplate.query(REBUILD_TALLIES_SQL, rs -> {
+            ImageCounters image = counters.computeIfAbsent(rs.getLong(1), id -> new ImageCounters());
+            image.add(rs.getLong(2), rs.getInt(3), rs.getDouble(4));
+        });
+
+        // Majority counters are relative to the stored majority; an image whose votes moved it
+        // without a flush (a crash) is rescored by the next flush
+        jdbcTemplate.query(REBUILD_MAJORITY_SQL, rs -> {
+            ImageCounters image = counters.computeIfAbsent(rs.getLong(1), id -> new ImageCounters());
+            image.flushedMajority = rs.getLong(2);
+        });
+        counters.forEach((imageId, image) -> {
+            if (!Objects.equals(image.flushedMajority, image.majorityLabelId())) {
+                dirtyImages.add(imageId);
+            }
+        });
+
+        jdbcTemplate.query(REBUILD_FINALIZED_SQL, rs -> {
+            ImageCounters image = counters.computeIfAbsent(rs.getLong(1), id -> new ImageCounters());
+            image.finalizedLabelId = rs.getLong(2);
+            Timestamp finalizedAt = rs.getTimestamp(3);
+            image.finalizedAt = finalizedAt != null ? finalizedAt.toLocalDateTime() : null;
+        });
+
+        log.info("Rebuilt consensus counters for {} images in {} ms", counters.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Vote counters of one image. Images rarely get more than a handful of labels, so the
+     * per-label cells are parallel arrays scanned linearly. Guarded by its own monitor.
+     */
+    static final class ImageCounters {
+        static final int NO_LEADER = -1;
+
+        private long[] labelIds = new long[2];
+        private double[] weights = new double[2];
+        private int[] counts = new int[2];
+        private int labelCount;
+
+        private int totalVotes;
+        private double totalWeight;
+        private int leader = NO_LEADER;
+
+        private Long finalizedLabelId;
+        private LocalDateTime finalizedAt;
+
+        /**
+         * Majority label as of the last flush, which the stored majority counters refer to
+         */
+        private Long flushedMajority;
+
+        /**
+         * Regular users' votes since the last flush, not yet scored against the majority
+         */
+        private List<PendingVote> pendingVotes = new ArrayList<>();
+
+        void add(long labelId, int voteCount, double weight) {
+            int cell = cell(labelId);
+            counts[cell] += voteCount;
+            weights[cell] += weight;
+            totalVotes += voteCount;
+            totalWeight += weight;
+            // Weights only grow, so only the label that was just voted for can take the lead
+            if (leader == NO_LEADER || weights[cell] > weights[leader]) {
+                leader = cell;
+            }
+        }
+
+        /**
+         * Label with more than half of at least 2 plain votes, or null when there is none
+         */
+        Long majorityLabelId() {
+            if (totalVotes < 2) {
+                return null;
+            }
+            for (int cell = 0; cell < labelCount; cell++) {
+                if (counts[cell] * 2 > totalVotes) {
+                    return labelIds[cell];
+                }
+            }
+            return null;
+        }
+
+        ConsensusService.ConsensusState snapshot(ConsensusCalculator calculator, double posterior, boolean newlyFinalized) {
+            if (leader == NO_LEADER) {
+                return new ConsensusService.ConsensusState(null, 0.0, 0.0, 0.0, totalVotes, finalizedLabelId, false);
+            }
+            return new ConsensusService.ConsensusState(labelIds[leader],
+                    calculator.weightedShare(weights[leader], totalWeight), posterior,
+                    calculator.voteEntropy(weights, labelCount, totalWeight),
+                    totalVotes, finalizedLabelId, newlyFinalized);
+        }
+
+        void addRows(Long imageId, Timestamp now, List<Object[]> tallyRows, List<Object[]> summaryRows) {
+            for (int cell = 0; cell < labelCount; cell++) {
+                tallyRows.add(new Object[]{counts[cell], weights[cell], imageId, labelIds[cell]});
+            }
+            summaryRows.add(new Object[]{
+                    totalVotes,
+                    majorityLabelId(),
+                    totalWeight,
+                    leader != NO_LEADER ? labelIds[leader] : null,
+                    leader != NO_LEADER ? weights[leader] : 0.0,
+                    finalizedLabelId,
+                    finalizedAt != null ? Timestamp.valueOf(finalizedAt) : null,
+                    now,
+                    imageId
+            });
+        }
+
+        private int cell(long labelId) {
+            for (int cell = 0; cell < labelCount; cell++) {
+                if (labelIds[cell] == labelId) {
+                    return cell;
+                }
+            }
+            if (labelCount == labelIds.length) {
+                labelIds = Arrays.copyOf(labelIds, labelCount << 1);
+                weights = Arrays.copyOf(weights, labelCount << 1);
+                counts = Arrays.copyOf(counts, labelCount << 1);
+            }
+            labelIds[labelCount] = labelId;
+            return labelCount++;
+        }
+    }
+
+    private static final class PendingVote {
+        private final String username;
+        private final long labelId;
+
+        PendingVote(String username, long labelId) {
+            this.username = username;
+            this.labelId = labelId;
+        }
+    }
+
+    /**
+     * What a flush took out of an image's counters, so a failed flush can put it back
+     */
+    private static final class FlushedImage {
+        private final Long imageId;
+        private final Long previousMajority;
+        private final Long majority;
+        private final List<PendingVote> votes;
+
+        FlushedImage(Long imageId, Long previousMajority, Long majority, List<PendingVote> votes) {
+            this.imageId = imageId;
+            this.previousMajority = previousMajority;
+            this.majority = majority;
+            this.votes = votes;
+        }
+
+        void restore(ImageCounters image) {
+            synchronized (image) {
+                image.flushedMajority = previousMajority;
+                image.pendingVotes.addAll(0, votes);
+            }
+        }
+    }
+}
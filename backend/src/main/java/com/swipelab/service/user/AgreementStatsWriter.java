@@ -0,0 +1,147 @@
+package com.swipelab.service.user;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Applies changes to the agreement accumulators as atomic increments in the database.
+ * Nothing is read back first, so concurrent submissions by the same user, or an expert label
+ * fanning out to users who are swiping at the same time, never overwrite each other's counts,
+ * and two first writes for a user cannot race into a duplicate key.
+ *
+ * Rows are written in username (and label) order, so transactions touching the same users
+ * take their row locks in the same order and cannot deadlock each other.
+ */
+@Component
+@RequiredArgsConstructor
+public class AgreementStatsWriter {
+
+    static final String UPSERT_STATS_SQL =
+            "INSERT INTO user_agreement_stats (username, expert_compared_count, expert_agreed_count, " +
+                    "majority_compared_count, majority_agreed_count, updated_at) VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (username) DO UPDATE SET " +
+                    "expert_compared_count = user_agreement_stats.expert_compared_count + EXCLUDED.expert_compared_count, " +
+                    "expert_agreed_count = user_agreement_stats.expert_agreed_count + EXCLUDED.expert_agreed_count, " +
+                    "majority_compared_count = user_agreement_stats.majority_compared_count + EXCLUDED.majority_compared_count, " +
+                    "majority_agreed_count = user_agreement_stats.majority_agreed_count + EXCLUDED.majority_agreed_count, " +
+                    "updated_at = EXCLUDED.updated_at";
+
+    static final String UPSERT_USER_LABEL_SQL =
+            "INSERT INTO user_agreement_user_labels (username, label_id, label_count) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (username, label_id) DO UPDATE SET " +
+                    "label_count = user_agreement_user_labels.label_count + EXCLUDED.label_count";
+
+    static final String UPSERT_EXPERT_LABEL_SQL =
+            "INSERT INTO user_agreement_expert_labels (username, label_id, label_count) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (username, label_id) DO UPDATE SET " +
+                    "label_count = user_agreement_expert_labels.label_count + EXCLUDED.label_count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Adds every user's changes in three batched statements: the counters first (which also
+     * creates missing rows and locks them), then the two label marginals.
+     */
+    public void apply(Deltas deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> statsRows = new ArrayList<>(deltas.byUser.size());
+        List<Object[]> userLabelRows = new ArrayList<>();
+        List<Object[]> expertLabelRows = new ArrayList<>();
+        deltas.byUser.forEach((username, delta) -> {
+            statsRows.add(new Object[]{username, delta.expertCompared, delta.expertAgreed,
+                    delta.majorityCompared, delta.majorityAgreed, now});
+            delta.userLabelCounts.forEach((labelId, count) ->
+                    userLabelRows.add(new Object[]{username, labelId, count}));
+            delta.expertLabelCounts.forEach((labelId, count) ->
+                    expertLabelRows.add(new Object[]{username, labelId, count}));
+        });
+
+        jdbcTemplate.batchUpdate(UPSERT_STATS_SQL, statsRows);
+        if (!userLabelRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_USER_LABEL_SQL, userLabelRows);
+            jdbcTemplate.batchUpdate(UPSERT_EXPERT_LABEL_SQL, expertLabelRows);
+        }
+    }
+
+    /**
+     * Creates the user's row if it is missing and locks it until the end of the transaction,
+     * for paths that rewrite the accumulators instead of adding to them
+     */
+    public void lock(String username) {
+        jdbcTemplate.update(UPSERT_STATS_SQL, username, 0, 0, 0, 0, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Accumulator changes collected while classifications are recorded, merged per user
+     */
+    public static final class Deltas {
+        private final Map<String, UserDelta> byUser = new TreeMap<>();
+
+        /**
+         * One more image the user shares with an expert
+         */
+        public void addExpertComparison(String username, Long userLabelId, Long expertLabelId) {
+            UserDelta delta = byUser.computeIfAbsent(username, u -> new UserDelta());
+            delta.expertCompared++;
+            if (userLabelId.equals(expertLabelId)) {
+                delta.expertAgreed++;
+            }
+            delta.userLabelCounts.merge(userLabelId, 1, Integer::sum);
+            delta.expertLabelCounts.merge(expertLabelId, 1, Integer::sum);
+        }
+
+        /**
+         * Change in the user's majority counters; a change of zero is not written
+         */
+        public void addMajority(String username, int compared, int agreed) {
+            if (compared == 0 && agreed == 0) {
+                return;
+            }
+            UserDelta delta = byUser.computeIfAbsent(username, u -> new UserDelta());
+            delta.majorityCompared += compared;
+            delta.majorityAgreed += agreed;
+        }
+
+        public boolean isEmpty() {
+            return byUser.isEmpty();
+        }
+
+        /**
+         * Users whose accumulators change
+         */
+        public Set<String> getUsernames() {
+            return byUser.keySet();
+        }
+
+        UserDelta get(String username) {
+            return byUser.get(username);
+        }
+    }
+
+    /**
+     * Change in one user's accumulators; label maps are sorted so label rows are locked in order
+     */
+    @Getter
+    static final class UserDelta {
+        private int expertCompared;
+        private int expertAgreed;
+        private int majorityCompared;
+        private int majorityAgreed;
+        private final Map<Long, Integer> userLabelCounts = new TreeMap<>();
+        private final Map<Long, Integer> expertLabelCounts = new TreeMap<>();
+    }
+}
@@ -0,0 +1,157 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.AsyncConfig;
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.UserAgreementStats;
+import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.UserAgreementStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Recomputes the stored credibility scores of every regular user who classified an image.
+ * The users are split into chunks that run in parallel on the recalculation executor,
+ * each in its own short transaction with a single JDBC batch update of the score columns,
+ * so a popular image never holds locks on hundreds of user rows at once.
+ * Scores are derived from the agreement accumulators and written as absolute values,
+ * which makes a chunk safe to retry after a deadlock or lock timeout.
+ */
+@Service
+@Slf4j
+public class CredibilityRecalculationJob {
+
+    static final String UPDATE_SCORES_SQL =
+            "UPDATE users SET agreement_with_experts = COALESCE(?, agreement_with_experts), " +
+                    "majority_agreement_score = ?, credibility_score = ?, updated_at = CURRENT_TIMESTAMP " +
+                    "WHERE username = ?";
+
+    static final int[] UPDATE_SCORES_TYPES = {Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.VARCHAR};
+
+    private final ClassificationRepository classificationRepository;
+    private final UserAgreementStatsRepository userAgreementStatsRepository;
+    private final CredibilityService credibilityService;
+    private final CredibilityConfig credibilityConfig;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+
+    public CredibilityRecalculationJob(ClassificationRepository classificationRepository,
+                                       UserAgreementStatsRepository userAgreementStatsRepository,
+                                       CredibilityService credibilityService,
+                                       CredibilityConfig credibilityConfig,
+                                       JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       @Qualifier(AsyncConfig.RECALCULATION_EXECUTOR) Executor executor) {
+        this.classificationRepository = classificationRepository;
+        this.userAgreementStatsRepository = userAgreementStatsRepository;
+        this.credibilityService = credibilityService;
+        this.credibilityConfig = credibilityConfig;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+    }
+
+    /**
+     * Recalculates credibility for all users who classified a specific image.
+     * Called when an expert classifies an image - need to update all regular users' scores.
+     * Blocks until every chunk has been written.
+     *
+     * @param imageId The image that was classified by an expert
+     * @return number of users recalculated
+     */
+    public int recalculateCredibilityForImage(Long imageId) {
+        List<String> usernames = classificationRepository.findNonExpertUsernamesByImageId(imageId);
+        if (usernames.isEmpty()) {
+            return 0;
+        }
+
+        List<List<String>> chunks = partition(usernames, Math.max(1, credibilityConfig.getRecalculationChunkSize()));
+        log.info("Recalculating credibility for {} users who classified image {} in {} chunks",
+                usernames.size(), imageId, chunks.size());
+
+        List<CompletableFuture<Void>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.runAsync(() -> runChunkWithRetry(chunk), executor))
+                .collect(Collectors.toList());
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // Completed chunks stay committed; the failed ones are picked up by the next recompute
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+
+        log.info("Recalculation complete for {} users", usernames.size());
+        return usernames.size();
+    }
+
+    private void runChunkWithRetry(List<String> usernames) {
+        int maxAttempts = Math.max(1, credibilityConfig.getRecalculationMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> updateChunk(usernames));
+                return;
+            } catch (TransientDataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Credibility chunk of {} users failed (attempt {}/{}), retrying: {}",
+                        usernames.size(), attempt, maxAttempts, e.getMessage());
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void updateChunk(List<String> usernames) {
+        Map<String, UserAgreementStats> statsByUser = userAgreementStatsRepository.findAllById(usernames).stream()
+                .collect(Collectors.toMap(UserAgreementStats::getUsername, Function.identity()));
+
+        List<Object[]> rows = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            UserAgreementStats stats = statsByUser.get(username);
+            rows.add(new Object[]{
+                    credibilityService.calculateExpertAgreement(stats),
+                    credibilityService.calculateMajorityAgreement(stats),
+                    credibilityService.calculateCredibilityScore(stats),
+                    username
+            });
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_SCORES_SQL, rows, UPDATE_SCORES_TYPES);
+    }
+
+    private void backOff(int attempt) {
+        long delay = credibilityConfig.getRecalculationRetryBackoffMs() * attempt;
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying credibility recalculation", e);
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>((items.size() + size - 1) / size);
+        for (int from = 0; from < items.size(); from += size) {
+            chunks.add(items.subList(from, Math.min(from + size, items.size())));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,464 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.JobCheckpoint;
+import com.swipelab.repository.JobCheckpointRepository;
+import com.swipelab.util.CredibilityCalculator;
+import com.swipelab.util.LabelIndex;
+import com.swipelab.util.LongIntHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Nightly full rebuild of every regular user's agreement accumulators and credibility scores.
+ * Repairs drift left by classifications that bypassed the incremental path.
+ *
+ * All classifications are streamed once, ordered by user, and folded into per-user counters
+ * against two in-memory reference maps: each image's first expert label and its current
+ * majority label (from image_vote_summaries, the same source the incremental path uses).
+ * Finished users are handed over in chunks to a fork-join pool that computes the scores with
+ * {@link CredibilityCalculator} and writes them with JDBC batches, one transaction per chunk.
+ *
+ * Progress is checkpointed as the highest username below which every chunk has been written,
+ * so a restarted run resumes from there. Rows updated by the incremental path after the run
+ * started are left alone, as they already reflect newer classifications than the stream saw.
+ */
+@Service
+@Slf4j
+public class CredibilityRecomputeJob {
+
+    static final String JOB_NAME = "credibility-full-recompute";
+
+    private static final String LABEL_IDS_SQL = "SELECT id FROM labels";
+
+    private static final String EXPERT_LABELS_SQL =
+            "SELECT c.image_id, c.label_id FROM classifications c " +
+                    "JOIN users u ON u.username = c.user_id " +
+                    "WHERE u.role = 'RESEARCHER' ORDER BY c.id";
+
+    private static final String MAJORITY_LABELS_SQL =
+            "SELECT image_id, majority_label_id FROM image_vote_summaries WHERE majority_label_id IS NOT NULL";
+
+    static final String USER_CLASSIFICATIONS_SQL =
+            "SELECT c.user_id, c.image_id, c.label_id FROM classifications c " +
+                    "JOIN users u ON u.username = c.user_id " +
+                    "WHERE u.role <> 'RESEARCHER' AND c.user_id > ? ORDER BY c.user_id, c.id";
+
+    static final String UPSERT_STATS_SQL =
+            "INSERT INTO user_agreement_stats (username, expert_compared_count, expert_agreed_count, " +
+                    "majority_compared_count, majority_agreed_count, updated_at) VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (username) DO UPDATE SET " +
+                    "expert_compared_count = EXCLUDED.expert_compared_count, " +
+                    "expert_agreed_count = EXCLUDED.expert_agreed_count, " +
+                    "majority_compared_count = EXCLUDED.majority_compared_count, " +
+                    "majority_agreed_count = EXCLUDED.majority_agreed_count, " +
+                    "updated_at = EXCLUDED.updated_at " +
+                    "WHERE user_agreement_stats.updated_at IS NULL OR user_agreement_stats.updated_at < ?";
+
+    static final String DELETE_USER_LABELS_SQL = "DELETE FROM user_agreement_user_labels WHERE username = ?";
+    static final String DELETE_EXPERT_LABELS_SQL = "DELETE FROM user_agreement_expert_labels WHERE username = ?";
+    static final String INSERT_USER_LABEL_SQL =
+            "INSERT INTO user_agreement_user_labels (username, label_id, label_count) VALUES (?, ?, ?)";
+    static final String INSERT_EXPERT_LABEL_SQL =
+            "INSERT INTO user_agreement_expert_labels (username, label_id, label_count) VALUES (?, ?, ?)";
+
+    static final String UPDATE_CHECKPOINT_SQL =
+            "UPDATE job_checkpoints SET last_key = ?, processed_count = ?, updated_at = ? WHERE job_name = ?";
+
+    private static final int NO_LABEL = -1;
+
+    private final JobCheckpointRepository checkpointRepository;
+    private final CredibilityCalculator credibilityCalculator;
+    private final CredibilityConfig credibilityConfig;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CredibilityRecomputeJob(JobCheckpointRepository checkpointRepository,
+                                   CredibilityCalculator credibilityCalculator,
+                                   CredibilityConfig credibilityConfig,
+                                   JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager) {
+        this.checkpointRepository = checkpointRepository;
+        this.credibilityCalculator = credibilityCalculator;
+        this.credibilityConfig = credibilityConfig;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${credibility.recompute-cron:0 30 3 * * *}")
+    public void runScheduled() {
+        run();
+    }
+
+    /**
+     * Runs (or resumes) the full recompute. Returns immediately if a run is already active.
+     *
+     * @return number of users written by this invocation
+     */
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Full credibility recompute already running, skipping");
+            return 0;
+        }
+        try {
+            return recompute();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long recompute() {
+        JobCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME)
+                .orElseGet(() -> JobCheckpoint.builder().jobName(JOB_NAME).build());
+
+        if (checkpoint.isInProgress()) {
+            log.info("Resuming full credibility recompute started at {} after user '{}'",
+                    checkpoint.getRunStartedAt(), checkpoint.getLastKey());
+        } else {
+            checkpoint.setRunStartedAt(LocalDateTime.now());
+            checkpoint.setLastKey(null);
+            checkpoint.setProcessedCount(0L);
+            checkpoint.setCompletedAt(null);
+            log.info("Starting full credibility recompute");
+        }
+        checkpoint = checkpointRepository.save(checkpoint);
+
+        long started = System.currentTimeMillis();
+        ReferenceData reference = readTransaction.execute(status -> loadReferenceData());
+        String resumeAfter = checkpoint.getLastKey() != null ? checkpoint.getLastKey() : "";
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, credibilityConfig.getRecomputeParallelism()));
+        ChunkWriter writer = new ChunkWriter(pool, checkpoint, reference.labelIndex);
+        try {
+            readTransaction.executeWithoutResult(status -> streamUsers(reference, resumeAfter, writer));
+            writer.awaitCompletion();
+        } finally {
+            pool.shutdown();
+        }
+
+        checkpoint.setLastKey(writer.getWatermarkKey());
+        checkpoint.setProcessedCount(writer.getWatermarkCount());
+        checkpoint.setCompletedAt(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+
+        log.info("Full credibility recompute complete: {} users in {} ms",
+                writer.getWrittenUsers(), System.currentTimeMillis() - started);
+        return writer.getWrittenUsers();
+    }
+
+    private ReferenceData loadReferenceData() {
+        JdbcTemplate streaming = streamingTemplate();
+
+        LabelIndex labelIndex = new LabelIndex();
+        streaming.query(LABEL_IDS_SQL, rs -> {
+            labelIndex.indexOf(rs.getLong(1));
+        });
+
+        // First expert label per image
+        LongIntHashMap expertLabels = new LongIntHashMap(1 << 16, NO_LABEL);
+        streaming.query(EXPERT_LABELS_SQL, rs -> {
+            int label = labelIndex.find(rs.getLong(2));
+            if (label != NO_LABEL) {
+                expertLabels.putIfAbsent(rs.getLong(1), label);
+            }
+        });
+
+        LongIntHashMap majorityLabels = new LongIntHashMap(1 << 16, NO_LABEL);
+        streaming.query(MAJORITY_LABELS_SQL, rs -> {
+            int label = labelIndex.find(rs.getLong(2));
+            if (label != NO_LABEL) {
+                majorityLabels.put(rs.getLong(1), label);
+            }
+        });
+
+        log.info("Loaded reference data: {} labels, {} expert-labeled images, {} images with a majority",
+                labelIndex.size(), expertLabels.size(), majorityLabels.size());
+        return new ReferenceData(labelIndex, expertLabels, majorityLabels);
+    }
+
+    private void streamUsers(ReferenceData reference, String resumeAfter, ChunkWriter writer) {
+        int chunkSize = Math.max(1, credibilityConfig.getRecomputeChunkSize());
+        int labelCount = reference.labelIndex.size();
+        List<UserAccumulator> chunk = new ArrayList<>(chunkSize);
+        UserAccumulator[] current = new UserAccumulator[1];
+
+        streamingTemplate().query(USER_CLASSIFICATIONS_SQL, rs -> {
+            String username = rs.getString(1);
+            if (current[0] == null || !current[0].getUsername().equals(username)) {
+                if (current[0] != null) {
+                    chunk.add(current[0]);
+                    if (chunk.size() >= chunkSize) {
+                        writer.submit(new ArrayList<>(chunk));
+                        chunk.clear();
+                    }
+                }
+                current[0] = new UserAccumulator(username, labelCount);
+            }
+
+            int label = reference.labelIndex.find(rs.getLong(3));
+            if (label != NO_LABEL) {
+                current[0].add(rs.getLong(2), label, reference.expertLabels, reference.majorityLabels);
+            }
+        }, resumeAfter);
+
+        if (current[0] != null) {
+            chunk.add(current[0]);
+        }
+        if (!chunk.isEmpty()) {
+            writer.submit(chunk);
+        }
+    }
+
+    private void writeChunk(List<UserAccumulator> users, LabelIndex labelIndex, LocalDateTime runStartedAt) {
+        writeTransaction.executeWithoutResult(status -> {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            Timestamp runStart = Timestamp.valueOf(runStartedAt);
+
+            List<Object[]> statsRows = new ArrayList<>(users.size());
+            for (UserAccumulator user : users) {
+                statsRows.add(new Object[]{
+                        user.getUsername(),
+                        user.getExpertComparedCount(), user.getExpertAgreedCount(),
+                        user.getMajorityComparedCount(), user.getMajorityAgreedCount(),
+                        now, runStart
+                });
+            }
+            int[] upserted = jdbcTemplate.batchUpdate(UPSERT_STATS_SQL, statsRows);
+
+            // Only users whose stats row was actually replaced get their marginals and scores rewritten
+            List<Object[]> deleteRows = new ArrayList<>();
+            List<Object[]> userLabelRows = new ArrayList<>();
+            List<Object[]> expertLabelRows = new ArrayList<>();
+            List<Object[]> scoreRows = new ArrayList<>();
+            for (int i = 0; i < users.size(); i++) {
+                if (upserted[i] == 0) {
+                    continue;
+                }
+                UserAccumulator user = users.get(i);
+                deleteRows.add(new Object[]{user.getUsername()});
+                addLabelRows(userLabelRows, user.getUsername(), user.getUserLabelCounts(), labelIndex);
+                addLabelRows(expertLabelRows, user.getUsername(), user.getExpertLabelCounts(), labelIndex);
+
+                Double kappa = user.getExpertComparedCount() > 0
+                        ? credibilityCalculator.calculateCohenKappa(user.getExpertAgreedCount(),
+                        user.getExpertComparedCount(), user.getUserLabelCounts(), user.getExpertLabelCounts())
+                        : null;
+                double majority = credibilityCalculator.calculateMajorityAgreementRatio(
+                        user.getMajorityAgreedCount(), user.getMajorityComparedCount());
+                double credibility = credibilityCalculator.calculateCredibilityScore(
+                        kappa, user.getExpertComparedCount(), majority, user.getMajorityComparedCount(),
+                        credibilityConfig.getCredibilityPriorComparisons());
+                scoreRows.add(new Object[]{kappa, majority, credibility, user.getUsername()});
+            }
+
+            if (scoreRows.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(DELETE_USER_LABELS_SQL, deleteRows);
+            jdbcTemplate.batchUpdate(DELETE_EXPERT_LABELS_SQL, deleteRows);
+            jdbcTemplate.batchUpdate(INSERT_USER_LABEL_SQL, userLabelRows);
+            jdbcTemplate.batchUpdate(INSERT_EXPERT_LABEL_SQL, expertLabelRows);
+            jdbcTemplate.batchUpdate(CredibilityRecalculationJob.UPDATE_SCORES_SQL, scoreRows,
+                    CredibilityRecalculationJob.UPDATE_SCORES_TYPES);
+        });
+    }
+
+    private void addLabelRows(List<Object[]> rows, String username, int[] counts, LabelIndex labelIndex) {
+        for (int label = 0; label < counts.length; label++) {
+            if (counts[label] > 0) {
+                rows.add(new Object[]{username, labelIndex.labelIdAt(label), counts[label]});
+            }
+        }
+    }
+
+    /**
+     * JdbcTemplate that fetches rows in blocks instead of buffering whole result sets.
+     * PostgreSQL only honours the fetch size inside a transaction.
+     */
+    JdbcTemplate streamingTemplate() {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(credibilityConfig.getRecomputeFetchSize());
+        return streaming;
+    }
+
+    private static class ReferenceData {
+        private final LabelIndex labelIndex;
+        private final LongIntHashMap expertLabels;
+        private final LongIntHashMap majorityLabels;
+
+        private ReferenceData(LabelIndex labelIndex, LongIntHashMap expertLabels, LongIntHashMap majorityLabels) {
+            this.labelIndex = labelIndex;
+            this.expertLabels = expertLabels;
+            this.majorityLabels = majorityLabels;
+        }
+    }
+
+    /**
+     * Folds one user's classifications, oldest first, into the same counters the
+     * incremental path maintains:
+     * - expert counters and label marginals from the first classification of each image
+     *   that has an expert label
+     * - majority counters from every classification on an image that has a majority
+     */
+    @lombok.Getter
+    static class UserAccumulator {
+        private final String username;
+        private final int[] userLabelCounts;
+        private final int[] expertLabelCounts;
+        private int expertComparedCount;
+        private int expertAgreedCount;
+        private int majorityComparedCount;
+        private int majorityAgreedCount;
+
+        @lombok.Getter(lombok.AccessLevel.NONE)
+        private final LongIntHashMap seenImages = new LongIntHashMap(16, 0);
+
+        UserAccumulator(String username, int labelCount) {
+            this.username = username;
+            this.userLabelCounts = new int[labelCount];
+            this.expertLabelCounts = new int[labelCount];
+        }
+
+        void add(long imageId, int label, LongIntHashMap expertLabels, LongIntHashMap majorityLabels) {
+            int majorityLabel = majorityLabels.get(imageId);
+            if (majorityLabel != NO_LABEL) {
+                majorityComparedCount++;
+                if (label == majorityLabel) {
+                    majorityAgreedCount++;
+                }
+            }
+
+            if (seenImages.containsKey(imageId)) {
+                return;
+            }
+            seenImages.put(imageId, 1);
+
+            int expertLabel = expertLabels.get(imageId);
+            if (expertLabel != NO_LABEL) {
+                expertComparedCount++;
+                if (label == expertLabel) {
+                    expertAgreedCount++;
+                }
+                userLabelCounts[label]++;
+                expertLabelCounts[expertLabel]++;
+            }
+        }
+    }
+
+    /**
+     * Writes chunks on the fork-join pool with a bounded number in flight, and advances the
+     * checkpoint only past chunks whose predecessors have all been written, since chunks
+     * finish out of order.
+     */
+    private final class ChunkWriter {
+        private final ForkJoinPool pool;
+        private final JobCheckpoint checkpoint;
+        private final LabelIndex labelIndex;
+        private final int maxInFlight;
+        private final Semaphore inFlight;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Guarded by this
+        private final Map<Long, List<UserAccumulator>> finishedOutOfOrder = new TreeMap<>();
+        private long nextSequence;
+        private long watermarkSequence;
+        private String watermarkKey;
+        private long watermarkCount;
+        private long writtenUsers;
+
+        private ChunkWriter(ForkJoinPool pool, JobCheckpoint checkpoint, LabelIndex labelIndex) {
+            this.pool = pool;
+            this.checkpoint = checkpoint;
+            this.labelIndex = labelIndex;
+            this.maxInFlight = pool.getParallelism() * 2;
+            this.inFlight = new Semaphore(maxInFlight);
+            this.watermarkKey = checkpoint.getLastKey();
+            this.watermarkCount = checkpoint.getProcessedCount();
+        }
+
+        void submit(List<UserAccumulator> chunk) {
+            rethrowFailure();
+            inFlight.acquireUninterruptibly();
+            long sequence;
+            synchronized (this) {
+                sequence = nextSequence++;
+            }
+
+            pool.execute(() -> {
+                try {
+                    writeChunk(chunk, labelIndex, checkpoint.getRunStartedAt());
+                    onWritten(sequence, chunk);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        void awaitCompletion() {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+            rethrowFailure();
+        }
+
+        private synchronized void onWritten(long sequence, List<UserAccumulator> chunk) {
+            writtenUsers += chunk.size();
+            finishedOutOfOrder.put(sequence, chunk);
+
+            boolean advanced = false;
+            List<UserAccumulator> next;
+            while ((next = finishedOutOfOrder.remove(watermarkSequence)) != null) {
+                watermarkSequence++;
+                watermarkKey = next.get(next.size() - 1).getUsername();
+                watermarkCount += next.size();
+                advanced = true;
+            }
+
+            if (advanced) {
+                jdbcTemplate.update(UPDATE_CHECKPOINT_SQL, watermarkKey, watermarkCount,
+                        Timestamp.valueOf(LocalDateTime.now()), JOB_NAME);
+            }
+        }
+
+        private void rethrowFailure() {
+            Throwable e = failure.get();
+            if (e != null) {
+                throw new IllegalStateException("Full credibility recompute failed; it will resume from user '"
+                        + getWatermarkKey() + "'", e);
+            }
+        }
+
+        synchronized String getWatermarkKey() {
+            return watermarkKey;
+        }
+
+        synchronized long getWatermarkCount() {
+            return watermarkCount;
+        }
+
+        synchronized long getWrittenUsers() {
+            return writtenUsers;
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package com.swipelab.service.user;
 
+import com.swipelab.config.CredibilityConfig;
 import com.swipelab.model.entity.Classification;
-import com.swipelab.model.entity.Label;
 import com.swipelab.model.entity.User;
+import com.swipelab.model.entity.UserAgreementStats;
 import com.swipelab.model.enums.UserRole;
 import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.UserAgreementStatsRepository;
 import com.swipelab.repository.UserRepository;
+import com.swipelab.repository.projection.ClassificationTuple;
+import com.swipelab.repository.projection.UsernameCount;
 import com.swipelab.util.CredibilityCalculator;
+import com.swipelab.util.LabelIndex;
+import com.swipelab.util.LongIntHashMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -22,13 +36,18 @@ public class CredibilityService {
 
     private final ClassificationRepository classificationRepository;
     private final UserRepository userRepository;
+    private final UserAgreementStatsRepository userAgreementStatsRepository;
+    private final AgreementStatsWriter agreementStatsWriter;
     private final CredibilityCalculator credibilityCalculator;
+    private final CredibilityConfig credibilityConfig;
 
     /**
      * Updates a user's credibility score after they submit a classification.
+     * Runs off the request path via {@link CredibilityUpdateQueue}, after the submission committed.
      * This method:
      * 1. Compares with expert classifications (Cohen's Kappa)
      * 2. Compares with majority consensus
+     * 3. Combines both into the credibility score that weighs the user's next votes
      *
      * @param username The user who just classified an image
      * @param imageId The image that was classified
@@ -46,74 +65,121 @@ public class CredibilityService {
 
         log.info("Updating credibility for user: {} after classifying image: {}", username, imageId);
 
+        UserAgreementStats stats = userAgreementStatsRepository.findById(username).orElse(null);
+
         // Update expert agreement score (Cohen's Kappa)
-        updateExpertAgreementScore(user);
+        updateExpertAgreementScore(user, stats);
 
         // Update majority consensus agreement
-        updateMajorityAgreementScore(user, imageId);
+        updateMajorityAgreementScore(user, stats);
+
+        user.setCredibilityScore(calculateCredibilityScore(stats));
 
         // Save updated user
         userRepository.save(user);
 
-        log.info("Credibility update complete for user: {} - Expert Agreement: {}, Majority Agreement: {}",
-                username, user.getAgreementWithExperts(), user.getMajorityAgreementScore());
+        log.info("Credibility update complete for user: {} - Expert Agreement: {}, Majority Agreement: {}, Credibility: {}",
+                username, user.getAgreementWithExperts(), user.getMajorityAgreementScore(), user.getCredibilityScore());
     }
 
     /**
-     * Recalculates credibility for all users who classified a specific image.
-     * Called when an expert classifies an image - need to update all regular users' scores.
+     * Updates the agreement accumulators after a user's classifications have been inserted.
+     * Must run in the same transaction as the insert so the counters never drift
+     * from the classifications table. The changes of the whole submission are merged per user
+     * and added to the stored counters atomically in one batch (see {@link AgreementStatsWriter}),
+     * never read and written back; the classifications they depend on are read with one query
+     * per kind, however many images were swiped.
+     * - Regular user: compared against the image's reference (first) expert label, if any
+     * - Expert: if this is the first expert label on the image, every regular user
+     *   who already classified the image gets a new comparison
+     * Majority counters are not touched here; VoteCounterStore scores votes against the
+     * image's majority when it flushes its counters.
      *
-     * @param imageId The image that was classified by an expert
+     * @param classifications Classifications just saved for one user, on distinct images
+     * @return Images whose other voters' accumulators changed too, so every voter on them
+     *         needs a credibility recompute rather than just the submitter
      */
     @Transactional
-    public void recalculateCredibilityForImage(Long imageId) {
-        log.info("Recalculating credibility for all users who classified image: {}", imageId);
-
-        // Get all non-expert classifications for this image
-        List<Classification> classifications = classificationRepository.findNonExpertClassificationsByImageId(imageId);
-
-        // Get unique users
-        List<User> users = classifications.stream()
-                .map(Classification::getUser)
-                .distinct()
-                .collect(Collectors.toList());
-
-        // Update each user's credibility
-        for (User user : users) {
-            updateExpertAgreementScore(user);
-            updateMajorityAgreementScore(user, imageId);
-            userRepository.save(user);
+    public Set<Long> onClassificationsRecorded(List<Classification> classifications) {
+        if (classifications.isEmpty()) {
+            return Set.of();
+        }
+        AgreementStatsWriter.Deltas deltas = new AgreementStatsWriter.Deltas();
 
-            log.debug("Updated credibility for user: {} - Expert Agreement: {}, Majority Agreement: {}",
-                    user.getUsername(), user.getAgreementWithExperts(), user.getMajorityAgreementScore());
+        Set<Long> otherUsersAffected = Set.of();
+        if (classifications.get(0).getUser().getRole() == UserRole.RESEARCHER) {
+            otherUsersAffected = recordExpertClassifications(classifications, deltas);
+        } else {
+            recordUserClassifications(classifications, deltas);
         }
 
-        log.info("Recalculation complete for {} users", users.size());
+        agreementStatsWriter.apply(deltas);
+        return otherUsersAffected;
     }
 
     /**
-     * Calculates and updates the user's agreement with expert classifications using Cohen's Kappa.
+     * Rebuilds a user's agreement accumulators from their full classification history.
+     * Repair path for when the incremental counters are suspected to have drifted,
+     * e.g. after classifications were imported or deleted directly in the database.
+     *
+     * @param username The user whose accumulators should be rebuilt
      */
-    private void updateExpertAgreementScore(User user) {
-        // Get all user's classifications
-        List<Classification> userClassifications = classificationRepository.findByUser_Username(user.getUsername());
+    @Transactional
+    public void rebuildAgreementStats(String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
 
-        if (userClassifications.isEmpty()) {
-            log.debug("No classifications found for user: {}", user.getUsername());
-            return;
+        log.info("Rebuilding agreement accumulators for user: {}", username);
+
+        // Oldest first, so the first classification of each image wins on both sides
+        LabelIndex labelIndex = new LabelIndex();
+        List<ClassificationTuple> userClassifications = classificationRepository.findTuplesByUsername(username);
+        long[] imageIds = new long[userClassifications.size()];
+        int[] labels = new int[userClassifications.size()];
+        for (int i = 0; i < imageIds.length; i++) {
+            imageIds[i] = userClassifications.get(i).getImageId();
+            labels[i] = labelIndex.indexOf(userClassifications.get(i).getLabelId());
         }
 
-        // Get all expert classifications
-        List<Classification> expertClassifications = classificationRepository.findExpertClassifications();
+        // Only expert labels on images the user classified can be compared
+        LongIntHashMap expertLabels = new LongIntHashMap(imageIds.length, -1);
+        try (Stream<ClassificationTuple> experts = classificationRepository.streamExpertTuplesOnUserImages(username)) {
+            experts.forEach(expert ->
+                    expertLabels.putIfAbsent(expert.getImageId(), labelIndex.indexOf(expert.getLabelId())));
+        }
 
-        if (expertClassifications.isEmpty()) {
-            log.debug("No expert classifications found to compare against");
+        CredibilityCalculator.AgreementCounts counts = credibilityCalculator
+                .countAgreement(imageIds, labels, expertLabels, labelIndex.size())
+                .toAgreementCounts(labelIndex);
+
+        // The accumulators are replaced, so concurrent submissions must wait for the rebuild
+        agreementStatsWriter.lock(username);
+        UserAgreementStats stats = userAgreementStatsRepository.findById(username)
+                .orElseThrow(() -> new IllegalStateException("Agreement stats missing for user: " + username));
+        stats.setExpertComparedCount(counts.getTotalComparisons());
+        stats.setExpertAgreedCount(counts.getAgreementCount());
+        stats.getUserLabelCounts().clear();
+        stats.getUserLabelCounts().putAll(counts.getLabelCounts1());
+        stats.getExpertLabelCounts().clear();
+        stats.getExpertLabelCounts().putAll(counts.getLabelCounts2());
+        userAgreementStatsRepository.save(stats);
+
+        updateExpertAgreementScore(user, stats);
+        user.setCredibilityScore(calculateCredibilityScore(stats));
+        userRepository.save(user);
+    }
+
+    /**
+     * Calculates and updates the user's agreement with expert classifications using Cohen's Kappa.
+     * Reads the user's agreement accumulators, so the cost does not grow with history size.
+     */
+    private void updateExpertAgreementScore(User user, UserAgreementStats stats) {
+        Double kappa = calculateExpertAgreement(stats);
+        if (kappa == null) {
+            log.debug("No images in common with experts for user: {}", user.getUsername());
             return;
         }
 
-        // Calculate Cohen's Kappa between user and all experts
-        double kappa = credibilityCalculator.calculateCohenKappa(userClassifications, expertClassifications);
-
         // Update user's expert agreement score
         user.setAgreementWithExperts(kappa);
 
@@ -121,59 +187,138 @@ public class CredibilityService {
     }
 
     /**
-     * Calculates and updates the user's agreement with majority vote.
-     * This checks all images the user has classified and sees how often they agree with majority.
+     * Cohen's Kappa between a user and the experts, from the user's accumulators.
+     *
+     * @return the kappa, or null if the user has no images in common with experts yet
      */
-    private void updateMajorityAgreementScore(User user, Long recentImageId) {
-        // Get all user's classifications
-        List<Classification> userClassifications = classificationRepository.findByUser_Username(user.getUsername());
+    public Double calculateExpertAgreement(UserAgreementStats stats) {
+        if (stats == null || stats.getExpertComparedCount() == 0) {
+            return null;
+        }
 
-        if (userClassifications.isEmpty()) {
-            return;
+        // Calculate Cohen's Kappa between user and all experts
+        return credibilityCalculator.calculateCohenKappa(
+                stats.getExpertAgreedCount(),
+                stats.getExpertComparedCount(),
+                stats.getUserLabelCounts(),
+                stats.getExpertLabelCounts());
+    }
+
+    /**
+     * Overall credibility from the user's accumulators, see
+     * {@link CredibilityCalculator#calculateCredibilityScore}
+     *
+     * @return Value between 0 and 1, 0 for a user without accumulators
+     */
+    public double calculateCredibilityScore(UserAgreementStats stats) {
+        if (stats == null) {
+            return 0.0;
         }
+        return credibilityCalculator.calculateCredibilityScore(
+                calculateExpertAgreement(stats), stats.getExpertComparedCount(),
+                calculateMajorityAgreement(stats), stats.getMajorityComparedCount(),
+                credibilityConfig.getCredibilityPriorComparisons());
+    }
 
-        int totalComparisons = 0;
-        int agreementCount = 0;
+    private void recordUserClassifications(List<Classification> classifications, AgreementStatsWriter.Deltas deltas) {
+        String username = classifications.get(0).getUser().getUsername();
+        List<Long> imageIds = imageIds(classifications);
 
-        // For each image the user classified, check if they agreed with majority
-        for (Classification userClassification : userClassifications) {
-            Long imageId = userClassification.getImage().getId();
+        // Reference label of each image: its first expert label
+        Map<Long, Long> expertLabels = new HashMap<>();
+        for (ClassificationTuple expert : classificationRepository.findExpertTuplesByImageIds(imageIds)) {
+            expertLabels.putIfAbsent(expert.getImageId(), expert.getLabelId());
+        }
+        if (expertLabels.isEmpty()) {
+            return;
+        }
 
-            // Get all classifications for this image
-            List<Classification> allClassifications = classificationRepository.findByImageId(imageId);
+        // Only the user's first classification of an image is compared
+        Map<Long, Long> firstClassifications = new HashMap<>();
+        for (ClassificationTuple c : classificationRepository.findUserTuplesByImageIds(username, imageIds)) {
+            firstClassifications.putIfAbsent(c.getImageId(), c.getId());
+        }
 
-            // Need at least 2 classifications to have a majority
-            if (allClassifications.size() < 2) {
-                continue;
+        for (Classification classification : classifications) {
+            Long imageId = classification.getImage().getId();
+            Long expertLabelId = expertLabels.get(imageId);
+            if (expertLabelId != null && classification.getId().equals(firstClassifications.get(imageId))) {
+                deltas.addExpertComparison(username, classification.getLabel().getId(), expertLabelId);
             }
+        }
+    }
 
-            // Calculate majority vote
-            Label majorityLabel = credibilityCalculator.calculateMajorityVote(allClassifications);
-
-            if (majorityLabel == null) {
-                // No clear majority yet
-                continue;
+    /**
+     * @return Images on which one of the classifications is the first expert label
+     */
+    private Set<Long> recordExpertClassifications(List<Classification> classifications,
+                                                  AgreementStatsWriter.Deltas deltas) {
+        List<Long> imageIds = imageIds(classifications);
+
+        // Later expert labels don't change the image's reference label
+        Map<Long, Long> firstExpertClassifications = new HashMap<>();
+        for (ClassificationTuple expert : classificationRepository.findExpertTuplesByImageIds(imageIds)) {
+            firstExpertClassifications.putIfAbsent(expert.getImageId(), expert.getId());
+        }
+        Map<Long, Long> referenceLabels = new HashMap<>();
+        for (Classification classification : classifications) {
+            if (classification.getId().equals(firstExpertClassifications.get(classification.getImage().getId()))) {
+                referenceLabels.put(classification.getImage().getId(), classification.getLabel().getId());
             }
+        }
+        if (referenceLabels.isEmpty()) {
+            return Set.of();
+        }
+
+        // Label of each regular user's first classification on each newly labelled image
+        Map<Long, Map<String, Long>> firstByImageAndUser = new HashMap<>();
+        for (ClassificationTuple c : classificationRepository.findNonExpertTuplesByImageIds(referenceLabels.keySet())) {
+            firstByImageAndUser.computeIfAbsent(c.getImageId(), id -> new HashMap<>())
+                    .putIfAbsent(c.getUsername(), c.getLabelId());
+        }
 
-            // Check if user agreed with majority
-            double agreementScore = credibilityCalculator.calculateMajorityAgreementScore(
-                    userClassification, majorityLabel);
+        Set<Long> affectedImages = new HashSet<>();
+        firstByImageAndUser.forEach((imageId, firstByUser) -> {
+            Long expertLabelId = referenceLabels.get(imageId);
+            firstByUser.forEach((username, labelId) -> deltas.addExpertComparison(username, labelId, expertLabelId));
+            affectedImages.add(imageId);
+        });
 
-            totalComparisons++;
-            if (agreementScore == 1.0) {
-                agreementCount++;
-            }
+        log.debug("First expert labels on {} images: updated agreement accumulators of their voters",
+                affectedImages.size());
+        return affectedImages;
+    }
+
+    private List<Long> imageIds(List<Classification> classifications) {
+        List<Long> imageIds = new ArrayList<>(classifications.size());
+        for (Classification classification : classifications) {
+            imageIds.add(classification.getImage().getId());
         }
+        return imageIds;
+    }
 
-        // Calculate percentage of agreement with majority
-        double majorityAgreementScore = totalComparisons > 0
-                ? (double) agreementCount / totalComparisons
-                : 0.0;
+    /**
+     * Calculates and updates the user's agreement with majority vote.
+     * Reads the user's majority counters, which are kept current as image majorities change.
+     */
+    private void updateMajorityAgreementScore(User user, UserAgreementStats stats) {
+        double majorityAgreementScore = calculateMajorityAgreement(stats);
 
         user.setMajorityAgreementScore(majorityAgreementScore);
 
-        log.debug("Updated majority agreement for user {}: {}/{} agreements ({}%)",
-                user.getUsername(), agreementCount, totalComparisons, majorityAgreementScore * 100);
+        log.debug("Updated majority agreement for user {}: {}%",
+                user.getUsername(), majorityAgreementScore * 100);
+    }
+
+    /**
+     * Fraction of the user's classifications that match their image's current majority label.
+     */
+    public double calculateMajorityAgreement(UserAgreementStats stats) {
+        int totalComparisons = stats != null ? stats.getMajorityComparedCount() : 0;
+        int agreementCount = stats != null ? stats.getMajorityAgreedCount() : 0;
+
+        // Calculate percentage of agreement with majority
+        return credibilityCalculator.calculateMajorityAgreementRatio(agreementCount, totalComparisons);
     }
 
     /**
@@ -185,25 +330,48 @@ public class CredibilityService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
 
-        List<Classification> userClassifications = classificationRepository.findByUser_Username(username);
-        List<Classification> expertClassifications = classificationRepository.findExpertClassifications();
+        long totalClassifications = classificationRepository.countByUsername(username);
+
+        // Classifications on images that experts also classified, counted in the database
+        long commonWithExperts = classificationRepository.countUserClassificationsWithExpertOverlap(username);
+
+        return buildCredibilityStats(user, totalClassifications, commonWithExperts);
+    }
+
+    /**
+     * Gets credibility statistics for a page of regular users in three queries,
+     * regardless of page size. Used by the admin dashboard.
+     */
+    @Transactional(readOnly = true)
+    public Page<CredibilityStats> getCredibilityStats(Pageable pageable) {
+        Page<User> users = userRepository.findByRoleNot(UserRole.RESEARCHER, pageable);
+        if (users.isEmpty()) {
+            return users.map(user -> buildCredibilityStats(user, 0, 0));
+        }
 
-        // Count common images with experts
-        long commonWithExperts = userClassifications.stream()
-                .map(c -> c.getImage().getId())
-                .filter(imageId -> expertClassifications.stream()
-                        .anyMatch(ec -> ec.getImage().getId().equals(imageId)))
-                .count();
+        List<String> usernames = users.map(User::getUsername).getContent();
+        Map<String, Long> totals = toCountMap(classificationRepository.countByUsernames(usernames));
+        Map<String, Long> overlaps = toCountMap(classificationRepository.countExpertOverlapByUsernames(usernames));
 
+        return users.map(user -> buildCredibilityStats(user,
+                totals.getOrDefault(user.getUsername(), 0L),
+                overlaps.getOrDefault(user.getUsername(), 0L)));
+    }
+
+    private CredibilityStats buildCredibilityStats(User user, long totalClassifications, long commonWithExperts) {
         return CredibilityStats.builder()
-                .username(username)
-                .totalClassifications(userClassifications.size())
+                .username(user.getUsername())
+                .totalClassifications((int) totalClassifications)
                 .expertAgreementScore(user.getAgreementWithExperts())
                 .majorityAgreementScore(user.getMajorityAgreementScore())
                 .imagesInCommonWithExperts((int) commonWithExperts)
                 .build();
     }
 
+    private Map<String, Long> toCountMap(List<UsernameCount> counts) {
+        return counts.stream().collect(Collectors.toMap(UsernameCount::getUsername, UsernameCount::getCount));
+    }
+
     /**
      * Inner class to hold credibility statistics
      */
@@ -0,0 +1,146 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.enums.UserRole;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which users are in the reliable credibility tier, so image routing can ask per request
+ * without reading users.
+ *
+ * Active users with at least credibility.tier-min-comparisons classifications compared with an
+ * expert label or an image majority (from their agreement accumulators) are ranked by the
+ * credibility score the credibility pipeline writes; those at or above
+ * credibility.reliable-tier-percentile are reliable, and so is every researcher. Recomputed on a schedule and replaced as a whole; a user's tier
+ * can therefore lag their score by up to credibility.tier-refresh-interval-ms.
+ */
+@Component
+@Slf4j
+public class CredibilityTierCache implements SmartInitializingSingleton {
+
+    private static final String LOAD_RANKED_USERS_SQL =
+            "SELECT u.username, COALESCE(u.credibility_score, 0), u.role FROM users u " +
+                    "LEFT JOIN user_agreement_stats s ON s.username = u.username " +
+                    "WHERE u.active = TRUE " +
+                    "AND (u.role = ? OR s.expert_compared_count + s.majority_compared_count >= ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CredibilityConfig credibilityConfig;
+
+    private volatile Tiers tiers = new Tiers(Set.of(), 0, Double.NaN, null);
+
+    public CredibilityTierCache(JdbcTemplate jdbcTemplate, CredibilityConfig credibilityConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.credibilityConfig = credibilityConfig;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+    }
+
+    public boolean isReliable(String username) {
+        return tiers.reliable.contains(username);
+    }
+
+    /**
+     * Ranks the users again and replaces the tiers
+     *
+     * @return number of users in the reliable tier
+     */
+    @Scheduled(fixedDelayString = "${credibility.tier-refresh-interval-ms:300000}",
+            initialDelayString = "${credibility.tier-refresh-interval-ms:300000}")
+    public int refresh() {
+        long started = System.currentTimeMillis();
+        List<String> usernames = new ArrayList<>();
+        double[][] scores = {new double[1024]};
+        Set<String> reliable = new HashSet<>();
+        jdbcTemplate.query(LOAD_RANKED_USERS_SQL, rs -> {
+            if (UserRole.RESEARCHER.name().equals(rs.getString(3))) {
+                reliable.add(rs.getString(1));
+                return;
+            }
+            if (usernames.size() == scores[0].length) {
+                scores[0] = Arrays.copyOf(scores[0], usernames.size() * 2);
+            }
+            scores[0][usernames.size()] = rs.getDouble(2);
+            usernames.add(rs.getString(1));
+        }, UserRole.RESEARCHER.name(), credibilityConfig.getTierMinComparisons());
+
+        double threshold = threshold(Arrays.copyOf(scores[0], usernames.size()));
+        for (int i = 0; i < usernames.size(); i++) {
+            if (scores[0][i] >= threshold) {
+                reliable.add(usernames.get(i));
+            }
+        }
+        tiers = new Tiers(reliable, usernames.size(), threshold, LocalDateTime.now());
+
+        log.info("Ranked {} users into credibility tiers, {} reliable (score >= {}), in {} ms",
+                usernames.size(), reliable.size(), threshold, System.currentTimeMillis() - started);
+        return reliable.size();
+    }
+
+    public TierSummary getSummary() {
+        Tiers current = tiers;
+        return TierSummary.builder()
+                .rankedUsers(current.rankedUsers)
+                .reliableUsers(current.reliable.size())
+                .reliableThreshold(current.threshold)
+                .computedAt(current.computedAt)
+                .build();
+    }
+
+    /**
+     * Lowest score in the reliable tier; NaN when nobody is ranked, so nobody qualifies by score
+     */
+    private double threshold(double[] scores) {
+        if (scores.length == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(scores);
+        int index = (int) Math.floor(credibilityConfig.getReliableTierPercentile() * scores.length);
+        return scores[Math.min(scores.length - 1, Math.max(0, index))];
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class TierSummary {
+        private int rankedUsers;
+        private int reliableUsers;
+
+        /**
+         * Lowest credibility score in the reliable tier, researchers aside
+         */
+        private double reliableThreshold;
+
+        private LocalDateTime computedAt;
+    }
+
+    /**
+     * Immutable once published
+     */
+    private static final class Tiers {
+        private final Set<String> reliable;
+        private final int rankedUsers;
+        private final double threshold;
+        private final LocalDateTime computedAt;
+
+        Tiers(Set<String> reliable, int rankedUsers, double threshold, LocalDateTime computedAt) {
+            this.reliable = reliable;
+            this.rankedUsers = rankedUsers;
+            this.threshold = threshold;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.AsyncConfig;
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.service.classification.ClassificationSubmittedEvent;
+import com.swipelab.service.classification.MajorityAgreementFlushedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Moves credibility recomputes off the submission path.
+ * Committed submissions are collected per user (and per image for image-wide updates);
+ * a burst of swipes from the same user within the coalesce window results in a single
+ * recompute, run on the dedicated bounded credibility executor.
+ */
+@Service
+@Slf4j
+public class CredibilityUpdateQueue {
+
+    private final CredibilityService credibilityService;
+    private final CredibilityRecalculationJob recalculationJob;
+    private final CredibilityConfig credibilityConfig;
+    private final ThreadPoolTaskExecutor executor;
+
+    /**
+     * username -> pending recompute, keyed so repeated events for the same user collapse
+     */
+    private final Map<String, PendingUpdate> pendingUsers = new ConcurrentHashMap<>();
+
+    /**
+     * image id -> pending recompute of every voter on that image
+     */
+    private final Map<Long, PendingUpdate> pendingImages = new ConcurrentHashMap<>();
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public CredibilityUpdateQueue(CredibilityService credibilityService,
+                                  CredibilityRecalculationJob recalculationJob,
+                                  CredibilityConfig credibilityConfig,
+                                  @Qualifier(AsyncConfig.CREDIBILITY_EXECUTOR) ThreadPoolTaskExecutor executor) {
+        this.credibilityService = credibilityService;
+        this.recalculationJob = recalculationJob;
+        this.credibilityConfig = credibilityConfig;
+        this.executor = executor;
+    }
+
+    /**
+     * Enqueues the recomputes for a submission once its transaction has committed,
+     * so the worker always sees the new classifications and accumulators. The submitter
+     * gets one recompute however many swipes the submission held.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClassificationSubmitted(ClassificationSubmittedEvent event) {
+        for (ClassificationSubmittedEvent.Swipe swipe : event.getSwipes()) {
+            if (swipe.isImageWideUpdate()) {
+                enqueue(pendingImages, swipe.getImageId(), swipe.getImageId());
+            }
+        }
+        // Experts don't have a credibility score of their own
+        if (!event.isExpert() && !event.getSwipes().isEmpty()) {
+            Long lastImageId = event.getSwipes().get(event.getSwipes().size() - 1).getImageId();
+            enqueue(pendingUsers, event.getUsername(), lastImageId);
+        }
+    }
+
+    /**
+     * Enqueues the recomputes for majority counters changed by a vote counter flush,
+     * which has committed by the time the event is published.
+     */
+    @EventListener
+    public void onMajorityAgreementFlushed(MajorityAgreementFlushedEvent event) {
+        for (Long imageId : event.getFlippedImageIds()) {
+            enqueue(pendingImages, imageId, imageId);
+        }
+        for (String username : event.getUsernames()) {
+            enqueue(pendingUsers, username, null);
+        }
+    }
+
+    /**
+     * Dispatches every pending update whose coalesce window has elapsed.
+     * If the executor is saturated the update goes back into the pending map, where it
+     * keeps absorbing new events until a worker is free.
+     */
+    @Scheduled(fixedDelayString = "${credibility.drain-interval-ms:500}")
+    public void drain() {
+        long cutoff = System.currentTimeMillis() - credibilityConfig.getCoalesceWindowMs();
+
+        for (Long imageId : pendingImages.keySet()) {
+            dispatch(pendingImages, imageId, cutoff,
+                    update -> recalculationJob.recalculateCredibilityForImage(imageId));
+        }
+        for (String username : pendingUsers.keySet()) {
+            dispatch(pendingUsers, username, cutoff,
+                    update -> credibilityService.updateUserCredibility(username, update.getImageId()));
+        }
+    }
+
+    /**
+     * Snapshot of the pipeline's backlog and throughput counters
+     */
+    public QueueMetrics getMetrics() {
+        long now = System.currentTimeMillis();
+        long oldest = Math.min(oldestEnqueuedAt(pendingUsers, now), oldestEnqueuedAt(pendingImages, now));
+
+        return QueueMetrics.builder()
+                .pendingUsers(pendingUsers.size())
+                .pendingImages(pendingImages.size())
+                .executorQueueSize(executor.getQueueSize())
+                .activeWorkers(executor.getActiveCount())
+                .oldestPendingLagMs(now - oldest)
+                .enqueuedCount(enqueuedCount.get())
+                .coalescedCount(coalescedCount.get())
+                .completedCount(completedCount.get())
+                .failedCount(failedCount.get())
+                .rejectedCount(rejectedCount.get())
+                .build();
+    }
+
+    private <K> void enqueue(Map<K, PendingUpdate> pending, K key, Long imageId) {
+        enqueuedCount.incrementAndGet();
+        PendingUpdate update = new PendingUpdate(imageId, System.currentTimeMillis());
+        if (pending.merge(key, update, PendingUpdate::coalesce) != update) {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    private <K> void dispatch(Map<K, PendingUpdate> pending, K key, long cutoff,
+                              Consumer<PendingUpdate> work) {
+        PendingUpdate current = pending.get(key);
+        if (current == null || current.getEnqueuedAt() > cutoff || !pending.remove(key, current)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    work.accept(current);
+                    completedCount.incrementAndGet();
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    log.error("Credibility update failed for {}", key, e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            rejectedCount.incrementAndGet();
+            pending.merge(key, current, PendingUpdate::coalesce);
+            log.debug("Credibility executor saturated, keeping update for {} pending", key);
+        }
+    }
+
+    private long oldestEnqueuedAt(Map<?, PendingUpdate> pending, long now) {
+        return pending.values().stream()
+                .mapToLong(PendingUpdate::getEnqueuedAt)
+                .min()
+                .orElse(now);
+    }
+
+    /**
+     * A coalesced update: remembers when the oldest event arrived (for lag and windowing)
+     * and the most recent image, which is what the recompute logs against (null when the
+     * update came from a vote counter flush rather than a submission)
+     */
+    @lombok.Getter
+    @lombok.AllArgsConstructor
+    static class PendingUpdate {
+        private final Long imageId;
+        private final long enqueuedAt;
+
+        static PendingUpdate coalesce(PendingUpdate existing, PendingUpdate incoming) {
+            Long imageId = incoming.getImageId() != null ? incoming.getImageId() : existing.getImageId();
+            return new PendingUpdate(imageId, Math.min(existing.getEnqueuedAt(), incoming.getEnqueuedAt()));
+        }
+    }
+
+    @lombok.Builder
+    @lombok.Data
+    public static class QueueMetrics {
+        private int pendingUsers;
+        private int pendingImages;
+        private int executorQueueSize;
+        private int activeWorkers;
+        private long oldestPendingLagMs;
+        private long enqueuedCount;
+        private long coalescedCount;
+        private long completedCount;
+        private long failedCount;
+        private long rejectedCount;
+    }
+}
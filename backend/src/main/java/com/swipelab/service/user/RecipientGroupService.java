@@ -0,0 +1,65 @@
+package com.swipelab.service.user;
+
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Manages which recipient groups a user belongs to. A task restricted to recipient groups is
+ * only served to their members; the fair-share scheduler picks membership changes up on its
+ * next refresh.
+ */
+@Service
+@RequiredArgsConstructor
+public class RecipientGroupService {
+
+    static final String LOAD_GROUPS_SQL =
+            "SELECT recipient_group_id FROM user_recipient_groups WHERE username = ? ORDER BY recipient_group_id";
+
+    static final String ADD_MEMBERSHIP_SQL =
+            "INSERT INTO user_recipient_groups (username, recipient_group_id) VALUES (?, ?) " +
+                    "ON CONFLICT (username, recipient_group_id) DO NOTHING";
+
+    static final String REMOVE_MEMBERSHIP_SQL =
+            "DELETE FROM user_recipient_groups WHERE username = ? AND recipient_group_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+
+    public List<Long> getRecipientGroups(String username) {
+        requireUser(username);
+        return jdbcTemplate.queryForList(LOAD_GROUPS_SQL, Long.class, username);
+    }
+
+    /**
+     * Adds the user to the group; adding an existing member changes nothing
+     *
+     * @return The user's groups afterwards
+     */
+    public List<Long> addToGroup(String username, Long recipientGroupId) {
+        requireUser(username);
+        jdbcTemplate.update(ADD_MEMBERSHIP_SQL, username, recipientGroupId);
+        return jdbcTemplate.queryForList(LOAD_GROUPS_SQL, Long.class, username);
+    }
+
+    /**
+     * Removes the user from the group; removing a non-member changes nothing
+     *
+     * @return The user's groups afterwards
+     */
+    public List<Long> removeFromGroup(String username, Long recipientGroupId) {
+        requireUser(username);
+        jdbcTemplate.update(REMOVE_MEMBERSHIP_SQL, username, recipientGroupId);
+        return jdbcTemplate.queryForList(LOAD_GROUPS_SQL, Long.class, username);
+    }
+
+    private void requireUser(String username) {
+        if (!userRepository.existsByUsername(username)) {
+            throw new ResourceNotFoundException("User not found: " + username);
+        }
+    }
+}
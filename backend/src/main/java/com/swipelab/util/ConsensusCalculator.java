@@ -1,5 +1,163 @@
 package com.swipelab.util;
 
+import com.swipelab.model.enums.StoppingMode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Weighted consensus rules for an image's votes.
+ * Works on running totals only, so a decision can be made on every submission without
+ * re-reading the image's classifications.
+ */
+@Component
 public class ConsensusCalculator {
-    
+
+    public static final double MAX_VOTE_WEIGHT = 1.0;
+
+    /**
+     * Weight of a single vote.
+     *
+     * @param credibilityScore The voter's credibility score at vote time (may be null)
+     * @param expert           Whether the voter is an expert; experts always count fully
+     * @param minWeight        Lowest weight a regular user's vote can have
+     * @return Weight between minWeight and {@link #MAX_VOTE_WEIGHT}
+     */
+    public double voteWeight(Double credibilityScore, boolean expert, double minWeight) {
+        if (expert) {
+            return MAX_VOTE_WEIGHT;
+        }
+        double score = credibilityScore != null && !credibilityScore.isNaN() ? credibilityScore : 0.0;
+        return Math.min(MAX_VOTE_WEIGHT, Math.max(minWeight, score));
+    }
+
+    /**
+     * Share of the total weight held by one label.
+     *
+     * @return Value between 0 and 1, or 0 when nothing has been weighed yet
+     */
+    public double weightedShare(double labelWeight, double totalWeight) {
+        if (totalWeight <= 0) {
+            return 0.0;
+        }
+        return labelWeight / totalWeight;
+    }
+
+    /**
+     * Whether the leading label has reached consensus.
+     *
+     * @param leadingWeight    Weighted votes of the leading label
+     * @param totalWeight      Weighted votes of all labels
+     * @param totalVotes       Number of classifications on the image
+     * @param thresholdPercent Required share of the total weight, in percent (Task.consensusThreshold)
+     * @param minVotes         Required number of classifications (Task.minClassificationsPerImage)
+     */
+    public boolean isConsensusReached(double leadingWeight, double totalWeight, int totalVotes,
+                                      double thresholdPercent, int minVotes) {
+        if (totalVotes < Math.max(1, minVotes)) {
+            return false;
+        }
+        return weightedShare(leadingWeight, totalWeight) * 100.0 >= thresholdPercent;
+    }
+
+    /**
+     * Posterior probability that the leading label is the true label of the image.
+     * Every vote is independent evidence whose log-odds are proportional to its weight: a
+     * full-weight vote is right with probability fullWeightAccuracy. With c = log(a / (1 - a))
+     * this gives P(k) proportional to exp(c * W_k) over the labels with votes; while only one
+     * label has votes, an alternative without evidence is included so one vote is never certain.
+     * For two labels, stopping at confidence q is the sequential probability ratio test
+     * c * (W_leader - W_runnerUp) >= log(q / (1 - q)).
+     *
+     * @param labelWeights       Weighted votes per label
+     * @param labelCount         Number of used entries in labelWeights
+     * @param leader             Index of the leading label
+     * @param fullWeightAccuracy Probability that a vote of weight 1.0 is right, above 0.5
+     * @return Value between 0 and 1
+     */
+    public double leaderPosterior(double[] labelWeights, int labelCount, int leader, double fullWeightAccuracy) {
+        if (labelCount == 0) {
+            return 0.0;
+        }
+        double logOddsPerWeight = Math.log(fullWeightAccuracy / (1.0 - fullWeightAccuracy));
+        double leaderWeight = labelWeights[leader];
+
+        // Relative to the leader, so no term can overflow
+        double normalizer = 0.0;
+        for (int label = 0; label < labelCount; label++) {
+            normalizer += Math.exp(logOddsPerWeight * (labelWeights[label] - leaderWeight));
+        }
+        if (labelCount < 2) {
+            normalizer += Math.exp(-logOddsPerWeight * leaderWeight);
+        }
+        return 1.0 / normalizer;
+    }
+
+    /**
+     * How split an image's weighted votes are: the Shannon entropy of the label shares divided by
+     * its maximum for the number of labels voted for, so an even split is 1 whatever the label count.
+     *
+     * @param labelWeights Weighted votes per label
+     * @param labelCount   Number of used entries in labelWeights
+     * @param totalWeight  Sum of the used entries
+     * @return Value between 0 and 1; 0 while fewer than two labels have weight
+     */
+    public double voteEntropy(double[] labelWeights, int labelCount, double totalWeight) {
+        if (labelCount < 2 || totalWeight <= 0) {
+            return 0.0;
+        }
+        double entropy = 0.0;
+        for (int label = 0; label < labelCount; label++) {
+            double share = labelWeights[label] / totalWeight;
+            if (share > 0) {
+                entropy -= share * Math.log(share);
+            }
+        }
+        return Math.min(1.0, entropy / Math.log(labelCount));
+    }
+
+    /**
+     * Whether an image has enough classifications under the task's stopping rule.
+     *
+     * @param posterior Posterior of the leading label, see {@link #leaderPosterior}
+     */
+    public boolean shouldStop(StoppingRule rule, double leadingWeight, double totalWeight,
+                              int totalVotes, double posterior) {
+        if (rule.getMode() == StoppingMode.ADAPTIVE) {
+            if (totalVotes >= rule.getMaxVotes()) {
+                return true;
+            }
+            return totalVotes >= Math.max(1, rule.getMinVotes()) && posterior >= rule.getConfidence();
+        }
+        return isConsensusReached(leadingWeight, totalWeight, totalVotes, rule.getThresholdPercent(), rule.getMinVotes());
+    }
+
+    /**
+     * A task's stopping settings, resolved once per vote
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class StoppingRule {
+        private final StoppingMode mode;
+
+        /**
+         * FIXED: required weighted share of the leading label, in percent
+         */
+        private final double thresholdPercent;
+
+        /**
+         * Classifications required before an image can stop
+         */
+        private final int minVotes;
+
+        /**
+         * ADAPTIVE: required posterior of the leading label
+         */
+        private final double confidence;
+
+        /**
+         * ADAPTIVE: classifications after which an image stops regardless
+         */
+        private final int maxVotes;
+    }
 }
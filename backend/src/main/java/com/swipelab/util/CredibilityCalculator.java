@@ -2,11 +2,14 @@ package com.swipelab.util;
 
 import com.swipelab.model.entity.Classification;
 import com.swipelab.model.entity.Label;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 @Slf4j
@@ -29,48 +32,159 @@ public class CredibilityCalculator {
             return 0.0;
         }
 
-        // Map classifications by imageId
-        Map<Long, Label> user1Labels = user1Classifications.stream()
-                .collect(Collectors.toMap(
-                        c -> c.getImage().getId(),
-                        Classification::getLabel,
-                        (existing, replacement) -> existing // keep first if duplicates
-                ));
+        AgreementCounts counts = countAgreement(user1Classifications, user2Classifications);
 
-        Map<Long, Label> user2Labels = user2Classifications.stream()
-                .collect(Collectors.toMap(
-                        c -> c.getImage().getId(),
-                        Classification::getLabel,
-                        (existing, replacement) -> existing
-                ));
-
-        // Find common images (both users classified)
-        Set<Long> commonImages = new HashSet<>(user1Labels.keySet());
-        commonImages.retainAll(user2Labels.keySet());
-
-        if (commonImages.isEmpty()) {
+        if (counts.getTotalComparisons() == 0) {
             log.debug("No common images classified by both users");
             return 0.0;
         }
 
-        // Build confusion matrix
-        Map<Long, Integer> labelCounts1 = new HashMap<>();
-        Map<Long, Integer> labelCounts2 = new HashMap<>();
-        int agreementCount = 0;
-        int totalComparisons = commonImages.size();
+        return calculateCohenKappa(
+                counts.getAgreementCount(),
+                counts.getTotalComparisons(),
+                counts.getLabelCounts1(),
+                counts.getLabelCounts2());
+    }
+
+    /**
+     * Builds the agreement counters (observed agreements and per-label marginals)
+     * for the images classified by both sides. Only the first classification of
+     * each image is used on either side.
+     *
+     * @param user1Classifications Classifications from first user
+     * @param user2Classifications Classifications from second user/expert
+     * @return Counters that can be fed to {@link #calculateCohenKappa(int, int, Map, Map)}
+     */
+    public AgreementCounts countAgreement(
+            List<Classification> user1Classifications,
+            List<Classification> user2Classifications) {
 
-        for (Long imageId : commonImages) {
-            Label label1 = user1Labels.get(imageId);
-            Label label2 = user2Labels.get(imageId);
+        LabelIndex labelIndex = new LabelIndex();
+        long[] imageIds1 = imageIds(user1Classifications);
+        int[] labels1 = denseLabels(user1Classifications, labelIndex);
+        long[] imageIds2 = imageIds(user2Classifications);
+        int[] labels2 = denseLabels(user2Classifications, labelIndex);
 
-            // Count agreements
-            if (label1.getId().equals(label2.getId())) {
+        return countAgreement(imageIds1, labels1, imageIds2, labels2, labelIndex.size())
+                .toAgreementCounts(labelIndex);
+    }
+
+    /**
+     * Primitive counterpart of {@link #countAgreement(List, List)}.
+     * Each side is a pair of parallel arrays (image id, dense label index from a shared
+     * {@link LabelIndex}), oldest classification first. The second side is hashed into an
+     * open-addressing map keyed by image id and the first side probes it, so no boxed ids,
+     * entities or per-image objects are created.
+     *
+     * @param imageIds1  Image ids classified by the first side
+     * @param labels1    Dense label index chosen for each of imageIds1
+     * @param imageIds2  Image ids classified by the second side
+     * @param labels2    Dense label index chosen for each of imageIds2
+     * @param labelCount Number of labels in the shared index
+     * @return Counters that can be fed to {@link #calculateCohenKappa(int, int, int[], int[])}
+     */
+    public DenseAgreementCounts countAgreement(
+            long[] imageIds1, int[] labels1,
+            long[] imageIds2, int[] labels2,
+            int labelCount) {
+
+        // First label per image on the second side
+        LongIntHashMap firstLabels2 = new LongIntHashMap(imageIds2.length, -1);
+        for (int i = 0; i < imageIds2.length; i++) {
+            firstLabels2.putIfAbsent(imageIds2[i], labels2[i]);
+        }
+
+        return countAgreement(imageIds1, labels1, firstLabels2, labelCount);
+    }
+
+    /**
+     * Variant of {@link #countAgreement(long[], int[], long[], int[], int)} for callers that
+     * build the second side's image id -> first dense label map themselves, e.g. while
+     * streaming it from the database. Matched entries are removed from the map.
+     *
+     * @param imageIds1    Image ids classified by the first side
+     * @param labels1      Dense label index chosen for each of imageIds1
+     * @param firstLabels2 Image id -> dense label index of the second side's first classification,
+     *                     with a negative missing value
+     * @param labelCount   Number of labels in the shared index
+     */
+    public DenseAgreementCounts countAgreement(
+            long[] imageIds1, int[] labels1,
+            LongIntHashMap firstLabels2,
+            int labelCount) {
+
+        int[] labelCounts1 = new int[labelCount];
+        int[] labelCounts2 = new int[labelCount];
+        int agreementCount = 0;
+        int totalComparisons = 0;
+
+        for (int i = 0; i < imageIds1.length; i++) {
+            // Removing the match means later classifications of the same image are ignored,
+            // so only the first one on the first side counts as well
+            int label2 = firstLabels2.remove(imageIds1[i]);
+            if (label2 < 0) {
+                continue;
+            }
+
+            int label1 = labels1[i];
+            totalComparisons++;
+            if (label1 == label2) {
                 agreementCount++;
             }
+            labelCounts1[label1]++;
+            labelCounts2[label2]++;
+        }
 
-            // Count label frequencies for expected agreement
-            labelCounts1.merge(label1.getId(), 1, Integer::sum);
-            labelCounts2.merge(label2.getId(), 1, Integer::sum);
+        return new DenseAgreementCounts(agreementCount, totalComparisons, labelCounts1, labelCounts2);
+    }
+
+    /**
+     * Calculates Cohen's Kappa from pre-aggregated agreement counters.
+     * Used by the incremental credibility path, where the counters are kept per user
+     * and updated on every overlapping classification.
+     *
+     * @param agreementCount   Number of common images where both sides chose the same label
+     * @param totalComparisons Number of common images
+     * @param labelCounts1     Label id -> times chosen by the first side
+     * @param labelCounts2     Label id -> times chosen by the second side
+     * @return Kappa coefficient (-1 to 1, where 1 is perfect agreement)
+     */
+    public double calculateCohenKappa(
+            int agreementCount,
+            int totalComparisons,
+            Map<Long, Integer> labelCounts1,
+            Map<Long, Integer> labelCounts2) {
+
+        if (totalComparisons <= 0) {
+            return 0.0;
+        }
+
+        LabelIndex labelIndex = new LabelIndex(labelCounts1.size() + labelCounts2.size());
+        labelCounts1.keySet().forEach(labelIndex::indexOf);
+        labelCounts2.keySet().forEach(labelIndex::indexOf);
+
+        return calculateCohenKappa(agreementCount, totalComparisons,
+                denseCounts(labelCounts1, labelIndex), denseCounts(labelCounts2, labelIndex));
+    }
+
+    /**
+     * Calculates Cohen's Kappa from counters whose per-label marginals are indexed by
+     * dense label index.
+     *
+     * @param agreementCount   Number of common images where both sides chose the same label
+     * @param totalComparisons Number of common images
+     * @param labelCounts1     Dense label index -> times chosen by the first side
+     * @param labelCounts2     Dense label index -> times chosen by the second side
+     * @return Kappa coefficient (-1 to 1, where 1 is perfect agreement)
+     */
+    public double calculateCohenKappa(
+            int agreementCount,
+            int totalComparisons,
+            int[] labelCounts1,
+            int[] labelCounts2) {
+
+        if (totalComparisons <= 0) {
+            return 0.0;
         }
 
         // Calculate observed agreement (Po)
@@ -78,13 +192,10 @@ public class CredibilityCalculator {
 
         // Calculate expected agreement by chance (Pe)
         double expectedAgreement = 0.0;
-        Set<Long> allLabels = new HashSet<>();
-        allLabels.addAll(labelCounts1.keySet());
-        allLabels.addAll(labelCounts2.keySet());
-
-        for (Long labelId : allLabels) {
-            double prob1 = labelCounts1.getOrDefault(labelId, 0) / (double) totalComparisons;
-            double prob2 = labelCounts2.getOrDefault(labelId, 0) / (double) totalComparisons;
+        int labels = Math.min(labelCounts1.length, labelCounts2.length);
+        for (int label = 0; label < labels; label++) {
+            double prob1 = labelCounts1[label] / (double) totalComparisons;
+            double prob2 = labelCounts2[label] / (double) totalComparisons;
             expectedAgreement += (prob1 * prob2);
         }
 
@@ -119,42 +230,50 @@ public class CredibilityCalculator {
             return null;
         }
 
-        // Count votes for each label
-        Map<Long, Long> labelVotes = classifications.stream()
-                .collect(Collectors.groupingBy(
-                        c -> c.getLabel().getId(),
-                        Collectors.counting()
-                ));
-
-        // Find the label with most votes
-        long totalVotes = classifications.size();
-        Map.Entry<Long, Long> maxEntry = labelVotes.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .orElse(null);
+        LabelIndex labelIndex = new LabelIndex();
+        int[] labels = denseLabels(classifications, labelIndex);
+        int majority = majorityLabel(labels, labelIndex.size());
 
-        if (maxEntry == null) {
-            return null;
+        if (majority < 0) {
+            log.debug("No majority consensus among {} votes (need >50%)", labels.length);
+            return null; // No clear majority
         }
 
-        // Check if it's a true majority (>50%)
-        double majorityPercentage = (double) maxEntry.getValue() / totalVotes;
-
-        if (majorityPercentage > 0.5) {
-            // Return the actual Label object
-            Label majorityLabel = classifications.stream()
-                    .filter(c -> c.getLabel().getId().equals(maxEntry.getKey()))
-                    .map(Classification::getLabel)
-                    .findFirst()
-                    .orElse(null);
+        // Return the actual Label object
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == majority) {
+                log.debug("Majority vote found: label {} among {} votes", labelIndex.labelIdAt(majority), labels.length);
+                return classifications.get(i).getLabel();
+            }
+        }
+        return null;
+    }
 
-            log.debug("Majority vote found: label {} with {}/{} votes ({}%)",
-                    maxEntry.getKey(), maxEntry.getValue(), totalVotes, majorityPercentage * 100);
+    /**
+     * Primitive counterpart of {@link #calculateMajorityVote(List)}.
+     *
+     * @param labels     Dense label index of every vote on the image
+     * @param labelCount Number of labels in the index
+     * @return Dense index of the label with more than 50% of the votes, or -1 if there is none
+     *         (including when there are fewer than two votes)
+     */
+    public int majorityLabel(int[] labels, int labelCount) {
+        if (labels.length < 2) {
+            return -1;
+        }
 
-            return majorityLabel;
+        int[] votes = new int[labelCount];
+        int best = -1;
+        int bestVotes = 0;
+        for (int label : labels) {
+            if (++votes[label] > bestVotes) {
+                bestVotes = votes[label];
+                best = label;
+            }
         }
 
-        log.debug("No majority consensus: highest vote was {}% (need >50%)", majorityPercentage * 100);
-        return null; // No clear majority
+        // Check if it's a true majority (>50%)
+        return bestVotes * 2 > labels.length ? best : -1;
     }
 
     /**
@@ -177,6 +296,49 @@ public class CredibilityCalculator {
         return matches ? 1.0 : 0.0;
     }
 
+    /**
+     * Calculates the share of compared classifications that matched the majority vote.
+     *
+     * @param agreementCount   Classifications that matched the image's majority label
+     * @param totalComparisons Classifications on images that have a majority label
+     * @return Value between 0 and 1, or 0 when nothing could be compared yet
+     */
+    public double calculateMajorityAgreementRatio(int agreementCount, int totalComparisons) {
+        if (totalComparisons <= 0) {
+            return 0.0;
+        }
+        return (double) agreementCount / totalComparisons;
+    }
+
+    /**
+     * Calculates a user's overall credibility, which weighs their votes in the consensus and
+     * ranks them for the credibility tiers.
+     * The expert kappa (negative counts as 0) and the majority agreement are averaged, each
+     * weighted by the comparisons behind it, and the average is shrunk towards 0 by
+     * priorComparisons pseudo-comparisons, so a few lucky matches don't make a user fully credible.
+     *
+     * @param kappa             Cohen's Kappa against the experts, or null without expert comparisons
+     * @param expertCompared    Images compared with an expert label
+     * @param majorityAgreement Share of the majority comparisons that matched
+     * @param majorityCompared  Classifications compared with an image's majority label
+     * @param priorComparisons  Comparisons at which the score reaches half of the user's agreement
+     * @return Value between 0 and 1, 0 when nothing could be compared yet
+     */
+    public double calculateCredibilityScore(Double kappa, int expertCompared,
+                                            double majorityAgreement, int majorityCompared,
+                                            int priorComparisons) {
+        int expertEvidence = kappa != null ? Math.max(0, expertCompared) : 0;
+        int majorityEvidence = Math.max(0, majorityCompared);
+        int evidence = expertEvidence + majorityEvidence;
+        if (evidence == 0) {
+            return 0.0;
+        }
+
+        double agreement = expertEvidence * Math.max(0.0, kappa != null ? kappa : 0.0)
+                + majorityEvidence * majorityAgreement;
+        return Math.min(1.0, agreement / (evidence + Math.max(0, priorComparisons)));
+    }
+
     /**
      * Calculates the consensus strength (how strong is the majority).
      *
@@ -188,16 +350,93 @@ public class CredibilityCalculator {
             return 0.0;
         }
 
-        Map<Long, Long> labelVotes = classifications.stream()
-                .collect(Collectors.groupingBy(
-                        c -> c.getLabel().getId(),
-                        Collectors.counting()
-                ));
+        LabelIndex labelIndex = new LabelIndex();
+        return calculateConsensusStrength(denseLabels(classifications, labelIndex), labelIndex.size());
+    }
+
+    /**
+     * Primitive counterpart of {@link #calculateConsensusStrength(List)}.
+     *
+     * @param labels     Dense label index of every vote on the image
+     * @param labelCount Number of labels in the index
+     * @return Share of votes held by the most popular label
+     */
+    public double calculateConsensusStrength(int[] labels, int labelCount) {
+        if (labels.length < 2) {
+            return 0.0;
+        }
+
+        int[] votes = new int[labelCount];
+        int maxVotes = 0;
+        for (int label : labels) {
+            maxVotes = Math.max(maxVotes, ++votes[label]);
+        }
+
+        return (double) maxVotes / labels.length;
+    }
+
+    private long[] imageIds(List<Classification> classifications) {
+        long[] imageIds = new long[classifications.size()];
+        for (int i = 0; i < imageIds.length; i++) {
+            // Reading the id of a lazy association does not initialize the proxy
+            imageIds[i] = classifications.get(i).getImage().getId();
+        }
+        return imageIds;
+    }
+
+    private int[] denseLabels(List<Classification> classifications, LabelIndex labelIndex) {
+        int[] labels = new int[classifications.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labelIndex.indexOf(classifications.get(i).getLabel().getId());
+        }
+        return labels;
+    }
+
+    private int[] denseCounts(Map<Long, Integer> labelCounts, LabelIndex labelIndex) {
+        int[] counts = new int[labelIndex.size()];
+        labelCounts.forEach((labelId, count) -> counts[labelIndex.find(labelId)] = count);
+        return counts;
+    }
 
-        long maxVotes = labelVotes.values().stream()
-                .max(Long::compareTo)
-                .orElse(0L);
+    /**
+     * Agreement counters between two sets of classifications
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class AgreementCounts {
+        private final int agreementCount;
+        private final int totalComparisons;
+        private final Map<Long, Integer> labelCounts1;
+        private final Map<Long, Integer> labelCounts2;
+    }
 
-        return (double) maxVotes / classifications.size();
+    /**
+     * Agreement counters with per-label marginals indexed by dense label index
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class DenseAgreementCounts {
+        private final int agreementCount;
+        private final int totalComparisons;
+        private final int[] labelCounts1;
+        private final int[] labelCounts2;
+
+        /**
+         * Translates the dense marginals back to label ids, dropping labels that were never counted
+         */
+        public AgreementCounts toAgreementCounts(LabelIndex labelIndex) {
+            return new AgreementCounts(agreementCount, totalComparisons,
+                    sparseCounts(labelCounts1, labelIndex), sparseCounts(labelCounts2, labelIndex));
+        }
+
+        private static Map<Long, Integer> sparseCounts(int[] counts, LabelIndex labelIndex) {
+            Map<Long, Integer> sparse = new HashMap<>();
+            for (int label = 0; label < counts.length; label++) {
+                if (counts[label] > 0) {
+                    sparse.put(labelIndex.labelIdAt(label), counts[label]);
+                }
+            }
+            return sparse;
+        }
     }
-}
\ No newline at end of file
+}
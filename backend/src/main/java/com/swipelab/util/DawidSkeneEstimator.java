@@ -0,0 +1,345 @@
+package com.swipelab.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Dawid-Skene expectation-maximization over a sparse annotator x item label matrix.
+ *
+ * Every annotator gets a confusion matrix pi[k][l] = P(annotator answers l | true label k),
+ * every item a posterior over its true label. The E-step recomputes item posteriors from the
+ * confusion matrices (in parallel over items), the M-step re-estimates confusion matrices and
+ * class priors from the posteriors (in parallel over annotators). Compared to a plain majority
+ * vote, answers from reliable annotators weigh more and systematic confusions are corrected.
+ *
+ * Everything is stored in flat primitive arrays:
+ * - posteriors: item * labels + k
+ * - confusions: annotator * labels * labels + k * labels + l
+ * Observations are given twice in CSR form (grouped by item and grouped by annotator) so both
+ * steps can be parallelized without synchronization.
+ */
+@Slf4j
+public class DawidSkeneEstimator {
+
+    /**
+     * Additive smoothing applied to confusion counts, so unseen answers never get probability zero
+     */
+    private static final double SMOOTHING = 0.01;
+
+    /**
+     * Diagonal used for warm-start rows without history
+     */
+    private static final double DEFAULT_ACCURACY = 0.7;
+
+    private final int maxIterations;
+    private final double tolerance;
+
+    public DawidSkeneEstimator(int maxIterations, double tolerance) {
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Runs EM until the largest posterior change drops below the tolerance.
+     *
+     * @param data        Observations
+     * @param warmStart   Confusion matrices from a previous run, flattened like the result;
+     *                    all-zero rows (new annotators or labels) start from a default diagonal.
+     *                    Null for a cold start from majority-vote posteriors.
+     */
+    public Result estimate(Observations data, double[] warmStart) {
+        int labels = data.labelCount;
+        double[] posteriors = new double[data.itemCount * labels];
+        double[] confusions = new double[data.annotatorCount * labels * labels];
+        double[] priors = new double[labels];
+
+        if (data.itemCount == 0 || labels == 0) {
+            return new Result(posteriors, confusions, priors, 0, true);
+        }
+
+        if (warmStart != null) {
+            if (warmStart.length != confusions.length) {
+                throw new IllegalArgumentException("Warm start has " + warmStart.length
+                        + " confusion entries, expected " + confusions.length);
+            }
+            initConfusions(warmStart, confusions, data.annotatorCount, labels);
+            Arrays.fill(priors, 1.0 / labels);
+            eStep(data, confusions, priors, posteriors);
+        } else {
+            initFromMajorityVote(data, posteriors);
+        }
+
+        int iteration = 0;
+        boolean converged = false;
+        double[] previous = new double[posteriors.length];
+        while (iteration < maxIterations) {
+            iteration++;
+            mStep(data, posteriors, confusions, priors);
+
+            System.arraycopy(posteriors, 0, previous, 0, posteriors.length);
+            eStep(data, confusions, priors, posteriors);
+
+            double delta = maxAbsDifference(previous, posteriors);
+            if (delta < tolerance) {
+                converged = true;
+                break;
+            }
+        }
+
+        log.debug("Dawid-Skene finished after {} iterations (converged: {}) over {} items, {} annotators, {} labels",
+                iteration, converged, data.itemCount, data.annotatorCount, labels);
+        return new Result(posteriors, confusions, priors, iteration, converged);
+    }
+
+    private void initConfusions(double[] warmStart, double[] confusions, int annotators, int labels) {
+        double offDiagonal = labels > 1 ? (1.0 - DEFAULT_ACCURACY) / (labels - 1) : 0.0;
+        double diagonal = labels > 1 ? DEFAULT_ACCURACY : 1.0;
+        for (int row = 0; row < annotators * labels; row++) {
+            int base = row * labels;
+            double rowSum = 0;
+            for (int l = 0; l < labels; l++) {
+                rowSum += warmStart[base + l];
+            }
+            if (rowSum > 0) {
+                // Previous rows are re-smoothed so a label that was never answered does not veto an item
+                for (int l = 0; l < labels; l++) {
+                    confusions[base + l] = (warmStart[base + l] + SMOOTHING) / (rowSum + labels * SMOOTHING);
+                }
+            } else {
+                int trueLabel = row % labels;
+                for (int l = 0; l < labels; l++) {
+                    confusions[base + l] = l == trueLabel ? diagonal : offDiagonal;
+                }
+            }
+        }
+    }
+
+    private void initFromMajorityVote(Observations data, double[] posteriors) {
+        int labels = data.labelCount;
+        IntStream.range(0, data.itemCount).parallel().forEach(item -> {
+            int base = item * labels;
+            int from = data.itemOffsets[item];
+            int to = data.itemOffsets[item + 1];
+            for (int o = from; o < to; o++) {
+                posteriors[base + data.itemLabels[o]] += 1.0;
+            }
+            normalize(posteriors, base, labels, to - from);
+        });
+    }
+
+    /**
+     * posterior[i][k] ~ prior[k] * product of pi_a[k][l] over the answers (a, l) on item i, computed in log space
+     */
+    private void eStep(Observations data, double[] confusions, double[] priors, double[] posteriors) {
+        int labels = data.labelCount;
+        int block = labels * labels;
+        IntStream.range(0, data.itemCount).parallel().forEach(item -> {
+            int base = item * labels;
+            for (int k = 0; k < labels; k++) {
+                posteriors[base + k] = Math.log(Math.max(priors[k], Double.MIN_NORMAL));
+            }
+            for (int o = data.itemOffsets[item]; o < data.itemOffsets[item + 1]; o++) {
+                int confusionBase = data.itemAnnotators[o] * block + data.itemLabels[o];
+                for (int k = 0; k < labels; k++) {
+                    posteriors[base + k] += Math.log(Math.max(confusions[confusionBase + k * labels], Double.MIN_NORMAL));
+                }
+            }
+
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < labels; k++) {
+                max = Math.max(max, posteriors[base + k]);
+            }
+            double sum = 0;
+            for (int k = 0; k < labels; k++) {
+                posteriors[base + k] = Math.exp(posteriors[base + k] - max);
+                sum += posteriors[base + k];
+            }
+            normalize(posteriors, base, labels, sum);
+        });
+    }
+
+    /**
+     * pi_a[k][l] = (smoothing + sum of posterior[i][k] over a's answers l) / (labels * smoothing + sum of posterior[i][k] over all of a's answers)
+     */
+    private void mStep(Observations data, double[] posteriors, double[] confusions, double[] priors) {
+        int labels = data.labelCount;
+        int block = labels * labels;
+
+        IntStream.range(0, data.annotatorCount).parallel().forEach(annotator -> {
+            int base = annotator * block;
+            Arrays.fill(confusions, base, base + block, SMOOTHING);
+            for (int o = data.annotatorOffsets[annotator]; o < data.annotatorOffsets[annotator + 1]; o++) {
+                int itemBase = data.annotatorItems[o] * labels;
+                int answer = data.annotatorLabels[o];
+                for (int k = 0; k < labels; k++) {
+                    confusions[base + k * labels + answer] += posteriors[itemBase + k];
+                }
+            }
+            for (int k = 0; k < labels; k++) {
+                int row = base + k * labels;
+                double rowSum = 0;
+                for (int l = 0; l < labels; l++) {
+                    rowSum += confusions[row + l];
+                }
+                normalize(confusions, row, labels, rowSum);
+            }
+        });
+
+        Arrays.fill(priors, 0);
+        for (int item = 0; item < data.itemCount; item++) {
+            int base = item * labels;
+            for (int k = 0; k < labels; k++) {
+                priors[k] += posteriors[base + k];
+            }
+        }
+        for (int k = 0; k < labels; k++) {
+            priors[k] = (priors[k] + SMOOTHING) / (data.itemCount + labels * SMOOTHING);
+        }
+    }
+
+    private static void normalize(double[] values, int from, int length, double sum) {
+        if (sum <= 0) {
+            Arrays.fill(values, from, from + length, 1.0 / length);
+            return;
+        }
+        for (int i = from; i < from + length; i++) {
+            values[i] /= sum;
+        }
+    }
+
+    private static double maxAbsDifference(double[] a, double[] b) {
+        return IntStream.range(0, a.length).parallel()
+                .mapToDouble(i -> Math.abs(a[i] - b[i]))
+                .max()
+                .orElse(0.0);
+    }
+
+    /**
+     * Sparse observations in dense index space.
+     * Build with {@link #of(int, int, int, int[], int[], int[])}.
+     */
+    @Getter
+    public static class Observations {
+        private final int itemCount;
+        private final int annotatorCount;
+        private final int labelCount;
+
+        // Grouped by item
+        private final int[] itemOffsets;
+        private final int[] itemAnnotators;
+        private final int[] itemLabels;
+
+        // Grouped by annotator
+        private final int[] annotatorOffsets;
+        private final int[] annotatorItems;
+        private final int[] annotatorLabels;
+
+        private Observations(int itemCount, int annotatorCount, int labelCount,
+                             int[] itemOffsets, int[] itemAnnotators, int[] itemLabels,
+                             int[] annotatorOffsets, int[] annotatorItems, int[] annotatorLabels) {
+            this.itemCount = itemCount;
+            this.annotatorCount = annotatorCount;
+            this.labelCount = labelCount;
+            this.itemOffsets = itemOffsets;
+            this.itemAnnotators = itemAnnotators;
+            this.itemLabels = itemLabels;
+            this.annotatorOffsets = annotatorOffsets;
+            this.annotatorItems = annotatorItems;
+            this.annotatorLabels = annotatorLabels;
+        }
+
+        /**
+         * Builds both CSR layouts from parallel observation arrays with a counting sort.
+         *
+         * @param items      Dense item index of each observation
+         * @param annotators Dense annotator index of each observation
+         * @param answers    Dense label index of each observation
+         */
+        public static Observations of(int itemCount, int annotatorCount, int labelCount,
+                                      int[] items, int[] annotators, int[] answers) {
+            int n = items.length;
+
+            int[] itemOffsets = offsets(items, itemCount);
+            int[] itemAnnotators = new int[n];
+            int[] itemLabels = new int[n];
+            int[] itemCursor = Arrays.copyOf(itemOffsets, itemCount);
+
+            int[] annotatorOffsets = offsets(annotators, annotatorCount);
+            int[] annotatorItems = new int[n];
+            int[] annotatorLabels = new int[n];
+            int[] annotatorCursor = Arrays.copyOf(annotatorOffsets, annotatorCount);
+
+            for (int o = 0; o < n; o++) {
+                int i = itemCursor[items[o]]++;
+                itemAnnotators[i] = annotators[o];
+                itemLabels[i] = answers[o];
+
+                int a = annotatorCursor[annotators[o]]++;
+                annotatorItems[a] = items[o];
+                annotatorLabels[a] = answers[o];
+            }
+
+            return new Observations(itemCount, annotatorCount, labelCount,
+                    itemOffsets, itemAnnotators, itemLabels,
+                    annotatorOffsets, annotatorItems, annotatorLabels);
+        }
+
+        private static int[] offsets(int[] keys, int keyCount) {
+            int[] offsets = new int[keyCount + 1];
+            for (int key : keys) {
+                offsets[key + 1]++;
+            }
+            for (int i = 0; i < keyCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            return offsets;
+        }
+    }
+
+    @Getter
+    public static class Result {
+        /**
+         * item * labels + k -> P(true label of item is k)
+         */
+        private final double[] posteriors;
+
+        /**
+         * annotator * labels * labels + k * labels + l -> P(annotator answers l | true label k)
+         */
+        private final double[] confusions;
+
+        private final double[] priors;
+        private final int iterations;
+        private final boolean converged;
+
+        Result(double[] posteriors, double[] confusions, double[] priors, int iterations, boolean converged) {
+            this.posteriors = posteriors;
+            this.confusions = confusions;
+            this.priors = priors;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+
+        /**
+         * Dense label index with the highest posterior for the item
+         */
+        public int mostLikelyLabel(int item) {
+            int labels = priors.length;
+            int base = item * labels;
+            int best = 0;
+            for (int k = 1; k < labels; k++) {
+                if (posteriors[base + k] > posteriors[base + best]) {
+                    best = k;
+                }
+            }
+            return best;
+        }
+
+        public double posterior(int item, int label) {
+            return posteriors[item * priors.length + label];
+        }
+    }
+}
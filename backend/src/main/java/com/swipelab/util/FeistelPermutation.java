@@ -0,0 +1,78 @@
+package com.swipelab.util;
+
+/**
+ * Keyed pseudo-random permutation of the index range [0, size).
+ *
+ * A balanced Feistel network over the smallest even number of bits that covers the range is a
+ * bijection on that power of two; indexes that land outside the range are encrypted again
+ * (cycle walking) until they fall inside, which keeps it a bijection on [0, size). The bit
+ * width is less than four times the range, so a lookup takes a few rounds on average and
+ * nothing has to be stored: the same key and size always give the same order. Not a
+ * cryptographic permutation, only a well-mixed one. Immutable and thread-safe.
+ */
+public class FeistelPermutation {
+
+    private static final int ROUNDS = 4;
+
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    /**
+     * @param size Number of indexes to permute
+     * @param key  Seed of the order; different keys give unrelated orders
+     */
+    public FeistelPermutation(long size, long key) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Permutation size must be positive");
+        }
+        int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+        this.size = size;
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        long state = key;
+        for (int round = 0; round < ROUNDS; round++) {
+            state += 0x9E3779B97F4A7C15L;
+            roundKeys[round] = mix(state);
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Position of {@code index} in the permuted order
+     */
+    public long permute(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside [0, " + size + ")");
+        }
+        long value = index;
+        do {
+            value = encrypt(value);
+        } while (value >= size);
+        return value;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ (mix(right ^ roundKeys[round]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * SplitMix64 finalizer: every input bit affects every output bit
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
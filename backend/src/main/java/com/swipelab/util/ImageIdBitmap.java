@@ -0,0 +1,369 @@
+package com.swipelab.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed set of image ids, laid out like a Roaring bitmap.
+ *
+ * An id is split into a high part (id >>> 16) and a 16-bit low part. Every high part in use
+ * has a container: a sorted char array while it holds at most 4096 ids, and a 65536-bit
+ * bitmap (8 KB) once the array would be larger. Image ids come from a sequence, so the ids of
+ * one task cluster in a few containers and lookups are a binary search over a short key array
+ * plus one probe. Not thread-safe.
+ */
+public class ImageIdBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte ARRAY_CONTAINER = 0;
+    private static final byte BITMAP_CONTAINER = 1;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+    private long cardinality;
+
+    /**
+     * @return true if the id was not in the bitmap yet
+     */
+    public boolean add(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Image id must not be negative: " + id);
+        }
+        long key = id >>> 16;
+        int index = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        if (container.contains((char) id)) {
+            return false;
+        }
+        containers[index] = container.add((char) id);
+        cardinality++;
+        return true;
+    }
+
+    public boolean contains(long id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, containerCount, id >>> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Candidates that are not in the bitmap, in their original order.
+     * Consecutive candidates with the same high part share one container lookup, so a batch of
+     * nearby ids costs a single binary search plus one probe per id.
+     */
+    public long[] filterAbsent(long[] candidates) {
+        long[] absent = new long[candidates.length];
+        int count = 0;
+        long lastKey = -1;
+        Container container = null;
+        for (long id : candidates) {
+            if (id >= 0) {
+                long key = id >>> 16;
+                if (key != lastKey) {
+                    lastKey = key;
+                    int index = Arrays.binarySearch(keys, 0, containerCount, key);
+                    container = index >= 0 ? containers[index] : null;
+                }
+                if (container != null && container.contains((char) id)) {
+                    continue;
+                }
+            }
+            absent[count++] = id;
+        }
+        return count == absent.length ? absent : Arrays.copyOf(absent, count);
+    }
+
+    /**
+     * All ids in ascending order
+     */
+    public long[] toArray() {
+        long[] ids = new long[Math.toIntExact(cardinality)];
+        int offset = 0;
+        for (int index = 0; index < containerCount; index++) {
+            offset = containers[index].copyTo(keys[index] << 16, ids, offset);
+        }
+        return ids;
+    }
+
+    public ImageIdBitmap copy() {
+        ImageIdBitmap copy = new ImageIdBitmap();
+        copy.keys = Arrays.copyOf(keys, keys.length);
+        copy.containers = new Container[containers.length];
+        for (int index = 0; index < containerCount; index++) {
+            copy.containers[index] = containers[index].copy();
+        }
+        copy.containerCount = containerCount;
+        copy.cardinality = cardinality;
+        return copy;
+    }
+
+    /**
+     * Portable form for storage: a version, the container count, then per container its key,
+     * type, cardinality and contents, all big-endian.
+     */
+    public byte[] serialize() {
+        int size = 2 * Integer.BYTES;
+        for (int index = 0; index < containerCount; index++) {
+            size += Long.BYTES + 1 + Integer.BYTES + containers[index].serializedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(containerCount);
+        for (int index = 0; index < containerCount; index++) {
+            Container container = containers[index];
+            buffer.putLong(keys[index]);
+            buffer.put(container instanceof BitmapContainer ? BITMAP_CONTAINER : ARRAY_CONTAINER);
+            buffer.putInt(container.cardinality());
+            container.write(buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes were not produced by {@link #serialize()}
+     */
+    public static ImageIdBitmap deserialize(byte[] bytes) {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported image bitmap version " + version);
+            }
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative container count " + count);
+            }
+            long previousKey = -1;
+            for (int index = 0; index < count; index++) {
+                long key = buffer.getLong();
+                if (key <= previousKey || key > (Long.MAX_VALUE >>> 16)) {
+                    throw new IllegalArgumentException("Container keys out of order at " + key);
+                }
+                previousKey = key;
+                byte type = buffer.get();
+                int cardinality = buffer.getInt();
+                Container container;
+                if (type == ARRAY_CONTAINER) {
+                    container = ArrayContainer.read(buffer, cardinality);
+                } else if (type == BITMAP_CONTAINER) {
+                    container = BitmapContainer.read(buffer, cardinality);
+                } else {
+                    throw new IllegalArgumentException("Unknown container type " + type);
+                }
+                bitmap.insertContainer(bitmap.containerCount, key, container);
+                bitmap.cardinality += cardinality;
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException(buffer.remaining() + " trailing bytes in image bitmap");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated image bitmap", e);
+        }
+        return bitmap;
+    }
+
+    private void insertContainer(int index, long key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount << 1);
+            containers = Arrays.copyOf(containers, containerCount << 1);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    private abstract static class Container {
+        abstract boolean contains(char low);
+
+        /**
+         * Adds an absent value; returns the container to keep, which may be a converted one
+         */
+        abstract Container add(char low);
+
+        abstract int cardinality();
+
+        abstract int copyTo(long high, long[] target, int offset);
+
+        abstract Container copy();
+
+        abstract int serializedSize();
+
+        abstract void write(ByteBuffer buffer);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int count;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int count) {
+            this.values = values;
+            this.count = count;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, count, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            if (count == ARRAY_LIMIT) {
+                return toBitmap().add(low);
+            }
+            int index = -Arrays.binarySearch(values, 0, count, low) - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(count << 1, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = low;
+            count++;
+            return this;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(new long[BITMAP_WORDS], 0);
+            for (int index = 0; index < count; index++) {
+                bitmap.add(values[index]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        int copyTo(long high, long[] target, int offset) {
+            for (int index = 0; index < count; index++) {
+                target[offset++] = high | values[index];
+            }
+            return offset;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, values.length), count);
+        }
+
+        @Override
+        int serializedSize() {
+            return count * Character.BYTES;
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            for (int index = 0; index < count; index++) {
+                buffer.putChar(values[index]);
+            }
+        }
+
+        static ArrayContainer read(ByteBuffer buffer, int cardinality) {
+            if (cardinality < 1 || cardinality > ARRAY_LIMIT) {
+                throw new IllegalArgumentException("Invalid array container size " + cardinality);
+            }
+            char[] values = new char[cardinality];
+            for (int index = 0; index < cardinality; index++) {
+                values[index] = buffer.getChar();
+                if (index > 0 && values[index] <= values[index - 1]) {
+                    throw new IllegalArgumentException("Array container values out of order");
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int count;
+
+        private BitmapContainer(long[] words, int count) {
+            this.words = words;
+            this.count = count;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            words[low >>> 6] |= 1L << low;
+            count++;
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        int copyTo(long high, long[] target, int offset) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    target[offset++] = high | ((long) word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS), count);
+        }
+
+        @Override
+        int serializedSize() {
+            return BITMAP_WORDS * Long.BYTES;
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+        }
+
+        static BitmapContainer read(ByteBuffer buffer, int cardinality) {
+            long[] words = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                words[word] = buffer.getLong();
+                count += Long.bitCount(words[word]);
+            }
+            if (count != cardinality) {
+                throw new IllegalArgumentException("Bitmap container holds " + count + " ids, expected " + cardinality);
+            }
+            return new BitmapContainer(words, count);
+        }
+    }
+}
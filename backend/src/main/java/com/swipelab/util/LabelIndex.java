@@ -0,0 +1,60 @@
+package com.swipelab.util;
+
+import java.util.Arrays;
+
+/**
+ * Dense numbering of label ids.
+ * Maps arbitrary database label ids to 0..size-1 so per-label counters can live in plain
+ * int arrays instead of {@code Map<Long, Integer>}. Not thread-safe.
+ */
+public class LabelIndex {
+
+    private static final int ABSENT = -1;
+
+    private final LongIntHashMap indexById;
+    private long[] labelIds;
+    private int size;
+
+    public LabelIndex() {
+        this(16);
+    }
+
+    public LabelIndex(int expectedLabels) {
+        this.indexById = new LongIntHashMap(expectedLabels, ABSENT);
+        this.labelIds = new long[Math.max(expectedLabels, 4)];
+    }
+
+    /**
+     * Returns the dense index of the label, assigning the next free one on first sight.
+     */
+    public int indexOf(long labelId) {
+        int index = indexById.get(labelId);
+        if (index != ABSENT) {
+            return index;
+        }
+        if (size == labelIds.length) {
+            labelIds = Arrays.copyOf(labelIds, size << 1);
+        }
+        labelIds[size] = labelId;
+        indexById.put(labelId, size);
+        return size++;
+    }
+
+    /**
+     * Returns the dense index of the label, or -1 if it was never indexed.
+     */
+    public int find(long labelId) {
+        return indexById.get(labelId);
+    }
+
+    public long labelIdAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Label index " + index + " out of range [0, " + size + ")");
+        }
+        return labelIds[index];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,107 @@
+package com.swipelab.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel: deadlines are bucketed by tick, so scheduling is O(1) and advancing the
+ * clock only touches the buckets of the ticks that passed.
+ *
+ * A deadline further away than one revolution stays in its bucket and is skipped until the
+ * revolution it belongs to. Sizing the wheel to cover the longest usual deadline means every
+ * entry is looked at exactly once. Entries cannot be cancelled; callers re-check the item
+ * when it fires. Thread-safe.
+ *
+ * @param <T> Item handed back when its deadline has passed
+ */
+public class TimerWheel<T> {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<Entry<T>>[] buckets;
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMs    Resolution of the wheel; items fire up to one tick late
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     * @param startMs   Clock value the wheel starts at
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int capacity = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickMs = tickMs;
+        this.mask = capacity - 1;
+        this.buckets = new List[capacity];
+        for (int bucket = 0; bucket < capacity; bucket++) {
+            buckets[bucket] = new ArrayList<>();
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+    /**
+     * Schedules an item; a deadline that has already passed fires on the next advance
+     */
+    public synchronized void schedule(T item, long deadlineMs) {
+        // Rounded up, so an item never fires before its deadline
+        long deadlineTick = Math.max(Math.floorDiv(deadlineMs + tickMs - 1, tickMs), currentTick + 1);
+        buckets[(int) (deadlineTick & mask)].add(new Entry<>(deadlineTick, item));
+        size++;
+    }
+
+    /**
+     * Moves the clock forward and hands every item whose deadline has passed to the consumer.
+     * The consumer runs while the wheel is locked, so it must not schedule on this wheel.
+     *
+     * @return number of items fired
+     */
+    public synchronized int advance(long nowMs, Consumer<T> expired) {
+        long nowTick = nowMs / tickMs;
+        if (nowTick <= currentTick) {
+            return 0;
+        }
+        int fired = 0;
+        // After a long pause every bucket is due, but each needs to be visited only once
+        long lastTick = Math.min(nowTick, currentTick + buckets.length);
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            List<Entry<T>> bucket = buckets[(int) (tick & mask)];
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            // Compacts the entries of later revolutions in place
+            int kept = 0;
+            for (int index = 0; index < bucket.size(); index++) {
+                Entry<T> entry = bucket.get(index);
+                if (entry.deadlineTick <= nowTick) {
+                    expired.accept(entry.item);
+                    fired++;
+                } else {
+                    bucket.set(kept++, entry);
+                }
+            }
+            bucket.subList(kept, bucket.size()).clear();
+        }
+        currentTick = nowTick;
+        size -= fired;
+        return fired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static final class Entry<T> {
+        private final long deadlineTick;
+        private final T item;
+
+        Entry(long deadlineTick, T item) {
+            this.deadlineTick = deadlineTick;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- ADAPTIVE STOPPING
+-- Tasks can stop collecting labels for an image as soon as its leading label is certain
+-- enough, instead of after a fixed number of classifications.
+ALTER TABLE tasks ADD COLUMN stopping_mode VARCHAR(20) NOT NULL DEFAULT 'FIXED';
+ALTER TABLE tasks ADD COLUMN stopping_confidence DOUBLE PRECISION DEFAULT 0.95;
+ALTER TABLE tasks ADD COLUMN max_classifications_per_image INTEGER DEFAULT 10;
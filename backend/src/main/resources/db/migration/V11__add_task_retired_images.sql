@@ -0,0 +1,11 @@
+-- RETIRED IMAGES
+-- One compressed bitmap of finalized image ids per task, so image selection can drop
+-- completed images without querying their vote state. Written by RetiredImageIndex;
+-- existing finalized images are folded in from image_vote_summaries on startup.
+CREATE TABLE task_retired_images (
+    task_id BIGINT PRIMARY KEY,
+    bitmap BYTEA NOT NULL,
+    image_count BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_retired_images_task FOREIGN KEY (task_id) REFERENCES tasks(id) ON DELETE CASCADE
+);
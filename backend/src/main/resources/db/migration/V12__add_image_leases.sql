@@ -0,0 +1,25 @@
+-- IMAGE LEASES
+-- One row per image still in circulation. A batch request claims rows with
+-- FOR UPDATE SKIP LOCKED and leases them to the requesting user until lease_expires_at,
+-- so concurrent requests never wait on each other and never get the same image.
+-- vote_count mirrors image_vote_summaries.total_votes for ordering; finalized images
+-- are deleted from the table.
+CREATE TABLE image_leases (
+    image_id BIGINT PRIMARY KEY,
+    task_id BIGINT NOT NULL,
+    priority INTEGER NOT NULL DEFAULT 0,
+    vote_count INTEGER NOT NULL DEFAULT 0,
+    leased_to VARCHAR(255),
+    lease_expires_at TIMESTAMP,
+    CONSTRAINT fk_image_lease_image FOREIGN KEY (image_id) REFERENCES images(id) ON DELETE CASCADE,
+    CONSTRAINT fk_image_lease_task FOREIGN KEY (task_id) REFERENCES tasks(id) ON DELETE CASCADE
+);
+
+-- Claim order within a task: highest priority first, then the images closest to done
+CREATE INDEX idx_image_leases_claim ON image_leases(task_id, priority DESC, vote_count DESC, image_id);
+
+INSERT INTO image_leases (image_id, task_id, priority, vote_count)
+SELECT i.id, i.task_id, COALESCE(i.priority, 0), COALESCE(s.total_votes, 0)
+FROM images i
+LEFT JOIN image_vote_summaries s ON s.image_id = i.id
+WHERE s.finalized_label_id IS NULL;
@@ -0,0 +1,16 @@
+-- PERMUTED DISTRIBUTION
+-- Tasks in PERMUTED mode derive every user's image order from a permutation keyed by the
+-- username, so only the user's position in that order is stored. domain_size is the number
+-- of task images the position refers to; when the task grows the walk starts over.
+ALTER TABLE tasks ADD COLUMN distribution_mode VARCHAR(20) NOT NULL DEFAULT 'LEASED';
+
+CREATE TABLE user_task_cursors (
+    task_id BIGINT NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    position BIGINT NOT NULL DEFAULT 0,
+    domain_size BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP,
+    PRIMARY KEY (task_id, username),
+    CONSTRAINT fk_user_task_cursor_task FOREIGN KEY (task_id) REFERENCES tasks(id) ON DELETE CASCADE,
+    CONSTRAINT fk_user_task_cursor_user FOREIGN KEY (username) REFERENCES users(username)
+);
@@ -0,0 +1,11 @@
+-- RECIPIENT GROUP MEMBERSHIP
+-- A task with recipient groups is only served to members of one of them;
+-- a task without any is open to everyone.
+CREATE TABLE user_recipient_groups (
+    username VARCHAR(255) NOT NULL,
+    recipient_group_id BIGINT NOT NULL,
+    PRIMARY KEY (username, recipient_group_id),
+    CONSTRAINT fk_user_recipient_group_user FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_task_recipient_groups_task ON task_recipient_groups(task_id);
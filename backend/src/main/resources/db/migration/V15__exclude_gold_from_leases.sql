@@ -0,0 +1,4 @@
+-- GOLD INTERLEAVING
+-- Gold images are mixed into batches at a controlled rate per user, so they no longer
+-- circulate through image leases like ordinary images.
+DELETE FROM image_leases WHERE image_id IN (SELECT id FROM images WHERE is_gold_standard = TRUE);
@@ -0,0 +1,41 @@
+-- ONE CLASSIFICATION PER USER AND IMAGE
+-- Submissions reject images the user already classified; the constraint is the backstop
+-- for two submissions that pass that check at the same time.
+
+-- Keep each user's first classification of an image, the one the agreement counters compare
+DELETE FROM classifications c
+WHERE EXISTS (
+    SELECT 1 FROM classifications d
+    WHERE d.user_id = c.user_id AND d.image_id = c.image_id AND d.id < c.id
+);
+
+-- The unique constraint's index replaces the plain one
+DROP INDEX idx_classifications_user_image;
+ALTER TABLE classifications ADD CONSTRAINT uq_classification_user_image UNIQUE (user_id, image_id);
+
+-- Recount the vote tallies without the removed repeats. Users' agreement counters are
+-- rebuilt by the nightly credibility recompute.
+UPDATE image_vote_tallies t
+SET vote_count = (
+        SELECT COUNT(*) FROM classifications c
+        WHERE c.image_id = t.image_id AND c.label_id = t.label_id
+    ),
+    weighted_votes = (
+        SELECT COALESCE(SUM(COALESCE(c.vote_weight, 0)), 0) FROM classifications c
+        WHERE c.image_id = t.image_id AND c.label_id = t.label_id
+    );
+
+UPDATE image_vote_summaries s
+SET total_votes = (SELECT COALESCE(SUM(t.vote_count), 0) FROM image_vote_tallies t WHERE t.image_id = s.image_id),
+    total_weight = (SELECT COALESCE(SUM(t.weighted_votes), 0) FROM image_vote_tallies t WHERE t.image_id = s.image_id),
+    leading_weight = (SELECT COALESCE(MAX(t.weighted_votes), 0) FROM image_vote_tallies t WHERE t.image_id = s.image_id);
+
+UPDATE image_vote_summaries s
+SET leading_label_id = (
+        SELECT MIN(t.label_id) FROM image_vote_tallies t
+        WHERE t.image_id = s.image_id AND t.weighted_votes = s.leading_weight AND s.leading_weight > 0
+    ),
+    majority_label_id = (
+        SELECT MIN(t.label_id) FROM image_vote_tallies t
+        WHERE t.image_id = s.image_id AND t.vote_count * 2 > s.total_votes AND s.total_votes >= 2
+    );
@@ -0,0 +1,16 @@
+-- CREDIBILITY SCORE
+-- The credibility pipeline now writes credibility_score, which weighs votes in the consensus
+-- and ranks users for the credibility tiers. Existing users get it from their stored kappa and
+-- majority agreement, weighted by the comparisons behind each and shrunk by the default
+-- 10 prior comparisons, like CredibilityCalculator.calculateCredibilityScore.
+UPDATE users u
+SET credibility_score = (
+    SELECT LEAST(1.0,
+                 (s.expert_compared_count * GREATEST(COALESCE(u.agreement_with_experts, 0), 0)
+                     + s.majority_compared_count * COALESCE(u.majority_agreement_score, 0))
+                 / (s.expert_compared_count + s.majority_compared_count + 10.0))
+    FROM user_agreement_stats s
+    WHERE s.username = u.username
+)
+WHERE u.role <> 'RESEARCHER'
+  AND EXISTS (SELECT 1 FROM user_agreement_stats s WHERE s.username = u.username);
@@ -0,0 +1,67 @@
+-- USER AGREEMENT STATS
+-- Running accumulators used to derive Cohen's Kappa without reloading a user's
+-- whole classification history. One row per user, plus per-label marginals.
+CREATE TABLE user_agreement_stats (
+    username VARCHAR(255) PRIMARY KEY,
+    expert_compared_count INTEGER NOT NULL DEFAULT 0,
+    expert_agreed_count INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_agreement_stats_user FOREIGN KEY (username) REFERENCES users(username)
+);
+
+-- How often the user picked each label on images they share with experts
+CREATE TABLE user_agreement_user_labels (
+    username VARCHAR(255) NOT NULL,
+    label_id BIGINT NOT NULL,
+    label_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (username, label_id),
+    CONSTRAINT fk_agreement_user_labels_stats FOREIGN KEY (username) REFERENCES user_agreement_stats(username),
+    CONSTRAINT fk_agreement_user_labels_label FOREIGN KEY (label_id) REFERENCES labels(id)
+);
+
+-- How often the experts picked each label on those same images
+CREATE TABLE user_agreement_expert_labels (
+    username VARCHAR(255) NOT NULL,
+    label_id BIGINT NOT NULL,
+    label_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (username, label_id),
+    CONSTRAINT fk_agreement_expert_labels_stats FOREIGN KEY (username) REFERENCES user_agreement_stats(username),
+    CONSTRAINT fk_agreement_expert_labels_label FOREIGN KEY (label_id) REFERENCES labels(id)
+);
+
+CREATE INDEX idx_classifications_user_image ON classifications(user_id, image_id);
+CREATE INDEX idx_classifications_image ON classifications(image_id);
+
+-- Backfill from existing classifications, as the incremental path counts them: each regular
+-- user's first classification of an image is compared against the image's first expert label
+CREATE TABLE agreement_backfill AS
+SELECT c.user_id AS username, c.label_id AS user_label_id, e.label_id AS expert_label_id
+FROM classifications c
+JOIN users u ON u.username = c.user_id
+JOIN classifications e ON e.image_id = c.image_id
+JOIN users eu ON eu.username = e.user_id
+WHERE u.role <> 'RESEARCHER'
+  AND c.id = (SELECT MIN(p.id) FROM classifications p WHERE p.user_id = c.user_id AND p.image_id = c.image_id)
+  AND eu.role = 'RESEARCHER'
+  AND e.id = (
+      SELECT MIN(p.id) FROM classifications p
+      JOIN users pu ON pu.username = p.user_id
+      WHERE p.image_id = c.image_id AND pu.role = 'RESEARCHER'
+  );
+
+INSERT INTO user_agreement_stats (username, expert_compared_count, expert_agreed_count, updated_at)
+SELECT username, COUNT(*), SUM(CASE WHEN user_label_id = expert_label_id THEN 1 ELSE 0 END), NOW()
+FROM agreement_backfill
+GROUP BY username;
+
+INSERT INTO user_agreement_user_labels (username, label_id, label_count)
+SELECT username, user_label_id, COUNT(*)
+FROM agreement_backfill
+GROUP BY username, user_label_id;
+
+INSERT INTO user_agreement_expert_labels (username, label_id, label_count)
+SELECT username, expert_label_id, COUNT(*)
+FROM agreement_backfill
+GROUP BY username, expert_label_id;
+
+DROP TABLE agreement_backfill;
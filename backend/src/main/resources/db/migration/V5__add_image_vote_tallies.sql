@@ -0,0 +1,62 @@
+-- IMAGE VOTE TALLIES
+-- Per-image label counts, maintained in the same transaction as the classification
+-- insert, so majority scoring never has to re-read an image's classifications.
+CREATE TABLE image_vote_tallies (
+    id BIGSERIAL PRIMARY KEY,
+    image_id BIGINT NOT NULL,
+    label_id BIGINT NOT NULL,
+    vote_count INTEGER NOT NULL DEFAULT 0,
+    CONSTRAINT fk_vote_tally_image FOREIGN KEY (image_id) REFERENCES images(id),
+    CONSTRAINT fk_vote_tally_label FOREIGN KEY (label_id) REFERENCES labels(id),
+    CONSTRAINT uq_vote_tally_image_label UNIQUE (image_id, label_id)
+);
+
+-- One row per image: total votes and the cached majority label (>50% of at least 2 votes).
+-- Also serves as the per-image lock row when a vote is recorded.
+CREATE TABLE image_vote_summaries (
+    image_id BIGINT PRIMARY KEY,
+    total_votes INTEGER NOT NULL DEFAULT 0,
+    majority_label_id BIGINT,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_vote_summary_image FOREIGN KEY (image_id) REFERENCES images(id),
+    CONSTRAINT fk_vote_summary_majority_label FOREIGN KEY (majority_label_id) REFERENCES labels(id)
+);
+
+-- Per-user majority agreement counters
+ALTER TABLE user_agreement_stats ADD COLUMN majority_compared_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE user_agreement_stats ADD COLUMN majority_agreed_count INTEGER NOT NULL DEFAULT 0;
+
+-- Backfill from existing classifications
+INSERT INTO image_vote_tallies (image_id, label_id, vote_count)
+SELECT image_id, label_id, COUNT(*)
+FROM classifications
+GROUP BY image_id, label_id;
+
+INSERT INTO image_vote_summaries (image_id, total_votes, updated_at)
+SELECT image_id, SUM(vote_count), NOW()
+FROM image_vote_tallies
+GROUP BY image_id;
+
+UPDATE image_vote_summaries s
+SET majority_label_id = (
+    SELECT t.label_id FROM image_vote_tallies t
+    WHERE t.image_id = s.image_id AND t.vote_count * 2 > s.total_votes
+)
+WHERE s.total_votes >= 2;
+
+INSERT INTO user_agreement_stats (username)
+SELECT DISTINCT c.user_id
+FROM classifications c
+WHERE NOT EXISTS (SELECT 1 FROM user_agreement_stats a WHERE a.username = c.user_id);
+
+UPDATE user_agreement_stats a
+SET majority_compared_count = (
+        SELECT COUNT(*) FROM classifications c
+        JOIN image_vote_summaries s ON s.image_id = c.image_id
+        WHERE c.user_id = a.username AND s.majority_label_id IS NOT NULL
+    ),
+    majority_agreed_count = (
+        SELECT COUNT(*) FROM classifications c
+        JOIN image_vote_summaries s ON s.image_id = c.image_id
+        WHERE c.user_id = a.username AND s.majority_label_id = c.label_id
+    );
@@ -0,0 +1,13 @@
+-- JOB CHECKPOINTS
+-- Progress of long-running batch jobs, so a restarted job resumes where it stopped.
+CREATE TABLE job_checkpoints (
+    job_name VARCHAR(100) PRIMARY KEY,
+    run_started_at TIMESTAMP,
+    last_key VARCHAR(255),
+    processed_count BIGINT NOT NULL DEFAULT 0,
+    completed_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+-- The full credibility recompute streams classifications grouped by user, oldest first
+CREATE INDEX idx_classifications_user_id ON classifications(user_id, id);
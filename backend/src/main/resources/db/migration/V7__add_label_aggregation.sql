@@ -0,0 +1,27 @@
+-- LABEL AGGREGATION
+-- Output of the per-task Dawid-Skene run: the most likely true label of every image
+-- and each annotator's estimated confusion matrix, which seeds the next run.
+CREATE TABLE image_label_posteriors (
+    image_id BIGINT PRIMARY KEY,
+    task_id BIGINT NOT NULL,
+    label_id BIGINT NOT NULL,
+    probability DOUBLE PRECISION NOT NULL,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_label_posterior_image FOREIGN KEY (image_id) REFERENCES images(id),
+    CONSTRAINT fk_label_posterior_task FOREIGN KEY (task_id) REFERENCES tasks(id),
+    CONSTRAINT fk_label_posterior_label FOREIGN KEY (label_id) REFERENCES labels(id)
+);
+
+CREATE INDEX idx_image_label_posteriors_task ON image_label_posteriors(task_id);
+
+-- P(annotator answers answered_label_id | true label is true_label_id) within one task
+CREATE TABLE annotator_confusions (
+    task_id BIGINT NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    true_label_id BIGINT NOT NULL,
+    answered_label_id BIGINT NOT NULL,
+    probability DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (task_id, username, true_label_id, answered_label_id),
+    CONSTRAINT fk_annotator_confusion_task FOREIGN KEY (task_id) REFERENCES tasks(id),
+    CONSTRAINT fk_annotator_confusion_user FOREIGN KEY (username) REFERENCES users(username)
+);
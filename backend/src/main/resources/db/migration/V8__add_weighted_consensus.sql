@@ -0,0 +1,35 @@
+-- WEIGHTED CONSENSUS
+-- Every vote also adds the voter's credibility weight (taken at vote time) to the tally.
+-- An image is finalized once its leading label holds the task's consensus threshold share
+-- of the total weight with at least the task's minimum number of classifications.
+ALTER TABLE image_vote_tallies ADD COLUMN weighted_votes DOUBLE PRECISION NOT NULL DEFAULT 0;
+
+ALTER TABLE image_vote_summaries ADD COLUMN total_weight DOUBLE PRECISION NOT NULL DEFAULT 0;
+ALTER TABLE image_vote_summaries ADD COLUMN leading_label_id BIGINT;
+ALTER TABLE image_vote_summaries ADD COLUMN leading_weight DOUBLE PRECISION NOT NULL DEFAULT 0;
+ALTER TABLE image_vote_summaries ADD COLUMN finalized_label_id BIGINT;
+ALTER TABLE image_vote_summaries ADD COLUMN finalized_at TIMESTAMP;
+ALTER TABLE image_vote_summaries ADD CONSTRAINT fk_vote_summary_finalized_label
+    FOREIGN KEY (finalized_label_id) REFERENCES labels(id);
+
+-- Backfill with the current scores, floored at the default minimum vote weight (experts count fully).
+-- Existing images are finalized by their next vote.
+UPDATE image_vote_tallies t
+SET weighted_votes = (
+    SELECT COALESCE(SUM(CASE WHEN u.role = 'RESEARCHER' THEN 1.0
+                             ELSE LEAST(GREATEST(COALESCE(u.credibility_score, 0), 0.1), 1.0) END), 0)
+    FROM classifications c
+    JOIN users u ON u.username = c.user_id
+    WHERE c.image_id = t.image_id AND c.label_id = t.label_id
+);
+
+UPDATE image_vote_summaries s
+SET total_weight = (SELECT COALESCE(SUM(t.weighted_votes), 0) FROM image_vote_tallies t WHERE t.image_id = s.image_id),
+    leading_weight = (SELECT COALESCE(MAX(t.weighted_votes), 0) FROM image_vote_tallies t WHERE t.image_id = s.image_id);
+
+UPDATE image_vote_summaries s
+SET leading_label_id = (
+    SELECT MIN(t.label_id) FROM image_vote_tallies t
+    WHERE t.image_id = s.image_id AND t.weighted_votes = s.leading_weight
+)
+WHERE s.leading_weight > 0;
@@ -0,0 +1,11 @@
+-- Credibility weight of each vote at the time it was cast, so the in-memory consensus
+-- counters can be rebuilt exactly after a restart.
+ALTER TABLE classifications ADD COLUMN vote_weight DOUBLE PRECISION;
+
+UPDATE classifications c
+SET vote_weight = (
+    SELECT CASE WHEN u.role = 'RESEARCHER' THEN 1.0
+                ELSE LEAST(GREATEST(COALESCE(u.credibility_score, 0), 0.1), 1.0) END
+    FROM users u
+    WHERE u.username = c.user_id
+);
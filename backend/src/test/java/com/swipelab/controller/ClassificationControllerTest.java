@@ -0,0 +1,106 @@
+package com.swipelab.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.exception.ValidationException;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.service.auth.JwtService;
+import com.swipelab.service.classification.ClassificationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ClassificationController.class)
+@AutoConfigureMockMvc(addFilters = false)
+class ClassificationControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private ClassificationService classificationService;
+
+    // Security Mocks needed for context
+    @MockBean
+    private JwtService jwtService;
+    @MockBean
+    private com.swipelab.security.JwtTokenProvider jwtTokenProvider;
+    @MockBean
+    private org.springframework.security.core.userdetails.UserDetailsService userDetailsService;
+
+    @Test
+    void submit_ShouldReturnCreated() throws Exception {
+        when(classificationService.submitClassification("alice", 1L, 100L)).thenReturn(classification(10L, 1L, 100L));
+
+        mockMvc.perform(post("/api/classifications")
+                        .principal(() -> "alice")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ClassificationRequest(1L, 100L))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(10))
+                .andExpect(jsonPath("$.labelId").value(100));
+    }
+
+    @Test
+    void submit_ShouldRejectSwipeWithoutLabel() throws Exception {
+        mockMvc.perform(post("/api/classifications")
+                        .principal(() -> "alice")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ClassificationRequest(1L, null))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void submitBatch_ShouldReturnClassificationsInOrder() throws Exception {
+        when(classificationService.submitClassifications(eq("alice"), anyList()))
+                .thenReturn(List.of(classification(10L, 1L, 100L), classification(11L, 2L, 101L)));
+
+        mockMvc.perform(post("/api/classifications/batch")
+                        .principal(() -> "alice")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                new ClassificationRequest(1L, 100L), new ClassificationRequest(2L, 101L)))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$[0].id").value(10))
+                .andExpect(jsonPath("$[1].imageId").value(2));
+    }
+
+    @Test
+    void submitBatch_ShouldReturnBadRequest_WhenSwipesAreInvalid() throws Exception {
+        when(classificationService.submitClassifications(eq("alice"), anyList()))
+                .thenThrow(new ValidationException("swipes[0]: image 9 not found"));
+
+        mockMvc.perform(post("/api/classifications/batch")
+                        .principal(() -> "alice")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(new ClassificationRequest(9L, 100L)))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("swipes[0]: image 9 not found"));
+    }
+
+    private Classification classification(Long id, Long imageId, Long labelId) {
+        return Classification.builder()
+                .id(id)
+                .image(Image.builder().id(imageId).build())
+                .label(Label.builder().id(labelId).build())
+                .build();
+    }
+}
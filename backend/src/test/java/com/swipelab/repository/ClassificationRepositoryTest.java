@@ -0,0 +1,95 @@
+package com.swipelab.repository;
+
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The bulk write paths must reach the database as JDBC batches: with ids from pooled
+ * sequences and hibernate.jdbc.batch_size=50, 120 rows take three INSERT statements
+ * (50 + 50 + 20) and a few sequence calls, where IDENTITY ids took one statement per row.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ClassificationRepositoryTest {
+
+    private static final int ROWS = 120;
+
+    @Autowired
+    private ClassificationRepository classificationRepository;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User user;
+    private Task task;
+    private Label label;
+
+    @BeforeEach
+    void setUp() {
+        user = User.builder().username("batcher").email("batcher@example.com").build();
+        entityManager.persist(user);
+        task = Task.builder().name("Batching").createdBy(user).build();
+        entityManager.persist(task);
+        label = Label.builder().name("owl").build();
+        entityManager.persist(label);
+        entityManager.flush();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void saveAllAndFlush_ShouldBatchImageInserts() {
+        imageRepository.saveAllAndFlush(images());
+
+        assertEquals(ROWS, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+                "expected batched inserts, got " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    void saveAllAndFlush_ShouldBatchClassificationInserts() {
+        List<Image> images = imageRepository.saveAllAndFlush(images());
+        statistics.clear();
+
+        List<Classification> classifications = new ArrayList<>(ROWS);
+        for (Image image : images) {
+            classifications.add(Classification.builder().user(user).image(image).label(label).voteWeight(1.0).build());
+        }
+        classificationRepository.saveAllAndFlush(classifications);
+
+        assertEquals(ROWS, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+                "expected batched inserts, got " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    private List<Image> images() {
+        List<Image> images = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            images.add(Image.builder().imageUrl("https://images.example.com/" + i).task(task).build());
+        }
+        return images;
+    }
+}
@@ -0,0 +1,128 @@
+package com.swipelab.service;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.dto.response.ImageBatchResponse;
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.enums.DistributionMode;
+import com.swipelab.repository.ImageRepository;
+import com.swipelab.service.classification.FairShareScheduler;
+import com.swipelab.service.classification.TaskDistributionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageServiceTest {
+
+    @Mock
+    private ImageRepository imageRepository;
+    @Mock
+    private TaskDistributionService taskDistributionService;
+    @Mock
+    private FairShareScheduler fairShareScheduler;
+
+    private ImageService imageService;
+
+    @BeforeEach
+    void setUp() {
+        imageService = new ImageService(imageRepository, taskDistributionService,
+                fairShareScheduler, new DistributionConfig());
+    }
+
+    @Test
+    void getBatch_ShouldReturnLeasedImagesInClaimOrder() {
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(2);
+        when(fairShareScheduler.distributionMode(7L, "alice")).thenReturn(DistributionMode.LEASED);
+        when(taskDistributionService.nextBatch(7L, "alice", 10))
+                .thenReturn(new TaskDistributionService.LeasedBatch(List.of(3L, 1L), expiresAt));
+        when(imageRepository.findAllById(List.of(3L, 1L))).thenReturn(List.of(image(1L), image(3L)));
+
+        ImageBatchResponse response = imageService.getBatch("alice", 7L, null);
+
+        assertEquals(7L, response.getTaskId());
+        assertEquals(expiresAt, response.getLeaseExpiresAt());
+        assertEquals(List.of(3L, 1L), response.getImages().stream().map(ImageBatchResponse.BatchImage::getId).toList());
+        assertEquals("https://img/3.jpg", response.getImages().get(0).getImageUrl());
+    }
+
+    @Test
+    void getBatch_ShouldCapBatchSize() {
+        when(fairShareScheduler.distributionMode(7L, "alice")).thenReturn(DistributionMode.LEASED);
+        when(taskDistributionService.nextBatch(7L, "alice", 50))
+                .thenReturn(new TaskDistributionService.LeasedBatch(List.of(), LocalDateTime.now()));
+
+        assertTrue(imageService.getBatch("alice", 7L, 500).getImages().isEmpty());
+    }
+
+    @Test
+    void getBatch_ShouldServeUserOrder_ForPermutedTask() {
+        when(fairShareScheduler.distributionMode(7L, "alice")).thenReturn(DistributionMode.PERMUTED);
+        when(taskDistributionService.nextPermutedBatch(7L, "alice", 10))
+                .thenReturn(new TaskDistributionService.LeasedBatch(List.of(5L), null));
+        when(imageRepository.findAllById(List.of(5L))).thenReturn(List.of(image(5L)));
+
+        ImageBatchResponse response = imageService.getBatch("alice", 7L, null);
+
+        assertEquals(List.of(5L), response.getImages().stream().map(ImageBatchResponse.BatchImage::getId).toList());
+        assertNull(response.getLeaseExpiresAt());
+        verify(taskDistributionService, never()).nextBatch(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    void getBatch_ShouldLetSchedulerPickTask_AndPassOverExhaustedOnes() {
+        when(fairShareScheduler.pickTask(eq("alice"), anySet())).thenReturn(1L, 2L);
+        when(fairShareScheduler.distributionMode(1L, "alice")).thenReturn(DistributionMode.LEASED);
+        when(fairShareScheduler.distributionMode(2L, "alice")).thenReturn(DistributionMode.PERMUTED);
+        when(taskDistributionService.nextBatch(1L, "alice", 10))
+                .thenReturn(new TaskDistributionService.LeasedBatch(List.of(), LocalDateTime.now()));
+        when(taskDistributionService.nextPermutedBatch(2L, "alice", 10))
+                .thenReturn(new TaskDistributionService.LeasedBatch(List.of(5L), null));
+        when(imageRepository.findAllById(List.of(5L))).thenReturn(List.of(image(5L)));
+
+        ImageBatchResponse response = imageService.getBatch("alice", null, null);
+
+        assertEquals(2L, response.getTaskId());
+        assertEquals(1, response.getImages().size());
+        verify(fairShareScheduler).charge(2L, 1);
+    }
+
+    @Test
+    void getBatch_ShouldReturnEmptyBatch_WhenSchedulerHasNoTask() {
+        when(fairShareScheduler.pickTask(eq("alice"), anySet())).thenReturn(null);
+
+        ImageBatchResponse response = imageService.getBatch("alice", null, null);
+
+        assertNull(response.getTaskId());
+        assertTrue(response.getImages().isEmpty());
+        verifyNoInteractions(taskDistributionService);
+    }
+
+    @Test
+    void getBatch_ShouldRejectInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> imageService.getBatch("alice", 7L, 0));
+        verifyNoInteractions(taskDistributionService);
+    }
+
+    @Test
+    void getBatch_ShouldThrow_WhenSchedulerDoesNotServeTaskToUser() {
+        // Unknown, no longer PENDING, or restricted to recipient groups the user is not in
+        when(fairShareScheduler.distributionMode(7L, "alice")).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class, () -> imageService.getBatch("alice", 7L, 5));
+        verifyNoInteractions(taskDistributionService);
+    }
+
+    private Image image(Long id) {
+        return Image.builder().id(id).imageUrl("https://img/" + id + ".jpg").build();
+    }
+}
@@ -0,0 +1,157 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.exception.ValidationException;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.enums.UserRole;
+import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.ImageRepository;
+import com.swipelab.repository.LabelRepository;
+import com.swipelab.repository.UserRepository;
+import com.swipelab.service.user.CredibilityService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClassificationServiceTest {
+
+    @Mock
+    private ClassificationRepository classificationRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private ImageRepository imageRepository;
+    @Mock
+    private LabelRepository labelRepository;
+    @Mock
+    private CredibilityService credibilityService;
+    @Mock
+    private ConsensusService consensusService;
+    @Mock
+    private GoldAnswerKey goldAnswerKey;
+    @Mock
+    private SeenImageIndex seenImageIndex;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private ClassificationService classificationService;
+
+    private final User alice = User.builder().username("alice").role(UserRole.USER).build();
+
+    @BeforeEach
+    void setUp() {
+        classificationService = new ClassificationService(classificationRepository, userRepository, imageRepository,
+                labelRepository, credibilityService, consensusService, goldAnswerKey,
+                new ValidationService(new DistributionConfig(), seenImageIndex), eventPublisher);
+    }
+
+    @Test
+    void submitClassifications_ShouldFlushOneBatch_AndCountGoldOnce() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+        when(imageRepository.findAllById(any())).thenReturn(List.of(image(1L), image(2L), image(3L)));
+        when(labelRepository.findAllById(any())).thenReturn(List.of(label(100L), label(101L)));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(consensusService.voteWeight(alice)).thenReturn(0.5);
+        when(goldAnswerKey.lookup(anyLong())).thenAnswer(invocation -> invocation.getArgument(0).equals(3L)
+                ? new GoldAnswerKey.GoldAnswer(101L, "EASY") : null);
+        when(classificationRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<Classification> classifications = invocation.getArgument(0);
+            for (int i = 0; i < classifications.size(); i++) {
+                classifications.get(i).setId(50L + i);
+            }
+            return classifications;
+        });
+
+        List<Classification> saved = classificationService.submitClassifications("alice",
+                List.of(swipe(1L, 100L), swipe(2L, 100L), swipe(3L, 101L)));
+
+        assertEquals(List.of(50L, 51L, 52L), saved.stream().map(Classification::getId).toList());
+        assertEquals(0.5, saved.get(0).getVoteWeight(), 1e-9);
+        verify(classificationRepository, times(1)).saveAllAndFlush(anyList());
+        verify(userRepository).incrementGoldClassifications("alice", 1, 1);
+        verify(credibilityService, times(1)).onClassificationsRecorded(saved);
+        verify(consensusService, times(1)).recordVotes(saved);
+
+        // One event for the whole submission
+        ArgumentCaptor<ClassificationSubmittedEvent> event = ArgumentCaptor.forClass(ClassificationSubmittedEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(event.capture());
+        assertEquals(3, event.getValue().getSwipes().size());
+        assertEquals(52L, event.getValue().getSwipes().get(2).getClassificationId());
+        assertEquals(3L, event.getValue().getSwipes().get(2).getImageId());
+    }
+
+    @Test
+    void submitClassifications_ShouldWriteNothing_WhenAnySwipeIsInvalid() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+        when(imageRepository.findAllById(any())).thenReturn(List.of(image(1L)));
+        when(labelRepository.findAllById(any())).thenReturn(List.of(label(100L)));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        assertThrows(ValidationException.class, () -> classificationService.submitClassifications("alice",
+                List.of(swipe(1L, 100L), swipe(1L, 999L))));
+
+        verifyNoInteractions(credibilityService, eventPublisher);
+        verify(classificationRepository, never()).saveAllAndFlush(anyList());
+        verify(userRepository, never()).incrementGoldClassifications(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void submitClassification_ShouldRejectImageTheUserAlreadyClassified() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+        when(imageRepository.findAllById(any())).thenReturn(List.of(image(1L)));
+        when(labelRepository.findAllById(any())).thenReturn(List.of(label(100L)));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenReturn(new long[0]);
+
+        ValidationException error = assertThrows(ValidationException.class,
+                () -> classificationService.submitClassification("alice", 1L, 100L));
+
+        assertEquals("swipes[0]: image 1 was already classified", error.getMessage());
+        verifyNoInteractions(credibilityService, consensusService, eventPublisher);
+        verify(classificationRepository, never()).saveAllAndFlush(anyList());
+    }
+
+    @Test
+    void submitClassification_ShouldRejectLabelOutsideTheTasksTargetSpecies() {
+        Task task = Task.builder().id(7L).targetSpecies(List.of(label(100L))).build();
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+        when(imageRepository.findAllById(any())).thenReturn(List.of(Image.builder().id(1L).task(task).build()));
+        when(labelRepository.findAllById(any())).thenReturn(List.of(label(101L)));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        ValidationException error = assertThrows(ValidationException.class,
+                () -> classificationService.submitClassification("alice", 1L, 101L));
+
+        assertEquals("swipes[0]: label 101 is not a target species of the image's task", error.getMessage());
+        verifyNoInteractions(credibilityService, consensusService, eventPublisher);
+        verify(classificationRepository, never()).saveAllAndFlush(anyList());
+    }
+
+    private ClassificationRequest swipe(Long imageId, Long labelId) {
+        return new ClassificationRequest(imageId, labelId);
+    }
+
+    private Image image(Long id) {
+        return Image.builder().id(id).build();
+    }
+
+    private Label label(Long id) {
+        return Label.builder().id(id).build();
+    }
+}
@@ -0,0 +1,147 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.enums.StoppingMode;
+import com.swipelab.model.enums.UserRole;
+import com.swipelab.util.ConsensusCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConsensusServiceTest {
+
+    @Mock
+    private VoteCounterStore voteCounterStore;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private ContestedImageQueue contestedImageQueue;
+
+    private ConsensusService consensusService;
+
+    private final Task task = Task.builder().id(7L).consensusThreshold(75.0).minClassificationsPerImage(4).build();
+
+    @BeforeEach
+    void setUp() {
+        consensusService = new ConsensusService(voteCounterStore, new ConsensusCalculator(),
+                new CredibilityConfig(), eventPublisher, contestedImageQueue);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void voteWeight_ShouldFloorRegularUsers_AndCountExpertsFully() {
+        assertEquals(0.1, consensusService.voteWeight(user(0.0, UserRole.USER)), 1e-9);
+        assertEquals(0.6, consensusService.voteWeight(user(0.6, UserRole.USER)), 1e-9);
+        assertEquals(1.0, consensusService.voteWeight(user(3.0, UserRole.USER)), 1e-9);
+        assertEquals(1.0, consensusService.voteWeight(user(0.0, UserRole.RESEARCHER)), 1e-9);
+    }
+
+    @Test
+    void recordVotes_ShouldUseStoredWeightAndTaskRules() {
+        when(voteCounterStore.record(eq(1L), eq(100L), eq(0.42), any(), eq("voter"))).thenReturn(state(false));
+
+        consensusService.recordVotes(List.of(classification(0.42)));
+
+        ArgumentCaptor<ConsensusCalculator.StoppingRule> rule = ArgumentCaptor.forClass(ConsensusCalculator.StoppingRule.class);
+        verify(voteCounterStore).record(eq(1L), eq(100L), eq(0.42), rule.capture(), eq("voter"));
+        assertEquals(StoppingMode.FIXED, rule.getValue().getMode());
+        assertEquals(75.0, rule.getValue().getThresholdPercent(), 1e-9);
+        assertEquals(4, rule.getValue().getMinVotes());
+        verify(contestedImageQueue).update(eq(7L), eq(1L), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void stoppingRule_ShouldUseTaskConfidenceAndCap_ForAdaptiveTasks() {
+        Task adaptive = Task.builder().id(8L).stoppingMode(StoppingMode.ADAPTIVE)
+                .stoppingConfidence(0.9).maxClassificationsPerImage(6).minClassificationsPerImage(4).build();
+
+        ConsensusCalculator.StoppingRule rule = consensusService.stoppingRule(adaptive);
+
+        assertEquals(StoppingMode.ADAPTIVE, rule.getMode());
+        assertEquals(0.9, rule.getConfidence(), 1e-9);
+        assertEquals(6, rule.getMaxVotes());
+        // The task minimum is the FIXED rule; adaptive tasks use the global floor
+        assertEquals(2, rule.getMinVotes());
+    }
+
+    @Test
+    void recordVotes_ShouldPublishFinalizedEvent_WhenStoreFinalizesImage() {
+        when(voteCounterStore.record(anyLong(), anyLong(), anyDouble(), any(), any())).thenReturn(state(true));
+
+        consensusService.recordVotes(List.of(classification(1.0)));
+
+        ArgumentCaptor<ImageFinalizedEvent> event = ArgumentCaptor.forClass(ImageFinalizedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(1L, event.getValue().getImageId());
+        assertEquals(7L, event.getValue().getTaskId());
+        assertEquals(100L, event.getValue().getLabelId());
+        assertEquals(0.97, event.getValue().getConfidence(), 1e-9);
+        assertEquals(4, event.getValue().getTotalVotes());
+    }
+
+    @Test
+    void recordVotes_ShouldWaitForCommit_InsideTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        when(voteCounterStore.record(anyLong(), anyLong(), anyDouble(), any(), any())).thenReturn(state(false));
+
+        consensusService.recordVotes(List.of(classification(0.5)));
+        verifyNoInteractions(voteCounterStore);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(voteCounterStore).record(eq(1L), eq(100L), eq(0.5), any(), eq("voter"));
+    }
+
+    @Test
+    void recordVotes_ShouldNotScoreExperts_AgainstTheMajority() {
+        Classification classification = classification(1.0);
+        classification.setUser(user(0.0, UserRole.RESEARCHER));
+        when(voteCounterStore.record(anyLong(), anyLong(), anyDouble(), any(), any())).thenReturn(state(false));
+
+        consensusService.recordVotes(List.of(classification));
+
+        verify(voteCounterStore).record(eq(1L), eq(100L), eq(1.0), any(), isNull());
+    }
+
+    private ConsensusService.ConsensusState state(boolean newlyFinalized) {
+        return new ConsensusService.ConsensusState(100L, 0.9, 0.97, 0.47, 4, newlyFinalized ? 100L : null, newlyFinalized);
+    }
+
+    private User user(double credibilityScore, UserRole role) {
+        return User.builder().username("voter").credibilityScore(credibilityScore).role(role).build();
+    }
+
+    private Classification classification(double voteWeight) {
+        return Classification.builder()
+                .user(user(0.0, UserRole.USER))
+                .image(Image.builder().id(1L).task(task).build())
+                .label(Label.builder().id(100L).build())
+                .voteWeight(voteWeight)
+                .build();
+    }
+}
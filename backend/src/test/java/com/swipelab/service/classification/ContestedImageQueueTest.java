@@ -0,0 +1,122 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.util.ConsensusCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContestedImageQueueTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private SeenImageIndex seenImageIndex;
+    @Mock
+    private GoldAnswerKey goldAnswerKey;
+
+    private ContestedImageQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setContestedMaxPerTask(3);
+        queue = new ContestedImageQueue(jdbcTemplate, new ConsensusCalculator(), seenImageIndex, goldAnswerKey, config);
+    }
+
+    @Test
+    void pick_ShouldRankMostEvenlySplitImagesFirst_AndSkipSeenOnes() {
+        queue.update(7L, 1L, state(0.7, 3, false));
+        queue.update(7L, 2L, state(1.0, 2, false));
+        queue.update(7L, 3L, state(0.9, 4, false));
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{2L, 3L, 1L}))).thenReturn(new long[]{2L, 1L});
+
+        assertEquals(List.of(2L, 1L), queue.pick(7L, "alice", 5));
+        assertTrue(queue.pick(8L, "alice", 5).isEmpty());
+    }
+
+    @Test
+    void update_ShouldDropImages_ThatAreFinalizedOrAgreedOn() {
+        queue.update(7L, 1L, state(1.0, 2, false));
+        queue.update(7L, 2L, state(1.0, 2, false));
+        queue.update(7L, 3L, state(0.8, 2, false));
+
+        queue.update(7L, 1L, state(0.9, 3, true));
+        queue.update(7L, 2L, state(0.3, 3, false));
+
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        assertEquals(List.of(3L), queue.pick(7L, "alice", 5));
+    }
+
+    @Test
+    void update_ShouldIgnoreGoldImages_AndImagesWithTooFewVotes() {
+        when(goldAnswerKey.isGold(1L)).thenReturn(true);
+
+        queue.update(7L, 1L, state(1.0, 2, false));
+        queue.update(7L, 2L, state(1.0, 1, false));
+
+        assertEquals(0, queue.getMetrics().getContestedImages());
+    }
+
+    @Test
+    void update_ShouldKeepOnlyTheMostContestedImages_PerTask() {
+        for (long imageId = 1; imageId <= 4; imageId++) {
+            queue.update(7L, imageId, state(0.6 + imageId * 0.1, 2, false));
+        }
+
+        ContestedImageQueue.ContestedMetrics metrics = queue.getMetrics();
+        assertEquals(3, metrics.getContestedImages());
+        assertEquals(1.0, metrics.getMaxEntropy(), 1e-9);
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        assertEquals(List.of(4L, 3L, 2L), queue.pick(7L, "alice", 5));
+    }
+
+    @Test
+    void rebuild_ShouldRankImagesFromStoredTallies() throws Exception {
+        // Image 1 split evenly, image 2 almost unanimous
+        givenTallyRows(List.of(tally(1L, 7L, 0.5, 2), tally(1L, 7L, 0.5, 2),
+                tally(2L, 7L, 1.9, 3), tally(2L, 7L, 0.05, 3)));
+
+        queue.rebuild();
+
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        assertEquals(List.of(1L), queue.pick(7L, "alice", 5));
+    }
+
+    private ConsensusService.ConsensusState state(double entropy, int votes, boolean finalized) {
+        return new ConsensusService.ConsensusState(100L, 0.5, 0.5, entropy, votes, finalized ? 100L : null, finalized);
+    }
+
+    private void givenTallyRows(List<ResultSet> rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(2));
+    }
+
+    private ResultSet tally(Long imageId, Long taskId, double weight, int votes) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(imageId);
+        lenient().when(rs.getLong(2)).thenReturn(taskId);
+        when(rs.getDouble(3)).thenReturn(weight);
+        lenient().when(rs.getInt(4)).thenReturn(votes);
+        return rs;
+    }
+}
@@ -0,0 +1,208 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.model.enums.DistributionMode;
+import com.swipelab.model.enums.TaskStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FairShareSchedulerTest {
+
+    private static final LocalDateTime UPDATED_AT = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private FairShareScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setDeadlineHorizonHours(48);
+        config.setDeadlineMaxBoost(4.0);
+        scheduler = new FairShareScheduler(jdbcTemplate, config);
+    }
+
+    @Test
+    void pickTask_ShouldSplitSupplyEvenly_BetweenEqualTasks() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null), taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 100), remainingRow(2L, 100)),
+                List.of());
+        scheduler.refresh();
+
+        Map<Long, Integer> picks = pickAndCharge("alice", 10, 10);
+
+        assertEquals(Map.of(1L, 5, 2L, 5), picks);
+    }
+
+    @Test
+    void pickTask_ShouldFavorTaskApproachingDeadline() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, LocalDateTime.now().plusHours(1)),
+                        taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 100), remainingRow(2L, 100)),
+                List.of());
+        scheduler.refresh();
+
+        Map<Long, Integer> picks = pickAndCharge("alice", 50, 1);
+
+        // Weight close to 4 against 1
+        assertTrue(picks.get(1L) >= 36, "deadline task got " + picks.get(1L) + " of 50 picks");
+        assertTrue(picks.get(2L) >= 8, "other task got " + picks.get(2L) + " of 50 picks");
+    }
+
+    @Test
+    void pickTask_ShouldOnlyOfferGroupTasksToMembers() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null), taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 10), remainingRow(2L, 10)),
+                List.of(groupRow(1L, 5L), groupRow(1L, 6L)),
+                List.of(memberRow("alice", 6L)));
+        scheduler.refresh();
+        scheduler.charge(2L, 10);
+
+        assertEquals(1L, scheduler.pickTask("alice", Set.of()));
+        assertEquals(2L, scheduler.pickTask("bob", Set.of()));
+    }
+
+    @Test
+    void distributionMode_ShouldOnlyServeGroupTasksToMembers() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null), taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 10), remainingRow(2L, 10)),
+                List.of(groupRow(1L, 5L)),
+                List.of(memberRow("alice", 5L)));
+        scheduler.refresh();
+
+        assertEquals(DistributionMode.LEASED, scheduler.distributionMode(1L, "alice"));
+        assertNull(scheduler.distributionMode(1L, "bob"));
+        assertEquals(DistributionMode.LEASED, scheduler.distributionMode(2L, "bob"));
+        assertNull(scheduler.distributionMode(3L, "alice"));
+        // A NULL recipient_group_id would otherwise read as group 0
+        verify(jdbcTemplate).query(contains("recipient_group_id IS NOT NULL"), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void refresh_ShouldPickUpRecipientGroupChanges_OfUnchangedTasks() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null)), List.of(remainingRow(1L, 10)), List.of());
+        scheduler.refresh();
+        assertEquals(1L, scheduler.pickTask("bob", Set.of()));
+
+        // Restricting the task leaves tasks.updated_at alone, so the changed-task query finds nothing
+        givenDatabase(List.of(), List.of(remainingRow(1L, 10)), List.of(groupRow(1L, 5L)), List.of());
+        doNothing().when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(Timestamp.valueOf(UPDATED_AT)));
+        scheduler.refresh();
+
+        assertNull(scheduler.pickTask("bob", Set.of()));
+        assertEquals(Set.of(5L), scheduler.getShares().get(0).getRecipientGroups());
+    }
+
+    @Test
+    void pickTask_ShouldSkipExcludedAndFinishedTasks() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null), taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 1), remainingRow(2L, 3)),
+                List.of());
+        scheduler.refresh();
+
+        scheduler.onImageFinalized(new ImageFinalizedEvent(10L, 1L, 100L, 0.9, 0.99, 3));
+
+        assertEquals(2L, scheduler.pickTask("alice", Set.of()));
+        assertNull(scheduler.pickTask("alice", Set.of(2L)));
+    }
+
+    @Test
+    void refresh_ShouldOnlyLoadChangedTasks_AndDropOnesNoLongerPending() throws Exception {
+        givenDatabase(List.of(taskRow(1L, TaskStatus.PENDING, null), taskRow(2L, TaskStatus.PENDING, null)),
+                List.of(remainingRow(1L, 5), remainingRow(2L, 5)),
+                List.of());
+        scheduler.refresh();
+        ResultSet completed = taskRow(1L, TaskStatus.COMPLETED, null);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(completed);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(Timestamp.valueOf(UPDATED_AT)));
+
+        scheduler.refresh();
+
+        assertEquals(1, scheduler.scheduledTasks());
+        assertNull(scheduler.distributionMode(1L, "alice"));
+        assertEquals(DistributionMode.LEASED, scheduler.distributionMode(2L, "alice"));
+        assertEquals(List.of(2L), scheduler.getShares().stream().map(FairShareScheduler.TaskShare::getTaskId).toList());
+    }
+
+    private Map<Long, Integer> pickAndCharge(String username, int rounds, int imagesPerRound) {
+        Map<Long, Integer> picks = new HashMap<>();
+        for (int round = 0; round < rounds; round++) {
+            Long taskId = scheduler.pickTask(username, Set.of());
+            picks.merge(taskId, 1, Integer::sum);
+            scheduler.charge(taskId, imagesPerRound);
+        }
+        return picks;
+    }
+
+    private void givenDatabase(List<ResultSet> tasks, List<ResultSet> remaining, List<ResultSet> members) {
+        givenDatabase(tasks, remaining, List.of(), members);
+    }
+
+    private void givenDatabase(List<ResultSet> tasks, List<ResultSet> remaining, List<ResultSet> taskGroups,
+                               List<ResultSet> members) {
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<ResultSet> rows = sql.contains("image_leases") ? remaining
+                    : sql.contains("task_recipient_groups") ? taskGroups
+                    : sql.contains("user_recipient_groups") ? members : tasks;
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    private ResultSet taskRow(Long taskId, TaskStatus status, LocalDateTime deadline) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(taskId);
+        when(rs.getString(2)).thenReturn(status.name());
+        when(rs.getTimestamp(3)).thenReturn(deadline != null ? Timestamp.valueOf(deadline) : null);
+        when(rs.getTimestamp(4)).thenReturn(Timestamp.valueOf(UPDATED_AT));
+        when(rs.getString(5)).thenReturn(DistributionMode.LEASED.name());
+        return rs;
+    }
+
+    private ResultSet groupRow(Long taskId, Long recipientGroupId) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(taskId);
+        when(rs.getLong(2)).thenReturn(recipientGroupId);
+        return rs;
+    }
+
+    private ResultSet remainingRow(Long taskId, long count) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(taskId);
+        when(rs.getLong(2)).thenReturn(count);
+        return rs;
+    }
+
+    private ResultSet memberRow(String username, Long recipientGroupId) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(1)).thenReturn(username);
+        when(rs.getLong(2)).thenReturn(recipientGroupId);
+        return rs;
+    }
+}
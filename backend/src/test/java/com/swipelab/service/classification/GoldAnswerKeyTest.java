@@ -0,0 +1,86 @@
+package com.swipelab.service.classification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GoldAnswerKeyTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private GoldAnswerKey goldAnswerKey;
+
+    @BeforeEach
+    void setUp() {
+        goldAnswerKey = new GoldAnswerKey(jdbcTemplate);
+    }
+
+    @Test
+    void lookup_ShouldGradeAgainstLoadedAnswers() throws Exception {
+        givenGoldRows(List.of(goldRow(10L, 100L, "HARD"), goldRow(11L, 101L, null)));
+
+        assertEquals(2, goldAnswerKey.reload());
+
+        GoldAnswerKey.GoldAnswer hard = goldAnswerKey.lookup(10L);
+        assertEquals("HARD", hard.getDifficulty());
+        assertTrue(hard.isCorrect(100L));
+        assertFalse(hard.isCorrect(101L));
+        assertEquals("MEDIUM", goldAnswerKey.lookup(11L).getDifficulty());
+        assertNull(goldAnswerKey.lookup(12L));
+        assertFalse(goldAnswerKey.isGold(12L));
+        assertArrayEquals(new long[]{10L, 11L}, goldAnswerKey.goldImages(7L));
+        assertEquals(0, goldAnswerKey.goldImages(8L).length);
+    }
+
+    @Test
+    void reload_ShouldReplaceKey() throws Exception {
+        givenGoldRows(List.of(goldRow(10L, 100L, "EASY")));
+        goldAnswerKey.reload();
+        givenGoldRows(List.of(goldRow(11L, 101L, "EASY")));
+
+        goldAnswerKey.reload();
+
+        assertFalse(goldAnswerKey.isGold(10L));
+        assertTrue(goldAnswerKey.lookup(11L).isCorrect(101L));
+        assertEquals(1, goldAnswerKey.size());
+    }
+
+    @Test
+    void lookup_ShouldFindNothing_BeforeFirstLoad() {
+        assertNull(goldAnswerKey.lookup(10L));
+        assertEquals(0, goldAnswerKey.size());
+    }
+
+    private void givenGoldRows(List<ResultSet> rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    private ResultSet goldRow(Long imageId, Long labelId, String difficulty) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(imageId);
+        when(rs.getLong(2)).thenReturn(labelId);
+        when(rs.getString(3)).thenReturn(difficulty);
+        when(rs.getLong(4)).thenReturn(7L);
+        return rs;
+    }
+}
@@ -0,0 +1,122 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GoldInterleaverTest {
+
+    private static final long[] POOL = {50L, 51L, 52L, 53L};
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private GoldAnswerKey goldAnswerKey;
+    @Mock
+    private SeenImageIndex seenImageIndex;
+
+    private GoldInterleaver goldInterleaver;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setGoldMinRate(0.1);
+        config.setGoldMaxRate(0.5);
+        config.setGoldWarmupAnswers(4);
+        goldInterleaver = new GoldInterleaver(jdbcTemplate, goldAnswerKey, seenImageIndex, config);
+    }
+
+    @Test
+    void pickGold_ShouldUseMaxRate_DuringWarmup() throws Exception {
+        when(goldAnswerKey.goldImages(7L)).thenReturn(POOL);
+        givenGoldCounts(0, 0);
+
+        List<Long> gold = goldInterleaver.pickGold(7L, "alice", 4);
+
+        assertEquals(2, gold.size());
+        assertEquals(1, goldInterleaver.cachedUsers());
+    }
+
+    @Test
+    void pickGold_ShouldLowerRate_ForAccurateUsers() throws Exception {
+        when(goldAnswerKey.goldImages(7L)).thenReturn(POOL);
+        givenGoldCounts(20, 20);
+
+        // 0.1 per image: nothing for the first five images, one gold image once the share adds up
+        assertTrue(goldInterleaver.pickGold(7L, "alice", 5).isEmpty());
+        assertEquals(1, goldInterleaver.pickGold(7L, "alice", 5).size());
+    }
+
+    @Test
+    void pickGold_ShouldNotRepeatImages_AndSkipSeenOnes() throws Exception {
+        when(goldAnswerKey.goldImages(7L)).thenReturn(POOL);
+        givenGoldCounts(0, 0);
+        when(seenImageIndex.hasSeen(eq("alice"), anyLong())).thenAnswer(invocation -> invocation.getArgument(1).equals(52L));
+
+        List<Long> served = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            served.addAll(goldInterleaver.pickGold(7L, "alice", 4));
+        }
+
+        assertEquals(3, served.size());
+        assertEquals(Set.of(50L, 51L, 53L), new HashSet<>(served));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), eq("alice"));
+    }
+
+    @Test
+    void pickGold_ShouldReturnNothing_WhenTaskHasNoGold() {
+        when(goldAnswerKey.goldImages(7L)).thenReturn(new long[0]);
+
+        assertTrue(goldInterleaver.pickGold(7L, "alice", 10).isEmpty());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void onClassificationSubmitted_ShouldUpdateCachedAccuracy() throws Exception {
+        when(goldAnswerKey.goldImages(7L)).thenReturn(POOL);
+        givenGoldCounts(3, 3);
+        goldInterleaver.pickGold(7L, "alice", 4);
+        when(goldAnswerKey.lookup(60L)).thenReturn(new GoldAnswerKey.GoldAnswer(100L, "EASY"));
+
+        goldInterleaver.onClassificationSubmitted(new ClassificationSubmittedEvent("alice", false,
+                List.of(new ClassificationSubmittedEvent.Swipe(1L, 60L, 100L, false))));
+
+        // Warm-up is over with every answer right, so the rate drops to the minimum
+        assertTrue(goldInterleaver.pickGold(7L, "alice", 4).isEmpty());
+    }
+
+    @Test
+    void interleave_ShouldKeepRegularOrder() {
+        List<Long> mixed = GoldInterleaver.interleave(List.of(1L, 2L, 3L), List.of(50L, 51L));
+
+        assertEquals(5, mixed.size());
+        assertEquals(List.of(1L, 2L, 3L), mixed.stream().filter(id -> id < 50L).toList());
+        assertTrue(mixed.containsAll(List.of(50L, 51L)));
+    }
+
+    private void givenGoldCounts(int correct, int total) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getInt(1)).thenReturn(correct);
+        when(rs.getInt(2)).thenReturn(total);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq("alice"));
+    }
+}
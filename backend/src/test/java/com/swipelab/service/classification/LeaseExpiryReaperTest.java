@@ -0,0 +1,94 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LeaseExpiryReaperTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private LeaseExpiryReaper reaper;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setLeaseReaperTickMs(10);
+        reaper = new LeaseExpiryReaper(jdbcTemplate, config);
+    }
+
+    @Test
+    void reap_ShouldIgnoreLeasesThatAreNotDue() {
+        reaper.track(7L, List.of(1L), "alice", LocalDateTime.now().plusMinutes(5));
+
+        assertEquals(0, reaper.reap());
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(1, reaper.trackedLeases());
+    }
+
+    @Test
+    void reap_ShouldReturnReleasedImagesToTheFrontOfTheirTask() throws Exception {
+        reaper.track(7L, List.of(1L, 2L, 3L), "alice", LocalDateTime.now().minusSeconds(1));
+        // Image 2 was classified before its lease ran out, so its row no longer matches
+        when(jdbcTemplate.batchUpdate(eq(LeaseExpiryReaper.EXPIRE_LEASE_SQL), anyList(), any(int[].class)))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    return rows.stream().mapToInt(row -> row[0].equals(2L) ? 0 : 1).toArray();
+                });
+        Thread.sleep(20);
+
+        assertEquals(2, reaper.reap());
+        verify(jdbcTemplate).batchUpdate(eq(LeaseExpiryReaper.EXPIRE_LEASE_SQL), rowsCaptor.capture(), any(int[].class));
+        assertEquals(3, rowsCaptor.getValue().size());
+        assertEquals("alice", rowsCaptor.getValue().get(0)[1]);
+        assertEquals(0, reaper.trackedLeases());
+
+        List<Long> returned = reaper.pollReturned(7L, 10);
+        assertEquals(2, returned.size());
+        assertTrue(returned.containsAll(List.of(1L, 3L)));
+        assertTrue(reaper.pollReturned(8L, 10).isEmpty());
+    }
+
+    @Test
+    void reap_ShouldRetryOnNextTick_WhenReleaseFails() throws Exception {
+        reaper.track(7L, List.of(1L), "alice", LocalDateTime.now().minusSeconds(1));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(new int[]{1});
+        Thread.sleep(20);
+
+        assertEquals(0, reaper.reap());
+        assertEquals(1, reaper.trackedLeases());
+        Thread.sleep(20);
+        assertEquals(1, reaper.reap());
+        assertEquals(List.of(1L), reaper.pollReturned(7L, 10));
+    }
+
+    @Test
+    void requeue_ShouldPutImagesBackInOrderAtTheFront() {
+        reaper.requeue(7L, List.of(5L));
+        reaper.requeue(7L, List.of(3L, 4L));
+
+        assertEquals(List.of(3L, 4L), reaper.pollReturned(7L, 2));
+        assertEquals(List.of(5L), reaper.pollReturned(7L, 2));
+    }
+}
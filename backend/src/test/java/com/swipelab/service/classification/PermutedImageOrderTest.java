@@ -0,0 +1,159 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PermutedImageOrderTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private RetiredImageIndex retiredImageIndex;
+    @Mock
+    private SeenImageIndex seenImageIndex;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private PermutedImageOrder order;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setClaimOverfetchFactor(2);
+        order = new PermutedImageOrder(jdbcTemplate, transactionManager, retiredImageIndex, seenImageIndex, config);
+    }
+
+    @Test
+    void nextBatch_ShouldWalkWholeTaskOnce_InShuffledOrder() throws Exception {
+        givenTaskImages(100L, 101L, 102L, 103L, 104L, 105L, 106L, 107L, 108L, 109L);
+        givenNoCursor("alice");
+        givenNoCursor("bob");
+        givenNothingFiltered();
+
+        List<Long> served = new ArrayList<>();
+        for (int batch = 0; batch < 4; batch++) {
+            served.addAll(order.nextBatch(7L, "alice", 3));
+        }
+
+        assertEquals(10, served.size());
+        assertEquals(10, new HashSet<>(served).size());
+        assertTrue(order.nextBatch(7L, "alice", 3).isEmpty());
+        assertNotEquals(served.subList(0, 3), order.nextBatch(7L, "bob", 3));
+    }
+
+    @Test
+    void nextBatch_ShouldSkipRetiredAndSeenImages() throws Exception {
+        givenTaskImages(100L, 101L, 102L, 103L, 104L, 105L);
+        givenNoCursor("alice");
+        when(retiredImageIndex.filterActive(eq(7L), any())).thenAnswer(invocation ->
+                without(invocation.getArgument(1), 101L));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation ->
+                without(invocation.getArgument(1), 104L));
+
+        Set<Long> served = new HashSet<>(order.nextBatch(7L, "alice", 10));
+
+        assertEquals(Set.of(100L, 102L, 103L, 105L), served);
+    }
+
+    @Test
+    void nextBatch_ShouldResumeFromStoredCursor() throws Exception {
+        givenTaskImages(100L, 101L, 102L);
+        givenCursor("alice", 3, 3);
+
+        assertTrue(order.nextBatch(7L, "alice", 3).isEmpty());
+        verifyNoInteractions(retiredImageIndex, seenImageIndex);
+    }
+
+    @Test
+    void nextBatch_ShouldStartOver_WhenTaskGainedImages() throws Exception {
+        givenTaskImages(100L, 101L, 102L, 103L);
+        givenCursor("alice", 3, 3);
+        givenNothingFiltered();
+
+        assertEquals(4, order.nextBatch(7L, "alice", 10).size());
+    }
+
+    @Test
+    void flush_ShouldInsertCursorsWithoutRow() throws Exception {
+        givenTaskImages(100L, 101L);
+        givenNoCursor("alice");
+        givenNothingFiltered();
+        order.nextBatch(7L, "alice", 1);
+        when(jdbcTemplate.batchUpdate(eq(PermutedImageOrder.UPDATE_CURSOR_SQL), anyList(), any(int[].class)))
+                .thenReturn(new int[]{0});
+
+        assertEquals(1, order.flush());
+
+        verify(jdbcTemplate).batchUpdate(eq(PermutedImageOrder.INSERT_CURSOR_SQL), rowsCaptor.capture(), any(int[].class));
+        Object[] row = rowsCaptor.getValue().get(0);
+        assertEquals(1L, row[0]);
+        assertEquals(2L, row[1]);
+        assertEquals("alice", row[4]);
+        assertEquals(0, order.flush());
+    }
+
+    @Test
+    void permutationKey_ShouldBeStable() {
+        assertEquals(PermutedImageOrder.permutationKey(7L, "alice"), PermutedImageOrder.permutationKey(7L, "alice"));
+        assertNotEquals(PermutedImageOrder.permutationKey(7L, "alice"), PermutedImageOrder.permutationKey(8L, "alice"));
+        assertNotEquals(PermutedImageOrder.permutationKey(7L, "alice"), PermutedImageOrder.permutationKey(7L, "bob"));
+    }
+
+    private void givenTaskImages(Long first, Long... rest) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(first, rest);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int row = 0; row <= rest.length; row++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(7L));
+    }
+
+    private void givenCursor(String username, long position, long domainSize) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(position);
+        when(rs.getLong(2)).thenReturn(domainSize);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(7L), eq(username));
+    }
+
+    private void givenNoCursor(String username) {
+        doNothing().when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(7L), eq(username));
+    }
+
+    private void givenNothingFiltered() {
+        when(retiredImageIndex.filterActive(eq(7L), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(seenImageIndex.filterUnseen(anyString(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+    }
+
+    private static long[] without(long[] imageIds, long excluded) {
+        return Arrays.stream(imageIds).filter(imageId -> imageId != excluded).toArray();
+    }
+}
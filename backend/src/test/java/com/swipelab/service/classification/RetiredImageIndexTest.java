@@ -0,0 +1,101 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.util.ImageIdBitmap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RetiredImageIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private RetiredImageIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new RetiredImageIndex(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void onImageFinalized_ShouldRetireImageForItsTaskOnly() {
+        index.onImageFinalized(new ImageFinalizedEvent(10L, 1L, 100L, 0.9, 0.99, 3));
+
+        assertTrue(index.isRetired(1L, 10L));
+        assertFalse(index.isRetired(2L, 10L));
+        assertFalse(index.isRetired(1L, 11L));
+        assertEquals(1, index.retiredCount(1L));
+    }
+
+    @Test
+    void filterActive_ShouldDropRetiredCandidates() {
+        index.retire(1L, 10L);
+        index.retire(1L, 12L);
+
+        assertArrayEquals(new long[]{11L, 13L}, index.filterActive(1L, new long[]{10L, 11L, 12L, 13L}));
+        assertArrayEquals(new long[]{10L, 11L}, index.filterActive(2L, new long[]{10L, 11L}));
+    }
+
+    @Test
+    void flush_ShouldUpdateExistingRows_AndInsertNewOnes() {
+        index.retire(1L, 10L);
+        index.retire(2L, 20L);
+        when(jdbcTemplate.batchUpdate(eq(RetiredImageIndex.UPDATE_BITMAP_SQL), anyList(), any(int[].class)))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    return rows.stream().mapToInt(row -> row[3].equals(1L) ? 1 : 0).toArray();
+                });
+
+        assertEquals(2, index.flush());
+
+        verify(jdbcTemplate).batchUpdate(eq(RetiredImageIndex.INSERT_BITMAP_SQL), rowsCaptor.capture(), any(int[].class));
+        List<Object[]> inserted = rowsCaptor.getValue();
+        assertEquals(1, inserted.size());
+        assertEquals(2L, inserted.get(0)[3]);
+        assertEquals(1L, inserted.get(0)[1]);
+        assertArrayEquals(new long[]{20L}, ImageIdBitmap.deserialize((byte[]) inserted.get(0)[0]).toArray());
+
+        // Nothing changed since
+        assertEquals(0, index.flush());
+    }
+
+    @Test
+    void flush_ShouldSkipAlreadyRetiredImages() {
+        index.retire(1L, 10L);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class))).thenReturn(new int[]{1});
+        index.flush();
+
+        assertFalse(index.retire(1L, 10L));
+        assertEquals(0, index.flush());
+    }
+
+    @Test
+    void flush_ShouldKeepTasksDirty_WhenWriteFails() {
+        index.retire(1L, 10L);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(new int[]{1});
+
+        assertEquals(0, index.flush());
+        assertEquals(1, index.flush());
+    }
+}
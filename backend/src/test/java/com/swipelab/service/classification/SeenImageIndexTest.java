@@ -0,0 +1,98 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SeenImageIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SeenImageIndex index;
+
+    @BeforeEach
+    void setUp() {
+        CredibilityConfig config = new CredibilityConfig();
+        config.setSeenCacheMaxUsers(2);
+        index = new SeenImageIndex(jdbcTemplate, config);
+    }
+
+    @Test
+    void filterUnseen_ShouldLoadUserOnce_AndDropClassifiedImages() throws Exception {
+        givenClassifiedImages("alice", 10L, 12L);
+
+        assertArrayEquals(new long[]{11L, 13L}, index.filterUnseen("alice", new long[]{10L, 11L, 12L, 13L}));
+        assertArrayEquals(new long[]{11L}, index.filterUnseen("alice", new long[]{11L, 12L}));
+
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), eq("alice"));
+    }
+
+    @Test
+    void onClassificationSubmitted_ShouldUpdateCachedUser() throws Exception {
+        givenClassifiedImages("alice", 10L);
+        assertFalse(index.hasSeen("alice", 11L));
+
+        index.onClassificationSubmitted(new ClassificationSubmittedEvent("alice", false,
+                List.of(new ClassificationSubmittedEvent.Swipe(1L, 11L, 100L, false))));
+
+        assertTrue(index.hasSeen("alice", 11L));
+    }
+
+    @Test
+    void markSeen_ShouldNotLoadUncachedUser() {
+        index.markSeen("bob", 5L);
+
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(0, index.cachedUsers());
+    }
+
+    @Test
+    void filterUnseen_ShouldEvictLeastRecentlyUsedUser() throws Exception {
+        givenClassifiedImages("alice", 1L);
+        givenClassifiedImages("bob", 2L);
+        givenClassifiedImages("carol", 3L);
+
+        index.filterUnseen("alice", new long[]{1L});
+        index.filterUnseen("bob", new long[]{1L});
+        index.filterUnseen("alice", new long[]{1L});
+        index.filterUnseen("carol", new long[]{1L});
+        assertEquals(2, index.cachedUsers());
+
+        // bob was the least recently used, so only he is loaded again
+        index.filterUnseen("alice", new long[]{1L});
+        index.filterUnseen("bob", new long[]{1L});
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), eq("alice"));
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), eq("bob"));
+    }
+
+    private void givenClassifiedImages(String username, Long... imageIds) throws Exception {
+        List<ResultSet> rows = new ArrayList<>();
+        for (Long imageId : imageIds) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenReturn(imageId);
+            rows.add(rs);
+        }
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet rs : rows) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(username));
+    }
+}
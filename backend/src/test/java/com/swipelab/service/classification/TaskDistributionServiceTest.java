@@ -0,0 +1,292 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.repository.ImageLeaseRepository;
+import com.swipelab.repository.projection.LeaseCandidate;
+import com.swipelab.service.user.CredibilityTierCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TaskDistributionServiceTest {
+
+    @Mock
+    private ImageLeaseRepository imageLeaseRepository;
+    @Mock
+    private RetiredImageIndex retiredImageIndex;
+    @Mock
+    private SeenImageIndex seenImageIndex;
+    @Mock
+    private LeaseExpiryReaper leaseExpiryReaper;
+    @Mock
+    private PermutedImageOrder permutedImageOrder;
+    @Mock
+    private GoldInterleaver goldInterleaver;
+    @Mock
+    private ContestedImageQueue contestedImageQueue;
+    @Mock
+    private CredibilityTierCache credibilityTierCache;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private ThreadPoolTaskExecutor prefetchExecutor;
+
+    private TaskDistributionService taskDistributionService;
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setClaimOverfetchFactor(2);
+        config.setMaxClaimRounds(3);
+        config.setPrefetchQueueSize(4);
+        config.setPrefetchLowWaterMark(2);
+        taskDistributionService = new TaskDistributionService(imageLeaseRepository, retiredImageIndex,
+                seenImageIndex, leaseExpiryReaper, permutedImageOrder, goldInterleaver, contestedImageQueue,
+                credibilityTierCache, config, transactionManager, prefetchExecutor);
+    }
+
+    @Test
+    void claimBatch_ShouldLeaseUnseenImages_AndDropRetiredLeaseRows() {
+        when(imageLeaseRepository.lockClaimable(eq(7L), any(), eq(Integer.MAX_VALUE), eq(Integer.MAX_VALUE), eq(-1L), eq(4)))
+                .thenReturn(List.of(candidate(1L, 5, 2), candidate(2L, 5, 1), candidate(3L, 0, 0)));
+        when(retiredImageIndex.filterActive(eq(7L), aryEq(new long[]{1L, 2L, 3L}))).thenReturn(new long[]{2L, 3L});
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{2L, 3L}))).thenReturn(new long[]{2L, 3L});
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.claimBatch(7L, "alice", 2);
+
+        assertEquals(List.of(2L, 3L), batch.getImageIds());
+        assertTrue(batch.getExpiresAt().isAfter(LocalDateTime.now()));
+        verify(imageLeaseRepository).deleteByImageIds(List.of(1L));
+        verify(imageLeaseRepository).lease(List.of(2L, 3L), "alice", batch.getExpiresAt());
+        verify(leaseExpiryReaper).track(7L, List.of(2L, 3L), "alice", batch.getExpiresAt());
+        verifyNoInteractions(contestedImageQueue);
+    }
+
+    @Test
+    void claimBatch_ShouldRouteContestedImagesFirst_ToReliableUsers() {
+        when(credibilityTierCache.isReliable("alice")).thenReturn(true);
+        when(contestedImageQueue.pick(7L, "alice", 8)).thenReturn(List.of(20L, 21L, 22L));
+        // 22 is leased to someone else
+        when(imageLeaseRepository.lockUnleased(eq(7L), eq(List.of(20L, 21L, 22L)), any()))
+                .thenReturn(List.of(candidate(21L, 0, 3), candidate(20L, 0, 4)));
+        when(imageLeaseRepository.lockClaimable(eq(7L), any(), eq(Integer.MAX_VALUE), eq(Integer.MAX_VALUE), eq(-1L), eq(8)))
+                .thenReturn(List.of(candidate(1L, 0, 0), candidate(2L, 0, 0), candidate(3L, 0, 0)));
+        when(retiredImageIndex.filterActive(eq(7L), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.claimBatch(7L, "alice", 4);
+
+        // Half the batch is reserved for contested images, in their ranking order
+        assertEquals(List.of(20L, 21L, 1L, 2L), batch.getImageIds());
+    }
+
+    @Test
+    void claimBatch_ShouldServeReturnedImagesFirst_AndRequeueOnesTheUserHasSeen() {
+        when(leaseExpiryReaper.pollReturned(7L, 4)).thenReturn(List.of(8L, 9L, 5L));
+        // 5 was leased again meanwhile
+        when(imageLeaseRepository.lockUnleased(eq(7L), eq(List.of(8L, 9L, 5L)), any()))
+                .thenReturn(List.of(candidate(9L, 0, 1), candidate(8L, 0, 1)));
+        when(retiredImageIndex.filterActive(eq(7L), aryEq(new long[]{8L, 9L}))).thenReturn(new long[]{8L, 9L});
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{8L, 9L}))).thenReturn(new long[]{9L});
+        when(imageLeaseRepository.lockClaimable(eq(7L), any(), anyInt(), anyInt(), anyLong(), eq(4)))
+                .thenReturn(List.of(candidate(9L, 0, 1), candidate(4L, 0, 0)));
+        when(retiredImageIndex.filterActive(eq(7L), aryEq(new long[]{9L, 4L}))).thenReturn(new long[]{9L, 4L});
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{9L, 4L}))).thenReturn(new long[]{9L, 4L});
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.claimBatch(7L, "alice", 2);
+
+        assertEquals(List.of(9L, 4L), batch.getImageIds());
+        verify(leaseExpiryReaper).requeue(7L, List.of(8L));
+    }
+
+    @Test
+    void claimBatch_ShouldContinueAfterLastRow_WhenCandidatesWereSeen() {
+        when(imageLeaseRepository.lockClaimable(eq(7L), any(), eq(Integer.MAX_VALUE), eq(Integer.MAX_VALUE), eq(-1L), eq(2)))
+                .thenReturn(List.of(candidate(1L, 5, 2), candidate(2L, 5, 1)));
+        when(imageLeaseRepository.lockClaimable(eq(7L), any(), eq(5), eq(1), eq(2L), eq(2)))
+                .thenReturn(List.of(candidate(3L, 0, 0)));
+        when(retiredImageIndex.filterActive(eq(7L), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{1L, 2L}))).thenReturn(new long[0]);
+        when(seenImageIndex.filterUnseen(eq("alice"), aryEq(new long[]{3L}))).thenReturn(new long[]{3L});
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.claimBatch(7L, "alice", 1);
+
+        assertEquals(List.of(3L), batch.getImageIds());
+        verify(imageLeaseRepository, never()).deleteByImageIds(any());
+    }
+
+    @Test
+    void claimBatch_ShouldReturnEmptyBatch_WhenNothingIsClaimable() {
+        when(imageLeaseRepository.lockClaimable(anyLong(), any(), anyInt(), anyInt(), anyLong(), anyInt()))
+                .thenReturn(List.of());
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.claimBatch(7L, "alice", 5);
+
+        assertTrue(batch.getImageIds().isEmpty());
+        verify(imageLeaseRepository, never()).lease(any(), any(), any());
+        verifyNoInteractions(retiredImageIndex, seenImageIndex);
+    }
+
+    @Test
+    void nextBatch_ShouldClaimOnColdStart_ThenServeFromRefilledQueue() {
+        TaskDistributionService service = spy(taskDistributionService);
+        runRefillsInline();
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 1L, 2L)).when(service).claimBatch(7L, "alice", 2);
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 3L, 4L, 5L, 6L)).when(service).claimBatch(7L, "alice", 4);
+
+        assertEquals(List.of(1L, 2L), service.nextBatch(7L, "alice", 2).getImageIds());
+        assertEquals(List.of(3L, 4L), service.nextBatch(7L, "alice", 2).getImageIds());
+
+        // Two images left is not below the low-water mark, so only the cold start refilled
+        verify(service, times(2)).claimBatch(anyLong(), anyString(), anyInt());
+        TaskDistributionService.PrefetchMetrics metrics = service.getPrefetchMetrics();
+        assertEquals(1, metrics.getActiveQueues());
+        assertEquals(2, metrics.getQueuedImages());
+        assertEquals(2, metrics.getServedFromQueueCount());
+        assertEquals(2, metrics.getServedByClaimCount());
+        assertEquals(1, metrics.getRefillCount());
+    }
+
+    @Test
+    void nextBatch_ShouldSkipRetiredImages_AndClaimTheShortfall() {
+        TaskDistributionService service = spy(taskDistributionService);
+        runRefillsInline();
+        doReturn(leased(LocalDateTime.now().plusMinutes(2))).when(service).claimBatch(7L, "alice", 1);
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 3L, 4L, 5L, 6L)).when(service).claimBatch(7L, "alice", 4);
+        service.nextBatch(7L, "alice", 1);
+        when(retiredImageIndex.isRetired(eq(7L), anyLong())).thenAnswer(invocation -> invocation.getArgument(1).equals(4L));
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 9L)).when(service).claimBatch(7L, "alice", 1);
+
+        TaskDistributionService.LeasedBatch batch = service.nextBatch(7L, "alice", 4);
+
+        assertEquals(List.of(3L, 5L, 6L, 9L), batch.getImageIds());
+        assertEquals(1, service.getPrefetchMetrics().getInvalidatedCount());
+    }
+
+    @Test
+    void nextBatch_ShouldNotServeImagesWhoseLeaseIsAboutToExpire() {
+        TaskDistributionService service = spy(taskDistributionService);
+        runRefillsInline();
+        doReturn(leased(LocalDateTime.now().plusSeconds(10), 3L, 4L, 5L, 6L)).when(service).claimBatch(7L, "alice", 4);
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 1L)).when(service).claimBatch(7L, "alice", 1);
+        service.nextBatch(7L, "alice", 1);
+
+        TaskDistributionService.LeasedBatch batch = service.nextBatch(7L, "alice", 1);
+
+        assertEquals(List.of(1L), batch.getImageIds());
+        assertEquals(4, service.getPrefetchMetrics().getInvalidatedCount());
+    }
+
+    @Test
+    void nextBatch_ShouldStillServe_WhenRefillIsRejected() {
+        TaskDistributionService service = spy(taskDistributionService);
+        doThrow(new TaskRejectedException("full")).when(prefetchExecutor).execute(any(Runnable.class));
+        doReturn(leased(LocalDateTime.now().plusMinutes(2), 1L)).when(service).claimBatch(7L, "alice", 1);
+
+        assertEquals(List.of(1L), service.nextBatch(7L, "alice", 1).getImageIds());
+        assertEquals(List.of(1L), service.nextBatch(7L, "alice", 1).getImageIds());
+
+        // The rejected refill does not leave the queue marked as refilling
+        verify(prefetchExecutor, times(2)).execute(any(Runnable.class));
+        assertEquals(2, service.getPrefetchMetrics().getRefillRejectedCount());
+    }
+
+    @Test
+    void nextBatch_ShouldMixGoldIntoLeasedImages() {
+        TaskDistributionService service = spy(taskDistributionService);
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(2);
+        when(goldInterleaver.pickGold(7L, "alice", 3)).thenReturn(List.of(50L));
+        doReturn(leased(expiresAt, 1L, 2L)).when(service).claimBatch(7L, "alice", 2);
+
+        TaskDistributionService.LeasedBatch batch = service.nextBatch(7L, "alice", 3);
+
+        assertEquals(3, batch.getImageIds().size());
+        assertTrue(batch.getImageIds().contains(50L));
+        assertEquals(List.of(1L, 2L), batch.getImageIds().stream().filter(id -> id != 50L).toList());
+        assertEquals(expiresAt, batch.getExpiresAt());
+    }
+
+    @Test
+    void nextBatch_ShouldNotClaim_WhenTheWholeBatchIsGold() {
+        TaskDistributionService service = spy(taskDistributionService);
+        when(goldInterleaver.pickGold(7L, "alice", 1)).thenReturn(List.of(50L));
+
+        TaskDistributionService.LeasedBatch batch = service.nextBatch(7L, "alice", 1);
+
+        assertEquals(List.of(50L), batch.getImageIds());
+        assertNull(batch.getExpiresAt());
+        verify(service, never()).claimBatch(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    void nextPermutedBatch_ShouldFillRestFromUserOrder() {
+        when(goldInterleaver.pickGold(7L, "alice", 2)).thenReturn(List.of(50L));
+        when(permutedImageOrder.nextBatch(7L, "alice", 1)).thenReturn(List.of(4L));
+
+        TaskDistributionService.LeasedBatch batch = taskDistributionService.nextPermutedBatch(7L, "alice", 2);
+
+        assertEquals(2, batch.getImageIds().size());
+        assertTrue(batch.getImageIds().containsAll(List.of(50L, 4L)));
+        assertNull(batch.getExpiresAt());
+    }
+
+    @Test
+    void onClassificationSubmitted_ShouldReleaseTheUsersLeases_InOneUpdate() {
+        taskDistributionService.onClassificationSubmitted(new ClassificationSubmittedEvent("alice", false,
+                List.of(new ClassificationSubmittedEvent.Swipe(1L, 10L, 100L, false),
+                        new ClassificationSubmittedEvent.Swipe(2L, 11L, 100L, false))));
+
+        verify(imageLeaseRepository).recordClassifications(List.of(10L, 11L), "alice");
+    }
+
+    @Test
+    void onImageFinalized_ShouldRemoveImageFromCirculation() {
+        taskDistributionService.onImageFinalized(new ImageFinalizedEvent(10L, 7L, 100L, 0.9, 0.99, 3));
+
+        verify(imageLeaseRepository).deleteByImageIds(List.of(10L));
+    }
+
+    private void runRefillsInline() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(prefetchExecutor).execute(any(Runnable.class));
+    }
+
+    private TaskDistributionService.LeasedBatch leased(LocalDateTime expiresAt, Long... imageIds) {
+        return new TaskDistributionService.LeasedBatch(List.of(imageIds), expiresAt);
+    }
+
+    private LeaseCandidate candidate(Long imageId, int priority, int voteCount) {
+        return new LeaseCandidate() {
+            @Override
+            public Long getImageId() {
+                return imageId;
+            }
+
+            @Override
+            public Integer getPriority() {
+                return priority;
+            }
+
+            @Override
+            public Integer getVoteCount() {
+                return voteCount;
+            }
+        };
+    }
+}
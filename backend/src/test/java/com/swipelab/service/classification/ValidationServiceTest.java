@@ -0,0 +1,100 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.DistributionConfig;
+import com.swipelab.dto.request.ClassificationRequest;
+import com.swipelab.exception.ValidationException;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ValidationServiceTest {
+
+    private ValidationService validationService;
+    private SeenImageIndex seenImageIndex;
+
+    private final Map<Long, Image> images = Map.of(1L, Image.builder().id(1L).build(), 2L, Image.builder().id(2L).build());
+    private final Map<Long, Label> labels = Map.of(100L, Label.builder().id(100L).build());
+
+    @BeforeEach
+    void setUp() {
+        DistributionConfig config = new DistributionConfig();
+        config.setMaxBatchSize(3);
+        seenImageIndex = mock(SeenImageIndex.class);
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        validationService = new ValidationService(config, seenImageIndex);
+    }
+
+    @Test
+    void validateSwipeCount_ShouldRejectEmptyAndOversizedArrays() {
+        assertThrows(ValidationException.class, () -> validationService.validateSwipeCount(List.of()));
+        assertThrows(ValidationException.class, () -> validationService.validateSwipeCount(null));
+        assertThrows(ValidationException.class,
+                () -> validationService.validateSwipeCount(Collections.nCopies(4, swipe(1L, 100L))));
+        validationService.validateSwipeCount(Collections.nCopies(3, swipe(1L, 100L)));
+    }
+
+    @Test
+    void validateSwipes_ShouldAcceptKnownImagesAndLabels() {
+        validationService.validateSwipes("alice", List.of(swipe(1L, 100L), swipe(2L, 100L)), images, labels);
+    }
+
+    @Test
+    void validateSwipes_ShouldReportEveryInvalidSwipe() {
+        List<ClassificationRequest> swipes = new ArrayList<>(Arrays.asList(
+                swipe(1L, 100L), swipe(9L, 100L), swipe(1L, 200L), null, swipe(null, null)));
+
+        ValidationException error = assertThrows(ValidationException.class,
+                () -> validationService.validateSwipes("alice", swipes, images, labels));
+
+        assertEquals("swipes[1]: image 9 not found; "
+                + "swipes[2]: image 1 is swiped more than once; swipes[2]: label 200 not found; "
+                + "swipes[3]: swipe is missing; "
+                + "swipes[4]: image is required; swipes[4]: label is required", error.getMessage());
+    }
+
+    @Test
+    void validateSwipes_ShouldRejectImagesTheUserAlreadyClassified() {
+        when(seenImageIndex.filterUnseen(eq("alice"), any())).thenReturn(new long[]{2L});
+
+        ValidationException error = assertThrows(ValidationException.class,
+                () -> validationService.validateSwipes("alice", List.of(swipe(1L, 100L), swipe(2L, 100L)), images, labels));
+
+        assertEquals("swipes[0]: image 1 was already classified", error.getMessage());
+    }
+
+    @Test
+    void validateSwipes_ShouldRejectLabelsOutsideTheTasksTargetSpecies() {
+        Label owl = Label.builder().id(100L).build();
+        Label fox = Label.builder().id(101L).build();
+        Task owlTask = Task.builder().id(7L).targetSpecies(List.of(owl)).build();
+        Map<Long, Image> taskImages = Map.of(
+                1L, Image.builder().id(1L).task(owlTask).build(),
+                2L, Image.builder().id(2L).task(owlTask).build(),
+                3L, Image.builder().id(3L).task(Task.builder().id(8L).build()).build());
+
+        ValidationException error = assertThrows(ValidationException.class,
+                () -> validationService.validateSwipes("alice",
+                        List.of(swipe(1L, 100L), swipe(2L, 101L), swipe(3L, 101L)),
+                        taskImages, Map.of(100L, owl, 101L, fox)));
+
+        assertEquals("swipes[1]: label 101 is not a target species of the image's task", error.getMessage());
+    }
+
+    private ClassificationRequest swipe(Long imageId, Long labelId) {
+        return new ClassificationRequest(imageId, labelId);
+    }
+}
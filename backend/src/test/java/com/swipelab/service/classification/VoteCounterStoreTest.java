@@ -0,0 +1,327 @@
+package com.swipelab.service.classification;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.enums.StoppingMode;
+import com.swipelab.service.user.AgreementStatsWriter;
+import com.swipelab.util.ConsensusCalculator;
+import com.swipelab.util.CredibilityCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VoteCounterStoreTest {
+
+    private static final ConsensusCalculator.StoppingRule FIXED =
+            new ConsensusCalculator.StoppingRule(StoppingMode.FIXED, 80.0, 3, 0.95, 10);
+    private static final ConsensusCalculator.StoppingRule ADAPTIVE =
+            new ConsensusCalculator.StoppingRule(StoppingMode.ADAPTIVE, 80.0, 2, 0.95, 5);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> statsRowsCaptor;
+
+    private VoteCounterStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new VoteCounterStore(new ConsensusCalculator(), new CredibilityConfig(), jdbcTemplate, transactionManager,
+                new AgreementStatsWriter(jdbcTemplate), eventPublisher);
+    }
+
+    @Test
+    void record_ShouldNotFinalize_BeforeMinimumClassifications() {
+        store.record(1L, 100L, 1.0, FIXED, "voter");
+        ConsensusService.ConsensusState state = store.record(1L, 100L, 0.9, FIXED, "voter");
+
+        assertFalse(state.isFinalized());
+        assertEquals(100L, state.getLeadingLabelId());
+        assertEquals(1.0, state.getLeadingShare(), 1e-9);
+        assertEquals(2, state.getTotalVotes());
+    }
+
+    @Test
+    void record_ShouldFinalize_WhenWeightedShareCrossesThreshold() {
+        store.record(1L, 100L, 1.0, FIXED, "voter");
+        store.record(1L, 200L, 0.1, FIXED, "voter");
+        ConsensusService.ConsensusState state = store.record(1L, 100L, 1.0, FIXED, "voter");
+
+        // 2 of 3 plain votes, but 2.0 of 2.1 weight
+        assertTrue(state.isNewlyFinalized());
+        assertEquals(100L, state.getFinalizedLabelId());
+        assertEquals(2.0 / 2.1, state.getLeadingShare(), 1e-9);
+    }
+
+    @Test
+    void record_ShouldKeepFinalizedLabel_WhenLaterVotesDisagree() {
+        store.record(1L, 100L, 1.0, FIXED, "voter");
+        store.record(1L, 100L, 1.0, FIXED, "voter");
+        store.record(1L, 100L, 1.0, FIXED, "voter");
+
+        ConsensusService.ConsensusState state = null;
+        for (int i = 0; i < 5; i++) {
+            state = store.record(1L, 200L, 1.0, FIXED, "voter");
+        }
+
+        assertFalse(state.isNewlyFinalized());
+        assertEquals(100L, state.getFinalizedLabelId());
+        assertEquals(200L, state.getLeadingLabelId());
+    }
+
+    @Test
+    void record_ShouldStopEarly_WhenAdaptiveTaskGetsTwoConfidentVotes() {
+        assertFalse(store.record(1L, 100L, 1.0, ADAPTIVE, "voter").isFinalized());
+        ConsensusService.ConsensusState state = store.record(1L, 100L, 1.0, ADAPTIVE, "voter");
+
+        // Two agreeing full-weight votes: 0.95^2 / (0.95^2 + 0.05^2) ~ 0.997
+        assertTrue(state.isNewlyFinalized());
+        assertEquals(100L, state.getFinalizedLabelId());
+        assertTrue(state.getConfidence() > 0.99);
+    }
+
+    @Test
+    void record_ShouldKeepCollecting_WhenAdaptiveVotesAreWeak() {
+        store.record(1L, 100L, 0.1, ADAPTIVE, "voter");
+        ConsensusService.ConsensusState state = store.record(1L, 100L, 0.1, ADAPTIVE, "voter");
+
+        assertFalse(state.isFinalized());
+        assertTrue(state.getConfidence() < 0.95);
+    }
+
+    @Test
+    void record_ShouldStopBeforeMaximum_WithRecomputedCredibilityWeights() {
+        CredibilityConfig config = new CredibilityConfig();
+        ConsensusCalculator.StoppingRule rule =
+                new ConsensusCalculator.StoppingRule(StoppingMode.ADAPTIVE, 80.0, 2, 0.95, 10);
+
+        // Credibility as the pipeline computes it from typical accumulators
+        double careful = regularWeight(0.8, 30, 0.85, 40, config);   // 0.725
+        double moderate = regularWeight(0.6, 20, 0.75, 30, config);  // 0.575
+        double careless = regularWeight(0.0, 30, 0.5, 40, config);   // 0.25
+
+        store.record(1L, 100L, careful, rule, "careful");
+        store.record(1L, 200L, careless, rule, "careless");
+        ConsensusService.ConsensusState state = store.record(1L, 100L, moderate, rule, "moderate");
+
+        // A lead of 1.05 weighted votes: 1 / (1 + 19^-1.05) ~ 0.957
+        assertTrue(state.isNewlyFinalized());
+        assertEquals(100L, state.getFinalizedLabelId());
+        assertEquals(3, state.getTotalVotes());
+
+        // The same votes at the minimum weight are far from confident
+        double floor = config.getConsensusMinVoteWeight();
+        store.record(2L, 100L, floor, rule, "careful");
+        store.record(2L, 200L, floor, rule, "careless");
+        assertFalse(store.record(2L, 100L, floor, rule, "moderate").isFinalized());
+    }
+
+    @Test
+    void record_ShouldStopAtMaximum_WhenAdaptiveImageStaysAmbiguous() {
+        ConsensusService.ConsensusState state = null;
+        for (int i = 0; i < 4; i++) {
+            state = store.record(1L, i % 2 == 0 ? 100L : 200L, 0.5, ADAPTIVE, "voter");
+            assertFalse(state.isFinalized());
+        }
+        state = store.record(1L, 100L, 0.5, ADAPTIVE, "voter");
+
+        // Half a vote ahead is far from 0.95, but the cap has been reached
+        assertTrue(state.isNewlyFinalized());
+        assertEquals(100L, state.getFinalizedLabelId());
+        assertTrue(state.getConfidence() < 0.9);
+    }
+
+    @Test
+    void record_ShouldReportVoteEntropy() {
+        assertEquals(0.0, store.record(1L, 100L, 1.0, FIXED, "voter").getVoteEntropy(), 1e-9);
+        assertEquals(1.0, store.record(1L, 200L, 1.0, FIXED, "voter").getVoteEntropy(), 1e-9);
+
+        // Shares 2/3 and 1/3: H = 0.918 bits out of 1
+        assertEquals(0.918, store.record(1L, 100L, 1.0, FIXED, "voter").getVoteEntropy(), 1e-3);
+    }
+
+    @Test
+    void get_ShouldReturnEmptyState_ForUnknownImage() {
+        ConsensusService.ConsensusState state = store.get(42L);
+
+        assertNull(state.getLeadingLabelId());
+        assertEquals(0, state.getTotalVotes());
+        assertFalse(state.isFinalized());
+    }
+
+    @Test
+    void flush_ShouldWriteOnlyDirtyImages_WithAbsoluteValues() {
+        rowsFoundByUpdates();
+        store.record(1L, 100L, 0.5, FIXED, null);
+        store.record(1L, 200L, 0.375, FIXED, null);
+        store.record(1L, 100L, 0.5, FIXED, null);
+
+        assertEquals(1, store.flush());
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).batchUpdate(eq(VoteCounterStore.FLUSH_SUMMARY_SQL), rowsCaptor.capture(), any(int[].class));
+        inOrder.verify(jdbcTemplate).batchUpdate(eq(VoteCounterStore.FLUSH_TALLY_SQL), rowsCaptor.capture(), any(int[].class));
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT"), anyList(), any(int[].class));
+
+        // 2 of 3 plain votes make label 100 the majority; the timestamp is checked separately
+        Object[] summary = rowsCaptor.getAllValues().get(0).get(0);
+        assertNotNull(summary[7]);
+        summary[7] = null;
+        assertArrayEquals(new Object[]{3, 100L, 1.375, 100L, 1.0, null, null, null, 1L}, summary);
+        List<Object[]> tallies = rowsCaptor.getAllValues().get(1);
+        assertArrayEquals(new Object[]{2, 1.0, 1L, 100L}, tallies.get(0));
+        assertArrayEquals(new Object[]{1, 0.375, 1L, 200L}, tallies.get(1));
+
+        // Nothing changed since
+        assertEquals(0, store.flush());
+    }
+
+    @Test
+    void flush_ShouldInsertRows_TheUpdateDidNotFind() {
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList(), any(int[].class)))
+                .thenAnswer(invocation -> new int[((List<?>) invocation.getArgument(1)).size()]);
+        store.record(1L, 100L, 0.5, FIXED, null);
+
+        store.flush();
+
+        verify(jdbcTemplate).batchUpdate(eq(VoteCounterStore.INSERT_SUMMARY_SQL), rowsCaptor.capture(), any(int[].class));
+        verify(jdbcTemplate).batchUpdate(eq(VoteCounterStore.INSERT_TALLY_SQL), rowsCaptor.capture(), any(int[].class));
+        assertEquals(1L, rowsCaptor.getAllValues().get(0).get(0)[8]);
+        assertArrayEquals(new Object[]{1, 0.5, 1L, 100L}, rowsCaptor.getAllValues().get(1).get(0));
+    }
+
+    @Test
+    void flush_ShouldScoreNewVotes_AgainstUnchangedMajority() {
+        rowsFoundByUpdates();
+        storedRegularVotes(new Object[][]{{"alice", 100L}, {"bob", 100L}});
+        store.record(1L, 100L, 1.0, FIXED, "alice");
+        store.record(1L, 100L, 1.0, FIXED, "bob");
+        store.flush();
+        clearInvocations(jdbcTemplate);
+
+        store.record(1L, 200L, 1.0, FIXED, "carol");
+        store.flush();
+
+        // No flip, so the stored votes are not read again
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        assertMajorityDeltas(new Object[][]{{"carol", 1, 0}});
+        verify(eventPublisher, times(2)).publishEvent(any(MajorityAgreementFlushedEvent.class));
+    }
+
+    @Test
+    void flush_ShouldMoveEveryStoredVote_WhenMajorityFlips() {
+        rowsFoundByUpdates();
+        store.record(1L, 100L, 1.0, FIXED, "alice");
+        store.record(1L, 100L, 1.0, FIXED, "bob");
+        storedRegularVotes(new Object[][]{{"alice", 100L}, {"bob", 100L}});
+        store.flush();
+        assertMajorityDeltas(new Object[][]{{"alice", 1, 1}, {"bob", 1, 1}});
+        clearInvocations(jdbcTemplate);
+
+        // Three new votes (one by an expert) take the majority for 200. The new regular votes
+        // are moved off 100 with the stored ones, although they were never counted against it,
+        // so that part is added back for them
+        store.record(1L, 200L, 1.0, FIXED, "carol");
+        store.record(1L, 200L, 1.0, FIXED, "dave");
+        store.record(1L, 200L, 1.0, FIXED, null);
+        storedRegularVotes(new Object[][]{{"alice", 100L}, {"bob", 100L}, {"carol", 200L}, {"dave", 200L}});
+        store.flush();
+
+        assertMajorityDeltas(new Object[][]{{"alice", 0, -1}, {"bob", 0, -1}, {"carol", 1, 1}, {"dave", 1, 1}});
+        ArgumentCaptor<MajorityAgreementFlushedEvent> event = ArgumentCaptor.forClass(MajorityAgreementFlushedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(event.capture());
+        assertEquals(Set.of(1L), event.getValue().getFlippedImageIds());
+        assertEquals(Set.of("alice", "bob", "carol", "dave"), event.getValue().getUsernames());
+    }
+
+    @Test
+    void flush_ShouldKeepImagesDirty_WhenWriteFails() {
+        store.record(1L, 100L, 0.5, FIXED, "alice");
+        store.record(1L, 200L, 0.5, FIXED, "bob");
+        store.record(1L, 200L, 0.5, FIXED, "carol");
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList(), any(int[].class)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenAnswer(invocation -> ones(invocation.getArgument(1)));
+        storedRegularVotes(new Object[][]{{"alice", 100L}, {"bob", 200L}, {"carol", 200L}});
+
+        assertEquals(0, store.flush());
+        verifyNoInteractions(eventPublisher);
+
+        // The retry still sees the flip and scores every vote once
+        assertEquals(1, store.flush());
+        assertMajorityDeltas(new Object[][]{{"alice", 1, 0}, {"bob", 1, 1}, {"carol", 1, 1}});
+    }
+
+    private double regularWeight(Double kappa, int expertCompared, double majorityAgreement, int majorityCompared,
+                                 CredibilityConfig config) {
+        double score = new CredibilityCalculator().calculateCredibilityScore(kappa, expertCompared,
+                majorityAgreement, majorityCompared, config.getCredibilityPriorComparisons());
+        return new ConsensusCalculator().voteWeight(score, false, config.getConsensusMinVoteWeight());
+    }
+
+    private void rowsFoundByUpdates() {
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList(), any(int[].class)))
+                .thenAnswer(invocation -> ones(invocation.getArgument(1)));
+    }
+
+    private static int[] ones(List<?> rows) {
+        int[] counts = new int[rows.size()];
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+
+    /**
+     * Answers the flush's query for the stored regular votes on image 1
+     */
+    private void storedRegularVotes(Object[][] votes) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] vote : votes) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn((String) vote[0]);
+                when(rs.getLong(2)).thenReturn((Long) vote[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(1L));
+    }
+
+    /**
+     * Checks the last agreement counter upsert: {username, majority compared, majority agreed}
+     */
+    private void assertMajorityDeltas(Object[][] expected) {
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(startsWith("INSERT INTO user_agreement_stats"), statsRowsCaptor.capture());
+        List<Object[]> last = statsRowsCaptor.getValue();
+        assertEquals(expected.length, last.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], last.get(i)[0]);
+            assertEquals(expected[i][1], last.get(i)[3]);
+            assertEquals(expected[i][2], last.get(i)[4]);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.swipelab.service.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AgreementStatsWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private AgreementStatsWriter writer;
+
+    @Test
+    void apply_ShouldIncrementCountersAndLabels_InUsernameOrder() {
+        AgreementStatsWriter.Deltas deltas = new AgreementStatsWriter.Deltas();
+        deltas.addExpertComparison("zoe", 100L, 200L);
+        deltas.addExpertComparison("amy", 100L, 100L);
+        deltas.addExpertComparison("amy", 101L, 100L);
+        deltas.addMajority("zoe", 1, 1);
+
+        writer.apply(deltas);
+
+        List<Object[]> stats = rows(AgreementStatsWriter.UPSERT_STATS_SQL);
+        assertEquals(2, stats.size());
+        assertArrayEquals(new Object[]{"amy", 2, 1, 0, 0}, Arrays.copyOf(stats.get(0), 5));
+        assertArrayEquals(new Object[]{"zoe", 1, 0, 1, 1}, Arrays.copyOf(stats.get(1), 5));
+
+        List<Object[]> userLabels = rows(AgreementStatsWriter.UPSERT_USER_LABEL_SQL);
+        assertArrayEquals(new Object[]{"amy", 100L, 1}, userLabels.get(0));
+        assertArrayEquals(new Object[]{"amy", 101L, 1}, userLabels.get(1));
+        assertArrayEquals(new Object[]{"zoe", 100L, 1}, userLabels.get(2));
+        assertArrayEquals(new Object[]{"amy", 100L, 2}, rows(AgreementStatsWriter.UPSERT_EXPERT_LABEL_SQL).get(0));
+    }
+
+    @Test
+    void apply_ShouldSkipLabelStatements_WhenOnlyMajorityChanged() {
+        AgreementStatsWriter.Deltas deltas = new AgreementStatsWriter.Deltas();
+        deltas.addMajority("amy", 0, -1);
+        deltas.addMajority("bob", 0, 0);
+
+        writer.apply(deltas);
+
+        assertEquals(1, rows(AgreementStatsWriter.UPSERT_STATS_SQL).size());
+        verify(jdbcTemplate, never()).batchUpdate(eq(AgreementStatsWriter.UPSERT_USER_LABEL_SQL), anyList());
+    }
+
+    @Test
+    void apply_ShouldDoNothing_WhenNoChanges() {
+        writer.apply(new AgreementStatsWriter.Deltas());
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private List<Object[]> rows(String sql) {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(sql), captor.capture());
+        return captor.getValue();
+    }
+}
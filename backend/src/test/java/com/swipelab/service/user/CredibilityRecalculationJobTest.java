@@ -0,0 +1,100 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.UserAgreementStats;
+import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.UserAgreementStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CredibilityRecalculationJobTest {
+
+    @Mock
+    private ClassificationRepository classificationRepository;
+    @Mock
+    private UserAgreementStatsRepository userAgreementStatsRepository;
+    @Mock
+    private CredibilityService credibilityService;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private CredibilityRecalculationJob job;
+
+    @BeforeEach
+    void setUp() {
+        CredibilityConfig config = new CredibilityConfig();
+        config.setRecalculationChunkSize(2);
+        config.setRecalculationRetryBackoffMs(0);
+
+        job = new CredibilityRecalculationJob(classificationRepository, userAgreementStatsRepository,
+                credibilityService, config, jdbcTemplate, transactionManager, Runnable::run);
+    }
+
+    @Test
+    void recalculateCredibilityForImage_ShouldBatchUpdateEachChunkInOwnTransaction() {
+        UserAgreementStats aliceStats = UserAgreementStats.builder().username("alice").build();
+        when(classificationRepository.findNonExpertUsernamesByImageId(10L)).thenReturn(List.of("alice", "bob", "carol"));
+        when(userAgreementStatsRepository.findAllById(any())).thenReturn(List.of(aliceStats));
+        when(credibilityService.calculateMajorityAgreement(any()))
+                .thenAnswer(invocation -> invocation.getArgument(0) == aliceStats ? 0.75 : 0.0);
+        // No expert has labelled the image, so there is no expert agreement to write
+        when(credibilityService.calculateExpertAgreement(any())).thenReturn(null);
+        when(credibilityService.calculateCredibilityScore(any()))
+                .thenAnswer(invocation -> invocation.getArgument(0) == aliceStats ? 0.6 : 0.0);
+
+        int recalculated = job.recalculateCredibilityForImage(10L);
+
+        assertEquals(3, recalculated);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rowsCaptor.capture(), any(int[].class));
+        verify(transactionManager, times(2)).commit(any());
+
+        List<Object[]> firstChunk = rowsCaptor.getAllValues().get(0);
+        assertEquals(2, firstChunk.size());
+        assertArrayEquals(new Object[]{null, 0.75, 0.6, "alice"}, firstChunk.get(0));
+        assertEquals("carol", rowsCaptor.getAllValues().get(1).get(0)[3]);
+    }
+
+    @Test
+    void recalculateCredibilityForImage_ShouldRetryChunk_OnTransientFailure() {
+        when(classificationRepository.findNonExpertUsernamesByImageId(10L)).thenReturn(List.of("alice"));
+        when(userAgreementStatsRepository.findAllById(any())).thenReturn(List.of());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(new int[]{1});
+
+        job.recalculateCredibilityForImage(10L);
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList(), any(int[].class));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void recalculateCredibilityForImage_ShouldDoNothing_WhenNoRegularUsers() {
+        when(classificationRepository.findNonExpertUsernamesByImageId(10L)).thenReturn(List.of());
+
+        assertEquals(0, job.recalculateCredibilityForImage(10L));
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+}
@@ -0,0 +1,335 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.JobCheckpoint;
+import com.swipelab.repository.JobCheckpointRepository;
+import com.swipelab.util.CredibilityCalculator;
+import com.swipelab.util.LongIntHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CredibilityRecomputeJobTest {
+
+    private static final long OWL = 10L;
+    private static final long FOX = 11L;
+
+    @Mock
+    private JobCheckpointRepository checkpointRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private JdbcTemplate streamingTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // Checkpoint updates as "lastKey:processedCount", and every batch written, by statement
+    private final List<String> checkpoints = new CopyOnWriteArrayList<>();
+    private final Map<String, List<Object[]>> written = new ConcurrentHashMap<>();
+
+    private final Set<String> updatedSinceRunStart = new HashSet<>();
+    private Consumer<String> beforeUpsert = username -> { };
+    private Consumer<String> afterScores = username -> { };
+
+    @Test
+    void userAccumulator_ShouldMatchIncrementalCounters() {
+        // image 1: expert label 0, majority label 0
+        // image 2: expert label 1, no majority
+        // image 3: no expert label, majority label 1
+        LongIntHashMap expertLabels = new LongIntHashMap(4, -1);
+        expertLabels.put(1L, 0);
+        expertLabels.put(2L, 1);
+        LongIntHashMap majorityLabels = new LongIntHashMap(4, -1);
+        majorityLabels.put(1L, 0);
+        majorityLabels.put(3L, 1);
+
+        CredibilityRecomputeJob.UserAccumulator user = new CredibilityRecomputeJob.UserAccumulator("alice", 2);
+        user.add(1L, 0, expertLabels, majorityLabels);
+        user.add(2L, 0, expertLabels, majorityLabels);
+        user.add(1L, 1, expertLabels, majorityLabels); // repeat: majority only, expert comparison keeps the first
+        user.add(3L, 1, expertLabels, majorityLabels);
+
+        assertEquals(2, user.getExpertComparedCount());
+        assertEquals(1, user.getExpertAgreedCount());
+        assertArrayEquals(new int[]{2, 0}, user.getUserLabelCounts());
+        assertArrayEquals(new int[]{1, 1}, user.getExpertLabelCounts());
+
+        // every classification on an image with a majority is compared
+        assertEquals(3, user.getMajorityComparedCount());
+        assertEquals(2, user.getMajorityAgreedCount());
+    }
+
+    @Test
+    void run_ShouldCheckpointAfterEachWrittenChunk() throws Exception {
+        CredibilityRecomputeJob job = job(1, 2);
+        JobCheckpoint checkpoint = givenCheckpoint(completedRun());
+        givenReferenceData();
+        givenUsers("", "alice", "bob", "carol");
+        givenWrites();
+
+        assertEquals(3, job.run());
+
+        // Chunks are [alice, bob] and [carol]; nothing is checkpointed in the middle of a chunk
+        assertEquals(List.of("bob:2", "carol:3"), checkpoints);
+        assertEquals("carol", checkpoint.getLastKey());
+        assertEquals(3L, checkpoint.getProcessedCount());
+        assertNotNull(checkpoint.getRunStartedAt());
+        assertNotNull(checkpoint.getCompletedAt());
+        assertEquals(3, written.get(CredibilityRecalculationJob.UPDATE_SCORES_SQL).size());
+    }
+
+    @Test
+    void run_ShouldNotCheckpointPastUnwrittenChunk_WhenLaterChunksFinishFirst() throws Exception {
+        CredibilityRecomputeJob job = job(2, 1);
+        JobCheckpoint checkpoint = givenCheckpoint(completedRun());
+        givenReferenceData();
+        givenUsers("", "alice", "bob", "carol");
+        CountDownLatch laterChunksWritten = new CountDownLatch(2);
+        beforeUpsert = username -> {
+            if (username.equals("alice")) {
+                await(laterChunksWritten);
+            }
+        };
+        afterScores = username -> {
+            if (!username.equals("alice")) {
+                laterChunksWritten.countDown();
+            }
+        };
+        givenWrites();
+
+        assertEquals(3, job.run());
+
+        // bob's and carol's chunks were written while alice's was still open, so no checkpoint
+        // may name them before alice's is written: each names the last user of a written prefix
+        assertFalse(checkpoints.isEmpty());
+        for (String update : checkpoints) {
+            assertTrue(Set.of("alice:1", "bob:2", "carol:3").contains(update), "checkpoint " + update);
+        }
+        assertEquals("carol:3", checkpoints.get(checkpoints.size() - 1));
+        assertEquals("carol", checkpoint.getLastKey());
+        assertEquals(3L, checkpoint.getProcessedCount());
+    }
+
+    @Test
+    void run_ShouldLeaveCheckpointAtLastWrittenChunk_WhenAWriteFails() throws Exception {
+        CredibilityRecomputeJob job = job(1, 1);
+        JobCheckpoint checkpoint = givenCheckpoint(completedRun());
+        givenReferenceData();
+        givenUsers("", "alice", "bob", "carol");
+        beforeUpsert = username -> {
+            if (username.equals("bob")) {
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+        };
+        givenWrites();
+
+        assertThrows(IllegalStateException.class, job::run);
+
+        // Even if carol's chunk was written, the run resumes after alice and rewrites it
+        assertEquals(List.of("alice:1"), checkpoints);
+        assertTrue(checkpoint.isInProgress());
+        verify(checkpointRepository, times(1)).save(any());
+    }
+
+    @Test
+    void run_ShouldResumeAfterCheckpoint_WithTheInterruptedRunsStart() throws Exception {
+        CredibilityRecomputeJob job = job(1, 1);
+        LocalDateTime runStart = LocalDateTime.of(2024, 3, 1, 3, 30);
+        JobCheckpoint checkpoint = givenCheckpoint(JobCheckpoint.builder()
+                .jobName(CredibilityRecomputeJob.JOB_NAME)
+                .runStartedAt(runStart)
+                .lastKey("bob")
+                .processedCount(2L)
+                .build());
+        givenReferenceData();
+        givenUsers("bob", "carol");
+        givenWrites();
+
+        assertEquals(1, job.run());
+
+        List<Object[]> stats = written.get(CredibilityRecomputeJob.UPSERT_STATS_SQL);
+        assertEquals(1, stats.size());
+        assertEquals("carol", stats.get(0)[0]);
+        // Rows updated since the interrupted run started are still the ones left alone
+        assertEquals(Timestamp.valueOf(runStart), stats.get(0)[6]);
+        assertEquals(List.of("carol:3"), checkpoints);
+        assertEquals(runStart, checkpoint.getRunStartedAt());
+        assertEquals(3L, checkpoint.getProcessedCount());
+        assertNotNull(checkpoint.getCompletedAt());
+    }
+
+    @Test
+    void run_ShouldSkipUsersUpdatedAfterRunStart() throws Exception {
+        CredibilityRecomputeJob job = job(1, 2);
+        JobCheckpoint checkpoint = givenCheckpoint(completedRun());
+        givenReferenceData();
+        givenUsers("", "alice", "bob");
+        // The incremental path rewrote alice's row after the run started, so the guarded upsert skips it
+        updatedSinceRunStart.add("alice");
+        givenWrites();
+
+        job.run();
+
+        assertTrue(CredibilityRecomputeJob.UPSERT_STATS_SQL.endsWith("user_agreement_stats.updated_at < ?"));
+        List<Object[]> stats = written.get(CredibilityRecomputeJob.UPSERT_STATS_SQL);
+        assertEquals(2, stats.size());
+        assertEquals(Timestamp.valueOf(checkpoint.getRunStartedAt()), stats.get(0)[6]);
+
+        // Only bob's marginals and scores are rewritten
+        assertEquals(List.of("bob"), usernames(CredibilityRecomputeJob.DELETE_USER_LABELS_SQL, 0));
+        assertEquals(List.of("bob"), usernames(CredibilityRecomputeJob.DELETE_EXPERT_LABELS_SQL, 0));
+        assertArrayEquals(new Object[]{"bob", FOX, 1}, written.get(CredibilityRecomputeJob.INSERT_USER_LABEL_SQL).get(0));
+        assertArrayEquals(new Object[]{"bob", OWL, 1}, written.get(CredibilityRecomputeJob.INSERT_EXPERT_LABEL_SQL).get(0));
+        assertEquals(List.of("bob"), usernames(CredibilityRecalculationJob.UPDATE_SCORES_SQL, 3));
+    }
+
+    private CredibilityRecomputeJob job(int parallelism, int chunkSize) {
+        CredibilityConfig config = new CredibilityConfig();
+        config.setRecomputeParallelism(parallelism);
+        config.setRecomputeChunkSize(chunkSize);
+        CredibilityRecomputeJob job = spy(new CredibilityRecomputeJob(checkpointRepository, new CredibilityCalculator(),
+                config, jdbcTemplate, transactionManager));
+        doReturn(streamingTemplate).when(job).streamingTemplate();
+        return job;
+    }
+
+    /**
+     * The job mutates and re-saves the checkpoint it loaded, so the stored instance shows its progress
+     */
+    private JobCheckpoint givenCheckpoint(JobCheckpoint stored) {
+        when(checkpointRepository.findById(CredibilityRecomputeJob.JOB_NAME)).thenReturn(Optional.of(stored));
+        when(checkpointRepository.save(stored)).thenReturn(stored);
+        return stored;
+    }
+
+    private JobCheckpoint completedRun() {
+        return JobCheckpoint.builder()
+                .jobName(CredibilityRecomputeJob.JOB_NAME)
+                .runStartedAt(LocalDateTime.now().minusDays(1))
+                .lastKey("zoe")
+                .processedCount(26L)
+                .completedAt(LocalDateTime.now().minusDays(1).plusHours(1))
+                .build();
+    }
+
+    /**
+     * Labels owl and fox; image 1 has expert and majority label owl
+     */
+    private void givenReferenceData() throws SQLException {
+        List<ResultSet> labels = List.of(longRow(OWL), longRow(FOX));
+        List<ResultSet> expertLabels = List.of(longRow(1L, OWL));
+        List<ResultSet> majorityLabels = List.of(longRow(1L, OWL));
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<ResultSet> rows = sql.contains("image_vote_summaries") ? majorityLabels
+                    : sql.contains("RESEARCHER") ? expertLabels : labels;
+            for (ResultSet row : rows) {
+                invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            }
+            return null;
+        }).when(streamingTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    /**
+     * Every user classified image 1 once: bob as fox, everyone else as owl
+     */
+    private void givenUsers(String resumeAfter, String... usernames) throws SQLException {
+        List<ResultSet> rows = new ArrayList<>();
+        for (String username : usernames) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString(1)).thenReturn(username);
+            when(rs.getLong(2)).thenReturn(1L);
+            when(rs.getLong(3)).thenReturn(username.equals("bob") ? FOX : OWL);
+            rows.add(rs);
+        }
+        doAnswer(invocation -> {
+            for (ResultSet row : rows) {
+                invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            }
+            return null;
+        }).when(streamingTemplate).query(eq(CredibilityRecomputeJob.USER_CLASSIFICATIONS_SQL),
+                any(RowCallbackHandler.class), eq(resumeAfter));
+    }
+
+    private void givenWrites() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<Object[]> rows = invocation.getArgument(1);
+            int[] counts = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                String username = (String) rows.get(i)[0];
+                if (sql.equals(CredibilityRecomputeJob.UPSERT_STATS_SQL)) {
+                    beforeUpsert.accept(username);
+                }
+                counts[i] = sql.equals(CredibilityRecomputeJob.UPSERT_STATS_SQL)
+                        && updatedSinceRunStart.contains(username) ? 0 : 1;
+            }
+            record(sql, rows);
+            return counts;
+        });
+        when(jdbcTemplate.batchUpdate(eq(CredibilityRecalculationJob.UPDATE_SCORES_SQL), anyList(), any(int[].class)))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    record(CredibilityRecalculationJob.UPDATE_SCORES_SQL, rows);
+                    rows.forEach(row -> afterScores.accept((String) row[3]));
+                    return new int[rows.size()];
+                });
+        when(jdbcTemplate.update(eq(CredibilityRecomputeJob.UPDATE_CHECKPOINT_SQL), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    checkpoints.add(invocation.getArgument(1) + ":" + invocation.getArgument(2));
+                    return 1;
+                });
+    }
+
+    private void record(String sql, List<Object[]> rows) {
+        written.computeIfAbsent(sql, key -> Collections.synchronizedList(new ArrayList<>())).addAll(rows);
+    }
+
+    private List<Object> usernames(String sql, int column) {
+        return written.getOrDefault(sql, List.of()).stream().map(row -> row[column]).toList();
+    }
+
+    private ResultSet longRow(long... values) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        for (int i = 0; i < values.length; i++) {
+            when(rs.getLong(i + 1)).thenReturn(values[i]);
+        }
+        return rs;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS), "later chunks were not written");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,23 +1,39 @@
 package com.swipelab.service.user;
 
+import com.swipelab.config.CredibilityConfig;
 import com.swipelab.model.entity.Classification;
 import com.swipelab.model.entity.Image;
 import com.swipelab.model.entity.Label;
 import com.swipelab.model.entity.User;
+import com.swipelab.model.entity.UserAgreementStats;
 import com.swipelab.model.enums.UserRole;
 import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.UserAgreementStatsRepository;
 import com.swipelab.repository.UserRepository;
+import com.swipelab.repository.projection.ClassificationTuple;
+import com.swipelab.repository.projection.UsernameCount;
+import com.swipelab.util.ConsensusCalculator;
 import com.swipelab.util.CredibilityCalculator;
+import com.swipelab.util.LongIntHashMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -31,7 +47,13 @@ class CredibilityServiceTest {
     @Mock
     private UserRepository userRepository;
     @Mock
+    private UserAgreementStatsRepository userAgreementStatsRepository;
+    @Mock
+    private AgreementStatsWriter agreementStatsWriter;
+    @Mock
     private CredibilityCalculator credibilityCalculator;
+    @Spy
+    private CredibilityConfig credibilityConfig = new CredibilityConfig();
 
     @InjectMocks
     private CredibilityService credibilityService;
@@ -59,23 +81,24 @@ class CredibilityServiceTest {
         Long imageId = 1L;
         when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
 
-        // Mock Expert Agreement Logic
-        Classification userClass = Classification.builder().user(testUser).image(testImage).label(testLabel).build();
-        List<Classification> userClasses = Collections.singletonList(userClass);
-        when(classificationRepository.findByUser_Username("testuser")).thenReturn(userClasses);
-
-        List<Classification> expertClasses = Collections.singletonList(
-                Classification.builder().user(User.builder().role(UserRole.RESEARCHER).build()).build());
-        when(classificationRepository.findExpertClassifications()).thenReturn(expertClasses);
+        // Both scores are read from the user's accumulators
+        UserAgreementStats stats = UserAgreementStats.builder()
+                .username("testuser")
+                .expertComparedCount(4)
+                .expertAgreedCount(3)
+                .majorityComparedCount(2)
+                .majorityAgreedCount(2)
+                .build();
+        when(userAgreementStatsRepository.findById("testuser")).thenReturn(Optional.of(stats));
 
-        when(credibilityCalculator.calculateCohenKappa(anyList(), anyList())).thenReturn(0.85);
+        // Mock Expert Agreement Logic
+        when(credibilityCalculator.calculateCohenKappa(eq(3), eq(4), anyMap(), anyMap())).thenReturn(0.85);
 
         // Mock Majority Agreement Logic
-        // For majority agreement loop
-        when(classificationRepository.findByImageId(imageId)).thenReturn(List.of(userClass, userClass)); // Need >1 for
-                                                                                                         // majority
-        when(credibilityCalculator.calculateMajorityVote(anyList())).thenReturn(testLabel);
-        when(credibilityCalculator.calculateMajorityAgreementScore(any(), any())).thenReturn(1.0);
+        when(credibilityCalculator.calculateMajorityAgreementRatio(2, 2)).thenReturn(1.0);
+
+        // Both combined into the score that weighs the user's votes
+        when(credibilityCalculator.calculateCredibilityScore(0.85, 4, 1.0, 2, 10)).thenReturn(0.4);
 
         // Act
         credibilityService.updateUserCredibility("testuser", imageId);
@@ -83,9 +106,41 @@ class CredibilityServiceTest {
         // Assert
         assertEquals(0.85, testUser.getAgreementWithExperts());
         assertEquals(1.0, testUser.getMajorityAgreementScore());
+        assertEquals(0.4, testUser.getCredibilityScore());
         verify(userRepository).save(testUser);
     }
 
+    @Test
+    void updateUserCredibility_ShouldWeighVotesByRecomputedScore() {
+        CredibilityConfig config = new CredibilityConfig();
+        CredibilityService service = new CredibilityService(classificationRepository, userRepository,
+                userAgreementStatsRepository, agreementStatsWriter, new CredibilityCalculator(), config);
+        ConsensusCalculator consensusCalculator = new ConsensusCalculator();
+
+        // 27 of 30 expert comparisons agree (kappa 0.8) and 34 of 40 majority comparisons
+        User careful = User.builder().username("careful").role(UserRole.USER).build();
+        givenStats("careful", 30, 27, Map.of(100L, 15, 101L, 15), Map.of(100L, 15, 101L, 15), 40, 34);
+        // Chance-level agreement on both sides (kappa 0)
+        User careless = User.builder().username("careless").role(UserRole.USER).build();
+        givenStats("careless", 30, 15, Map.of(100L, 15, 101L, 15), Map.of(100L, 15, 101L, 15), 40, 20);
+        when(userRepository.findByUsername("careful")).thenReturn(Optional.of(careful));
+        when(userRepository.findByUsername("careless")).thenReturn(Optional.of(careless));
+
+        service.updateUserCredibility("careful", 1L);
+        service.updateUserCredibility("careless", 1L);
+
+        assertEquals(0.725, careful.getCredibilityScore(), 1e-9);
+        assertEquals(0.25, careless.getCredibilityScore(), 1e-9);
+
+        double minWeight = config.getConsensusMinVoteWeight();
+        double carefulWeight = consensusCalculator.voteWeight(careful.getCredibilityScore(), false, minWeight);
+        double carelessWeight = consensusCalculator.voteWeight(careless.getCredibilityScore(), false, minWeight);
+        double newcomerWeight = consensusCalculator.voteWeight(
+                User.builder().username("newcomer").build().getCredibilityScore(), false, minWeight);
+        assertTrue(carefulWeight > carelessWeight && carelessWeight > newcomerWeight);
+        assertEquals(minWeight, newcomerWeight);
+    }
+
     @Test
     void updateUserCredibility_ShouldSkip_WhenUserIsResearcher() {
         testUser.setRole(UserRole.RESEARCHER);
@@ -94,27 +149,204 @@ class CredibilityServiceTest {
         credibilityService.updateUserCredibility("testuser", 1L);
 
         verify(classificationRepository, never()).findExpertClassifications();
+        verify(userAgreementStatsRepository, never()).findById(anyString());
         verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
-    void recalculateCredibilityForImage_ShouldUpdateAllUsers() {
-        Long imageId = 10L;
-        User user1 = User.builder().username("u1").role(UserRole.USER).build();
-        User user2 = User.builder().username("u2").role(UserRole.USER).build();
+    void onClassificationsRecorded_ShouldAccumulateComparison_WhenImageHasExpertLabel() {
+        Classification classification = Classification.builder()
+                .id(50L).user(testUser).image(testImage).label(testLabel).build();
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L))).thenReturn(List.of(
+                new ClassificationTuple(10L, 1L, 100L, "expert", null),
+                new ClassificationTuple(11L, 1L, 200L, "expert2", null)));
+        when(classificationRepository.findUserTuplesByImageIds("testuser", List.of(1L)))
+                .thenReturn(List.of(new ClassificationTuple(50L, 1L, 100L, "testuser", null)));
+
+        assertTrue(credibilityService.onClassificationsRecorded(List.of(classification)).isEmpty());
+
+        // Added to the stored counters, never read back first
+        verify(userAgreementStatsRepository, never()).findById(anyString());
+        AgreementStatsWriter.UserDelta delta = appliedDeltas().get("testuser");
+        assertEquals(1, delta.getExpertCompared());
+        assertEquals(1, delta.getExpertAgreed());
+        assertEquals(1, delta.getUserLabelCounts().get(100L));
+        assertEquals(1, delta.getExpertLabelCounts().get(100L));
+    }
+
+    @Test
+    void onClassificationsRecorded_ShouldSkip_WhenUserAlreadyClassifiedImage() {
+        Classification classification = Classification.builder()
+                .id(51L).user(testUser).image(testImage).label(testLabel).build();
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L)))
+                .thenReturn(List.of(new ClassificationTuple(10L, 1L, 100L, "expert", null)));
+        when(classificationRepository.findUserTuplesByImageIds("testuser", List.of(1L))).thenReturn(List.of(
+                new ClassificationTuple(20L, 1L, 200L, "testuser", null),
+                new ClassificationTuple(51L, 1L, 100L, "testuser", null)));
+
+        credibilityService.onClassificationsRecorded(List.of(classification));
+
+        assertTrue(appliedDeltas().isEmpty());
+    }
+
+    @Test
+    void onClassificationsRecorded_ShouldUpdateRegularUsers_OnFirstExpertLabel() {
+        User expert = User.builder().username("expert").role(UserRole.RESEARCHER).build();
+        Classification expertClass = Classification.builder()
+                .id(90L).user(expert).image(testImage).label(testLabel).build();
+        ClassificationTuple c1 = new ClassificationTuple(10L, 1L, 100L, "u1", null);
+        ClassificationTuple c1Repeat = new ClassificationTuple(20L, 1L, 200L, "u1", null);
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L)))
+                .thenReturn(List.of(new ClassificationTuple(90L, 1L, 100L, "expert", null)));
+        when(classificationRepository.findNonExpertTuplesByImageIds(Set.of(1L))).thenReturn(List.of(c1, c1Repeat));
+
+        assertEquals(Set.of(1L), credibilityService.onClassificationsRecorded(List.of(expertClass)));
+
+        AgreementStatsWriter.UserDelta u1 = appliedDeltas().get("u1");
+        assertEquals(1, u1.getExpertCompared());
+        assertEquals(1, u1.getExpertAgreed()); // first classification (label 100) is used
+    }
+
+    @Test
+    void onClassificationsRecorded_ShouldIgnoreLaterExpertLabels() {
+        User expert = User.builder().username("expert2").role(UserRole.RESEARCHER).build();
+        Classification expertClass = Classification.builder()
+                .id(90L).user(expert).image(testImage).label(testLabel).build();
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L))).thenReturn(List.of(
+                new ClassificationTuple(40L, 1L, 200L, "expert", null),
+                new ClassificationTuple(90L, 1L, 100L, "expert2", null)));
+
+        assertTrue(credibilityService.onClassificationsRecorded(List.of(expertClass)).isEmpty());
+
+        verify(classificationRepository, never()).findNonExpertTuplesByImageIds(any());
+        assertTrue(appliedDeltas().isEmpty());
+    }
+
+    @Test
+    void onClassificationsRecorded_ShouldReadAndWriteOnce_ForTheWholeSubmission() {
+        Image other = Image.builder().id(2L).build();
+        List<Classification> classifications = List.of(
+                Classification.builder().id(60L).user(testUser).image(testImage).label(testLabel).build(),
+                Classification.builder().id(61L).user(testUser).image(other).label(testLabel).build());
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L, 2L)))
+                .thenReturn(List.of(new ClassificationTuple(10L, 2L, 200L, "expert", null)));
+        when(classificationRepository.findUserTuplesByImageIds("testuser", List.of(1L, 2L))).thenReturn(List.of(
+                new ClassificationTuple(60L, 1L, 100L, "testuser", null),
+                new ClassificationTuple(61L, 2L, 100L, "testuser", null)));
+
+        credibilityService.onClassificationsRecorded(classifications);
+
+        verify(agreementStatsWriter, times(1)).apply(any());
+        AgreementStatsWriter.UserDelta delta = appliedDeltas().get("testuser");
+        // Only image 2 has an expert label, and the user disagreed with it
+        assertEquals(1, delta.getExpertCompared());
+        assertEquals(0, delta.getExpertAgreed());
+    }
+
+    @Test
+    void onClassificationsRecorded_ShouldLeaveMajorityCounters_ToVoteCounterStore() {
+        Classification classification = Classification.builder()
+                .id(30L).user(testUser).image(testImage).label(testLabel).build();
+
+        when(classificationRepository.findExpertTuplesByImageIds(List.of(1L))).thenReturn(List.of());
+
+        assertTrue(credibilityService.onClassificationsRecorded(List.of(classification)).isEmpty());
+
+        // Scored against the image's majority by the vote counter flush, not per swipe
+        verify(classificationRepository, never()).findNonExpertTuplesByImageIds(any());
+        assertTrue(appliedDeltas().isEmpty());
+    }
+
+    @Test
+    void rebuildAgreementStats_ShouldLockRowBeforeReplacingCounters() {
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(classificationRepository.findTuplesByUsername("testuser")).thenReturn(List.of());
+        when(classificationRepository.streamExpertTuplesOnUserImages("testuser")).thenReturn(Stream.empty());
+        when(credibilityCalculator.countAgreement(any(long[].class), any(int[].class), any(), anyInt()))
+                .thenReturn(new CredibilityCalculator().countAgreement(new long[0], new int[0],
+                        new LongIntHashMap(1, -1), 0));
+        UserAgreementStats stats = UserAgreementStats.builder().username("testuser").expertComparedCount(9).build();
+        when(userAgreementStatsRepository.findById("testuser")).thenReturn(Optional.of(stats));
 
-        Classification c1 = Classification.builder().user(user1).build();
-        Classification c2 = Classification.builder().user(user2).build();
+        credibilityService.rebuildAgreementStats("testuser");
 
-        when(classificationRepository.findNonExpertClassificationsByImageId(imageId))
-                .thenReturn(List.of(c1, c2));
+        InOrder order = inOrder(agreementStatsWriter, userAgreementStatsRepository);
+        order.verify(agreementStatsWriter).lock("testuser");
+        order.verify(userAgreementStatsRepository).findById("testuser");
+        order.verify(userAgreementStatsRepository).save(stats);
+        assertEquals(0, stats.getExpertComparedCount());
+    }
 
-        // Stub find interactions for users
-        when(classificationRepository.findByUser_Username("u1")).thenReturn(Collections.emptyList());
-        when(classificationRepository.findByUser_Username("u2")).thenReturn(Collections.emptyList());
+    private AgreementStatsWriter.Deltas appliedDeltas() {
+        ArgumentCaptor<AgreementStatsWriter.Deltas> captor = ArgumentCaptor.forClass(AgreementStatsWriter.Deltas.class);
+        verify(agreementStatsWriter).apply(captor.capture());
+        return captor.getValue();
+    }
 
-        credibilityService.recalculateCredibilityForImage(imageId);
+    @Test
+    void getCredibilityStats_ShouldCountOverlapInDatabase() {
+        testUser.setAgreementWithExperts(0.6);
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(classificationRepository.countByUsername("testuser")).thenReturn(12L);
+        when(classificationRepository.countUserClassificationsWithExpertOverlap("testuser")).thenReturn(5L);
+
+        CredibilityService.CredibilityStats stats = credibilityService.getCredibilityStats("testuser");
+
+        assertEquals(12, stats.getTotalClassifications());
+        assertEquals(5, stats.getImagesInCommonWithExperts());
+        assertEquals(0.6, stats.getExpertAgreementScore());
+        verify(classificationRepository, never()).findExpertClassifications();
+    }
+
+    @Test
+    void getCredibilityStats_ShouldLoadPageOfUsersWithGroupedCounts() {
+        User other = User.builder().username("other").role(UserRole.USER)
+                .agreementWithExperts(0.0).majorityAgreementScore(0.0).build();
+        Pageable pageable = PageRequest.of(0, 2);
+        when(userRepository.findByRoleNot(UserRole.RESEARCHER, pageable))
+                .thenReturn(new PageImpl<>(List.of(testUser, other), pageable, 2));
+        when(classificationRepository.countByUsernames(List.of("testuser", "other")))
+                .thenReturn(List.of(count("testuser", 7L)));
+        when(classificationRepository.countExpertOverlapByUsernames(List.of("testuser", "other")))
+                .thenReturn(List.of(count("testuser", 3L)));
+
+        Page<CredibilityService.CredibilityStats> page = credibilityService.getCredibilityStats(pageable);
+
+        assertEquals(2, page.getContent().size());
+        assertEquals(7, page.getContent().get(0).getTotalClassifications());
+        assertEquals(3, page.getContent().get(0).getImagesInCommonWithExperts());
+        assertEquals(0, page.getContent().get(1).getTotalClassifications());
+    }
+
+    private UsernameCount count(String username, Long count) {
+        return new UsernameCount() {
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public Long getCount() {
+                return count;
+            }
+        };
+    }
 
-        verify(userRepository, times(2)).save(any(User.class));
+    private void givenStats(String username, int expertCompared, int expertAgreed, Map<Long, Integer> userLabels,
+                            Map<Long, Integer> expertLabels, int majorityCompared, int majorityAgreed) {
+        when(userAgreementStatsRepository.findById(username)).thenReturn(Optional.of(UserAgreementStats.builder()
+                .username(username)
+                .expertComparedCount(expertCompared)
+                .expertAgreedCount(expertAgreed)
+                .userLabelCounts(userLabels)
+                .expertLabelCounts(expertLabels)
+                .majorityComparedCount(majorityCompared)
+                .majorityAgreedCount(majorityAgreed)
+                .build()));
     }
 }
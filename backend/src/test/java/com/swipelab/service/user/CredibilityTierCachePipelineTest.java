@@ -0,0 +1,136 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import com.swipelab.model.entity.Task;
+import com.swipelab.model.entity.User;
+import com.swipelab.model.entity.UserAgreementStats;
+import com.swipelab.model.enums.UserRole;
+import com.swipelab.repository.ClassificationRepository;
+import com.swipelab.repository.UserAgreementStatsRepository;
+import com.swipelab.repository.UserRepository;
+import com.swipelab.util.CredibilityCalculator;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tiers ranked from the credibility scores the recalculation job writes, rather than from
+ * hand-set columns: regular users must be ranked, not just the researchers.
+ */
+@DataJpaTest
+class CredibilityTierCachePipelineTest {
+
+    @Autowired
+    private ClassificationRepository classificationRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserAgreementStatsRepository userAgreementStatsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private EntityManager entityManager;
+
+    private final CredibilityConfig config = new CredibilityConfig();
+
+    private CredibilityRecalculationJob recalculationJob;
+    private CredibilityTierCache tierCache;
+
+    private Task task;
+    private Label owl;
+    private Label fox;
+
+    @BeforeEach
+    void setUp() {
+        CredibilityService credibilityService = new CredibilityService(classificationRepository, userRepository,
+                userAgreementStatsRepository, new AgreementStatsWriter(jdbcTemplate), new CredibilityCalculator(), config);
+        recalculationJob = new CredibilityRecalculationJob(classificationRepository, userAgreementStatsRepository,
+                credibilityService, config, jdbcTemplate, transactionManager, Runnable::run);
+        tierCache = new CredibilityTierCache(jdbcTemplate, config);
+
+        User researcher = user("expert", UserRole.RESEARCHER);
+        task = Task.builder().name("Tiers").createdBy(researcher).build();
+        entityManager.persist(task);
+        owl = Label.builder().name("owl").build();
+        entityManager.persist(owl);
+        fox = Label.builder().name("fox").build();
+        entityManager.persist(fox);
+    }
+
+    @Test
+    void refresh_ShouldRankRegularUsersByRecalculatedScores() {
+        Image image = Image.builder().imageUrl("https://images.example.com/1").task(task).build();
+        entityManager.persist(image);
+        classify("expert", image, owl);
+
+        // Expert agreement out of 30 images and majority agreement out of 40 classifications
+        voter("best", image, 29, 38);
+        voter("good", image, 25, 32);
+        voter("fair", image, 21, 26);
+        voter("poor", image, 15, 20);
+        // Too few comparisons to be ranked, however well they agree
+        User newcomer = user("newcomer", UserRole.USER);
+        classify("newcomer", image, owl);
+        userAgreementStatsRepository.save(UserAgreementStats.builder().username(newcomer.getUsername())
+                .expertComparedCount(3).expertAgreedCount(3)
+                .userLabelCounts(Map.of(owl.getId(), 3)).expertLabelCounts(Map.of(owl.getId(), 3))
+                .build());
+        entityManager.flush();
+
+        assertEquals(5, recalculationJob.recalculateCredibilityForImage(image.getId()));
+        Double bestScore = jdbcTemplate.queryForObject(
+                "SELECT credibility_score FROM users WHERE username = 'best'", Double.class);
+        assertTrue(bestScore > 0.5, "score written by the recalculation: " + bestScore);
+
+        assertEquals(2, tierCache.refresh());
+
+        CredibilityTierCache.TierSummary summary = tierCache.getSummary();
+        assertEquals(4, summary.getRankedUsers());
+        assertEquals(bestScore, summary.getReliableThreshold(), 1e-9);
+        assertTrue(tierCache.isReliable("best"));
+        assertTrue(tierCache.isReliable("expert"));
+        assertFalse(tierCache.isReliable("good"));
+        assertFalse(tierCache.isReliable("poor"));
+        assertFalse(tierCache.isReliable("newcomer"));
+    }
+
+    private void voter(String username, Image image, int expertAgreed, int majorityAgreed) {
+        user(username, UserRole.USER);
+        classify(username, image, owl);
+        // Both sides split the 30 images evenly between the two labels
+        userAgreementStatsRepository.save(UserAgreementStats.builder().username(username)
+                .expertComparedCount(30).expertAgreedCount(expertAgreed)
+                .userLabelCounts(Map.of(owl.getId(), 15, fox.getId(), 15))
+                .expertLabelCounts(Map.of(owl.getId(), 15, fox.getId(), 15))
+                .majorityComparedCount(40).majorityAgreedCount(majorityAgreed)
+                .build());
+    }
+
+    private User user(String username, UserRole role) {
+        User user = User.builder().username(username).email(username + "@example.com").role(role).build();
+        entityManager.persist(user);
+        return user;
+    }
+
+    private void classify(String username, Image image, Label label) {
+        entityManager.persist(Classification.builder()
+                .user(entityManager.getReference(User.class, username))
+                .image(image)
+                .label(label)
+                .voteWeight(1.0)
+                .build());
+    }
+}
@@ -0,0 +1,72 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CredibilityTierCacheTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CredibilityTierCache tierCache;
+
+    @BeforeEach
+    void setUp() {
+        tierCache = new CredibilityTierCache(jdbcTemplate, new CredibilityConfig());
+    }
+
+    @Test
+    void refresh_ShouldPutTopQuarterAndResearchersInReliableTier() throws Exception {
+        givenUsers(List.of(user("a", 0.2, "USER"), user("b", 0.9, "USER"), user("c", 0.5, "USER"),
+                user("d", 0.7, "USER"), user("expert", 0.0, "RESEARCHER")));
+
+        assertEquals(2, tierCache.refresh());
+
+        assertTrue(tierCache.isReliable("b"));
+        assertTrue(tierCache.isReliable("expert"));
+        assertFalse(tierCache.isReliable("d"));
+        assertFalse(tierCache.isReliable("unknown"));
+        CredibilityTierCache.TierSummary summary = tierCache.getSummary();
+        assertEquals(4, summary.getRankedUsers());
+        assertEquals(0.9, summary.getReliableThreshold(), 1e-9);
+    }
+
+    @Test
+    void isReliable_ShouldBeFalseForEveryone_BeforeFirstRefresh() {
+        assertFalse(tierCache.isReliable("b"));
+        assertEquals(0, tierCache.getSummary().getReliableUsers());
+    }
+
+    private void givenUsers(List<ResultSet> rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq("RESEARCHER"), eq(20));
+    }
+
+    private ResultSet user(String username, double score, String role) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(1)).thenReturn(username);
+        lenient().when(rs.getDouble(2)).thenReturn(score);
+        when(rs.getString(3)).thenReturn(role);
+        return rs;
+    }
+}
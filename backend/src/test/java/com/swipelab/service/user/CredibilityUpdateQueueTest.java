@@ -0,0 +1,104 @@
+package com.swipelab.service.user;
+
+import com.swipelab.config.CredibilityConfig;
+import com.swipelab.service.classification.ClassificationSubmittedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CredibilityUpdateQueueTest {
+
+    @Mock
+    private CredibilityService credibilityService;
+    @Mock
+    private CredibilityRecalculationJob recalculationJob;
+    @Mock
+    private ThreadPoolTaskExecutor executor;
+
+    private CredibilityConfig credibilityConfig;
+    private CredibilityUpdateQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        credibilityConfig = new CredibilityConfig();
+        credibilityConfig.setCoalesceWindowMs(0);
+        queue = new CredibilityUpdateQueue(credibilityService, recalculationJob, credibilityConfig, executor);
+    }
+
+    @Test
+    void drain_ShouldCoalesceBurstIntoSingleRecompute() {
+        queue.onClassificationSubmitted(userEvent("alice", 1L));
+        queue.onClassificationSubmitted(userEvent("alice", 2L));
+        queue.onClassificationSubmitted(userEvent("alice", 3L));
+
+        queue.drain();
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(1)).execute(task.capture());
+        task.getValue().run();
+
+        verify(credibilityService).updateUserCredibility("alice", 3L);
+        CredibilityUpdateQueue.QueueMetrics metrics = queue.getMetrics();
+        assertEquals(3, metrics.getEnqueuedCount());
+        assertEquals(2, metrics.getCoalescedCount());
+        assertEquals(1, metrics.getCompletedCount());
+        assertEquals(0, metrics.getPendingUsers());
+    }
+
+    @Test
+    void drain_ShouldHoldUpdatesInsideCoalesceWindow() {
+        credibilityConfig.setCoalesceWindowMs(60_000);
+        queue.onClassificationSubmitted(userEvent("alice", 1L));
+
+        queue.drain();
+
+        verify(executor, never()).execute(any(Runnable.class));
+        assertEquals(1, queue.getMetrics().getPendingUsers());
+    }
+
+    @Test
+    void drain_ShouldKeepUpdatePending_WhenExecutorRejects() {
+        queue.onClassificationSubmitted(userEvent("alice", 1L));
+        doThrow(new TaskRejectedException("full")).doNothing().when(executor).execute(any(Runnable.class));
+
+        queue.drain();
+        assertEquals(1, queue.getMetrics().getPendingUsers());
+        assertEquals(1, queue.getMetrics().getRejectedCount());
+
+        queue.drain();
+        verify(executor, times(2)).execute(any(Runnable.class));
+        assertEquals(0, queue.getMetrics().getPendingUsers());
+    }
+
+    @Test
+    void onClassificationSubmitted_ShouldQueueImageRecompute_ForFirstExpertLabel() {
+        queue.onClassificationSubmitted(new ClassificationSubmittedEvent("expert", true,
+                List.of(new ClassificationSubmittedEvent.Swipe(10L, 5L, 100L, true))));
+
+        queue.drain();
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(task.capture());
+        task.getValue().run();
+
+        verify(recalculationJob).recalculateCredibilityForImage(5L);
+        verify(credibilityService, never()).updateUserCredibility(any(), any());
+    }
+
+    private ClassificationSubmittedEvent userEvent(String username, Long imageId) {
+        return new ClassificationSubmittedEvent(username, false,
+                List.of(new ClassificationSubmittedEvent.Swipe(imageId, imageId, 100L, false)));
+    }
+}
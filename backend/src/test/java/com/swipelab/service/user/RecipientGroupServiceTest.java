@@ -0,0 +1,58 @@
+package com.swipelab.service.user;
+
+import com.swipelab.exception.ResourceNotFoundException;
+import com.swipelab.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecipientGroupServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private RecipientGroupService recipientGroupService;
+
+    @Test
+    void addToGroup_ShouldInsertMembership_AndReturnUsersGroups() {
+        when(userRepository.existsByUsername("alice")).thenReturn(true);
+        when(jdbcTemplate.queryForList(RecipientGroupService.LOAD_GROUPS_SQL, Long.class, "alice"))
+                .thenReturn(List.of(3L, 5L));
+
+        List<Long> groups = recipientGroupService.addToGroup("alice", 5L);
+
+        assertEquals(List.of(3L, 5L), groups);
+        verify(jdbcTemplate).update(RecipientGroupService.ADD_MEMBERSHIP_SQL, "alice", 5L);
+    }
+
+    @Test
+    void removeFromGroup_ShouldDeleteMembership() {
+        when(userRepository.existsByUsername("alice")).thenReturn(true);
+        when(jdbcTemplate.queryForList(RecipientGroupService.LOAD_GROUPS_SQL, Long.class, "alice"))
+                .thenReturn(List.of(3L));
+
+        assertEquals(List.of(3L), recipientGroupService.removeFromGroup("alice", 5L));
+        verify(jdbcTemplate).update(RecipientGroupService.REMOVE_MEMBERSHIP_SQL, "alice", 5L);
+    }
+
+    @Test
+    void addToGroup_ShouldThrow_WhenUserDoesNotExist() {
+        when(userRepository.existsByUsername("ghost")).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class, () -> recipientGroupService.addToGroup("ghost", 5L));
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+}
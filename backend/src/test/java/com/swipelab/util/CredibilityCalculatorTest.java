@@ -0,0 +1,112 @@
+package com.swipelab.util;
+
+import com.swipelab.model.entity.Classification;
+import com.swipelab.model.entity.Image;
+import com.swipelab.model.entity.Label;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredibilityCalculatorTest {
+
+    private final CredibilityCalculator calculator = new CredibilityCalculator();
+
+    @Test
+    void countAgreement_ShouldUseFirstClassificationPerImageOnBothSides() {
+        List<Classification> user = List.of(
+                classification(1L, 10L),
+                classification(2L, 20L),
+                classification(1L, 20L),  // repeat of image 1, ignored
+                classification(3L, 10L)); // no expert label
+        List<Classification> expert = List.of(
+                classification(1L, 10L),
+                classification(2L, 10L),
+                classification(2L, 20L)); // second expert label on image 2, ignored
+
+        CredibilityCalculator.AgreementCounts counts = calculator.countAgreement(user, expert);
+
+        assertEquals(1, counts.getAgreementCount());
+        assertEquals(2, counts.getTotalComparisons());
+        assertEquals(Map.of(10L, 1, 20L, 1), counts.getLabelCounts1());
+        assertEquals(Map.of(10L, 2), counts.getLabelCounts2());
+    }
+
+    @Test
+    void calculateCohenKappa_DensePathShouldMatchMapPath() {
+        Random random = new Random(42);
+        List<Classification> user = new ArrayList<>();
+        List<Classification> expert = new ArrayList<>();
+        for (long imageId = 1; imageId <= 5_000; imageId++) {
+            long expertLabel = 1 + random.nextInt(4);
+            expert.add(classification(imageId, expertLabel));
+            if (random.nextInt(3) > 0) {
+                user.add(classification(imageId, random.nextInt(4) < 3 ? expertLabel : 1 + random.nextInt(4)));
+            }
+        }
+
+        CredibilityCalculator.AgreementCounts counts = calculator.countAgreement(user, expert);
+        double fromMaps = calculator.calculateCohenKappa(counts.getAgreementCount(), counts.getTotalComparisons(),
+                counts.getLabelCounts1(), counts.getLabelCounts2());
+
+        LabelIndex labelIndex = new LabelIndex();
+        long[] userImages = user.stream().mapToLong(c -> c.getImage().getId()).toArray();
+        int[] userLabels = user.stream().mapToInt(c -> labelIndex.indexOf(c.getLabel().getId())).toArray();
+        long[] expertImages = expert.stream().mapToLong(c -> c.getImage().getId()).toArray();
+        int[] expertLabels = expert.stream().mapToInt(c -> labelIndex.indexOf(c.getLabel().getId())).toArray();
+
+        CredibilityCalculator.DenseAgreementCounts dense =
+                calculator.countAgreement(userImages, userLabels, expertImages, expertLabels, labelIndex.size());
+        double fromArrays = calculator.calculateCohenKappa(dense.getAgreementCount(), dense.getTotalComparisons(),
+                dense.getLabelCounts1(), dense.getLabelCounts2());
+
+        assertEquals(user.size(), dense.getTotalComparisons());
+        assertEquals(fromMaps, fromArrays, 1e-12);
+        assertTrue(fromArrays > 0.5 && fromArrays < 1.0);
+    }
+
+    @Test
+    void calculateMajorityVote_ShouldRequireMoreThanHalf() {
+        Label majority = calculator.calculateMajorityVote(List.of(
+                classification(1L, 10L), classification(1L, 20L), classification(1L, 10L)));
+        assertEquals(10L, majority.getId());
+
+        assertNull(calculator.calculateMajorityVote(List.of(
+                classification(1L, 10L), classification(1L, 20L))));
+        assertNull(calculator.calculateMajorityVote(List.of(classification(1L, 10L))));
+    }
+
+    @Test
+    void calculateCredibilityScore_ShouldWeighAgreementByEvidence() {
+        // No comparisons yet
+        assertEquals(0.0, calculator.calculateCredibilityScore(null, 0, 0.0, 0, 10));
+
+        // (30 * 0.8 + 40 * 0.85) / (30 + 40 + 10)
+        assertEquals(0.725, calculator.calculateCredibilityScore(0.8, 30, 0.85, 40, 10), 1e-9);
+
+        // Negative kappa counts as no agreement; without kappa only the majority counts
+        assertEquals(10.0 / 30, calculator.calculateCredibilityScore(-0.4, 10, 1.0, 10, 10), 1e-9);
+        assertEquals(0.5, calculator.calculateCredibilityScore(null, 0, 1.0, 10, 10), 1e-9);
+
+        // The same agreement earns more credibility with more evidence
+        assertTrue(calculator.calculateCredibilityScore(0.9, 200, 0.9, 200, 10)
+                > calculator.calculateCredibilityScore(0.9, 5, 0.9, 5, 10));
+    }
+
+    @Test
+    void calculateConsensusStrength_ShouldReturnShareOfTopLabel() {
+        assertEquals(0.75, calculator.calculateConsensusStrength(new int[]{0, 1, 1, 1}, 2));
+        assertEquals(0.0, calculator.calculateConsensusStrength(new int[]{0}, 1));
+    }
+
+    private Classification classification(Long imageId, Long labelId) {
+        return Classification.builder()
+                .image(Image.builder().id(imageId).build())
+                .label(Label.builder().id(labelId).build())
+                .build();
+    }
+}
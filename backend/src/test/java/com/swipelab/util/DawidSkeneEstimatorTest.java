@@ -0,0 +1,148 @@
+package com.swipelab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DawidSkeneEstimatorTest {
+
+    private static final int ITEMS = 300;
+    private static final int LABELS = 3;
+
+    private final DawidSkeneEstimator estimator = new DawidSkeneEstimator(100, 1e-6);
+
+    @Test
+    void observations_ShouldGroupByItemAndByAnnotator() {
+        DawidSkeneEstimator.Observations data = DawidSkeneEstimator.Observations.of(2, 2, 2,
+                new int[]{1, 0, 1}, new int[]{0, 1, 1}, new int[]{1, 0, 0});
+
+        assertArrayEquals(new int[]{0, 1, 3}, data.getItemOffsets());
+        assertArrayEquals(new int[]{1, 0, 1}, data.getItemAnnotators());
+        assertArrayEquals(new int[]{0, 1, 0}, data.getItemLabels());
+        assertArrayEquals(new int[]{0, 1, 3}, data.getAnnotatorOffsets());
+        assertArrayEquals(new int[]{1, 0, 1}, data.getAnnotatorItems());
+        assertArrayEquals(new int[]{1, 0, 0}, data.getAnnotatorLabels());
+    }
+
+    @Test
+    void estimate_ShouldOutperformMajorityVoteWithBiasedAnnotators() {
+        Synthetic synthetic = synthetic(42);
+
+        DawidSkeneEstimator.Result result = estimator.estimate(synthetic.data, null);
+
+        int correct = 0;
+        for (int item = 0; item < ITEMS; item++) {
+            if (result.mostLikelyLabel(item) == synthetic.truth[item]) {
+                correct++;
+            }
+        }
+        assertTrue(result.isConverged());
+        assertTrue(correct > majorityCorrect(synthetic), "Dawid-Skene should beat majority vote");
+        assertTrue(correct >= ITEMS * 0.9, "Expected at least 90% accuracy, got " + correct);
+
+        // The reliable annotator's diagonal should dominate, the biased one should lean to label 0
+        double[] confusions = result.getConfusions();
+        assertTrue(confusions[confusionIndex(0, 1, 1)] > 0.8);
+        assertTrue(confusions[confusionIndex(3, 1, 0)] > 0.4);
+    }
+
+    @Test
+    void estimate_WarmStartShouldConvergeFaster() {
+        Synthetic synthetic = synthetic(7);
+
+        DawidSkeneEstimator.Result cold = estimator.estimate(synthetic.data, null);
+        DawidSkeneEstimator.Result warm = estimator.estimate(synthetic.data, cold.getConfusions());
+
+        assertTrue(warm.isConverged());
+        assertTrue(warm.getIterations() < cold.getIterations(),
+                "warm " + warm.getIterations() + " vs cold " + cold.getIterations());
+        for (int item = 0; item < ITEMS; item++) {
+            assertEquals(cold.mostLikelyLabel(item), warm.mostLikelyLabel(item));
+        }
+    }
+
+    @Test
+    void estimate_ShouldRejectWarmStartOfWrongShape() {
+        Synthetic synthetic = synthetic(1);
+
+        assertThrows(IllegalArgumentException.class, () -> estimator.estimate(synthetic.data, new double[3]));
+    }
+
+    @Test
+    void estimate_ShouldHandleEmptyInput() {
+        DawidSkeneEstimator.Observations empty = DawidSkeneEstimator.Observations.of(0, 0, 0,
+                new int[0], new int[0], new int[0]);
+
+        DawidSkeneEstimator.Result result = estimator.estimate(empty, null);
+
+        assertEquals(0, result.getIterations());
+        assertEquals(0, result.getPosteriors().length);
+    }
+
+    private static int confusionIndex(int annotator, int trueLabel, int answered) {
+        return (annotator * LABELS + trueLabel) * LABELS + answered;
+    }
+
+    /**
+     * Annotators 0-2 are 85% accurate, annotators 3-6 answer label 0 half of the time regardless of the image
+     */
+    private static Synthetic synthetic(long seed) {
+        Random random = new Random(seed);
+        int annotators = 7;
+        int[] truth = new int[ITEMS];
+        List<int[]> rows = new ArrayList<>();
+        for (int item = 0; item < ITEMS; item++) {
+            truth[item] = random.nextInt(LABELS);
+            for (int annotator = 0; annotator < annotators; annotator++) {
+                int answer;
+                if (annotator < 3) {
+                    answer = random.nextDouble() < 0.85 ? truth[item] : random.nextInt(LABELS);
+                } else {
+                    answer = random.nextDouble() < 0.5 ? 0 : truth[item];
+                }
+                rows.add(new int[]{item, annotator, answer});
+            }
+        }
+
+        int[] items = rows.stream().mapToInt(r -> r[0]).toArray();
+        int[] workers = rows.stream().mapToInt(r -> r[1]).toArray();
+        int[] answers = rows.stream().mapToInt(r -> r[2]).toArray();
+        return new Synthetic(truth,
+                DawidSkeneEstimator.Observations.of(ITEMS, annotators, LABELS, items, workers, answers));
+    }
+
+    private static int majorityCorrect(Synthetic synthetic) {
+        DawidSkeneEstimator.Observations data = synthetic.data;
+        int correct = 0;
+        for (int item = 0; item < ITEMS; item++) {
+            int[] votes = new int[LABELS];
+            for (int o = data.getItemOffsets()[item]; o < data.getItemOffsets()[item + 1]; o++) {
+                votes[data.getItemLabels()[o]]++;
+            }
+            int best = 0;
+            for (int k = 1; k < LABELS; k++) {
+                if (votes[k] > votes[best]) {
+                    best = k;
+                }
+            }
+            if (best == synthetic.truth[item]) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+
+    private static class Synthetic {
+        private final int[] truth;
+        private final DawidSkeneEstimator.Observations data;
+
+        Synthetic(int[] truth, DawidSkeneEstimator.Observations data) {
+            this.truth = truth;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.swipelab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeistelPermutationTest {
+
+    @Test
+    void permute_ShouldBeBijection_ForAnySize() {
+        for (long size : new long[]{1, 2, 3, 7, 64, 100, 1000, 65537}) {
+            FeistelPermutation permutation = new FeistelPermutation(size, 42);
+            boolean[] hit = new boolean[(int) size];
+            for (long index = 0; index < size; index++) {
+                int value = (int) permutation.permute(index);
+                assertFalse(hit[value], "size " + size + " maps two indexes to " + value);
+                hit[value] = true;
+            }
+        }
+    }
+
+    @Test
+    void permute_ShouldDependOnlyOnKeyAndSize() {
+        assertEquals(order(new FeistelPermutation(50, 7)), order(new FeistelPermutation(50, 7)));
+        assertNotEquals(order(new FeistelPermutation(50, 7)), order(new FeistelPermutation(50, 8)));
+    }
+
+    @Test
+    void permute_ShouldShuffle() {
+        List<Long> order = order(new FeistelPermutation(1000, 1));
+
+        int fixedPoints = 0;
+        for (int index = 0; index < order.size(); index++) {
+            if (order.get(index) == index) {
+                fixedPoints++;
+            }
+        }
+        // A random permutation has one fixed point on average
+        assertTrue(fixedPoints < 10, "too many fixed points: " + fixedPoints);
+    }
+
+    @Test
+    void permute_ShouldRejectIndexOutsideRange() {
+        FeistelPermutation permutation = new FeistelPermutation(10, 1);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(-1));
+        assertThrows(IllegalArgumentException.class, () -> new FeistelPermutation(0, 1));
+    }
+
+    private List<Long> order(FeistelPermutation permutation) {
+        List<Long> order = new ArrayList<>();
+        for (long index = 0; index < permutation.size(); index++) {
+            order.add(permutation.permute(index));
+        }
+        return order;
+    }
+}
@@ -0,0 +1,101 @@
+package com.swipelab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageIdBitmapTest {
+
+    @Test
+    void add_ShouldReportNewIdsOnly() {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+
+        assertTrue(bitmap.add(5L));
+        assertFalse(bitmap.add(5L));
+        assertTrue(bitmap.add(70_000L));
+
+        assertTrue(bitmap.contains(5L));
+        assertTrue(bitmap.contains(70_000L));
+        assertFalse(bitmap.contains(6L));
+        assertFalse(bitmap.contains(-1L));
+        assertEquals(2, bitmap.cardinality());
+    }
+
+    @Test
+    void add_ShouldRejectNegativeIds() {
+        assertThrows(IllegalArgumentException.class, () -> new ImageIdBitmap().add(-3L));
+    }
+
+    @Test
+    void add_ShouldMatchReferenceSet_AcrossArrayAndBitmapContainers() {
+        // Dense block forces a bitmap container, sparse ids stay in arrays
+        Random random = new Random(7);
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        TreeSet<Long> reference = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long id = i % 2 == 0 ? random.nextInt(65_536) : (long) random.nextInt(1_000) << 20;
+            assertEquals(reference.add(id), bitmap.add(id));
+        }
+
+        assertEquals(reference.size(), bitmap.cardinality());
+        assertArrayEquals(reference.stream().mapToLong(Long::longValue).toArray(), bitmap.toArray());
+        for (long id = 0; id < 70_000; id++) {
+            assertEquals(reference.contains(id), bitmap.contains(id), "id " + id);
+        }
+    }
+
+    @Test
+    void filterAbsent_ShouldDropContainedIds_KeepingOrder() {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        bitmap.add(2L);
+        bitmap.add(4L);
+        bitmap.add(200_000L);
+
+        long[] active = bitmap.filterAbsent(new long[]{4L, 3L, 200_000L, 2L, 1L, 200_001L});
+
+        assertArrayEquals(new long[]{3L, 1L, 200_001L}, active);
+    }
+
+    @Test
+    void serialize_ShouldRoundTrip() {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        for (long id = 0; id < 10_000; id += 2) {
+            bitmap.add(id);
+        }
+        bitmap.add(1L << 40);
+
+        ImageIdBitmap restored = ImageIdBitmap.deserialize(bitmap.serialize());
+
+        assertEquals(bitmap.cardinality(), restored.cardinality());
+        assertArrayEquals(bitmap.toArray(), restored.toArray());
+        assertTrue(restored.add(1L));
+        assertFalse(restored.add(1L << 40));
+    }
+
+    @Test
+    void deserialize_ShouldRejectTruncatedBytes() {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        bitmap.add(42L);
+        byte[] bytes = bitmap.serialize();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ImageIdBitmap.deserialize(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    void copy_ShouldBeIndependent() {
+        ImageIdBitmap bitmap = new ImageIdBitmap();
+        bitmap.add(1L);
+        ImageIdBitmap copy = bitmap.copy();
+
+        copy.add(2L);
+
+        assertFalse(bitmap.contains(2L));
+        assertEquals(1, bitmap.cardinality());
+        assertEquals(2, copy.cardinality());
+    }
+}
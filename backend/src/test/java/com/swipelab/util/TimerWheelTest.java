@@ -0,0 +1,71 @@
+package com.swipelab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    @Test
+    void advance_ShouldFireItemsOnlyOnceTheirDeadlinePassed() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+        List<String> fired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(200, fired::add));
+        assertEquals(1, wheel.advance(300, fired::add));
+        assertEquals(List.of("a"), fired);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(500, fired::add);
+        assertEquals(List.of("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_ShouldKeepItemsOfLaterRevolutions() {
+        // 8 buckets of 100 ms: 1250 shares a bucket with 450
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("near", 450);
+        wheel.schedule("far", 1250);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(500, fired::add);
+        assertEquals(List.of("near"), fired);
+
+        wheel.advance(1200, fired::add);
+        assertEquals(List.of("near"), fired);
+
+        wheel.advance(1300, fired::add);
+        assertEquals(List.of("near", "far"), fired);
+    }
+
+    @Test
+    void advance_ShouldFireEverythingDue_AfterLongPause() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(10, 4, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(i, i * 10L);
+        }
+        wheel.schedule(99, 10_000);
+        List<Integer> fired = new ArrayList<>();
+
+        assertEquals(20, wheel.advance(5_000, fired::add));
+        assertEquals(1, wheel.size());
+        assertFalse(fired.contains(99));
+    }
+
+    @Test
+    void schedule_ShouldFirePastDeadlinesOnNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 1_000);
+        wheel.schedule("late", 500);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(1_100, fired::add);
+
+        assertEquals(List.of("late"), fired);
+    }
+}
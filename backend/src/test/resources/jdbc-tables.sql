@@ -0,0 +1,6 @@
+-- Tables without a JPA entity, see the Flyway migrations for their full definitions
+CREATE TABLE IF NOT EXISTS task_retired_images (task_id BIGINT PRIMARY KEY, bitmap BYTEA NOT NULL, image_count BIGINT NOT NULL DEFAULT 0, updated_at TIMESTAMP);
+CREATE TABLE IF NOT EXISTS image_vote_tallies (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, image_id BIGINT NOT NULL, label_id BIGINT NOT NULL, vote_count INTEGER NOT NULL DEFAULT 0, weighted_votes DOUBLE PRECISION NOT NULL DEFAULT 0, CONSTRAINT uq_vote_tally_image_label UNIQUE (image_id, label_id));
+CREATE TABLE IF NOT EXISTS image_vote_summaries (image_id BIGINT PRIMARY KEY, total_votes INTEGER NOT NULL DEFAULT 0, majority_label_id BIGINT, total_weight DOUBLE PRECISION NOT NULL DEFAULT 0, leading_label_id BIGINT, leading_weight DOUBLE PRECISION NOT NULL DEFAULT 0, finalized_label_id BIGINT, finalized_at TIMESTAMP, updated_at TIMESTAMP);
+CREATE TABLE IF NOT EXISTS user_task_cursors (task_id BIGINT NOT NULL, username VARCHAR(255) NOT NULL, position BIGINT NOT NULL DEFAULT 0, domain_size BIGINT NOT NULL DEFAULT 0, updated_at TIMESTAMP, PRIMARY KEY (task_id, username));
+CREATE TABLE IF NOT EXISTS user_recipient_groups (username VARCHAR(255) NOT NULL, recipient_group_id BIGINT NOT NULL, PRIMARY KEY (username, recipient_group_id));